@@ -10,12 +10,16 @@ import androidx.appcompat.widget.Toolbar
 import androidx.recyclerview.widget.DefaultItemAnimator
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ForkJoinPool
 import com.cosic.chessview.models.Action
 import com.cosic.chessview.ChessView
+import com.cosic.chessview.game.ActionTimeline
 import com.cosic.chessview.models.Move
 import com.cosic.chessview.sample.adapter.ItemClickSupport
 import com.cosic.chessview.sample.adapter.MoveItem
 import com.cosic.chessview.sample.adapter.MovesAdapter
+import com.cosic.chessview.sample.adapter.NO_POSITION
 
 private const val ALPHA_DISABLE = 0.3f
 private const val ALPHA_ENABLE = 1.0f
@@ -52,6 +56,11 @@ class MainActivity : AppCompatActivity() {
     private val labelFigure by bindView<ImageView>(R.id.board_navigation_label_figure)
 
     private lateinit var mMovesAdapter: MovesAdapter
+
+    /**
+     * Animation steps between all mocked moves, computed off the main thread;
+     */
+    private lateinit var mTimeline: CompletableFuture<ActionTimeline>
     
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -66,12 +75,22 @@ class MainActivity : AppCompatActivity() {
 
         mMovesAdapter.onSelectedItemChange = { newPosition, previousPosition ->
             val item = mMovesAdapter.getItem(newPosition)
-            if (newPosition == previousPosition + 1) {
+            val timeline = mTimeline.getNow(null)
+            if (newPosition == previousPosition + 1 && timeline != null) {
+                val previousItem = mMovesAdapter.getItem(previousPosition)
+                chessView.applyFen(previousItem.fen, null, false)
+                chessView.applyMoving(timeline.get(previousPosition), true)
+            } else if (newPosition == previousPosition + 1) {
                 val moves = Array(1) { arrayOfNulls<Action>(1) }
                 val previousItem = mMovesAdapter.getItem(previousPosition)
                 moves[0][0] = from(item)
                 chessView.applyFen(previousItem.fen, null, false)
                 chessView.applyMoving(moves, true)
+            } else if (previousPosition != NO_POSITION && newPosition != previousPosition) {
+                // Jump over several moves, pieces travel the shortest way to the new position;
+                val previousItem = mMovesAdapter.getItem(previousPosition)
+                chessView.applyFen(previousItem.fen, null, false)
+                chessView.applyMoving(chessView.getMoves(previousItem.fen, item.fen), true)
             } else {
                 chessView.applyFen(item.fen, from(item), false)
             }
@@ -114,6 +133,7 @@ class MainActivity : AppCompatActivity() {
             mMovesAdapter.setSelection(position)
         }
 
+        mTimeline = ActionTimeline.computeAsync(mockedMoves.map { it.fen }, ForkJoinPool.commonPool())
         mMovesAdapter.addAll(mockedMoves)
         mMovesAdapter.setSelection(0)
         reloadButtonsState()
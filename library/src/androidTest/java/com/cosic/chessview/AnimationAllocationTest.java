@@ -0,0 +1,293 @@
+package com.cosic.chessview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.view.ViewGroup;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.cosic.chessview.board.BoardDiff;
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.MoveList;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.engine.BitboardPosition;
+import com.cosic.chessview.engine.Notation;
+import com.cosic.chessview.models.Action;
+import com.cosic.chessview.models.Move;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Plays a full game on a view attached to a window and counts the objects allocated per thread
+ * by the runtime: the animation thread must not allocate once the first step has warmed it up,
+ * and {@link ChessView#onDraw(Canvas)} must not allocate at all.
+ * <p>
+ * The allocation counters of {@link Debug} are deprecated, ART still keeps them per thread.
+ */
+@RunWith(AndroidJUnit4.class)
+@SuppressWarnings("deprecation")
+public class AnimationAllocationTest {
+
+    /**
+     * Morphy - Duke of Brunswick and Count Isouard, Paris 1858: captures, long castling and a mate;
+     */
+    private static final String[] GAME = {
+            "e4", "e5", "Nf3", "d6", "d4", "Bg4", "dxe5", "Bxf3", "Qxf3", "dxe5",
+            "Bc4", "Nf6", "Qb3", "Qe7", "Nc3", "c6", "Bg5", "b5", "Nxb5", "cxb5",
+            "Bxb5+", "Nbd7", "O-O-O", "Rd8", "Rxd7", "Rxd7", "Rd1", "Qe6", "Bxd7+", "Nxd7",
+            "Qb8+", "Nxb8", "Rd8#"
+    };
+
+    private static final int BOARD_SIZE = 800;
+
+    /**
+     * A step takes about a second;
+     */
+    private static final long GAME_TIMEOUT_S = 2L * GAME.length;
+
+    private static final long ATLAS_TIMEOUT_MS = 10_000;
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+    private ActivityScenario<TestActivity> mScenario;
+    private CountingChessView mView;
+
+    @Before
+    public void attachView() {
+        mScenario = ActivityScenario.launch(TestActivity.class);
+        mScenario.onActivity(activity -> {
+            mView = new CountingChessView(activity);
+            activity.setContentView(mView, new ViewGroup.LayoutParams(BOARD_SIZE, BOARD_SIZE));
+        });
+        awaitAtlas();
+
+        Debug.resetAllCounts();
+        Debug.startAllocCounting();
+    }
+
+    @After
+    public void detachView() {
+        Debug.stopAllocCounting();
+        mScenario.close();
+    }
+
+    @Test
+    public void packedMovesDoNotAllocate() throws InterruptedException {
+        final MoveList moves = movesOf(GAME);
+        final PackedStepCounter counter = new PackedStepCounter();
+        mInstrumentation.runOnMainSync(() -> {
+            mView.setOnMoveListener(counter);
+            mView.resetDrawCounts();
+            mView.applyMoving(moves, true);
+        });
+
+        counter.awaitGame();
+        assertEquals(GAME.length, counter.mStepCount);
+        assertEquals("Objects allocated by the animation thread after the first step",
+                0, counter.getAllocationCount());
+        assertDrawsDoNotAllocate();
+    }
+
+    @Test
+    public void actionsDoNotAllocate() throws InterruptedException {
+        final Action[][] actions = actionsOf(movesOf(GAME));
+        final PackedStepCounter counter = new PackedStepCounter();
+        mInstrumentation.runOnMainSync(() -> {
+            mView.setOnMoveListener(counter);
+            mView.resetDrawCounts();
+            mView.applyMoving(actions, true);
+        });
+
+        counter.awaitGame();
+        assertEquals(actions.length, counter.mStepCount);
+        assertEquals("Objects allocated by the animation thread after the first step",
+                0, counter.getAllocationCount());
+        assertDrawsDoNotAllocate();
+    }
+
+    /**
+     * {@link OnMoveListener} gets a new list per step, which is all it may cost;
+     */
+    @Test
+    public void moveListenerAllocatesOnlyItsLists() throws InterruptedException {
+        final MoveList moves = movesOf(GAME);
+        final ListStepCounter counter = new ListStepCounter();
+        mInstrumentation.runOnMainSync(() -> {
+            mView.setOnMoveListener(counter);
+            mView.resetDrawCounts();
+            mView.applyMoving(moves, true);
+        });
+
+        counter.awaitGame();
+        assertEquals(GAME.length, counter.mStepCount);
+        // The list and its array, the moves are shared instances;
+        int allowed = 2 * (GAME.length - 1);
+        int allocated = counter.getAllocationCount();
+        assertTrue("Objects allocated by the animation thread after the first step: " + allocated
+                + ", at most " + allowed + " expected", allocated <= allowed);
+        assertDrawsDoNotAllocate();
+    }
+
+    /**
+     * Wait until the pieces are decoded and drawn, the board layer is made by the same frame;
+     */
+    private void awaitAtlas() {
+        final boolean[] ready = new boolean[1];
+        final long deadline = SystemClock.uptimeMillis() + ATLAS_TIMEOUT_MS;
+        while (true) {
+            mInstrumentation.runOnMainSync(() -> ready[0] = mView.isAtlasReady());
+            if (ready[0]) {
+                break;
+            }
+            assertTrue("Pieces not decoded in " + ATLAS_TIMEOUT_MS + " ms", SystemClock.uptimeMillis() < deadline);
+            SystemClock.sleep(50);
+        }
+        mInstrumentation.waitForIdleSync();
+    }
+
+    /**
+     * Let the last frames be drawn and check the counts of {@link CountingChessView};
+     */
+    private void assertDrawsDoNotAllocate() {
+        mInstrumentation.waitForIdleSync();
+        final int[] counts = new int[2];
+        mInstrumentation.runOnMainSync(() -> {
+            counts[0] = mView.mDrawCount;
+            counts[1] = mView.mDrawAllocationCount;
+        });
+        assertTrue("Frames drawn: " + counts[0], counts[0] > GAME.length);
+        assertEquals("Objects allocated by onDraw during the game", 0, counts[1]);
+    }
+
+    private static MoveList movesOf(String[] game) {
+        final BitboardPosition position = BitboardPosition.startPosition();
+        final MoveList moves = new MoveList(game.length);
+        for (String san : game) {
+            int move = Notation.parseSan(position, san);
+            assertNotEquals("Illegal move " + san, PackedMove.NONE, move);
+            position.makeMove(move);
+            moves.add(move);
+        }
+        return moves;
+    }
+
+    /**
+     * @return steps of {@link BoardDiff} between the positions of every ply, as an application
+     * which animates fens gets them;
+     */
+    private static Action[][] actionsOf(MoveList moves) {
+        final BoardDiff diff = new BoardDiff();
+        final Position before = FenParser.parse(FenParser.START_FEN);
+        final Position after = new Position(before);
+        final List<Action[]> steps = new ArrayList<>();
+        for (int ply = 0; ply < moves.size(); ply++) {
+            PackedMove.apply(after, moves.get(ply));
+            Collections.addAll(steps, diff.diff(before, after));
+            before.set(after);
+        }
+        return steps.toArray(new Action[0][]);
+    }
+
+    /**
+     * Counts the objects allocated by the drawing of every frame on the main thread;
+     */
+    private static final class CountingChessView extends ChessView {
+
+        int mDrawCount = 0;
+        int mDrawAllocationCount = 0;
+
+        CountingChessView(Context context) {
+            super(context);
+        }
+
+        void resetDrawCounts() {
+            mDrawCount = 0;
+            mDrawAllocationCount = 0;
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            final int before = Debug.getThreadAllocCount();
+            super.onDraw(canvas);
+            mDrawAllocationCount += Debug.getThreadAllocCount() - before;
+            mDrawCount++;
+        }
+    }
+
+    /**
+     * Reads the counter of the animation thread it is called on, allocates nothing itself;
+     */
+    private abstract static class StepCounter {
+
+        final CountDownLatch mFinished = new CountDownLatch(1);
+        volatile int mStepCount = 0;
+
+        /**
+         * Counts of the animation thread after the first step and at the end;
+         */
+        private int mWarmCount;
+        private volatile int mFinishedCount;
+
+        void onStep() {
+            if (mStepCount == 0) {
+                mWarmCount = Debug.getThreadAllocCount();
+            }
+            mStepCount++;
+        }
+
+        void onFinished() {
+            mFinishedCount = Debug.getThreadAllocCount();
+            mFinished.countDown();
+        }
+
+        void awaitGame() throws InterruptedException {
+            assertTrue("Game not played in " + GAME_TIMEOUT_S + " s",
+                    mFinished.await(GAME_TIMEOUT_S, TimeUnit.SECONDS));
+        }
+
+        int getAllocationCount() {
+            return mFinishedCount - mWarmCount;
+        }
+    }
+
+    private static final class PackedStepCounter extends StepCounter implements OnPackedMoveListener {
+
+        @Override
+        public void onMove(MoveList moves) {
+            onStep();
+        }
+
+        @Override
+        public void onMovingFinished() {
+            onFinished();
+        }
+    }
+
+    private static final class ListStepCounter extends StepCounter implements OnMoveListener {
+
+        @Override
+        public void onMove(List<Move> moves) {
+            onStep();
+        }
+
+        @Override
+        public void onMovingFinished() {
+            onFinished();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.cosic.chessview;
+
+import android.app.Activity;
+
+/**
+ * Empty window for the views under test;
+ */
+public class TestActivity extends Activity {
+}
@@ -0,0 +1,115 @@
+package com.cosic.chessview;
+
+import com.cosic.chessview.board.Position;
+
+/**
+ * Transient render state of the running animation: pieces which are flying
+ * from one cell to another, pieces which are fading out or in and the current frame.
+ * Owned and written by {@link DrawAnimationThread}, read by {@link ChessView#onDraw}
+ * under the overlay lock.
+ */
+final class AnimationOverlay {
+
+    /**
+     * Not more than all pieces of the board could move at once;
+     */
+    private static final int MAX_MOVES = 32;
+
+    private final int[] mFrom = new int[MAX_MOVES];
+    private final int[] mTo = new int[MAX_MOVES];
+    private int mCount = 0;
+
+    private final int[] mFadeSquare = new int[Position.COUNT_OF_SQUARES];
+    private final int[] mFadeCell = new int[Position.COUNT_OF_SQUARES];
+    private final float[] mFadeFrom = new float[Position.COUNT_OF_SQUARES];
+    private final float[] mFadeTo = new float[Position.COUNT_OF_SQUARES];
+    private int mFadeCount = 0;
+
+    /**
+     * Bit per square, 1 - the piece of the cell is drawn by the overlay;
+     */
+    private long mMovingMask = 0L;
+
+    /**
+     * Current frame number used for moving animation;
+     */
+    private int mFrame = 0;
+
+    synchronized void clear() {
+        mCount = 0;
+        mFadeCount = 0;
+        mMovingMask = 0L;
+        mFrame = 0;
+    }
+
+    synchronized void addMove(int fromX, int fromY, int toX, int toY) {
+        if (mCount == MAX_MOVES) return;
+        int from = Position.square(fromX, fromY);
+        mFrom[mCount] = from;
+        mTo[mCount] = Position.square(toX, toY);
+        mCount++;
+        mMovingMask |= 1L << from;
+    }
+
+    /**
+     * @param cellOrdinal - the piece which is drawn with changing opacity;
+     * @param hideCell    - true if the piece standing on the cell is drawn by the overlay only;
+     */
+    synchronized void addFade(int x, int y, int cellOrdinal, float alphaFrom, float alphaTo, boolean hideCell) {
+        if (mFadeCount == Position.COUNT_OF_SQUARES) return;
+        int square = Position.square(x, y);
+        mFadeSquare[mFadeCount] = square;
+        mFadeCell[mFadeCount] = cellOrdinal;
+        mFadeFrom[mFadeCount] = alphaFrom;
+        mFadeTo[mFadeCount] = alphaTo;
+        mFadeCount++;
+        if (hideCell) {
+            mMovingMask |= 1L << square;
+        }
+    }
+
+    synchronized void setFrame(int frame) {
+        mFrame = frame;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    int getFrom(int index) {
+        return mFrom[index];
+    }
+
+    int getTo(int index) {
+        return mTo[index];
+    }
+
+    int getFadeCount() {
+        return mFadeCount;
+    }
+
+    int getFadeSquare(int index) {
+        return mFadeSquare[index];
+    }
+
+    int getFadeCell(int index) {
+        return mFadeCell[index];
+    }
+
+    /**
+     * @return opacity of the fading piece in the current frame, from 0 to 255;
+     */
+    int getFadeAlpha(int index) {
+        float progress = Math.min(1f, (float) mFrame / DrawAnimationThread.ANIMATION_FRAME_COUNT);
+        float alpha = mFadeFrom[index] + (mFadeTo[index] - mFadeFrom[index]) * progress;
+        return Math.max(0, Math.min(255, Math.round(alpha * 255)));
+    }
+
+    long getMovingMask() {
+        return mMovingMask;
+    }
+
+    int getFrame() {
+        return mFrame;
+    }
+}
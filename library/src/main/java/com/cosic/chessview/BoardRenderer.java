@@ -0,0 +1,378 @@
+package com.cosic.chessview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import static com.cosic.chessview.DrawAnimationThread.ANIMATION_FRAME_COUNT;
+import com.cosic.chessview.board.BoardSnapshot;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.sprite.SpriteAtlas;
+
+/**
+ * Draws a board with pieces onto any {@link Canvas}, without a {@link android.view.View}:
+ * <pre>
+ * BoardRenderer renderer = new BoardRenderer(0, 0);
+ * renderer.setBounds(0, 0, bitmap.getWidth());
+ * renderer.setAtlas(SpriteCache.getInstance(context).acquire(resources, renderer.getFigureSize()).join());
+ * renderer.draw(new Canvas(bitmap), snapshot);
+ * </pre>
+ * The frame, labels and cells are drawn once per bounds and colours into a layer bitmap.
+ * The instance is not thread-safe, every drawing thread needs own one.
+ */
+public class BoardRenderer {
+
+    static final int COUNT_OF_CELLS = 8;
+
+    private static final String[] LABEL_HORIZONTAL = new String[]{"A", "B", "C", "D", "E", "F", "G", "H"};
+    private static final String[] LABEL_VERTICAL = new String[]{"8", "7", "6", "5", "4", "3", "2", "1"};
+
+    /**
+     * The ratio of the figure size to the cell;
+     */
+    private static final float FIGURE_SIZE_COEFF = 0.8f;
+
+    static final int BACKGROUND_COLOR = Color.parseColor("#5c646f");
+    static final int CELL_LIGHT_COLOR = Color.parseColor("#f4f4f4");
+    static final int CELL_DARK_COLOR = Color.parseColor("#b0b9c3");
+    static final int CELL_SELECTED_LIGHT_COLOR = Color.parseColor("#a8ddfa");
+    static final int CELL_SELECTED_DARK_COLOR = Color.parseColor("#77cdff");
+
+    static final int LABEL_COLOR = Color.parseColor("#949aa1");
+
+    private static final int OPAQUE = 255;
+
+    private Paint mPiecePaint;
+    private Paint mLabelPaint;
+    private Paint mBackgroundPaint;
+    private Paint mCellLightPaint;
+    private Paint mCellDarkPaint;
+    private Paint mCellSelectedLightPaint;
+    private Paint mCellSelectedDarkPaint;
+
+    private Rect mFullRect;
+
+    /**
+     * Frame, labels and cells without selection, drawn once per size and colours;
+     */
+    private Bitmap mBoardLayer;
+
+    /**
+     * Pieces to draw, nothing is drawn for them while null;
+     */
+    private SpriteAtlas mAtlas;
+
+    /**
+     * Where the last figure was drawn;
+     */
+    private final Rect mFigureRect = new Rect();
+
+    /**
+     * Clip of the current {@link #draw}, figures outside of it are skipped;
+     */
+    private final Rect mClipRect = new Rect();
+
+    /**
+     * Size of small cells;
+     */
+    private int mCellSize;
+
+    /**
+     * Rects array for all cells;
+     */
+    private final Rect[][] mCells = new Rect[COUNT_OF_CELLS][COUNT_OF_CELLS];
+
+    /**
+     * Width of desk boarder where labels are drawn, no labels without it;
+     */
+    private final int mBorderWidth;
+
+    private final float mLabelSize;
+
+    private Rect mLabelBoundsRect;
+
+    private int mBackgroundColor = BACKGROUND_COLOR;
+    private int mLabelColor = LABEL_COLOR;
+    private int mCellLightColor = CELL_LIGHT_COLOR;
+    private int mCellDarkColor = CELL_DARK_COLOR;
+    private int mCellSelectedLightColor = CELL_SELECTED_LIGHT_COLOR;
+    private int mCellSelectedDarkColor = CELL_SELECTED_DARK_COLOR;
+
+    /**
+     * @param labelSize   - text size of labels in pixels;
+     * @param borderWidth - width of the frame with labels in pixels, 0 for a board without it;
+     */
+    public BoardRenderer(float labelSize, int borderWidth) {
+        this.mLabelSize = labelSize;
+        this.mBorderWidth = borderWidth;
+        initPaints();
+    }
+
+    public void initPaints() {
+        mPiecePaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+        mPiecePaint.setStyle(Paint.Style.FILL);
+        mPiecePaint.setColor(Color.BLACK);
+
+        mLabelBoundsRect = new Rect();
+        mLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mLabelPaint.setStyle(Paint.Style.FILL);
+        mLabelPaint.setTextSize(mLabelSize);
+        mLabelPaint.getTextBounds(LABEL_VERTICAL[0], 0, 1, mLabelBoundsRect);
+        mLabelPaint.setColor(mLabelColor);
+
+        mBackgroundPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mBackgroundPaint.setStyle(Paint.Style.FILL);
+        mBackgroundPaint.setColor(mBackgroundColor);
+
+        mCellLightPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mCellLightPaint.setStyle(Paint.Style.FILL);
+        mCellLightPaint.setColor(mCellLightColor);
+
+        mCellDarkPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mCellDarkPaint.setStyle(Paint.Style.FILL);
+        mCellDarkPaint.setColor(mCellDarkColor);
+
+        mCellSelectedLightPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mCellSelectedLightPaint.setStyle(Paint.Style.FILL);
+        mCellSelectedLightPaint.setColor(mCellSelectedLightColor);
+
+        mCellSelectedDarkPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mCellSelectedDarkPaint.setStyle(Paint.Style.FILL);
+        mCellSelectedDarkPaint.setColor(mCellSelectedDarkColor);
+
+        mBoardLayer = null;
+    }
+
+    /**
+     * Set all colours at once, paints are created again;
+     */
+    public void setColors(int backgroundColor, int labelColor, int cellLightColor, int cellDarkColor,
+                          int cellSelectedLightColor, int cellSelectedDarkColor) {
+        this.mBackgroundColor = backgroundColor;
+        this.mLabelColor = labelColor;
+        this.mCellLightColor = cellLightColor;
+        this.mCellDarkColor = cellDarkColor;
+        this.mCellSelectedLightColor = cellSelectedLightColor;
+        this.mCellSelectedDarkColor = cellSelectedDarkColor;
+        initPaints();
+    }
+
+    /**
+     * Place the square board with the top left corner at the point;
+     *
+     * @param size - side of the board with the frame in pixels;
+     */
+    public void setBounds(int left, int top, int size) {
+        mCellSize = (size - 2 * mBorderWidth) / COUNT_OF_CELLS;
+        mFullRect = new Rect(left, top, left + size, top + size);
+        for (int i = 0; i < COUNT_OF_CELLS; i++) {
+            for (int j = 0; j < COUNT_OF_CELLS; j++) {
+                mCells[i][j] = new Rect(
+                        left + mBorderWidth + i * mCellSize,
+                        top + mBorderWidth + j * mCellSize,
+                        left + mBorderWidth + (i + 1) * mCellSize,
+                        top + mBorderWidth + (j + 1) * mCellSize);
+            }
+        }
+        mBoardLayer = null;
+    }
+
+    /**
+     * @return true after {@link #setBounds(int, int, int)} with a board of some pixels;
+     */
+    public boolean hasBounds() {
+        return mFullRect != null && !mFullRect.isEmpty();
+    }
+
+    public int getCellSize() {
+        return mCellSize;
+    }
+
+    /**
+     * @return size of the square a figure fits in, the sprite size of the atlas to draw with;
+     */
+    public int getFigureSize() {
+        return figureSizeOf(mCellSize);
+    }
+
+    static int figureSizeOf(int cellSize) {
+        return (int) (cellSize * FIGURE_SIZE_COEFF);
+    }
+
+    /**
+     * @param atlas - pieces of {@link #getFigureSize()}, of another size they are drawn scaled;
+     */
+    public void setAtlas(SpriteAtlas atlas) {
+        this.mAtlas = atlas;
+    }
+
+    public SpriteAtlas getAtlas() {
+        return mAtlas;
+    }
+
+    /**
+     * Draw the board, the selection and the pieces of the snapshot;
+     */
+    public void draw(Canvas canvas, BoardSnapshot snapshot) {
+        draw(canvas, snapshot, null);
+    }
+
+    /**
+     * Draw the board with the pieces of the overlay moving or fading, call under the lock of the overlay;
+     */
+    void draw(Canvas canvas, BoardSnapshot snapshot, AnimationOverlay overlay) {
+        if (!hasBounds()) return;
+
+        if (!canvas.getClipBounds(mClipRect)) return;
+
+        canvas.drawBitmap(getBoardLayer(), mFullRect.left, mFullRect.top, null);
+
+        // Draw selected cells over the layer;
+        for (long selection = snapshot.getSelectionMask(); selection != 0; selection &= selection - 1) {
+            int square = Long.numberOfTrailingZeros(selection);
+            int i = Position.xOf(square);
+            int j = Position.yOf(square);
+            canvas.drawRect(mCells[i][j], ((i + j) % 2 == 0) ? mCellSelectedDarkPaint : mCellSelectedLightPaint);
+        }
+
+        // Draw cells figures;
+        if (overlay == null) {
+            drawFigures(canvas, snapshot, 0L);
+            return;
+        }
+        drawFigures(canvas, snapshot, overlay.getMovingMask());
+        int frame = overlay.getFrame();
+        for (int k = 0; k < overlay.getCount(); k++) {
+            int from = overlay.getFrom(k);
+            int to = overlay.getTo(k);
+            drawFigure(canvas,
+                    mCells[Position.xOf(from)][Position.yOf(from)],
+                    mCells[Position.xOf(to)][Position.yOf(to)],
+                    frame,
+                    snapshot.getCellOrdinal(from),
+                    OPAQUE);
+        }
+        for (int k = 0; k < overlay.getFadeCount(); k++) {
+            int square = overlay.getFadeSquare(k);
+            drawFigure(canvas,
+                    mCells[Position.xOf(square)][Position.yOf(square)],
+                    null,
+                    0,
+                    overlay.getFadeCell(k),
+                    overlay.getFadeAlpha(k));
+        }
+    }
+
+    /**
+     * Add the cells of the squares to the dirty rect, may be called from any thread;
+     */
+    void unionSquares(Rect dirty, long squares) {
+        final Rect[][] cells = mCells;
+        if (cells[0][0] == null) return;
+        for (; squares != 0; squares &= squares - 1) {
+            int square = Long.numberOfTrailingZeros(squares);
+            dirty.union(cells[Position.xOf(square)][Position.yOf(square)]);
+        }
+    }
+
+    /**
+     * Add the cells covered by the moving and fading pieces of the overlay in the frame to the dirty rect,
+     * may be called from any thread;
+     */
+    void unionOverlay(Rect dirty, AnimationOverlay overlay, int frame) {
+        final Rect[][] cells = mCells;
+        if (cells[0][0] == null) return;
+        for (int k = 0; k < overlay.getCount(); k++) {
+            int from = overlay.getFrom(k);
+            int to = overlay.getTo(k);
+            Rect rectFrom = cells[Position.xOf(from)][Position.yOf(from)];
+            Rect rectTo = cells[Position.xOf(to)][Position.yOf(to)];
+            int left = rectFrom.left - frame * (rectFrom.left - rectTo.left) / ANIMATION_FRAME_COUNT;
+            int top = rectFrom.top - frame * (rectFrom.top - rectTo.top) / ANIMATION_FRAME_COUNT;
+            // A pixel more for the rounding of the figure position;
+            dirty.union(left - 1, top - 1, left + rectFrom.width() + 1, top + rectFrom.height() + 1);
+        }
+        for (int k = 0; k < overlay.getFadeCount(); k++) {
+            int square = overlay.getFadeSquare(k);
+            dirty.union(cells[Position.xOf(square)][Position.yOf(square)]);
+        }
+    }
+
+    /**
+     * @return bitmap of {@link #mFullRect} size with everything which doesn't depend on the position;
+     */
+    private Bitmap getBoardLayer() {
+        if (mBoardLayer == null) {
+            mBoardLayer = Bitmap.createBitmap(mFullRect.width(), mFullRect.height(), Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(mBoardLayer);
+            canvas.translate(-mFullRect.left, -mFullRect.top);
+            drawBoard(canvas);
+        }
+        return mBoardLayer;
+    }
+
+    /**
+     * Draw the frame, labels and all cells as not selected;
+     */
+    private void drawBoard(Canvas canvas) {
+        canvas.drawRect(mFullRect, mBackgroundPaint);
+
+        // Draw labels;
+        if (mBorderWidth > 0) {
+            int labelHeight = mLabelBoundsRect.height();
+            int labelWidth = mLabelBoundsRect.width();
+            for (int i = 0; i < COUNT_OF_CELLS; i++) {
+                canvas.drawText(LABEL_VERTICAL[i],
+                        mBorderWidth / 2 - labelWidth / 2 + mFullRect.left,
+                        mBorderWidth + mCellSize * i + mCellSize / 2 + labelHeight / 2 + mFullRect.top,
+                        mLabelPaint
+                );
+                canvas.drawText(LABEL_HORIZONTAL[i],
+                        mBorderWidth + mCellSize * i + mCellSize / 2 - labelWidth / 2 + mFullRect.left,
+                        mBorderWidth + mCellSize * COUNT_OF_CELLS + labelHeight + (mBorderWidth - labelHeight) / 2 + 2 + mFullRect.top,
+                        mLabelPaint
+                );
+            }
+        }
+
+        // Draw cells;
+        for (int i = 0; i < COUNT_OF_CELLS; i++) {
+            for (int j = 0; j < COUNT_OF_CELLS; j++) {
+                canvas.drawRect(mCells[i][j], ((i + j) % 2 == 0) ? mCellLightPaint : mCellDarkPaint);
+            }
+        }
+    }
+
+    /**
+     * Draw figures standing on their cells, the cells of skipMask are drawn by animation overlay;
+     */
+    private void drawFigures(Canvas canvas, BoardSnapshot snapshot, long skipMask) {
+        for (int i = 0; i < COUNT_OF_CELLS; i++) {
+            for (int j = 0; j < COUNT_OF_CELLS; j++) {
+                int square = Position.square(i, j);
+                if ((skipMask & (1L << square)) != 0 || !Rect.intersects(mClipRect, mCells[i][j])) continue;
+                drawFigure(canvas, mCells[i][j], null, 0, snapshot.getCellOrdinal(square), OPAQUE);
+            }
+        }
+    }
+
+    /**
+     * Draw the figure of the cell ordinal from the atlas, moved from rectFrom to rectTo by the frame;
+     */
+    private void drawFigure(Canvas canvas, Rect rectFrom, Rect rectTo, int frame, int cellOrdinal, int alpha) {
+        final SpriteAtlas atlas = mAtlas;
+        if (atlas == null || cellOrdinal == 0 || alpha == 0) return;
+
+        mPiecePaint.setAlpha(alpha);
+
+        int centerX = rectFrom.centerX();
+        int centerY = rectFrom.centerY();
+        if (rectTo != null && frame != 0) {
+            centerX -= frame * (centerX - rectTo.centerX()) / ANIMATION_FRAME_COUNT;
+            centerY -= frame * (centerY - rectTo.centerY()) / ANIMATION_FRAME_COUNT;
+        }
+        atlas.draw(canvas, cellOrdinal, centerX, centerY, getFigureSize(), mPiecePaint, mFigureRect);
+    }
+}
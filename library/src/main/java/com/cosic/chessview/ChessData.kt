@@ -2,6 +2,9 @@ package com.cosic.chessview
 
 import com.cosic.chessview.models.Cell
 
+/**
+ * Mutable copy of one cell of [com.cosic.chessview.board.BoardSnapshot];
+ */
 class ChessData(
     /**
      * Chess mPiece;
@@ -13,29 +16,8 @@ class ChessData(
      */
     var isSelected: Boolean) {
 
-    /**
-     * X index of target position for animation;
-     */
-    var indexToX = 0
-
-    /**
-     * Y index of target position for animation;
-     */
-    var indexToY = 0
-
-    /**
-     * Current frame number used for moving animation;
-     */
-    var frame = 0
-    var fade = 1f
-
     fun clone(): ChessData {
-        val o = ChessData(cell, isSelected)
-        o.frame = frame
-        o.indexToX = indexToX
-        o.indexToY = indexToY
-        o.fade = fade
-        return o
+        return ChessData(cell, isSelected)
     }
 
     companion object {
@@ -43,4 +25,4 @@ class ChessData(
             return ChessData(cell, false)
         }
     }
-}
\ No newline at end of file
+}
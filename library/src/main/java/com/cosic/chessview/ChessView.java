@@ -2,27 +2,34 @@ package com.cosic.chessview;
 
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Picture;
 import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
 
-import androidx.annotation.DrawableRes;
-import static com.cosic.chessview.DrawAnimationThread.ANIMATION_FRAME_COUNT;
+import com.cosic.chessview.board.BoardDiff;
+import com.cosic.chessview.board.BoardSnapshot;
+import com.cosic.chessview.board.FenFormatException;
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.MoveList;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.board.PositionCache;
+import com.cosic.chessview.game.GameTimeline;
 import com.cosic.chessview.models.Action;
 import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.models.FadeIn;
+import com.cosic.chessview.models.FadeOut;
 import com.cosic.chessview.models.Move;
+import com.cosic.chessview.sprite.SpriteAtlas;
+import com.cosic.chessview.sprite.SpriteCache;
 import com.cosic.chessview.utils.DimenTools;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Preview for watching a chess game by steps.
@@ -32,84 +39,72 @@ public class ChessView extends View {
     private static final String TAG = "ChessView";
 
     private static final int COUNT_OF_CELLS = 8;
-    private static final String DEFAULT_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR";
-    private static final ChessData[][] DEFAULT_START_DATA = convertFenToData(DEFAULT_FEN);
+    private static final String DEFAULT_FEN = FenParser.START_FEN;
+    private static final BoardSnapshot DEFAULT_SNAPSHOT = BoardSnapshot.of(FenParser.parse(DEFAULT_FEN));
 
-    private static String[] LABEL_HORIZONTAL = new String[]{"A", "B", "C", "D", "E", "F", "G", "H"};
-    private static String[] LABEL_VERTICAL = new String[]{"8", "7", "6", "5", "4", "3", "2", "1"};
-
-    /**
-     * The ratio of the figure size to the cell;
-     */
-    private static final float FIGURE_SIZE_COEFF = 0.8f;
-
-    private static final int BACKGROUND_COLOR = Color.parseColor("#5c646f");
-    private static final int CELL_LIGHT_COLOR = Color.parseColor("#f4f4f4");
-    private static final int CELL_DARK_COLOR = Color.parseColor("#b0b9c3");
-    private static final int CELL_SELECTED_LIGHT_COLOR = Color.parseColor("#a8ddfa");
-    private static final int CELL_SELECTED_DARK_COLOR = Color.parseColor("#77cdff");
-
-    private static final int LABEL_COLOR = Color.parseColor("#949aa1");
     private static final int LABEL_SIZE_SP = 14;
 
     private static final float BORDER_WIDTH_DP = 16.f;
 
-    private Paint mPiecePaint;
-    private Paint mLabelPaint;
-    private Paint mBackgroundPaint;
-    private Paint mCellLightPaint;
-    private Paint mCellDarkPaint;
-    private Paint mCellSelectedLightPaint;
-    private Paint mCellSelectedDarkPaint;
-
-    private Rect mFullRect;
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
 
-    private Rect mInnerRect;
+    /**
+     * Diff engine of each thread which calls {@link #getMoves(String, String)};
+     */
+    private static final ThreadLocal<BoardDiff> BOARD_DIFFS = new ThreadLocal<>();
 
-    private Picture mPictureBackground;
+    /**
+     * Draws the board, owns paints, geometry and the pieces atlas;
+     */
+    private BoardRenderer mRenderer;
 
-    private HashMap<Integer, Bitmap> mBitmapCache = new HashMap<>();
+    /**
+     * Pieces of {@link BoardRenderer#getFigureSize()} set to the renderer, the previous size is drawn
+     * scaled until it is ready; Taken from {@link SpriteCache} and released when replaced or detached;
+     */
+    private SpriteAtlas mAtlas;
 
     /**
-     * Size of small cells;
+     * Atlas for {@link #mAtlasSize} being decoded, null when {@link #mAtlas} has the size;
      */
-    private int mCellSize;
+    private CompletableFuture<SpriteAtlas> mAtlasFuture;
 
     /**
-     * Rects array for all cells;
+     * Sprite size of the last requested atlas, 0 if none;
      */
-    private Rect[][] mCells = new Rect[COUNT_OF_CELLS][COUNT_OF_CELLS];
+    private int mAtlasSize = 0;
 
     /**
-     * Array with data that presents all chess figures;
+     * Immutable position with all chess figures and selected cells;
+     * Replaced by {@link DrawAnimationThread} while animation is running;
      */
-    private ChessData[][] mData = getDefaultFigureData();
+    private volatile BoardSnapshot mSnapshot = DEFAULT_SNAPSHOT;
 
     /**
-     * Width of desk boarder where labels are drawn;
+     * Reusable buffer for FEN parsing and applying moves on UI thread;
      */
-    private int mBorderWidth;
+    private final Position mPosition = new Position();
 
-    private float mLabelSize;
+    /**
+     * Cells before the actions of a step, see {@link #applyActions(Position, Action[], Position)};
+     */
+    private final Position mSourcePosition = new Position();
 
-    private Rect mLabelBoundsRect;
+    /**
+     * Region to redraw after a change made on UI thread;
+     */
+    private final Rect mDirtyRect = new Rect();
 
     private DrawAnimationThread mDrawAnimationThread;
 
     private OnMoveListener mOnMoveListener;
+    private OnPackedMoveListener mOnPackedMoveListener;
 
     /**
      * true - leave selection from last move after moving animation;
      */
     private boolean mShowLastMove = false;
 
-    private int mBackgroundColor = BACKGROUND_COLOR;
-    private int mLabelColor = LABEL_COLOR;
-    private int mCellLightColor = CELL_LIGHT_COLOR;
-    private int mCellDarkColor = CELL_DARK_COLOR;
-    private int mCellSelectedLightColor = CELL_SELECTED_LIGHT_COLOR;
-    private int mCellSelectedDarkColor = CELL_SELECTED_DARK_COLOR;
-
     public ChessView(Context context) {
         this(context, null);
     }
@@ -134,71 +129,41 @@ public class ChessView extends View {
 
         try {
 
-            mLabelSize = a.getDimensionPixelSize(R.styleable.ChessView_chessView_labelSize,
+            float labelSize = a.getDimensionPixelSize(R.styleable.ChessView_chessView_labelSize,
                     (int) DimenTools.pxFromSp(getContext(), LABEL_SIZE_SP));
-            mBorderWidth = a.getDimensionPixelSize(R.styleable.ChessView_chessView_boarderWidth,
+            int borderWidth = a.getDimensionPixelSize(R.styleable.ChessView_chessView_boarderWidth,
                     (int) DimenTools.pxFromDp(getContext(), BORDER_WIDTH_DP));
-            mBackgroundColor = a.getColor(R.styleable.ChessView_chessView_boardColor, BACKGROUND_COLOR);
-            mLabelColor = a.getColor(R.styleable.ChessView_chessView_labelColor, LABEL_COLOR);
-            mCellLightColor = a.getColor(R.styleable.ChessView_chessView_cellWhiteColor, CELL_LIGHT_COLOR);
-            mCellDarkColor = a.getColor(R.styleable.ChessView_chessView_cellBlackColor, CELL_DARK_COLOR);
-            mCellSelectedLightColor = a.getColor(R.styleable.ChessView_chessView_cellSelectedWhiteColor, CELL_SELECTED_LIGHT_COLOR);
-            mCellSelectedDarkColor = a.getColor(R.styleable.ChessView_chessView_cellSelectedBlackColor, CELL_SELECTED_DARK_COLOR);
+            mRenderer = new BoardRenderer(labelSize, borderWidth);
+            mRenderer.setColors(
+                    a.getColor(R.styleable.ChessView_chessView_boardColor, BoardRenderer.BACKGROUND_COLOR),
+                    a.getColor(R.styleable.ChessView_chessView_labelColor, BoardRenderer.LABEL_COLOR),
+                    a.getColor(R.styleable.ChessView_chessView_cellWhiteColor, BoardRenderer.CELL_LIGHT_COLOR),
+                    a.getColor(R.styleable.ChessView_chessView_cellBlackColor, BoardRenderer.CELL_DARK_COLOR),
+                    a.getColor(R.styleable.ChessView_chessView_cellSelectedWhiteColor, BoardRenderer.CELL_SELECTED_LIGHT_COLOR),
+                    a.getColor(R.styleable.ChessView_chessView_cellSelectedBlackColor, BoardRenderer.CELL_SELECTED_DARK_COLOR));
 
         } finally {
             a.recycle();
         }
-
-        initPaints();
     }
 
     public void initPaints() {
-        mPiecePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mPiecePaint.setStyle(Paint.Style.FILL);
-        mPiecePaint.setColor(Color.BLACK);
-
-        mLabelBoundsRect = new Rect();
-        mLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mLabelPaint.setStyle(Paint.Style.FILL);
-        mLabelPaint.setTextSize(mLabelSize);
-        mLabelPaint.getTextBounds(LABEL_VERTICAL[0], 0, 1, mLabelBoundsRect);
-        mLabelPaint.setColor(mLabelColor);
-
-        mBackgroundPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mBackgroundPaint.setStyle(Paint.Style.FILL);
-        mBackgroundPaint.setColor(mBackgroundColor);
-
-        mCellLightPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mCellLightPaint.setStyle(Paint.Style.FILL);
-        mCellLightPaint.setColor(mCellLightColor);
-
-        mCellDarkPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mCellDarkPaint.setStyle(Paint.Style.FILL);
-        mCellDarkPaint.setColor(mCellDarkColor);
-
-        mCellSelectedLightPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mCellSelectedLightPaint.setStyle(Paint.Style.FILL);
-        mCellSelectedLightPaint.setColor(mCellSelectedLightColor);
-
-        mCellSelectedDarkPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mCellSelectedDarkPaint.setStyle(Paint.Style.FILL);
-        mCellSelectedDarkPaint.setColor(mCellSelectedDarkColor);
+        mRenderer.initPaints();
     }
 
+    /**
+     * @deprecated use {@link #getDefaultSnapshot()};
+     */
+    @Deprecated
     public static ChessData[][] getDefaultFigureData() {
-        ChessData[][] clone = new ChessData[COUNT_OF_CELLS][COUNT_OF_CELLS];
-        for (int i = 0; i < DEFAULT_START_DATA.length; i++) {
-            for (int j = 0; j < DEFAULT_START_DATA.length; j++) {
-                clone[i][j] = DEFAULT_START_DATA[i][j].clone();
-            }
-
-//            ChessData[] copy = DEFAULT_START_DATA[i];
-//            clone[i] = new ChessData[COUNT_OF_CELLS];
-//            System.arraycopy(copy, 0, clone[i], 0, copy.length);
+        return convertSnapshotToData(DEFAULT_SNAPSHOT);
+    }
 
-//            clone[i] = DEFAULT_START_DATA[i].clone();
-        }
-        return clone;
+    /**
+     * @return started/default state of pieces;
+     */
+    public static BoardSnapshot getDefaultSnapshot() {
+        return DEFAULT_SNAPSHOT;
     }
 
     public void setOnMoveListener(OnMoveListener onMoveListener) {
@@ -206,10 +171,26 @@ public class ChessView extends View {
     }
 
     /**
-     * @return current pieces configuration on chess view;
+     * Listen to moves without a list of {@link Move}s per step;
+     */
+    public void setOnMoveListener(OnPackedMoveListener onMoveListener) {
+        this.mOnPackedMoveListener = onMoveListener;
+    }
+
+    /**
+     * @return copy of current pieces configuration on chess view;
+     * @deprecated use {@link #getSnapshot()};
      */
+    @Deprecated
     public ChessData[][] getData() {
-        return mData;
+        return convertSnapshotToData(mSnapshot);
+    }
+
+    /**
+     * @return current pieces configuration on chess view;
+     */
+    public BoardSnapshot getSnapshot() {
+        return mSnapshot;
     }
 
     /**
@@ -217,15 +198,44 @@ public class ChessView extends View {
      */
     public void reset() {
         stopAnimation();
-        mData = getDefaultFigureData();
+        mSnapshot = DEFAULT_SNAPSHOT;
         postInvalidate();
     }
 
     public void setData(ChessData[][] data) {
         // TODO add checks of data;
+        long selectionMask = 0L;
+        mPosition.clear();
+        for (int i = 0; i < COUNT_OF_CELLS; i++) {
+            for (int j = 0; j < COUNT_OF_CELLS; j++) {
+                mPosition.setCell(i, j, data[i][j].getCell());
+                if (data[i][j].isSelected()) {
+                    selectionMask |= 1L << Position.square(i, j);
+                }
+            }
+        }
+        setData(BoardSnapshot.of(mPosition, selectionMask));
+    }
+
+    /**
+     * Set pieces from the packed position, e.g. parsed by {@link FenParser};
+     */
+    public void setData(Position position) {
+        setData(BoardSnapshot.of(position));
+    }
+
+    public void setData(BoardSnapshot snapshot) {
         stopAnimation();
-        this.mData = data;
-        invalidate();
+        BoardSnapshot previous = mSnapshot;
+        this.mSnapshot = snapshot;
+        invalidateChanged(previous, snapshot);
+    }
+
+    /**
+     * Called by {@link DrawAnimationThread} for each step of animation;
+     */
+    void setAnimatedSnapshot(BoardSnapshot snapshot) {
+        this.mSnapshot = snapshot;
     }
 
     public void setShowLastMove(boolean showLastMove) {
@@ -250,12 +260,15 @@ public class ChessView extends View {
             }
             mDrawAnimationThread.reset();
             mDrawAnimationThread = null;
+            // Pieces may have been drawn between cells;
+            invalidate();
         }
     }
 
     /**
      * @param fen  - The Forsyth - Edwards Notation and looks like: "rnbqkbnr/pp1ppppp/8/2p5/2P5/8/PP1PPPPP/RNBQKBNR"
      * More information: @see <a href="Wiki">https://en.wikipedia.org/wiki/Forsyth%E2%80%93Edwards_Notation</a>
+     * Parsed positions are reused through {@link PositionCache#getDefault()};
      */
     public void applyFen(String fen, Move lastMove, boolean showAnimation) {
 
@@ -263,137 +276,153 @@ public class ChessView extends View {
             return;
         }
 
-        ChessData[][] data = convertFenToData(fen);
-        if (data == null) {
+        BoardSnapshot snapshot = getCachedSnapshot(fen);
+        if (snapshot == null) {
             return;
         }
 
-        if (Arrays.equals(mData, data)) {
+        applySnapshot(snapshot.withSelection(selectionMask(lastMove)));
+    }
+
+    /**
+     * Same as {@link #applyFen(String, Move, boolean)} for already parsed position;
+     */
+    public void applyPosition(Position position, Move lastMove, boolean showAnimation) {
+
+        if (position == null) {
             return;
         }
 
-        mData = data;
+        applySnapshot(BoardSnapshot.of(position, selectionMask(lastMove)));
+    }
 
-        if (lastMove != null) {
-            mData[lastMove.getFromX()][lastMove.getFromY()].setSelected(true);
-            mData[lastMove.getToX()][lastMove.getToY()].setSelected(true);
+    /**
+     * Make the next ply of the timeline and show it;
+     *
+     * @return false at the end of the game;
+     */
+    public boolean stepForward(GameTimeline timeline, boolean showAnimation) {
+        Action[][] moves = showAnimation ? timeline.getForwardActions() : null;
+        if (!timeline.stepForward()) {
+            return false;
         }
+        showTimelineStep(timeline, moves);
+        return true;
+    }
 
-        invalidate();
+    /**
+     * Take back the current ply of the timeline and show it;
+     *
+     * @return false at the start position;
+     */
+    public boolean stepBack(GameTimeline timeline, boolean showAnimation) {
+        Action[][] moves = showAnimation ? timeline.getBackwardActions() : null;
+        if (!timeline.stepBack()) {
+            return false;
+        }
+        showTimelineStep(timeline, moves);
+        return true;
     }
 
     /**
-     * First array index - index of iteration;
-     * Second array index - piece index;
+     * Go to the ply of the timeline and show it without animation;
      */
-    public Action[][] getMoves(String fenFrom, String fenTo) {
+    public void seek(GameTimeline timeline, int ply) {
+        timeline.seek(ply);
+        applySnapshot(timeline.getSnapshot());
+    }
 
-        ChessData[][] dataFrom = convertFenToData(fenFrom);
-        ChessData[][] dataTo = convertFenToData(fenTo);
+    private void showTimelineStep(GameTimeline timeline, Action[][] moves) {
+        if (moves != null) {
+            applyMoving(moves, true);
+        } else {
+            applySnapshot(timeline.getSnapshot());
+        }
+    }
 
-        printSquareArray(dataTo);
+    private void applySnapshot(BoardSnapshot snapshot) {
 
-        for (int i = 0; i < COUNT_OF_CELLS; i++) {
-            for (int j = 0; j < COUNT_OF_CELLS; j++) {
-                if (dataFrom[j][i].getCell().equals(dataTo[j][i].getCell())) {
-                    dataFrom[j][i] = null;
-                    dataTo[j][i] = null;
-                }
-            }
-        }
+        stopAnimation();
 
-        // TODO I believe there is a better way to do that;
-        List<Move> moves = new ArrayList<>();
-        for (int i = 0; i < COUNT_OF_CELLS; i++) {
-            for (int j = 0; j < COUNT_OF_CELLS; j++) {
-                if (dataFrom[j][i] != null && dataFrom[j][i].getCell() != Cell.EMPTY) {
-                    for (int k = 0; k < COUNT_OF_CELLS; k++) {
-                        for (int q = 0; q < COUNT_OF_CELLS; q++) {
-                            if (dataTo[q][k] != null && dataTo[q][k].getCell() != Cell.EMPTY) {
-                                if (dataFrom[j][i].getCell().equals(dataTo[q][k].getCell())) {
-                                    moves.add(new Move(j, i, q, k));
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+        BoardSnapshot current = mSnapshot;
+        mSnapshot = snapshot;
+
+        // The same pieces and selection, nothing to redraw;
+        if (snapshot.getZobristHash() == current.getZobristHash()
+                && snapshot.getSelectionMask() == current.getSelectionMask()) {
+            return;
         }
 
-        Move[][] m = new Move[1][moves.size()];
-        m[0] = moves.toArray(new Move[moves.size()]);
-        return m;
+        invalidateChanged(current, snapshot);
     }
 
-    private static ChessData[][] convertFenToData(String fen) {
+    private static long selectionMask(Move move) {
+        if (move == null) {
+            return 0L;
+        }
+        return 1L << Position.square(move.getFromX(), move.getFromY())
+                | 1L << Position.square(move.getToX(), move.getToY());
+    }
 
-        String[] rows = fen.split("/");
-        if (rows.length != COUNT_OF_CELLS) {
+    /**
+     * First array index - index of iteration;
+     * Second array index - piece index;
+     *
+     * @return {@link Move}s, {@link FadeOut}s of captured pieces and {@link FadeIn}s of promoted ones,
+     * see {@link BoardDiff}; empty array if any fen is malformed or there are no changes;
+     * May be called from any thread;
+     */
+    public Action[][] getMoves(String fenFrom, String fenTo) {
+
+        BoardSnapshot from = getCachedSnapshot(fenFrom);
+        BoardSnapshot to = getCachedSnapshot(fenTo);
+        if (from == null || to == null) {
+            return new Action[0][];
+        }
+
+        BoardDiff diff = BOARD_DIFFS.get();
+        if (diff == null) {
+            diff = new BoardDiff();
+            BOARD_DIFFS.set(diff);
+        }
+        return diff.diff(from, to);
+    }
+
+    /**
+     * @return parsed position from {@link PositionCache#getDefault()} or null if the fen is malformed;
+     */
+    private static BoardSnapshot getCachedSnapshot(String fen) {
+        try {
+            return PositionCache.getDefault().get(fen);
+        } catch (FenFormatException e) {
+            Log.w(TAG, "Invalid FEN: " + fen, e);
             return null;
         }
+    }
 
+    private static ChessData[][] convertSnapshotToData(BoardSnapshot snapshot) {
         ChessData[][] data = new ChessData[COUNT_OF_CELLS][COUNT_OF_CELLS];
-
         for (int i = 0; i < COUNT_OF_CELLS; i++) {
-
-            char[] chars = rows[i].toCharArray();
-            int j = 0;
-            int q = 0;
-            while (q < chars.length) {
-                char aChar = chars[q++];
-
-                if (Character.isDigit(aChar)) {
-                    int integer = Character.getNumericValue(aChar);
-                    for (int k = j; k < j + integer; k++) {
-                        data[k][i] = new ChessData(Cell.EMPTY, false);
-                    }
-                    j += integer;
-                } else {
-                    if (aChar == Cell.PAWN_BLACK.getPiece()) {
-                        data[j][i] = new ChessData(Cell.PAWN_BLACK, false);
-                    } else if (aChar == Cell.PAWN_WHITE.getPiece()) {
-                        data[j][i] = new ChessData(Cell.PAWN_WHITE, false);
-                    } else if (aChar == Cell.ROOK_BLACK.getPiece()) {
-                        data[j][i] = new ChessData(Cell.ROOK_BLACK, false);
-                    } else if (aChar == Cell.ROOK_WHITE.getPiece()) {
-                        data[j][i] = new ChessData(Cell.ROOK_WHITE, false);
-                    } else if (aChar == Cell.KNIGHT_BLACK.getPiece()) {
-                        data[j][i] = new ChessData(Cell.KNIGHT_BLACK, false);
-                    } else if (aChar == Cell.KNIGHT_WHITE.getPiece()) {
-                        data[j][i] = new ChessData(Cell.KNIGHT_WHITE, false);
-                    } else if (aChar == Cell.BISHOP_BLACK.getPiece()) {
-                        data[j][i] = new ChessData(Cell.BISHOP_BLACK, false);
-                    } else if (aChar == Cell.BISHOP_WHITE.getPiece()) {
-                        data[j][i] = new ChessData(Cell.BISHOP_WHITE, false);
-                    } else if (aChar == Cell.QUEEN_BLACK.getPiece()) {
-                        data[j][i] = new ChessData(Cell.QUEEN_BLACK, false);
-                    } else if (aChar == Cell.QUEEN_WHITE.getPiece()) {
-                        data[j][i] = new ChessData(Cell.QUEEN_WHITE, false);
-                    } else if (aChar == Cell.KING_BLACK.getPiece()) {
-                        data[j][i] = new ChessData(Cell.KING_BLACK, false);
-                    } else if (aChar == Cell.KING_WHITE.getPiece()) {
-                        data[j][i] = new ChessData(Cell.KING_WHITE, false);
-                    } else {
-                        data[j][i] = new ChessData(Cell.EMPTY, false);
-                    }
-                    j++;
-                }
+            for (int j = 0; j < COUNT_OF_CELLS; j++) {
+                data[j][i] = new ChessData(snapshot.getCell(j, i), snapshot.isSelected(j, i));
             }
         }
         return data;
     }
 
     public void printCurrentChessConfiguration() {
-        printSquareArray(mData);
+        printSquareArray(getData());
     }
 
     public void printSquareArray(ChessData[][] data) {
+        StringBuilder s = new StringBuilder(2 * COUNT_OF_CELLS + 1);
         for (int i = 0; i < COUNT_OF_CELLS; i++) {
-            String s = "|"; // TODO use StringBuffer;
+            s.setLength(0);
+            s.append('|');
             for (int j = 0; j < COUNT_OF_CELLS; j++) {
-                s += (data[j][i] == null ? "o" : data[j][i].getCell().getPiece()) + "|";
+                s.append(data[j][i] == null ? 'o' : data[j][i].getCell().getPiece()).append('|');
             }
-            Log.d(TAG, s);
+            Log.d(TAG, s.toString());
         }
     }
 
@@ -408,64 +437,21 @@ public class ChessView extends View {
         stopAnimation();
 
         if (showAnimation) {
-            mDrawAnimationThread = new DrawAnimationThread(moves, this);
-            mDrawAnimationThread.setRunning(true);
-            mDrawAnimationThread.setShowLastMove(mShowLastMove);
-            mDrawAnimationThread.setListener(new DrawAnimationThread.OnDrawThreadListener() {
-                @Override
-                public void onMove(List<Move> moves) {
-                    if (mOnMoveListener != null) {
-                        mOnMoveListener.onMove(moves);
-                    }
-                }
-
-                @Override
-                public void onMovingFinished() {
-                    if (mOnMoveListener != null) {
-                        mOnMoveListener.onMovingFinished();
-                    }
-                }
-            });
-            mDrawAnimationThread.start();
+            startAnimation(new DrawAnimationThread(moves, this));
         } else {
+            BoardSnapshot snapshot = mSnapshot;
+            snapshot.toPosition(mPosition);
             for (Action[] actionArray : moves) {
-                for (Action action : actionArray) {
-
-//                for (int i = 0; i < 3; i++) {
-//                    ChessData chessDataFrom = mData[action.getFromX()][action.getFromY()];
-//                    ChessData chessDataTo = mData[action.getToX()][action.getToY()];
-//                    switch (i) {
-//                        case 0:
-//                            chessDataFrom.setSelected(true);
-//                            chessDataTo.setSelected(true);
-//                            break;
-//                        case 1:
-//                            mData[action.getToX()][action.getToY()] = chessDataFrom;
-//                            mData[action.getFromX()][action.getFromY()] = chessDataTo;
-//                            break;
-//                        case 2:
-//                            chessDataFrom.setSelected(false);
-//                            chessDataTo.setSelected(false);
-//                            break;
-//                        default:
-//                            break;
-//                    }
-//                }
-                    if (action == null || !(action instanceof Move)) continue;
-                    Move move = (Move) action;
-                    mData[move.getToX()][move.getToY()] = mData[move.getFromX()][move.getFromY()];
-                    mData[move.getFromX()][move.getFromY()] = new ChessData(Cell.EMPTY, false);
-                }
+                applyActions(mPosition, actionArray, mSourcePosition);
             }
 
+            long selectionMask = snapshot.getSelectionMask();
             if (mShowLastMove) {
                 boolean flag = false;
                 for (int i = moves.length - 1; i >= 0; i--) {
                     for (int j = moves[i].length - 1; j >= 0; j--) {
                         if (moves[i][j] != null && moves[i][j] instanceof Move) {
-                            Move move = (Move) moves[i][j];
-                            mData[move.getFromX()][move.getFromY()].setSelected(true);
-                            mData[move.getToX()][move.getToY()].setSelected(true);
+                            selectionMask |= selectionMask((Move) moves[i][j]);
                             flag = true;
                             break;
                         }
@@ -476,7 +462,111 @@ public class ChessView extends View {
                 }
             }
 
-            invalidate();
+            mSnapshot = BoardSnapshot.of(mPosition, selectionMask);
+            invalidateChanged(snapshot, mSnapshot);
+        }
+    }
+
+    /**
+     * Play moves by chess rules from current figures state, one move per animation step:
+     * castling moves the rook, en passant removes the captured pawn, promotion replaces the pawn;
+     *
+     * @param moves         - {@link PackedMove}s, the list is copied;
+     * @param showAnimation - true start animation, false - calculate and set last state of figures immediately;
+     */
+    public void applyMoving(MoveList moves, boolean showAnimation) {
+
+        stopAnimation();
+
+        if (showAnimation) {
+            startAnimation(new DrawAnimationThread(new MoveList(moves), this));
+        } else {
+            BoardSnapshot snapshot = mSnapshot;
+            snapshot.toPosition(mPosition);
+            for (int i = 0; i < moves.size(); i++) {
+                PackedMove.apply(mPosition, moves.get(i));
+            }
+
+            long selectionMask = snapshot.getSelectionMask();
+            if (mShowLastMove && !moves.isEmpty()) {
+                int last = moves.get(moves.size() - 1);
+                selectionMask |= 1L << PackedMove.from(last) | 1L << PackedMove.to(last);
+            }
+
+            mSnapshot = BoardSnapshot.of(mPosition, selectionMask);
+            invalidateChanged(snapshot, mSnapshot);
+        }
+    }
+
+    private void startAnimation(DrawAnimationThread thread) {
+        mDrawAnimationThread = thread;
+        thread.setRunning(true);
+        thread.setShowLastMove(mShowLastMove);
+        thread.setListener(new DrawAnimationThread.OnDrawThreadListener() {
+            @Override
+            public void onMove(MoveList moves) {
+                OnPackedMoveListener packedListener = mOnPackedMoveListener;
+                if (packedListener != null) {
+                    packedListener.onMove(moves);
+                }
+                OnMoveListener listener = mOnMoveListener;
+                if (listener != null) {
+                    // The listener may keep the list, OnPackedMoveListener is the one without allocations;
+                    List<Move> list = new ArrayList<>(moves.size());
+                    for (int i = 0; i < moves.size(); i++) {
+                        list.add(PackedMove.toMove(moves.get(i)));
+                    }
+                    listener.onMove(list);
+                }
+            }
+
+            @Override
+            public void onMovingFinished() {
+                if (mOnPackedMoveListener != null) {
+                    mOnPackedMoveListener.onMovingFinished();
+                }
+                if (mOnMoveListener != null) {
+                    mOnMoveListener.onMovingFinished();
+                }
+            }
+        });
+        thread.start();
+    }
+
+    /**
+     * Apply one animation step: remove faded out pieces, move pieces of all {@link Move}s
+     * simultaneously, so chained moves (a1 -> a2, a2 -> a3) don't overwrite each other,
+     * and put faded in pieces;
+     *
+     * @param source - buffer for the cells the moves start from, so nothing is allocated;
+     */
+    static void applyActions(Position position, Action[] actions, Position source) {
+        for (Action action : actions) {
+            if (action instanceof FadeOut) {
+                FadeOut fadeOut = (FadeOut) action;
+                position.setCell(fadeOut.getFromX(), fadeOut.getFromY(), Cell.EMPTY);
+            }
+        }
+        source.set(position);
+        for (Action action : actions) {
+            if (action instanceof Move) {
+                Move move = (Move) action;
+                position.setCell(move.getFromX(), move.getFromY(), Cell.EMPTY);
+            }
+        }
+        for (Action action : actions) {
+            if (action instanceof Move) {
+                Move move = (Move) action;
+                position.setCell(move.getToX(), move.getToY(), source.getCell(move.getFromX(), move.getFromY()));
+            }
+        }
+        for (Action action : actions) {
+            if (action instanceof FadeIn) {
+                FadeIn fadeIn = (FadeIn) action;
+                if (fadeIn.getCell() != Cell.EMPTY) {
+                    position.setCell(fadeIn.getToX(), fadeIn.getToY(), fadeIn.getCell());
+                }
+            }
         }
     }
 
@@ -491,132 +581,145 @@ public class ChessView extends View {
         super.onSizeChanged(w, h, oldw, oldh);
         int size = Math.min(w - getPaddingLeft() - getPaddingRight(), h - getPaddingTop() - getPaddingBottom());
         // TODO keep in mind the padding size;
-        mCellSize = (size - 2 * mBorderWidth) / COUNT_OF_CELLS;
-        mFullRect = new Rect(getPaddingLeft(), getPaddingTop(), getPaddingLeft() + size, getPaddingTop() + size);
-        mInnerRect = new Rect(mBorderWidth + getPaddingLeft(), mBorderWidth + getPaddingTop(), size - mBorderWidth + getPaddingLeft(), size - mBorderWidth + getPaddingTop());
-        for (int i = 0; i < COUNT_OF_CELLS; i++) {
-            for (int j = 0; j < COUNT_OF_CELLS; j++) {
-                mCells[i][j] = new Rect(
-                        getPaddingLeft() + mBorderWidth + i * mCellSize,
-                        getPaddingTop() + mBorderWidth + j * mCellSize,
-                        getPaddingLeft() + mBorderWidth + (i + 1) * mCellSize,
-                        getPaddingTop() + mBorderWidth + (j + 1) * mCellSize);
-            }
-        }
-        mBitmapCache.clear();
+        mRenderer.setBounds(getPaddingLeft(), getPaddingTop(), size);
+        requestAtlas();
     }
 
-    @Override
-    protected void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
-
-        if (mFullRect == null) return;
-
-        int width = getWidth();
-        int height = getHeight();
-
-//        canvas.drawPicture(mPictureBackground);
-
-        canvas.drawRect(mFullRect, mBackgroundPaint);
-
-        // Draw labels;
-        int labelHeight = mLabelBoundsRect.height();
-        int labelWidth = mLabelBoundsRect.width();
-        for (int i = 0; i < COUNT_OF_CELLS; i++) {
-            canvas.drawText(LABEL_VERTICAL[i],
-                    mBorderWidth / 2 - mLabelBoundsRect.width() / 2 + getPaddingLeft(),
-                    mBorderWidth + mCellSize * i + mCellSize / 2 + mLabelBoundsRect.height() / 2 + getPaddingTop(),
-                    mLabelPaint
-            );
-            canvas.drawText(String.valueOf(LABEL_HORIZONTAL[i]),
-                    mBorderWidth + mCellSize * i + mCellSize / 2 - labelWidth / 2 + getPaddingLeft(),
-                    mBorderWidth + mCellSize * COUNT_OF_CELLS + labelHeight + (mBorderWidth - labelHeight) / 2 + 2 + getPaddingTop(),
-                    mLabelPaint
-            );
+    /**
+     * Load the pieces for the cell size from disk or decode them in background, e.g. at application
+     * start, so the first frame of a view with cells of the size already has them;
+     * The pieces stay in {@link SpriteCache} while memory allows;
+     *
+     * @param cellSizePx - size of a cell in pixels;
+     * @return future done when the pieces are ready;
+     */
+    public static CompletableFuture<Void> prewarm(Context context, int cellSizePx) {
+        final int size = BoardRenderer.figureSizeOf(cellSizePx);
+        if (size <= 0) {
+            return CompletableFuture.completedFuture(null);
         }
+        final SpriteCache cache = SpriteCache.getInstance(context);
+        return cache.acquire(context.getResources(), size).thenAccept(cache::release);
+    }
 
-//        canvas.clipRect(mInnerRect);
-
-        // Draw cells
-        for (int i = 0; i < COUNT_OF_CELLS; i++) {
-            for (int j = 0; j < COUNT_OF_CELLS; j++) {
-                Rect rectFrom = mCells[i][j];
-                if (mData[i][j].isSelected()) {
-                    canvas.drawRect(rectFrom, ((i + j) % 2 == 0) ? mCellSelectedDarkPaint : mCellSelectedLightPaint);
-                } else {
-                    canvas.drawRect(rectFrom, ((i + j) % 2 == 0) ? mCellLightPaint : mCellDarkPaint);
-                }
-            }
+    /**
+     * Take the pieces for the current size from the shared cache, decoded in background if needed;
+     * onDraw never decodes;
+     */
+    private void requestAtlas() {
+        final int size = mRenderer.getFigureSize();
+        if (size <= 0 || size == mAtlasSize) return;
+        mAtlasSize = size;
+
+        final SpriteCache cache = SpriteCache.getInstance(getContext());
+        final CompletableFuture<SpriteAtlas> future = cache.acquire(getResources(), size);
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            // Cached or prewarmed, draw with it already in the first frame;
+            mAtlasFuture = null;
+            setAtlas(cache, future.join());
+            return;
         }
-
-        // Draw cells figures;
-        for (int i = 0; i < COUNT_OF_CELLS; i++) {
-            for (int j = 0; j < COUNT_OF_CELLS; j++) {
-
-                ChessData chessData = mData[i][j];
-                Rect rectFrom = mCells[i][j];
-                Rect rectTo = null;
-                int frame = chessData.getFrame();
-                if (frame > 0) {
-                    rectTo = mCells[chessData.getIndexToX()][chessData.getIndexToY()];
-                }
-                Cell cell = chessData.getCell();
-
-                drawFigure(canvas, rectFrom, rectTo, frame, cell.getDrawable());
+        mAtlasFuture = future;
+        future.whenComplete((atlas, error) -> {
+            if (error != null) {
+                Log.e(TAG, "Can't decode pieces", error);
+                MAIN_HANDLER.post(() -> {
+                    // Forget the size, so the next layout or attach asks the cache again;
+                    if (mAtlasFuture == future) {
+                        mAtlasFuture = null;
+                        mAtlasSize = 0;
+                    }
+                });
+                return;
             }
-        }
-
-//        canvas.restore();
+            MAIN_HANDLER.post(() -> {
+                // A newer size may have been requested or the view detached meanwhile;
+                if (mAtlasFuture != future) {
+                    cache.release(atlas);
+                    return;
+                }
+                mAtlasFuture = null;
+                setAtlas(cache, atlas);
+            });
+        });
     }
 
-    private void drawFigure(Canvas canvas, Rect rectFrom, Rect rectTo, int frame, @DrawableRes int drawableRes) {
-
-        if (drawableRes == 0) return;
+    /**
+     * @return true if the pieces of the current size are drawn, false while they are decoded;
+     */
+    boolean isAtlasReady() {
+        return mAtlas != null && mAtlasFuture == null;
+    }
 
-        Bitmap bitmap;
+    private void setAtlas(SpriteCache cache, SpriteAtlas atlas) {
+        cache.release(mAtlas);
+        mAtlas = atlas;
+        mRenderer.setAtlas(atlas);
+        invalidate();
+    }
 
-        if (mBitmapCache.containsKey(drawableRes)) {
-            bitmap = mBitmapCache.get(drawableRes);
-        } else {
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        requestAtlas();
+    }
 
-            bitmap = BitmapFactory.decodeResource(getContext().getResources(), drawableRes);
-            int width = bitmap.getWidth();
-            int height = bitmap.getHeight();
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // Let the shared cache evict the pieces while the view is off screen;
+        SpriteCache.getInstance(getContext()).release(mAtlas);
+        mAtlas = null;
+        mRenderer.setAtlas(null);
+        mAtlasFuture = null;
+        mAtlasSize = 0;
+    }
 
-            int targetHeight = (int) (rectFrom.height() * FIGURE_SIZE_COEFF);
-            boolean flag = false;
-            if (height > targetHeight) {
-                width = width * targetHeight / height;
-                height = targetHeight;
-                flag = true;
-            }
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
 
-            int targetWidth = (int) (rectFrom.width() * FIGURE_SIZE_COEFF);
-            if (width > targetWidth) {
-                height = height * targetWidth / width;
-                width = targetWidth;
-                flag = true;
-            }
+        DrawAnimationThread thread = mDrawAnimationThread;
+        AnimationOverlay overlay = thread != null ? thread.getOverlay() : null;
+        if (overlay == null) {
+            mRenderer.draw(canvas, mSnapshot);
+            return;
+        }
+        synchronized (overlay) {
+            // The animation thread replaces snapshot and overlay together under the lock;
+            mRenderer.draw(canvas, mSnapshot, overlay);
+        }
+    }
 
-            if (flag) {
-                bitmap = Bitmap.createScaledBitmap(bitmap, width, height, false);
-            }
-            mBitmapCache.put(drawableRes, bitmap);
+    /**
+     * Invalidate only the cells whose piece or selection differs;
+     * A hardware accelerated view records its display list as a whole, the rect helps software drawing only;
+     */
+    @SuppressWarnings("deprecation")
+    private void invalidateChanged(BoardSnapshot previous, BoardSnapshot current) {
+        if (!mRenderer.hasBounds() || isHardwareAccelerated()) {
+            invalidate();
+            return;
+        }
+        mDirtyRect.setEmpty();
+        unionSquares(mDirtyRect, previous.changedSquares(current));
+        if (!mDirtyRect.isEmpty()) {
+            invalidate(mDirtyRect);
         }
+    }
 
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
+    /**
+     * Add the cells of the squares to the dirty rect, may be called from any thread;
+     */
+    void unionSquares(Rect dirty, long squares) {
+        mRenderer.unionSquares(dirty, squares);
+    }
 
-        int fromX = rectFrom.centerX() - width / 2;
-        int fromY = rectFrom.centerY() - height / 2;
-        if (rectTo == null || frame == 0) {
-            canvas.drawBitmap(bitmap, fromX, fromY, mPiecePaint);
-        } else {
-            int toX = rectTo.centerX() - width / 2;
-            int toY = rectTo.centerY() - height / 2;
-            int left = fromX - frame * (fromX - toX) / ANIMATION_FRAME_COUNT;
-            int top = fromY - frame * (fromY - toY) / ANIMATION_FRAME_COUNT;
-            canvas.drawBitmap(bitmap, left, top, mPiecePaint);
-        }
+    /**
+     * Add the cells covered by the moving and fading pieces of the overlay in the frame to the dirty rect,
+     * may be called from any thread;
+     */
+    void unionOverlay(Rect dirty, AnimationOverlay overlay, int frame) {
+        mRenderer.unionOverlay(dirty, overlay, frame);
     }
 }
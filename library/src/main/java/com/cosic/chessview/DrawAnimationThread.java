@@ -1,10 +1,15 @@
 package com.cosic.chessview;
 
+import android.graphics.Rect;
+import com.cosic.chessview.board.BoardSnapshot;
+import com.cosic.chessview.board.MoveList;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
 import com.cosic.chessview.models.Action;
 import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.models.FadeIn;
+import com.cosic.chessview.models.FadeOut;
 import com.cosic.chessview.models.Move;
-import java.util.ArrayList;
-import java.util.List;
 
 final class DrawAnimationThread extends Thread {
 
@@ -16,10 +21,15 @@ final class DrawAnimationThread extends Thread {
     private static final int PRE = 0;
         private static final int MOVING = 1;
         private static final int POST = 2;
+        private static final int STATE_COUNT = 3;
 
         private OnDrawThreadListener mListener;
         private boolean mIsRunning = false;
+        /**
+         * Steps of the animation, either actions or one packed move per step;
+         */
         private Action[][] mMoves;
+        private MoveList mPackedMoves;
         private ChessView mChessView;
         /**
          * Index of iteration per one animation.
@@ -31,11 +41,41 @@ final class DrawAnimationThread extends Thread {
         private int mState = PRE;
         private boolean mShowLastMove = false;
 
+        /**
+         * Pieces which are moving in current frame;
+         */
+        private final AnimationOverlay mOverlay = new AnimationOverlay();
+
+        /**
+         * Moves of the current step reported to the listener, reused by all steps;
+         */
+        private final MoveList mStepMoves = new MoveList();
+
+        /**
+         * Cells of all moves of the step and cells of the first one, which are selected;
+         */
+        private long mMovesMask = 0L;
+        private long mSelectedMask = 0L;
+
+        /**
+         * Region changed by the current iteration, only it is invalidated;
+         */
+        private final Rect mDirty = new Rect();
+
         public DrawAnimationThread(Action[][] moves, ChessView chessView) {
             this.mMoves = moves;
             this.mChessView = chessView;
         }
 
+        /**
+         * @param moves - one ply per step, played by chess rules: castling moves the rook,
+         *              captured pieces fade out;
+         */
+        public DrawAnimationThread(MoveList moves, ChessView chessView) {
+            this.mPackedMoves = moves;
+            this.mChessView = chessView;
+        }
+
         public void setListener(OnDrawThreadListener listener) {
             this.mListener = listener;
         }
@@ -48,8 +88,13 @@ final class DrawAnimationThread extends Thread {
             this.mShowLastMove = showLastMove;
         }
 
+        AnimationOverlay getOverlay() {
+            return mOverlay;
+        }
+
         public void reset() {
             mMoves = null;
+            mPackedMoves = null;
             mListener = null;
             mChessView = null;
         }
@@ -57,55 +102,73 @@ final class DrawAnimationThread extends Thread {
         @Override
         public void run() {
 
-            final ChessData[][] mData = mChessView.getData();
-            while (mIsRunning && mIndex < mMoves.length) {
+            final Action[][] steps = mMoves;
+            final MoveList packedMoves = mPackedMoves;
+            final int stepCount = steps != null ? steps.length : packedMoves.size();
+            final BoardSnapshot[] snapshots = planSnapshots(steps, packedMoves, stepCount);
+            while (mIsRunning && mIndex < stepCount) {
 
                 long delay = MOVING_DELAY_MS;
-                Action[] moves = mMoves[mIndex];
-
-                List<Move> movesCache = new ArrayList<>();
-
-                for (int i = 0; i < moves.length; i++) {
-                    Action action = moves[i];
-                    if (action == null || !(action instanceof Move)) continue;
-                    Move move = (Move) action;
-                    movesCache.add(move);
-
-                    boolean needSelect = i == 0;
-                    int fromX = move.getFromX();
-                    int fromY = move.getFromY();
-                    ChessData chessDataFrom = mData[fromX][fromY];
-                    ChessData chessDataTo = mData[move.getToX()][move.getToY()];
-                    switch (mState) {
-                        case PRE:
-                            chessDataFrom.setSelected(needSelect);
-                            chessDataTo.setSelected(needSelect);
-                            break;
-                        case MOVING:
-                            if (mFrame <= ANIMATION_FRAME_COUNT) {
-                                chessDataFrom.setFrame(mFrame);
-                                chessDataFrom.setIndexToX(move.getToX());
-                                chessDataFrom.setIndexToY(move.getToY());
-                            } else {
-                                mData[move.getToX()][move.getToY()] = chessDataFrom;
-                                ChessData emptyCellData = new ChessData(Cell.EMPTY, needSelect);
-                                mData[fromX][fromY] = emptyCellData;
-                                chessDataFrom.setFrame(0);
+                Action[] moves = steps != null ? steps[mIndex] : null;
+                loadStepMoves(steps, packedMoves, mIndex);
+
+                BoardSnapshot snapshot = mChessView.getSnapshot();
+                final int previousFrame = mOverlay.getFrame();
+                switch (mState) {
+                    case PRE:
+                        mChessView.setAnimatedSnapshot(snapshots[mIndex * STATE_COUNT + PRE]);
+                        break;
+                    case MOVING:
+                        if (mFrame == 0 && moves == null) {
+                            mOverlay.clear();
+                            addPackedMove(snapshot, mStepMoves.get(0));
+                        } else if (mFrame == 0) {
+                            mOverlay.clear();
+                            for (Action action : moves) {
+                                if (action instanceof Move) {
+                                    Move move = (Move) action;
+                                    mOverlay.addMove(move.getFromX(), move.getFromY(), move.getToX(), move.getToY());
+                                } else if (action instanceof FadeOut) {
+                                    FadeOut fadeOut = (FadeOut) action;
+                                    int cell = snapshot.getCellOrdinal(Position.square(fadeOut.getFromX(), fadeOut.getFromY()));
+                                    mOverlay.addFade(fadeOut.getFromX(), fadeOut.getFromY(), cell, 1f, fadeOut.getFade(), true);
+                                } else if (action instanceof FadeIn) {
+                                    FadeIn fadeIn = (FadeIn) action;
+                                    if (fadeIn.getCell() != Cell.EMPTY) {
+                                        mOverlay.addFade(fadeIn.getToX(), fadeIn.getToY(), fadeIn.getCell().ordinal(), fadeIn.getFade(), 1f, false);
+                                    }
+                                }
                             }
-                            break;
-                        case POST:
-                            chessDataFrom.setSelected(i == 0 && mShowLastMove);
-                            chessDataTo.setSelected(i == 0 && mShowLastMove);
-                            break;
-                        default:
-                            break;
-                    }
+                        }
+                        if (mFrame <= ANIMATION_FRAME_COUNT) {
+                            mOverlay.setFrame(mFrame);
+                        } else {
+                            synchronized (mOverlay) {
+                                mChessView.setAnimatedSnapshot(snapshots[mIndex * STATE_COUNT + MOVING]);
+                                mOverlay.clear();
+                            }
+                        }
+                        break;
+                    case POST:
+                        mChessView.setAnimatedSnapshot(snapshots[mIndex * STATE_COUNT + POST]);
+                        break;
+                    default:
+                        break;
                 }
 
-                mChessView.postInvalidate();
+                // Changed cells and selection, the moving pieces in the previous and the current frame;
+                mDirty.setEmpty();
+                mChessView.unionSquares(mDirty, snapshot.changedSquares(mChessView.getSnapshot()));
+                if (mState == MOVING) {
+                    mChessView.unionOverlay(mDirty, mOverlay, previousFrame);
+                    mChessView.unionOverlay(mDirty, mOverlay, mOverlay.getFrame());
+                }
+                if (!mDirty.isEmpty()) {
+                    mChessView.postInvalidate(mDirty.left, mDirty.top, mDirty.right, mDirty.bottom);
+                }
 
-                if (mListener != null && mState == POST && movesCache.size() > 0) {
-                    mListener.onMove(movesCache);
+                if (mListener != null && mState == POST && !mStepMoves.isEmpty()) {
+                    mListener.onMove(mStepMoves);
                 }
 
                 if (mState == MOVING) {
@@ -123,7 +186,7 @@ final class DrawAnimationThread extends Thread {
                     mIndex++;
                 }
 
-                if (!mIsRunning || mIndex >= mMoves.length) {
+                if (!mIsRunning || mIndex >= stepCount) {
 //                    try {
 //                        Thread.sleep(100);
 //                    } catch (InterruptedException e) {
@@ -144,8 +207,98 @@ final class DrawAnimationThread extends Thread {
             setRunning(false);
         }
 
+        /**
+         * Make the snapshots shown after each state of every step before the first frame,
+         * so the animation loop doesn't allocate; Nothing else changes the view while it runs;
+         *
+         * @return snapshots of step i at i * {@link #STATE_COUNT} + state;
+         */
+        private BoardSnapshot[] planSnapshots(Action[][] steps, MoveList packedMoves, int stepCount) {
+            final Position position = new Position();
+            final Position source = new Position();
+            final BoardSnapshot[] snapshots = new BoardSnapshot[stepCount * STATE_COUNT];
+            BoardSnapshot snapshot = mChessView.getSnapshot();
+            for (int index = 0; index < stepCount; index++) {
+                loadStepMoves(steps, packedMoves, index);
+                BoardSnapshot pre = snapshot.withSelection((snapshot.getSelectionMask() & ~mMovesMask) | mSelectedMask);
+
+                pre.toPosition(position);
+                if (steps != null) {
+                    ChessView.applyActions(position, steps[index], source);
+                } else {
+                    PackedMove.apply(position, mStepMoves.get(0));
+                }
+                BoardSnapshot moved = BoardSnapshot.of(position, pre.getSelectionMask());
+
+                BoardSnapshot post = moved.withSelection((moved.getSelectionMask() & ~mMovesMask)
+                        | (mShowLastMove ? mSelectedMask : 0L));
+                snapshots[index * STATE_COUNT + PRE] = pre;
+                snapshots[index * STATE_COUNT + MOVING] = moved;
+                snapshots[index * STATE_COUNT + POST] = post;
+                snapshot = post;
+            }
+            return snapshots;
+        }
+
+        /**
+         * Fill {@link #mStepMoves}, {@link #mMovesMask} and {@link #mSelectedMask} for the step;
+         */
+        private void loadStepMoves(Action[][] steps, MoveList packedMoves, int index) {
+            mStepMoves.clear();
+            if (steps != null) {
+                for (Action action : steps[index]) {
+                    if (action instanceof Move) {
+                        mStepMoves.add(PackedMove.of((Move) action));
+                    }
+                }
+            } else {
+                mStepMoves.add(packedMoves.get(index));
+            }
+
+            mMovesMask = 0L;
+            mSelectedMask = 0L;
+            for (int i = 0; i < mStepMoves.size(); i++) {
+                int move = mStepMoves.get(i);
+                long mask = 1L << PackedMove.from(move) | 1L << PackedMove.to(move);
+                mMovesMask |= mask;
+                if (i == 0) {
+                    mSelectedMask = mask;
+                }
+            }
+        }
+
+        /**
+         * Put the moving piece, the rook of castling and the fading captured piece on the overlay;
+         */
+        private void addPackedMove(BoardSnapshot snapshot, int move) {
+            final int from = PackedMove.from(move);
+            final int to = PackedMove.to(move);
+            final Cell piece = snapshot.getCell(from);
+            final int fromX = Position.xOf(from);
+            final int fromY = Position.yOf(from);
+            final int toX = Position.xOf(to);
+            mOverlay.addMove(fromX, fromY, toX, Position.yOf(to));
+
+            if ((piece == Cell.KING_WHITE || piece == Cell.KING_BLACK) && Math.abs(toX - fromX) == 2) {
+                mOverlay.addMove(to > from ? 7 : 0, fromY, to > from ? 5 : 3, fromY);
+            }
+
+            int captured = to;
+            if (snapshot.getCellOrdinal(to) == 0) {
+                boolean enPassant = (piece == Cell.PAWN_WHITE || piece == Cell.PAWN_BLACK) && toX != fromX;
+                captured = enPassant ? Position.square(toX, fromY) : Position.NO_SQUARE;
+            }
+            if (captured != Position.NO_SQUARE) {
+                mOverlay.addFade(Position.xOf(captured), Position.yOf(captured),
+                        snapshot.getCellOrdinal(captured), 1f, 0f, true);
+            }
+        }
+
         public interface OnDrawThreadListener {
-            void onMove(List<Move> moves);
+            /**
+             * @param moves - moves of the finished step, the list is reused by the next step;
+             */
+            void onMove(MoveList moves);
 
             void onMovingFinished();
         }
@@ -3,6 +3,9 @@ package com.cosic.chessview
 import com.cosic.chessview.models.Move
 
 interface OnMoveListener {
+    /**
+     * Called on the animation thread with a new list per step, see [OnPackedMoveListener] to avoid allocations;
+     */
     fun onMove(moves: List<Move?>?)
     fun onMovingFinished()
-}
\ No newline at end of file
+}
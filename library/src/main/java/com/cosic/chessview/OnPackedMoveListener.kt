@@ -0,0 +1,14 @@
+package com.cosic.chessview
+
+import com.cosic.chessview.board.MoveList
+
+/**
+ * [OnMoveListener] without objects: moves of the step come as [com.cosic.chessview.board.PackedMove]s;
+ */
+interface OnPackedMoveListener {
+    /**
+     * Called on the animation thread, the list is reused by the next step;
+     */
+    fun onMove(moves: MoveList)
+    fun onMovingFinished()
+}
@@ -0,0 +1,244 @@
+package com.cosic.chessview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.cosic.chessview.board.BoardSnapshot;
+import com.cosic.chessview.sprite.SpriteAtlas;
+import com.cosic.chessview.sprite.SpriteCache;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders board previews of one size with {@link BoardRenderer} on a few background threads,
+ * for lists where a {@link ChessView} per row is too heavy:
+ * <pre>
+ * // onBindViewHolder
+ * holder.request = service.request(snapshot, bitmap -> holder.setThumbnail(bitmap));
+ * // onViewRecycled
+ * holder.request.cancel();
+ * service.recycle(holder.takeThumbnail());
+ * </pre>
+ * The latest requests are rendered first, rows scrolled into view last are the ones on screen.
+ * Bitmaps given back by {@link #recycle(Bitmap)} are reused for next previews.
+ * All methods except {@link #recycle(Bitmap)} are called on the main thread.
+ */
+public final class ThumbnailService {
+
+    private static final String TAG = "ThumbnailService";
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    public interface Callback {
+
+        /**
+         * Called on the main thread unless the request was cancelled, the bitmap is owned by the
+         * receiver until it is given back by {@link #recycle(Bitmap)};
+         */
+        void onThumbnail(Bitmap bitmap);
+    }
+
+    /**
+     * Pending preview, cancel it when the row is scrolled away or bound to another game;
+     */
+    public static final class Request {
+
+        private final ThreadPoolExecutor mExecutor;
+        private volatile boolean mCancelled = false;
+        private Future<?> mFuture;
+
+        private Request(ThreadPoolExecutor executor) {
+            this.mExecutor = executor;
+        }
+
+        /**
+         * Drop the request, a queued one is not rendered and a rendered one is not delivered;
+         */
+        public void cancel() {
+            mCancelled = true;
+            if (mFuture != null && mFuture.cancel(false)) {
+                mExecutor.remove((Runnable) mFuture);
+            }
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    private final int mSize;
+    private final int mPoolCapacity;
+    private final ThreadPoolExecutor mExecutor;
+    private final SpriteCache mCache;
+    private final CompletableFuture<SpriteAtlas> mAtlas;
+
+    /**
+     * Free bitmaps of {@link #mSize}, guarded by itself;
+     */
+    private final ArrayDeque<Bitmap> mPool = new ArrayDeque<>();
+
+    /**
+     * Renderer and canvas of each worker thread;
+     */
+    private final ThreadLocal<Worker> mWorkers = new ThreadLocal<>();
+
+    private boolean mShutdown = false;
+
+    /**
+     * @param sizePx       - side of the previews in pixels, boards have no frame and labels;
+     * @param threadCount  - count of rendering threads;
+     * @param poolCapacity - count of recycled bitmaps to keep, about the count of visible rows;
+     */
+    public ThumbnailService(Context context, int sizePx, int threadCount, int poolCapacity) {
+        if (sizePx <= 0 || threadCount <= 0) {
+            throw new IllegalArgumentException("Size " + sizePx + ", threads " + threadCount);
+        }
+        this.mSize = sizePx;
+        this.mPoolCapacity = poolCapacity;
+        this.mExecutor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new LifoQueue(), new ThumbnailThreadFactory());
+        this.mCache = SpriteCache.getInstance(context);
+        this.mAtlas = mCache.acquire(context.getResources(),
+                BoardRenderer.figureSizeOf(sizePx / BoardRenderer.COUNT_OF_CELLS));
+    }
+
+    /**
+     * Render the preview of the snapshot in background;
+     */
+    public Request request(BoardSnapshot snapshot, Callback callback) {
+        if (mShutdown) {
+            throw new IllegalStateException("Service is shut down");
+        }
+        final Request request = new Request(mExecutor);
+        request.mFuture = mExecutor.submit(() -> render(request, snapshot, callback));
+        return request;
+    }
+
+    /**
+     * Give back a bitmap delivered by {@link Callback#onThumbnail(Bitmap)} which is not drawn any more,
+     * null is ignored; May be called from any thread;
+     */
+    public void recycle(Bitmap bitmap) {
+        if (bitmap == null || bitmap.getWidth() != mSize || bitmap.getHeight() != mSize) return;
+        synchronized (mPool) {
+            if (mPool.size() < mPoolCapacity) {
+                mPool.push(bitmap);
+            }
+        }
+    }
+
+    /**
+     * Stop the threads and drop the pending requests, the service can't be used after it;
+     */
+    public void shutdown() {
+        mShutdown = true;
+        mExecutor.shutdownNow();
+        mAtlas.thenAccept(mCache::release);
+        synchronized (mPool) {
+            mPool.clear();
+        }
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    private void render(Request request, BoardSnapshot snapshot, Callback callback) {
+        if (request.mCancelled) return;
+        final Worker worker = getWorker();
+        if (worker == null) return;
+
+        final Bitmap bitmap = obtainBitmap();
+        worker.mCanvas.setBitmap(bitmap);
+        worker.mRenderer.draw(worker.mCanvas, snapshot);
+        worker.mCanvas.setBitmap(null);
+
+        MAIN_HANDLER.post(() -> {
+            if (request.mCancelled || mShutdown) {
+                recycle(bitmap);
+                return;
+            }
+            callback.onThumbnail(bitmap);
+        });
+    }
+
+    /**
+     * @return renderer of the current thread, null if the pieces can't be decoded;
+     */
+    private Worker getWorker() {
+        Worker worker = mWorkers.get();
+        if (worker == null) {
+            final SpriteAtlas atlas;
+            try {
+                atlas = mAtlas.join();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Can't decode pieces", e);
+                return null;
+            }
+            worker = new Worker(mSize, atlas);
+            mWorkers.set(worker);
+        }
+        return worker;
+    }
+
+    private Bitmap obtainBitmap() {
+        Bitmap bitmap;
+        synchronized (mPool) {
+            bitmap = mPool.poll();
+        }
+        if (bitmap == null) {
+            return Bitmap.createBitmap(mSize, mSize, Bitmap.Config.ARGB_8888);
+        }
+        // The board may be drawn with translucent colours;
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    private static final class Worker {
+
+        private final BoardRenderer mRenderer;
+        private final Canvas mCanvas = new Canvas();
+
+        Worker(int size, SpriteAtlas atlas) {
+            mRenderer = new BoardRenderer(0, 0);
+            mRenderer.setBounds(0, 0, size);
+            mRenderer.setAtlas(atlas);
+        }
+    }
+
+    /**
+     * Takes the latest task first;
+     */
+    private static final class LifoQueue extends LinkedBlockingDeque<Runnable> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            return offerFirst(runnable);
+        }
+    }
+
+    private static final class ThumbnailThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ThumbnailService-" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
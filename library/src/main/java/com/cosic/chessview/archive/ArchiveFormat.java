@@ -0,0 +1,125 @@
+package com.cosic.chessview.archive;
+
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.models.Cell;
+
+/**
+ * Layout of the game archive file, all numbers are big-endian:
+ * <pre>
+ * header, {@link #HEADER_SIZE} bytes:
+ *     int   magic "CVGA"
+ *     short version
+ *     short reserved
+ *     long  count of games
+ *     long  offset of the offset table
+ *     long  reserved
+ * game records, appended one after another:
+ *     byte  flags, {@link #FLAG_START_FEN}
+ *     [short length, UTF-8 bytes]  start FEN if the flag is set
+ *     byte  result, {@link #RESULT_UNKNOWN} ...
+ *     short count of tags
+ *     (short length, UTF-8 bytes) * 2  name and value of each tag
+ *     short count of plies
+ *     short * count of plies  moves, see {@link #encodeMove(int, int, int)}
+ * offset table:
+ *     long * count of games  offset of each game record
+ * </pre>
+ * The header is written last, so an interrupted append leaves the previous table valid.
+ */
+final class ArchiveFormat {
+
+    static final int MAGIC = 0x43564741;
+    static final short VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+    static final int HEADER_GAME_COUNT = 8;
+    static final int HEADER_INDEX_OFFSET = 16;
+
+    static final int OFFSET_SIZE = 8;
+
+    static final int FLAG_START_FEN = 1;
+
+    static final int RESULT_UNKNOWN = 0;
+    static final int RESULT_WHITE_WINS = 1;
+    static final int RESULT_BLACK_WINS = 2;
+    static final int RESULT_DRAW = 3;
+    private static final String[] RESULTS = {"*", "1-0", "0-1", "1/2-1/2"};
+
+    /**
+     * Longest string and the most count of tags and plies;
+     */
+    static final int MAX_SHORT = 0xFFFF;
+
+    /**
+     * Largest record, records never cross the overlap of two mapped segments;
+     */
+    static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    private static final int TO_SHIFT = 6;
+    private static final int PROMOTION_SHIFT = 12;
+    private static final int SQUARE_MASK = 0x3F;
+
+    /**
+     * Promoted piece ordinals of the white side by code 1 - 4, black ones are greater by 1;
+     */
+    private static final int[] PROMOTION_WHITE = {
+            0,
+            Cell.KNIGHT_WHITE.ordinal(),
+            Cell.BISHOP_WHITE.ordinal(),
+            Cell.ROOK_WHITE.ordinal(),
+            Cell.QUEEN_WHITE.ordinal()
+    };
+
+    private ArchiveFormat() {
+    }
+
+    /**
+     * @param promotion - {@link Cell#ordinal()} of the promoted piece, 0 - none;
+     */
+    static short encodeMove(int from, int to, int promotion) {
+        int code = 0;
+        if (promotion != 0) {
+            // Knight, bishop, rook, queen of either side;
+            int white = (promotion & 1) != 0 ? promotion : promotion - 1;
+            for (int i = 1; i < PROMOTION_WHITE.length; i++) {
+                if (PROMOTION_WHITE[i] == white) {
+                    code = i;
+                    break;
+                }
+            }
+        }
+        return (short) (from | to << TO_SHIFT | code << PROMOTION_SHIFT);
+    }
+
+    static int moveFrom(short move) {
+        return move & SQUARE_MASK;
+    }
+
+    static int moveTo(short move) {
+        return (move >>> TO_SHIFT) & SQUARE_MASK;
+    }
+
+    /**
+     * @return ordinal of the promoted piece, the side is known by the last row, 0 - none;
+     */
+    static int movePromotion(short move) {
+        int code = (move >>> PROMOTION_SHIFT) & 0x7;
+        if (code == 0) {
+            return 0;
+        }
+        return Position.yOf(moveTo(move)) == 0 ? PROMOTION_WHITE[code] : PROMOTION_WHITE[code] + 1;
+    }
+
+    static int encodeResult(String result) {
+        for (int i = 0; i < RESULTS.length; i++) {
+            if (RESULTS[i].equals(result)) {
+                return i;
+            }
+        }
+        return RESULT_UNKNOWN;
+    }
+
+    static String decodeResult(int code) {
+        return code >= 0 && code < RESULTS.length ? RESULTS[code] : RESULTS[RESULT_UNKNOWN];
+    }
+}
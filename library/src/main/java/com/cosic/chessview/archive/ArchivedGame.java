@@ -0,0 +1,209 @@
+package com.cosic.chessview.archive;
+
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.FenSerializer;
+import com.cosic.chessview.board.MoveList;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.game.GameTimeline;
+import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.models.Move;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * View of one game record of the mapped {@link GameArchive}.
+ * Only the lengths of the record are read when the game is opened, moves and strings are decoded
+ * on request, so the start position goes to {@link com.cosic.chessview.ChessView#applyFen} and
+ * {@link #toTimeline()} to {@link com.cosic.chessview.ChessView#stepForward} right away.
+ */
+public final class ArchivedGame {
+
+    private final int mIndex;
+    private final ByteBuffer mRecord;
+
+    private final int mFenOffset;
+    private final int mResult;
+    private final int mTagCount;
+    private final int mTagsOffset;
+    private final int mMoveCount;
+    private final int mMovesOffset;
+
+    ArchivedGame(int index, ByteBuffer record) {
+        this.mIndex = index;
+        this.mRecord = record;
+
+        int offset = 0;
+        int flags = record.get(offset++);
+        if ((flags & ArchiveFormat.FLAG_START_FEN) != 0) {
+            mFenOffset = offset;
+            offset = skipString(offset);
+        } else {
+            mFenOffset = -1;
+        }
+        mResult = record.get(offset++);
+        mTagCount = unsignedShort(offset);
+        offset += 2;
+        mTagsOffset = offset;
+        for (int i = 0; i < 2 * mTagCount; i++) {
+            offset = skipString(offset);
+        }
+        mMoveCount = unsignedShort(offset);
+        mMovesOffset = offset + 2;
+    }
+
+    /**
+     * @return index of the game in the archive;
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    public String getStartFen() {
+        return mFenOffset >= 0 ? readString(mFenOffset) : FenParser.START_FEN;
+    }
+
+    /**
+     * @return "1-0", "0-1", "1/2-1/2" or "*";
+     */
+    public String getResult() {
+        return ArchiveFormat.decodeResult(mResult);
+    }
+
+    public int getTagCount() {
+        return mTagCount;
+    }
+
+    public String getTagName(int index) {
+        return readString(tagOffset(2 * index));
+    }
+
+    public String getTagValue(int index) {
+        return readString(tagOffset(2 * index + 1));
+    }
+
+    /**
+     * @return value of the tag or null;
+     */
+    public String getTag(String name) {
+        int offset = mTagsOffset;
+        for (int i = 0; i < mTagCount; i++) {
+            if (name.equals(readString(offset))) {
+                return readString(skipString(offset));
+            }
+            offset = skipString(skipString(offset));
+        }
+        return null;
+    }
+
+    /**
+     * @return count of plies;
+     */
+    public int getMoveCount() {
+        return mMoveCount;
+    }
+
+    public int getFrom(int ply) {
+        return ArchiveFormat.moveFrom(move(ply));
+    }
+
+    public int getTo(int ply) {
+        return ArchiveFormat.moveTo(move(ply));
+    }
+
+    /**
+     * @return the piece a pawn is promoted to by the move or null;
+     */
+    public Cell getPromotion(int ply) {
+        int promotion = ArchiveFormat.movePromotion(move(ply));
+        return promotion != 0 ? Position.cellOf(promotion) : null;
+    }
+
+    public Move getMove(int ply) {
+        return PackedMove.toMove(getPackedMove(ply));
+    }
+
+    /**
+     * @return see {@link PackedMove};
+     */
+    public int getPackedMove(int ply) {
+        short move = move(ply);
+        return PackedMove.of(ArchiveFormat.moveFrom(move), ArchiveFormat.moveTo(move),
+                ArchiveFormat.movePromotion(move), 0);
+    }
+
+    /**
+     * Append all moves to the list;
+     */
+    public void getPackedMoves(MoveList moves) {
+        moves.ensureCapacity(moves.size() + mMoveCount);
+        for (int ply = 0; ply < mMoveCount; ply++) {
+            moves.add(getPackedMove(ply));
+        }
+    }
+
+    /**
+     * Replay the moves into the position;
+     *
+     * @param ply - count of moves to make, from 0 to {@link #getMoveCount()};
+     * @return the same position;
+     */
+    public Position getPosition(int ply, Position position) {
+        FenParser.parse(getStartFen(), position);
+        for (int i = 0; i < ply; i++) {
+            PackedMove.apply(position, getPackedMove(i));
+        }
+        return position;
+    }
+
+    /**
+     * @return position after the ply for {@link com.cosic.chessview.ChessView#applyFen};
+     */
+    public String getFen(int ply) {
+        return FenSerializer.toFen(getPosition(ply, new Position()));
+    }
+
+    public GameTimeline toTimeline() {
+        GameTimeline timeline = new GameTimeline(FenParser.parse(getStartFen()));
+        for (int ply = 0; ply < mMoveCount; ply++) {
+            int move = getPackedMove(ply);
+            timeline.addMove(PackedMove.from(move), PackedMove.to(move), PackedMove.promotionCell(move));
+        }
+        return timeline;
+    }
+
+    private short move(int ply) {
+        if (ply < 0 || ply >= mMoveCount) {
+            throw new IndexOutOfBoundsException("Ply " + ply + " of " + mMoveCount);
+        }
+        return mRecord.getShort(mMovesOffset + 2 * ply);
+    }
+
+    private int tagOffset(int string) {
+        if (string < 0 || string >= 2 * mTagCount) {
+            throw new IndexOutOfBoundsException("Tag " + string / 2 + " of " + mTagCount);
+        }
+        int offset = mTagsOffset;
+        for (int i = 0; i < string; i++) {
+            offset = skipString(offset);
+        }
+        return offset;
+    }
+
+    private int unsignedShort(int offset) {
+        return mRecord.getShort(offset) & 0xFFFF;
+    }
+
+    private int skipString(int offset) {
+        return offset + 2 + unsignedShort(offset);
+    }
+
+    private String readString(int offset) {
+        int length = unsignedShort(offset);
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = mRecord.duplicate();
+        buffer.position(offset + 2);
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,109 @@
+package com.cosic.chessview.archive;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only game archive written by {@link GameArchiveWriter}, see {@link ArchiveFormat}.
+ * <p>
+ * The file is memory-mapped, {@link #get(int)} reads one entry of the offset table and returns
+ * a view of the game record, so opening any game costs the same and nothing is copied until
+ * tags or moves are decoded. Files larger than 2 GB are mapped by overlapping segments.
+ * <p>
+ * The instance is thread-safe, the mapping is released by the garbage collector after {@link #close()}.
+ */
+public final class GameArchive implements Closeable {
+
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * Segments overlap by the largest record, so any record is inside one segment;
+     */
+    private static final long SEGMENT_OVERLAP = ArchiveFormat.MAX_RECORD_SIZE;
+
+    private final FileChannel mChannel;
+    private final MappedByteBuffer[] mSegments;
+    private final int mGameCount;
+    private final long mIndexOffset;
+
+    private GameArchive(FileChannel channel, MappedByteBuffer[] segments, int gameCount, long indexOffset) {
+        this.mChannel = channel;
+        this.mSegments = segments;
+        this.mGameCount = gameCount;
+        this.mIndexOffset = indexOffset;
+    }
+
+    public static GameArchive open(File file) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            final long size = channel.size();
+            if (size < ArchiveFormat.HEADER_SIZE) {
+                throw new IOException("Not a game archive: " + file);
+            }
+            int segmentCount = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long offset = i * SEGMENT_SIZE;
+                long length = Math.min(size - offset, SEGMENT_SIZE + SEGMENT_OVERLAP);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            }
+
+            ByteBuffer header = segments[0];
+            checkHeader(header);
+            long gameCount = header.getLong(ArchiveFormat.HEADER_GAME_COUNT);
+            long indexOffset = header.getLong(ArchiveFormat.HEADER_INDEX_OFFSET);
+            if (gameCount < 0 || gameCount > Integer.MAX_VALUE
+                    || indexOffset + gameCount * ArchiveFormat.OFFSET_SIZE > size) {
+                throw new IOException("Corrupted offset table of " + file);
+            }
+            return new GameArchive(channel, segments, (int) gameCount, indexOffset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static void checkHeader(ByteBuffer header) throws IOException {
+        if (header.getInt(0) != ArchiveFormat.MAGIC) {
+            throw new IOException("Not a game archive");
+        }
+        if (header.getShort(4) > ArchiveFormat.VERSION) {
+            throw new IOException("Unsupported archive version " + header.getShort(4));
+        }
+    }
+
+    /**
+     * @return count of games;
+     */
+    public int size() {
+        return mGameCount;
+    }
+
+    /**
+     * @param index - from 0 to {@link #size()} - 1;
+     */
+    public ArchivedGame get(int index) {
+        if (index < 0 || index >= mGameCount) {
+            throw new IndexOutOfBoundsException("Game " + index + " of " + mGameCount);
+        }
+        long offset = getLong(mIndexOffset + (long) index * ArchiveFormat.OFFSET_SIZE);
+        MappedByteBuffer segment = mSegments[(int) (offset / SEGMENT_SIZE)];
+        ByteBuffer record = segment.duplicate();
+        record.position((int) (offset % SEGMENT_SIZE));
+        return new ArchivedGame(index, record.slice());
+    }
+
+    private long getLong(long offset) {
+        return mSegments[(int) (offset / SEGMENT_SIZE)].getLong((int) (offset % SEGMENT_SIZE));
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+}
@@ -0,0 +1,237 @@
+package com.cosic.chessview.archive;
+
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.pgn.PgnGame;
+import com.cosic.chessview.pgn.PgnIngest;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes games into the archive read by {@link GameArchive}, see {@link ArchiveFormat}.
+ * <p>
+ * Records are only appended: reopening an archive with {@link #append(File)} keeps all existing
+ * games and their bytes, the new offset table and then the header are written by {@link #close()}.
+ * The writer may be used as {@link PgnIngest.GameSink} to import PGN straight into the archive.
+ * <p>
+ * The instance is not thread-safe.
+ */
+public final class GameArchiveWriter implements PgnIngest.GameSink, Closeable {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int INITIAL_GAME_COUNT = 1024;
+
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Position in the file where the buffer will be written;
+     */
+    private long mFilePosition;
+
+    private long[] mOffsets;
+    private int mGameCount;
+
+    private boolean mClosed = false;
+
+    private GameArchiveWriter(FileChannel channel, long[] offsets, int gameCount, long filePosition) {
+        this.mChannel = channel;
+        this.mOffsets = offsets;
+        this.mGameCount = gameCount;
+        this.mFilePosition = filePosition;
+    }
+
+    /**
+     * Create an empty archive, existing file is overwritten;
+     */
+    public static GameArchiveWriter create(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(0);
+        FileChannel channel = randomAccessFile.getChannel();
+        GameArchiveWriter writer = new GameArchiveWriter(channel, new long[INITIAL_GAME_COUNT], 0,
+                ArchiveFormat.HEADER_SIZE);
+        writer.writeHeader(0, 0L);
+        return writer;
+    }
+
+    /**
+     * Open the archive to add games after the existing ones, the file is created if it doesn't exist;
+     */
+    public static GameArchiveWriter append(File file) throws IOException {
+        if (!file.exists() || file.length() == 0) {
+            return create(file);
+        }
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(ArchiveFormat.HEADER_SIZE);
+            readFully(channel, header, 0);
+            GameArchive.checkHeader(header);
+            int gameCount = (int) header.getLong(ArchiveFormat.HEADER_GAME_COUNT);
+            long indexOffset = header.getLong(ArchiveFormat.HEADER_INDEX_OFFSET);
+
+            long[] offsets = new long[Math.max(INITIAL_GAME_COUNT, gameCount * 2)];
+            if (gameCount > 0) {
+                ByteBuffer table = ByteBuffer.allocate(gameCount * ArchiveFormat.OFFSET_SIZE);
+                readFully(channel, table, indexOffset);
+                table.asLongBuffer().get(offsets, 0, gameCount);
+            }
+            // The old table stays in the file, new records go after it;
+            return new GameArchiveWriter(channel, offsets, gameCount, channel.size());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return count of games in the archive including the ones added by this writer;
+     */
+    public int size() {
+        return mGameCount;
+    }
+
+    @Override
+    public void onGame(long index, PgnGame game) throws IOException {
+        add(game);
+    }
+
+    /**
+     * @return index of the game in the archive;
+     */
+    public int add(PgnGame game) throws IOException {
+        String fen = game.getTag("FEN") != null ? game.getStartFen() : null;
+        int moveCount = game.getMoveCount();
+        int tagCount = game.getTagCount();
+        if (moveCount > ArchiveFormat.MAX_SHORT || tagCount > ArchiveFormat.MAX_SHORT) {
+            throw new IOException("Game is too long: " + moveCount + " plies, " + tagCount + " tags");
+        }
+
+        ByteBuffer record = mBuffer;
+        int recordSize = 1 + 1 + 2 + 2 + 2 * moveCount;
+        byte[] fenBytes = fen != null ? encode(fen) : null;
+        if (fenBytes != null) {
+            recordSize += 2 + fenBytes.length;
+        }
+        byte[][] tagBytes = new byte[2 * tagCount][];
+        for (int i = 0; i < tagCount; i++) {
+            tagBytes[2 * i] = encode(game.getTagName(i));
+            tagBytes[2 * i + 1] = encode(game.getTagValue(i));
+            recordSize += 4 + tagBytes[2 * i].length + tagBytes[2 * i + 1].length;
+        }
+        if (recordSize > ArchiveFormat.MAX_RECORD_SIZE) {
+            throw new IOException("Game record is too large: " + recordSize + " bytes");
+        }
+        if (record.remaining() < recordSize) {
+            flush();
+            if (record.remaining() < recordSize) {
+                record = ByteBuffer.allocate(recordSize);
+            }
+        }
+
+        long offset = mFilePosition + mBuffer.position();
+        record.put(fenBytes != null ? (byte) ArchiveFormat.FLAG_START_FEN : 0);
+        if (fenBytes != null) {
+            putString(record, fenBytes);
+        }
+        record.put((byte) ArchiveFormat.encodeResult(game.getResult()));
+        record.putShort((short) tagCount);
+        for (byte[] bytes : tagBytes) {
+            putString(record, bytes);
+        }
+        record.putShort((short) moveCount);
+        for (int ply = 0; ply < moveCount; ply++) {
+            int move = game.getPackedMove(ply);
+            record.putShort(ArchiveFormat.encodeMove(PackedMove.from(move), PackedMove.to(move),
+                    PackedMove.promotion(move)));
+        }
+        if (record != mBuffer) {
+            record.flip();
+            writeFully(mChannel, record, mFilePosition);
+            mFilePosition += recordSize;
+        }
+
+        if (mGameCount == mOffsets.length) {
+            mOffsets = Arrays.copyOf(mOffsets, mGameCount * 2);
+        }
+        mOffsets[mGameCount] = offset;
+        return mGameCount++;
+    }
+
+    /**
+     * Write the offset table and the header;
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            flush();
+            long indexOffset = mFilePosition;
+            ByteBuffer table = ByteBuffer.allocate(mGameCount * ArchiveFormat.OFFSET_SIZE);
+            table.asLongBuffer().put(mOffsets, 0, mGameCount);
+            writeFully(mChannel, table, indexOffset);
+            mChannel.force(false);
+            writeHeader(mGameCount, indexOffset);
+            mChannel.force(false);
+        } finally {
+            mChannel.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        mBuffer.flip();
+        int count = mBuffer.remaining();
+        writeFully(mChannel, mBuffer, mFilePosition);
+        mFilePosition += count;
+        mBuffer.clear();
+    }
+
+    private void writeHeader(int gameCount, long indexOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(ArchiveFormat.HEADER_SIZE);
+        header.putInt(ArchiveFormat.MAGIC);
+        header.putShort(ArchiveFormat.VERSION);
+        header.putShort((short) 0);
+        header.putLong(gameCount);
+        header.putLong(indexOffset);
+        header.putLong(0L);
+        header.flip();
+        writeFully(mChannel, header, 0);
+    }
+
+    private static byte[] encode(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > ArchiveFormat.MAX_SHORT) {
+            throw new IOException("String is too long: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new IOException("Unexpected end of the archive");
+            }
+            position += count;
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,39 @@
+package com.cosic.chessview.board;
+
+/**
+ * Read access to a packed chess position, implemented by mutable {@link Position}
+ * and immutable {@link BoardSnapshot}.
+ */
+public interface Board {
+
+    /**
+     * @return {@link com.cosic.chessview.models.Cell#ordinal()} of the piece on the square;
+     */
+    int getCellOrdinal(int square);
+
+    boolean isWhiteToMove();
+
+    /**
+     * @return bit set of Position.CASTLING_* flags;
+     */
+    int getCastlingRights();
+
+    /**
+     * @return en passant target square or {@link Position#NO_SQUARE};
+     */
+    int getEnPassantSquare();
+
+    int getHalfmoveClock();
+
+    int getFullmoveNumber();
+
+    /**
+     * @return the canonical FEN this board was parsed from if the board has not been changed since, otherwise null;
+     */
+    String getSourceFen();
+
+    /**
+     * @return Zobrist hash of pieces, side to move, castling rights and en passant square, see {@link Zobrist};
+     */
+    long getZobristHash();
+}
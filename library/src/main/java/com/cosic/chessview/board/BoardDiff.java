@@ -0,0 +1,281 @@
+package com.cosic.chessview.board;
+
+import com.cosic.chessview.models.Action;
+import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.models.FadeIn;
+import com.cosic.chessview.models.FadeOut;
+import com.cosic.chessview.models.Move;
+
+/**
+ * Computes the animation steps which turn one position into another in one pass over the cells.
+ * Positions may be any number of plies apart: pieces of the same kind are paired by {@link MovePlanner}
+ * with minimal total travel, only pieces which are really gone fade out and really new ones fade in.
+ * <p>
+ * The first step contains {@link Move}s and {@link FadeOut}s of captured pieces (castling is two
+ * simultaneous moves, en passant fades out the pawn behind the target cell). The second step,
+ * if needed, swaps promoted pawns with the new pieces and fades in pieces which came from nowhere.
+ * <p>
+ * The instance keeps reusable buffers and is not thread-safe.
+ */
+public final class BoardDiff {
+
+    public static final int KIND_NONE = 0;
+    public static final int KIND_MOVE = 1;
+    public static final int KIND_CAPTURE = 1 << 1;
+    public static final int KIND_PROMOTION = 1 << 2;
+    public static final int KIND_CASTLING = 1 << 3;
+    public static final int KIND_EN_PASSANT = 1 << 4;
+
+    private static final Action[][] NO_ACTIONS = new Action[0][];
+
+    private static final int CELL_COUNT = 13;
+    private static final int SQUARES = Position.COUNT_OF_SQUARES;
+    private static final int USED = -1;
+
+    private static final float FADE = 0f;
+
+    private static final Cell[] CELLS = Cell.values();
+    private static final int PAWN_WHITE = Cell.PAWN_WHITE.ordinal();
+    private static final int PAWN_BLACK = Cell.PAWN_BLACK.ordinal();
+    private static final int ROOK_WHITE = Cell.ROOK_WHITE.ordinal();
+    private static final int ROOK_BLACK = Cell.ROOK_BLACK.ordinal();
+    private static final int KING_WHITE = Cell.KING_WHITE.ordinal();
+    private static final int KING_BLACK = Cell.KING_BLACK.ordinal();
+
+    /**
+     * Squares by cell ordinal where the piece is gone / has appeared;
+     */
+    private final int[] mVanished = new int[CELL_COUNT * SQUARES];
+    private final int[] mVanishedCount = new int[CELL_COUNT];
+    private final int[] mAppeared = new int[CELL_COUNT * SQUARES];
+    private final int[] mAppearedCount = new int[CELL_COUNT];
+
+    private final int[] mMoveFrom = new int[SQUARES];
+    private final int[] mMoveTo = new int[SQUARES];
+    private final int[] mMoveCell = new int[SQUARES];
+    private int mMoveCount;
+
+    private final int[] mFadeOut = new int[SQUARES];
+    private int mFadeOutCount;
+
+    private final int[] mPromotion = new int[SQUARES];
+    private final int[] mPromotionCell = new int[SQUARES];
+    private int mPromotionCount;
+
+    private final int[] mFadeIn = new int[SQUARES];
+    private final int[] mFadeInCell = new int[SQUARES];
+    private int mFadeInCount;
+
+    private int mKind;
+
+    private final MovePlanner mPlanner = new MovePlanner();
+    private final int[] mAssignment = new int[SQUARES];
+
+    /**
+     * First array index - index of iteration;
+     * Second array index - piece index;
+     *
+     * @return steps of animation, empty array if positions have the same pieces;
+     */
+    public Action[][] diff(Board from, Board to) {
+        for (int i = 0; i < CELL_COUNT; i++) {
+            mVanishedCount[i] = 0;
+            mAppearedCount[i] = 0;
+        }
+        mMoveCount = 0;
+        mFadeOutCount = 0;
+        mPromotionCount = 0;
+        mFadeInCount = 0;
+        mKind = KIND_NONE;
+
+        for (int square = 0; square < SQUARES; square++) {
+            int before = from.getCellOrdinal(square);
+            int after = to.getCellOrdinal(square);
+            if (before == after) continue;
+            if (before != 0) {
+                mVanished[before * SQUARES + mVanishedCount[before]++] = square;
+            }
+            if (after != 0) {
+                mAppeared[after * SQUARES + mAppearedCount[after]++] = square;
+            }
+        }
+
+        // Kings first, so the king's move of castling is the first (selected) one;
+        for (int cell = CELL_COUNT - 1; cell > 0; cell--) {
+            pair(cell);
+        }
+        pairPromotions(PAWN_WHITE, 0);
+        pairPromotions(PAWN_BLACK, Position.COUNT_OF_CELLS - 1);
+
+        for (int cell = 1; cell < CELL_COUNT; cell++) {
+            int offset = cell * SQUARES;
+            for (int i = 0; i < mVanishedCount[cell]; i++) {
+                int square = mVanished[offset + i];
+                if (square != USED) {
+                    mFadeOut[mFadeOutCount++] = square;
+                }
+            }
+            for (int i = 0; i < mAppearedCount[cell]; i++) {
+                int square = mAppeared[offset + i];
+                if (square != USED) {
+                    mFadeIn[mFadeInCount] = square;
+                    mFadeInCell[mFadeInCount++] = cell;
+                }
+            }
+        }
+
+        classify(from);
+        return buildActions();
+    }
+
+    /**
+     * @return KIND_* flags of the last {@link #diff(Board, Board)};
+     */
+    public int getKind() {
+        return mKind;
+    }
+
+    /**
+     * Pair gone and appeared pieces of the same kind with minimal total travel distance;
+     */
+    private void pair(int cell) {
+        final int offset = cell * SQUARES;
+        final int vanishedCount = mVanishedCount[cell];
+        final int appearedCount = mAppearedCount[cell];
+        if (vanishedCount == 0 || appearedCount == 0) {
+            return;
+        }
+        mPlanner.assign(mVanished, offset, vanishedCount, mAppeared, offset, appearedCount, mAssignment);
+        for (int i = 0; i < vanishedCount; i++) {
+            int j = mAssignment[i];
+            if (j < 0) continue;
+            addMove(mVanished[offset + i], mAppeared[offset + j], cell);
+        }
+        for (int i = 0; i < vanishedCount; i++) {
+            int j = mAssignment[i];
+            if (j < 0) continue;
+            mVanished[offset + i] = USED;
+            mAppeared[offset + j] = USED;
+        }
+    }
+
+    /**
+     * Pair pawns which are gone with new pieces of the same side on the last rank;
+     */
+    private void pairPromotions(int pawn, int lastRow) {
+        final int pawnOffset = pawn * SQUARES;
+        final int pawnRow = lastRow == 0 ? 1 : Position.COUNT_OF_CELLS - 2;
+        pawns:
+        for (int i = 0; i < mVanishedCount[pawn]; i++) {
+            int pawnSquare = mVanished[pawnOffset + i];
+            if (pawnSquare == USED || Position.yOf(pawnSquare) != pawnRow) continue;
+            // Rook, knight, bishop and queen of the pawn side;
+            for (int cell = pawn + 2; cell < KING_WHITE; cell += 2) {
+                int offset = cell * SQUARES;
+                for (int j = 0; j < mAppearedCount[cell]; j++) {
+                    int square = mAppeared[offset + j];
+                    if (square == USED || Position.yOf(square) != lastRow
+                            || Math.abs(Position.xOf(square) - Position.xOf(pawnSquare)) > 1) continue;
+                    addMove(pawnSquare, square, pawn);
+                    mPromotion[mPromotionCount] = square;
+                    mPromotionCell[mPromotionCount++] = cell;
+                    mVanished[pawnOffset + i] = USED;
+                    mAppeared[offset + j] = USED;
+                    continue pawns;
+                }
+            }
+        }
+    }
+
+    private void addMove(int from, int to, int cell) {
+        mMoveFrom[mMoveCount] = from;
+        mMoveTo[mMoveCount] = to;
+        mMoveCell[mMoveCount++] = cell;
+    }
+
+    private void classify(Board from) {
+        if (mMoveCount > 0) {
+            mKind |= KIND_MOVE;
+        }
+        if (mPromotionCount > 0) {
+            mKind |= KIND_PROMOTION;
+        }
+        for (int i = 0; i < mMoveCount; i++) {
+            int cell = mMoveCell[i];
+            int fromSquare = mMoveFrom[i];
+            int toSquare = mMoveTo[i];
+            if (from.getCellOrdinal(toSquare) != 0) {
+                mKind |= KIND_CAPTURE;
+            }
+            if ((cell == KING_WHITE || cell == KING_BLACK)
+                    && Math.abs(Position.xOf(toSquare) - Position.xOf(fromSquare)) == 2
+                    && hasMove(cell == KING_WHITE ? ROOK_WHITE : ROOK_BLACK, Position.yOf(fromSquare))) {
+                mKind |= KIND_CASTLING;
+            }
+            if ((cell == PAWN_WHITE || cell == PAWN_BLACK)
+                    && Position.xOf(toSquare) != Position.xOf(fromSquare)
+                    && from.getCellOrdinal(toSquare) == 0
+                    && hasFadeOut(cell == PAWN_WHITE ? PAWN_BLACK : PAWN_WHITE,
+                    Position.square(Position.xOf(toSquare), Position.yOf(fromSquare)), from)) {
+                mKind |= KIND_EN_PASSANT | KIND_CAPTURE;
+            }
+        }
+    }
+
+    private boolean hasMove(int cell, int row) {
+        for (int i = 0; i < mMoveCount; i++) {
+            if (mMoveCell[i] == cell && Position.yOf(mMoveFrom[i]) == row && Position.yOf(mMoveTo[i]) == row) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasFadeOut(int cell, int square, Board from) {
+        for (int i = 0; i < mFadeOutCount; i++) {
+            if (mFadeOut[i] == square && from.getCellOrdinal(square) == cell) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Action[][] buildActions() {
+        int firstCount = mMoveCount + mFadeOutCount;
+        int secondCount = 2 * mPromotionCount + mFadeInCount;
+        if (firstCount == 0 && secondCount == 0) {
+            return NO_ACTIONS;
+        }
+        if (firstCount == 0) {
+            firstCount = secondCount;
+            secondCount = 0;
+        }
+        Action[][] actions = new Action[secondCount > 0 ? 2 : 1][];
+        Action[] first = actions[0] = new Action[firstCount];
+        Action[] second = secondCount > 0 ? (actions[1] = new Action[secondCount]) : first;
+
+        int index = 0;
+        for (int i = 0; i < mMoveCount; i++) {
+            first[index++] = new Move(
+                    Position.xOf(mMoveFrom[i]), Position.yOf(mMoveFrom[i]),
+                    Position.xOf(mMoveTo[i]), Position.yOf(mMoveTo[i]));
+        }
+        for (int i = 0; i < mFadeOutCount; i++) {
+            first[index++] = new FadeOut(Position.xOf(mFadeOut[i]), Position.yOf(mFadeOut[i]), FADE);
+        }
+
+        if (second != first) {
+            index = 0;
+        }
+        for (int i = 0; i < mPromotionCount; i++) {
+            int square = mPromotion[i];
+            second[index++] = new FadeOut(Position.xOf(square), Position.yOf(square), FADE);
+            second[index++] = new FadeIn(Position.xOf(square), Position.yOf(square), FADE, CELLS[mPromotionCell[i]]);
+        }
+        for (int i = 0; i < mFadeInCount; i++) {
+            int square = mFadeIn[i];
+            second[index++] = new FadeIn(Position.xOf(square), Position.yOf(square), FADE, CELLS[mFadeInCell[i]]);
+        }
+        return actions;
+    }
+}
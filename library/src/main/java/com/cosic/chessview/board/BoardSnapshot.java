@@ -0,0 +1,262 @@
+package com.cosic.chessview.board;
+
+import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.models.Side;
+
+/**
+ * Immutable chess position which can be shared between views and history entries.
+ * <p>
+ * Cells are packed as 4-bit {@link Cell} ordinals into four longs, selected cells are
+ * kept in a 64-bit mask, so a snapshot costs a few dozens of bytes instead of 64 objects.
+ * Squares are indexed the same way as in {@link Position}.
+ */
+public final class BoardSnapshot implements Board {
+
+    private static final int BITS_PER_CELL = 4;
+    private static final int CELLS_PER_LONG = 16;
+    private static final long CELL_MASK = 0xFL;
+
+    private static final int HEADER_WHITE_TO_MOVE = 1;
+    private static final int HEADER_CASTLING_SHIFT = 1;
+    private static final int HEADER_EN_PASSANT_SHIFT = 5;
+
+    private final long mCells0;
+    private final long mCells1;
+    private final long mCells2;
+    private final long mCells3;
+
+    /**
+     * Side to move, castling rights and en passant square + 1;
+     */
+    private final int mHeader;
+    private final int mHalfmoveClock;
+    private final int mFullmoveNumber;
+
+    /**
+     * Bit per square, 1 - the cell is selected;
+     */
+    private final long mSelectionMask;
+
+    /**
+     * See {@link Board#getSourceFen()};
+     */
+    private final String mSourceFen;
+
+    private final long mHash;
+
+    private BoardSnapshot(long cells0, long cells1, long cells2, long cells3, int header,
+                          int halfmoveClock, int fullmoveNumber, long selectionMask, String sourceFen, long hash) {
+        this.mCells0 = cells0;
+        this.mCells1 = cells1;
+        this.mCells2 = cells2;
+        this.mCells3 = cells3;
+        this.mHeader = header;
+        this.mHalfmoveClock = halfmoveClock;
+        this.mFullmoveNumber = fullmoveNumber;
+        this.mSelectionMask = selectionMask;
+        this.mSourceFen = sourceFen;
+        this.mHash = hash;
+    }
+
+    public static BoardSnapshot of(Position position) {
+        return of(position, 0L);
+    }
+
+    public static BoardSnapshot of(Position position, long selectionMask) {
+        final byte[] squares = position.mSquares;
+        int header = (position.isWhiteToMove() ? HEADER_WHITE_TO_MOVE : 0)
+                | position.getCastlingRights() << HEADER_CASTLING_SHIFT
+                | (position.getEnPassantSquare() + 1) << HEADER_EN_PASSANT_SHIFT;
+        return new BoardSnapshot(
+                pack(squares, 0),
+                pack(squares, CELLS_PER_LONG),
+                pack(squares, 2 * CELLS_PER_LONG),
+                pack(squares, 3 * CELLS_PER_LONG),
+                header,
+                position.getHalfmoveClock(),
+                position.getFullmoveNumber(),
+                selectionMask,
+                position.getSourceFen(),
+                position.getZobristHash());
+    }
+
+    private static long pack(byte[] squares, int offset) {
+        long packed = 0L;
+        for (int i = CELLS_PER_LONG - 1; i >= 0; i--) {
+            packed = (packed << BITS_PER_CELL) | squares[offset + i];
+        }
+        return packed;
+    }
+
+    private static void unpack(long packed, byte[] squares, int offset) {
+        for (int i = 0; i < CELLS_PER_LONG; i++) {
+            squares[offset + i] = (byte) (packed & CELL_MASK);
+            packed >>>= BITS_PER_CELL;
+        }
+    }
+
+    /**
+     * Write cells and the header into the mutable position;
+     *
+     * @return the same position;
+     */
+    public Position toPosition(Position position) {
+        final byte[] squares = position.mSquares;
+        unpack(mCells0, squares, 0);
+        unpack(mCells1, squares, CELLS_PER_LONG);
+        unpack(mCells2, squares, 2 * CELLS_PER_LONG);
+        unpack(mCells3, squares, 3 * CELLS_PER_LONG);
+        position.setWhiteToMove(isWhiteToMove());
+        position.setCastlingRights(getCastlingRights());
+        position.setEnPassantSquare(getEnPassantSquare());
+        position.setHalfmoveClock(mHalfmoveClock);
+        position.setFullmoveNumber(mFullmoveNumber);
+        position.mSourceFen = mSourceFen;
+        position.mHash = mHash;
+        return position;
+    }
+
+    /**
+     * @return the same position with other selected cells;
+     */
+    public BoardSnapshot withSelection(long selectionMask) {
+        if (selectionMask == mSelectionMask) {
+            return this;
+        }
+        return new BoardSnapshot(mCells0, mCells1, mCells2, mCells3, mHeader,
+                mHalfmoveClock, mFullmoveNumber, selectionMask, mSourceFen, mHash);
+    }
+
+    /**
+     * @return {@link Cell#ordinal()} of the piece on the square;
+     */
+    @Override
+    public int getCellOrdinal(int square) {
+        long packed;
+        switch (square >>> 4) {
+            case 0:
+                packed = mCells0;
+                break;
+            case 1:
+                packed = mCells1;
+                break;
+            case 2:
+                packed = mCells2;
+                break;
+            default:
+                packed = mCells3;
+                break;
+        }
+        return (int) ((packed >>> ((square & (CELLS_PER_LONG - 1)) * BITS_PER_CELL)) & CELL_MASK);
+    }
+
+    public Cell getCell(int square) {
+        return Position.CELLS[getCellOrdinal(square)];
+    }
+
+    public Cell getCell(int x, int y) {
+        return getCell(Position.square(x, y));
+    }
+
+    public long getSelectionMask() {
+        return mSelectionMask;
+    }
+
+    public boolean isSelected(int square) {
+        return (mSelectionMask & (1L << square)) != 0;
+    }
+
+    public boolean isSelected(int x, int y) {
+        return isSelected(Position.square(x, y));
+    }
+
+    @Override
+    public boolean isWhiteToMove() {
+        return (mHeader & HEADER_WHITE_TO_MOVE) != 0;
+    }
+
+    public Side getSideToMove() {
+        return isWhiteToMove() ? Side.WHITE : Side.BLACK;
+    }
+
+    @Override
+    public int getCastlingRights() {
+        return (mHeader >>> HEADER_CASTLING_SHIFT) & Position.CASTLING_ALL;
+    }
+
+    @Override
+    public int getEnPassantSquare() {
+        return (mHeader >>> HEADER_EN_PASSANT_SHIFT) - 1;
+    }
+
+    @Override
+    public int getHalfmoveClock() {
+        return mHalfmoveClock;
+    }
+
+    @Override
+    public int getFullmoveNumber() {
+        return mFullmoveNumber;
+    }
+
+    @Override
+    public String getSourceFen() {
+        return mSourceFen;
+    }
+
+    @Override
+    public long getZobristHash() {
+        return mHash;
+    }
+
+    /**
+     * @return true if both snapshots have the same pieces and header, selection is ignored;
+     */
+    public boolean samePosition(BoardSnapshot other) {
+        return other != null
+                && mHash == other.mHash
+                && mCells0 == other.mCells0
+                && mCells1 == other.mCells1
+                && mCells2 == other.mCells2
+                && mCells3 == other.mCells3
+                && mHeader == other.mHeader
+                && mHalfmoveClock == other.mHalfmoveClock
+                && mFullmoveNumber == other.mFullmoveNumber;
+    }
+
+    /**
+     * @return bit per square whose piece or selection differs in the other snapshot;
+     */
+    public long changedSquares(BoardSnapshot other) {
+        return changedSquares(mCells0 ^ other.mCells0, 0)
+                | changedSquares(mCells1 ^ other.mCells1, CELLS_PER_LONG)
+                | changedSquares(mCells2 ^ other.mCells2, 2 * CELLS_PER_LONG)
+                | changedSquares(mCells3 ^ other.mCells3, 3 * CELLS_PER_LONG)
+                | (mSelectionMask ^ other.mSelectionMask);
+    }
+
+    private static long changedSquares(long difference, int firstSquare) {
+        long squares = 0L;
+        for (; difference != 0; difference &= difference - 1) {
+            squares |= 1L << (firstSquare + Long.numberOfTrailingZeros(difference) / BITS_PER_CELL);
+        }
+        return squares;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BoardSnapshot)) return false;
+        BoardSnapshot other = (BoardSnapshot) o;
+        return samePosition(other) && mSelectionMask == other.mSelectionMask;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = mHash;
+        h = 31 * h + mHalfmoveClock;
+        h = 31 * h + mFullmoveNumber;
+        h = 31 * h + mSelectionMask;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,23 @@
+package com.cosic.chessview.board;
+
+/**
+ * Thrown by {@link FenParser} when the input is not a valid Forsyth - Edwards Notation.
+ */
+public class FenFormatException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int mErrorOffset;
+
+    public FenFormatException(String message, int errorOffset) {
+        super(message + " at position " + errorOffset);
+        this.mErrorOffset = errorOffset;
+    }
+
+    /**
+     * @return index of the offending character in the parsed text;
+     */
+    public int getErrorOffset() {
+        return mErrorOffset;
+    }
+}
@@ -0,0 +1,285 @@
+package com.cosic.chessview.board;
+
+import com.cosic.chessview.models.Cell;
+
+/**
+ * Single pass parser of the Forsyth - Edwards Notation into a packed {@link Position}.
+ * <p>
+ * All six fields are supported: "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1".
+ * Trailing fields may be omitted, in this case they get the default values "w - - 0 1",
+ * so the placement-only FENs used by {@link com.cosic.chessview.ChessView#applyFen} are still accepted.
+ * <p>
+ * The parser does not allocate anything while the input is valid.
+ * A complete six-field FEN given as {@link String} is remembered by the position
+ * for {@link FenSerializer} if it is canonical: single spaces, castling rights in "KQkq" order,
+ * merged empty squares and counters without leading zeros.
+ * More information: @see <a href="Wiki">https://en.wikipedia.org/wiki/Forsyth%E2%80%93Edwards_Notation</a>
+ */
+public final class FenParser {
+
+    /**
+     * Standard start position;
+     */
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private static final byte NO_PIECE = -1;
+
+    /**
+     * Cell ordinal by FEN piece letter;
+     */
+    private static final byte[] PIECE_BY_CHAR = new byte[128];
+
+    static {
+        for (int i = 0; i < PIECE_BY_CHAR.length; i++) {
+            PIECE_BY_CHAR[i] = NO_PIECE;
+        }
+        for (Cell cell : Cell.values()) {
+            if (cell != Cell.EMPTY) {
+                PIECE_BY_CHAR[cell.getPiece()] = (byte) cell.ordinal();
+            }
+        }
+    }
+
+    private FenParser() {
+    }
+
+    /**
+     * Parse fen into the position, previous content of the position is overwritten;
+     *
+     * @throws FenFormatException if the fen is malformed, the position is left in an undefined state;
+     */
+    public static void parse(CharSequence fen, Position position) {
+        if (fen == null) {
+            throw new FenFormatException("FEN is null", 0);
+        }
+
+        final int length = fen.length();
+        final byte[] squares = position.mSquares;
+        int index = 0;
+
+        // Whether the text is the one FenSerializer writes;
+        boolean canonical = true;
+
+        // Piece placement;
+        long hash = 0L;
+        int square = 0;
+        int x = 0;
+        boolean afterDigit = false;
+        while (true) {
+            if (index >= length) {
+                throw new FenFormatException("Unexpected end of piece placement", index);
+            }
+            char c = fen.charAt(index);
+            if (c >= '1' && c <= '8') {
+                int count = c - '0';
+                if (x + count > Position.COUNT_OF_CELLS) {
+                    throw new FenFormatException("Too many squares in rank", index);
+                }
+                for (int k = 0; k < count; k++) {
+                    squares[square++] = 0;
+                }
+                x += count;
+                canonical &= !afterDigit;
+                afterDigit = true;
+            } else if (c == '/') {
+                if (x != Position.COUNT_OF_CELLS) {
+                    throw new FenFormatException("Unexpected '/'", index);
+                }
+                x = 0;
+                afterDigit = false;
+            } else {
+                byte piece = c < PIECE_BY_CHAR.length ? PIECE_BY_CHAR[c] : NO_PIECE;
+                if (piece == NO_PIECE) {
+                    throw new FenFormatException("Unexpected '" + c + "' in piece placement", index);
+                }
+                if (x == Position.COUNT_OF_CELLS) {
+                    throw new FenFormatException("Too many squares in rank", index);
+                }
+                hash ^= Zobrist.piece(piece, square);
+                squares[square++] = piece;
+                x++;
+                afterDigit = false;
+            }
+            index++;
+            if (square == Position.COUNT_OF_SQUARES) {
+                break;
+            }
+        }
+
+        position.resetHash(hash);
+        position.setWhiteToMove(true);
+        position.setCastlingRights(Position.CASTLING_NONE);
+        position.setEnPassantSquare(Position.NO_SQUARE);
+        position.setHalfmoveClock(0);
+        position.setFullmoveNumber(1);
+
+        // Side to move;
+        int separator = index;
+        index = skipSeparator(fen, index);
+        canonical &= index == separator + 1;
+        if (index == length) {
+            return;
+        }
+        char c = fen.charAt(index);
+        if (c == 'w') {
+            position.setWhiteToMove(true);
+        } else if (c == 'b') {
+            position.setWhiteToMove(false);
+        } else {
+            throw new FenFormatException("Unexpected '" + c + "' in side to move", index);
+        }
+        index++;
+
+        // Castling rights;
+        separator = index;
+        index = skipSeparator(fen, index);
+        canonical &= index == separator + 1;
+        if (index == length) {
+            return;
+        }
+        if (fen.charAt(index) == '-') {
+            index++;
+        } else {
+            int rights = 0;
+            while (index < length && fen.charAt(index) != ' ') {
+                int flag = castlingFlag(fen.charAt(index));
+                if (flag == 0 || (rights & flag) != 0) {
+                    throw new FenFormatException("Unexpected '" + fen.charAt(index) + "' in castling rights", index);
+                }
+                // Canonical order is the order of the flags;
+                canonical &= flag > rights;
+                rights |= flag;
+                index++;
+            }
+            position.setCastlingRights(rights);
+        }
+
+        // En passant target square;
+        separator = index;
+        index = skipSeparator(fen, index);
+        canonical &= index == separator + 1;
+        if (index == length) {
+            return;
+        }
+        if (fen.charAt(index) == '-') {
+            index++;
+        } else {
+            char file = fen.charAt(index);
+            if (file < 'a' || file > 'h') {
+                throw new FenFormatException("Unexpected '" + file + "' in en passant square", index);
+            }
+            index++;
+            char rank = index < length ? fen.charAt(index) : 0;
+            if (rank != '3' && rank != '6') {
+                throw new FenFormatException("Invalid en passant rank", index);
+            }
+            index++;
+            position.setEnPassantSquare(Position.square(file - 'a', '8' - rank));
+        }
+
+        // Halfmove clock;
+        separator = index;
+        index = skipSeparator(fen, index);
+        canonical &= index == separator + 1;
+        if (index == length) {
+            return;
+        }
+        canonical &= !hasLeadingZero(fen, index);
+        int halfmoveClock = 0;
+        while (index < length && fen.charAt(index) != ' ') {
+            halfmoveClock = appendDigit(fen, index, halfmoveClock);
+            index++;
+        }
+        position.setHalfmoveClock(halfmoveClock);
+
+        // Fullmove number;
+        separator = index;
+        index = skipSeparator(fen, index);
+        canonical &= index == separator + 1;
+        if (index == length) {
+            return;
+        }
+        int start = index;
+        canonical &= !hasLeadingZero(fen, index);
+        int fullmoveNumber = 0;
+        while (index < length && fen.charAt(index) != ' ') {
+            fullmoveNumber = appendDigit(fen, index, fullmoveNumber);
+            index++;
+        }
+        if (fullmoveNumber == 0) {
+            throw new FenFormatException("Fullmove number must be positive", start);
+        }
+        position.setFullmoveNumber(fullmoveNumber);
+
+        canonical &= index == length;
+        while (index < length) {
+            if (fen.charAt(index) != ' ') {
+                throw new FenFormatException("Unexpected '" + fen.charAt(index) + "' after fullmove number", index);
+            }
+            index++;
+        }
+
+        if (canonical && fen instanceof String) {
+            position.mSourceFen = (String) fen;
+        }
+    }
+
+    /**
+     * @return new position parsed from fen;
+     * @throws FenFormatException if the fen is malformed;
+     */
+    public static Position parse(CharSequence fen) {
+        Position position = new Position();
+        parse(fen, position);
+        return position;
+    }
+
+    /**
+     * Skip spaces which separate FEN fields;
+     *
+     * @return index of the next field or length of fen if there are no more fields;
+     */
+    private static int skipSeparator(CharSequence fen, int index) {
+        final int length = fen.length();
+        if (index == length) {
+            return index;
+        }
+        if (fen.charAt(index) != ' ') {
+            throw new FenFormatException("Expected ' '", index);
+        }
+        while (index < length && fen.charAt(index) == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    private static int castlingFlag(char c) {
+        switch (c) {
+            case 'K':
+                return Position.CASTLING_WHITE_KINGSIDE;
+            case 'Q':
+                return Position.CASTLING_WHITE_QUEENSIDE;
+            case 'k':
+                return Position.CASTLING_BLACK_KINGSIDE;
+            case 'q':
+                return Position.CASTLING_BLACK_QUEENSIDE;
+            default:
+                return 0;
+        }
+    }
+
+    private static boolean hasLeadingZero(CharSequence fen, int index) {
+        return fen.charAt(index) == '0' && index + 1 < fen.length() && fen.charAt(index + 1) != ' ';
+    }
+
+    private static int appendDigit(CharSequence fen, int index, int value) {
+        char c = fen.charAt(index);
+        if (c < '0' || c > '9') {
+            throw new FenFormatException("Unexpected '" + c + "' in move counter", index);
+        }
+        if (value > (Integer.MAX_VALUE - 9) / 10) {
+            throw new FenFormatException("Move counter is too large", index);
+        }
+        return value * 10 + (c - '0');
+    }
+}
@@ -0,0 +1,116 @@
+package com.cosic.chessview.board;
+
+import com.cosic.chessview.models.Cell;
+import java.io.IOException;
+
+/**
+ * Writes a {@link Board} as the six-field Forsyth - Edwards Notation into an {@link Appendable}
+ * without intermediate strings.
+ * <p>
+ * A board which has been parsed by {@link FenParser} from a canonical six-field FEN and not
+ * changed since keeps that text, it is appended as is, so parse -> serialize is byte-identical
+ * for canonical input. Any other input is written in the canonical form.
+ */
+public final class FenSerializer {
+
+    private static final Cell[] CELLS = Cell.values();
+
+    private FenSerializer() {
+    }
+
+    public static void write(Board board, Appendable out) throws IOException {
+        String sourceFen = board.getSourceFen();
+        if (sourceFen != null) {
+            out.append(sourceFen);
+            return;
+        }
+
+        // Piece placement;
+        for (int y = 0; y < Position.COUNT_OF_CELLS; y++) {
+            if (y > 0) {
+                out.append('/');
+            }
+            int empty = 0;
+            for (int x = 0; x < Position.COUNT_OF_CELLS; x++) {
+                int ordinal = board.getCellOrdinal(Position.square(x, y));
+                if (ordinal == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    out.append((char) ('0' + empty));
+                    empty = 0;
+                }
+                out.append(CELLS[ordinal].getPiece());
+            }
+            if (empty > 0) {
+                out.append((char) ('0' + empty));
+            }
+        }
+
+        // Side to move;
+        out.append(' ').append(board.isWhiteToMove() ? 'w' : 'b').append(' ');
+
+        // Castling rights;
+        int rights = board.getCastlingRights();
+        if (rights == Position.CASTLING_NONE) {
+            out.append('-');
+        } else {
+            if ((rights & Position.CASTLING_WHITE_KINGSIDE) != 0) out.append('K');
+            if ((rights & Position.CASTLING_WHITE_QUEENSIDE) != 0) out.append('Q');
+            if ((rights & Position.CASTLING_BLACK_KINGSIDE) != 0) out.append('k');
+            if ((rights & Position.CASTLING_BLACK_QUEENSIDE) != 0) out.append('q');
+        }
+        out.append(' ');
+
+        // En passant target square;
+        int enPassant = board.getEnPassantSquare();
+        if (enPassant == Position.NO_SQUARE) {
+            out.append('-');
+        } else {
+            out.append((char) ('a' + Position.xOf(enPassant)))
+                    .append((char) ('8' - Position.yOf(enPassant)));
+        }
+        out.append(' ');
+
+        // Move counters;
+        appendNumber(board.getHalfmoveClock(), out);
+        out.append(' ');
+        appendNumber(board.getFullmoveNumber(), out);
+    }
+
+    /**
+     * Same as {@link #write(Board, Appendable)} for a builder which never throws {@link IOException};
+     */
+    public static void write(Board board, StringBuilder out) {
+        try {
+            write(board, (Appendable) out);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return new string with FEN of the board;
+     */
+    public static String toFen(Board board) {
+        String sourceFen = board.getSourceFen();
+        if (sourceFen != null) {
+            return sourceFen;
+        }
+        StringBuilder builder = new StringBuilder(90);
+        write(board, builder);
+        return builder.toString();
+    }
+
+    private static void appendNumber(int value, Appendable out) throws IOException {
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            out.append((char) ('0' + value / divisor % 10));
+            divisor /= 10;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.cosic.chessview.board;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of {@link PackedMove}s backed by an int array, nothing is boxed.
+ * Clear and refill one instance to replay games without garbage.
+ * <p>
+ * The instance is not thread-safe.
+ */
+public final class MoveList {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] mMoves;
+    private int mSize;
+
+    public MoveList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MoveList(int capacity) {
+        mMoves = new int[Math.max(capacity, 1)];
+    }
+
+    public MoveList(MoveList other) {
+        mMoves = Arrays.copyOf(other.mMoves, Math.max(other.mSize, 1));
+        mSize = other.mSize;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int get(int index) {
+        checkIndex(index);
+        return mMoves[index];
+    }
+
+    public void set(int index, int move) {
+        checkIndex(index);
+        mMoves[index] = move;
+    }
+
+    public void add(int move) {
+        if (mSize == mMoves.length) {
+            mMoves = Arrays.copyOf(mMoves, mSize * 2);
+        }
+        mMoves[mSize++] = move;
+    }
+
+    public void addAll(int[] moves, int offset, int count) {
+        ensureCapacity(mSize + count);
+        System.arraycopy(moves, offset, mMoves, mSize, count);
+        mSize += count;
+    }
+
+    public void addAll(MoveList moves) {
+        addAll(moves.mMoves, 0, moves.mSize);
+    }
+
+    /**
+     * @return the removed last move;
+     */
+    public int removeLast() {
+        if (mSize == 0) {
+            throw new IndexOutOfBoundsException("The list is empty");
+        }
+        return mMoves[--mSize];
+    }
+
+    /**
+     * Keep the array for the next moves;
+     */
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Leave the first moves only;
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > mSize) {
+            throw new IndexOutOfBoundsException("Size " + size + " of " + mSize);
+        }
+        mSize = size;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > mMoves.length) {
+            mMoves = Arrays.copyOf(mMoves, Math.max(capacity, mMoves.length * 2));
+        }
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(mMoves, mSize);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Move " + index + " of " + mSize);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(mSize * 6);
+        for (int i = 0; i < mSize; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(PackedMove.toString(mMoves[i]));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package com.cosic.chessview.board;
+
+/**
+ * Pairs gone and appeared pieces of one kind so that the total travel distance is minimal.
+ * <p>
+ * It's an assignment problem solved by the Hungarian method in O(n^3), n is not more than
+ * the count of pieces of one kind, so a plan for any two positions takes microseconds.
+ * Pieces left without a pair are the ones which are really gone or new.
+ * <p>
+ * The instance keeps reusable buffers and is not thread-safe.
+ */
+final class MovePlanner {
+
+    /**
+     * Distances between cell centers scaled to integers, by from * 64 + to;
+     */
+    private static final int[] DISTANCE = new int[Position.COUNT_OF_SQUARES * Position.COUNT_OF_SQUARES];
+    private static final int DISTANCE_SCALE = 1024;
+
+    private static final int MAX_SIZE = Position.COUNT_OF_SQUARES;
+    private static final int INF = Integer.MAX_VALUE / 2;
+
+    static {
+        for (int from = 0; from < Position.COUNT_OF_SQUARES; from++) {
+            for (int to = 0; to < Position.COUNT_OF_SQUARES; to++) {
+                int dx = Position.xOf(from) - Position.xOf(to);
+                int dy = Position.yOf(from) - Position.yOf(to);
+                DISTANCE[from * Position.COUNT_OF_SQUARES + to] =
+                        (int) Math.round(Math.sqrt(dx * dx + dy * dy) * DISTANCE_SCALE);
+            }
+        }
+    }
+
+    /*
+     * Potentials, matching and work arrays of the Hungarian method, 1-based;
+     */
+    private final int[] mRowPotential = new int[MAX_SIZE + 1];
+    private final int[] mColumnPotential = new int[MAX_SIZE + 1];
+    private final int[] mColumnOwner = new int[MAX_SIZE + 1];
+    private final int[] mWay = new int[MAX_SIZE + 1];
+    private final int[] mMinSlack = new int[MAX_SIZE + 1];
+    private final boolean[] mUsed = new boolean[MAX_SIZE + 1];
+
+    /**
+     * Find pairs with minimal total distance;
+     *
+     * @param from       - squares where pieces are gone, starting at fromOffset;
+     * @param to         - squares where pieces have appeared, starting at toOffset;
+     * @param assignment - output, index in "to" relative to toOffset for each "from" or -1 if the piece has no pair;
+     */
+    void assign(int[] from, int fromOffset, int fromCount, int[] to, int toOffset, int toCount, int[] assignment) {
+        // Square matrix, the smaller side is padded with zero-cost dummies;
+        final int size = Math.max(fromCount, toCount);
+
+        for (int i = 0; i <= size; i++) {
+            mRowPotential[i] = 0;
+            mColumnPotential[i] = 0;
+            mColumnOwner[i] = 0;
+            mWay[i] = 0;
+        }
+
+        for (int row = 1; row <= size; row++) {
+            mColumnOwner[0] = row;
+            int column0 = 0;
+            for (int j = 0; j <= size; j++) {
+                mMinSlack[j] = INF;
+                mUsed[j] = false;
+            }
+            do {
+                mUsed[column0] = true;
+                final int row0 = mColumnOwner[column0];
+                int delta = INF;
+                int column1 = 0;
+                for (int column = 1; column <= size; column++) {
+                    if (mUsed[column]) continue;
+                    int slack = cost(from, fromOffset, fromCount, to, toOffset, toCount, row0, column)
+                            - mRowPotential[row0] - mColumnPotential[column];
+                    if (slack < mMinSlack[column]) {
+                        mMinSlack[column] = slack;
+                        mWay[column] = column0;
+                    }
+                    if (mMinSlack[column] < delta) {
+                        delta = mMinSlack[column];
+                        column1 = column;
+                    }
+                }
+                for (int column = 0; column <= size; column++) {
+                    if (mUsed[column]) {
+                        mRowPotential[mColumnOwner[column]] += delta;
+                        mColumnPotential[column] -= delta;
+                    } else {
+                        mMinSlack[column] -= delta;
+                    }
+                }
+                column0 = column1;
+            } while (mColumnOwner[column0] != 0);
+            do {
+                int column1 = mWay[column0];
+                mColumnOwner[column0] = mColumnOwner[column1];
+                column0 = column1;
+            } while (column0 != 0);
+        }
+
+        for (int i = 0; i < fromCount; i++) {
+            assignment[i] = -1;
+        }
+        for (int column = 1; column <= size; column++) {
+            int row = mColumnOwner[column];
+            if (row <= fromCount && column <= toCount) {
+                assignment[row - 1] = column - 1;
+            }
+        }
+    }
+
+    private static int cost(int[] from, int fromOffset, int fromCount, int[] to, int toOffset, int toCount,
+                            int row, int column) {
+        if (row > fromCount || column > toCount) {
+            return 0;
+        }
+        return DISTANCE[from[fromOffset + row - 1] * Position.COUNT_OF_SQUARES + to[toOffset + column - 1]];
+    }
+}
@@ -0,0 +1,150 @@
+package com.cosic.chessview.board;
+
+import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.models.Move;
+
+/**
+ * Move packed into a primitive, so games may be stored, replayed and reported without objects:
+ * <pre>
+ * bits  0..5   from square, see {@link Position#square(int, int)}
+ * bits  6..11  to square
+ * bits 12..15  {@link Cell#ordinal()} of the promoted piece, 0 - none
+ * bits 16..19  FLAG_* bits, optional
+ * </pre>
+ * The lower 16 bits are a complete move and may be kept as a short, see {@link #toShort(int)};
+ * flags are only hints set by the move generator, everything else reads the board.
+ */
+public final class PackedMove {
+
+    /**
+     * Not a move, from and to are the same square;
+     */
+    public static final int NONE = 0;
+
+    public static final int FLAG_CAPTURE = 1 << 16;
+    public static final int FLAG_EN_PASSANT = 1 << 17;
+    public static final int FLAG_CASTLING = 1 << 18;
+    public static final int FLAG_DOUBLE_PUSH = 1 << 19;
+
+    private static final int SQUARE_MASK = 0x3F;
+    private static final int TO_SHIFT = 6;
+    private static final int PROMOTION_SHIFT = 12;
+    private static final int PROMOTION_MASK = 0xF;
+    private static final int MOVE_MASK = 0xFFFF;
+
+    /**
+     * {@link Move}s are immutable, one per from and to square is shared by {@link #toMove(int)};
+     * Filled lazily, a race only creates an equal instance twice;
+     */
+    private static final Move[] MOVES = new Move[64 * 64];
+
+    private PackedMove() {
+    }
+
+    public static int of(int from, int to) {
+        return from | to << TO_SHIFT;
+    }
+
+    /**
+     * @param promotion - {@link Cell#ordinal()} of the promoted piece, 0 - none;
+     */
+    public static int of(int from, int to, int promotion, int flags) {
+        return from | to << TO_SHIFT | promotion << PROMOTION_SHIFT | flags;
+    }
+
+    /**
+     * @param promotion - the piece a pawn is promoted to or null;
+     */
+    public static int of(int from, int to, Cell promotion) {
+        return of(from, to, promotion != null ? promotion.ordinal() : 0, 0);
+    }
+
+    public static int of(Move move) {
+        return of(Position.square(move.getFromX(), move.getFromY()), Position.square(move.getToX(), move.getToY()));
+    }
+
+    public static int from(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    public static int to(int move) {
+        return (move >>> TO_SHIFT) & SQUARE_MASK;
+    }
+
+    /**
+     * @return {@link Cell#ordinal()} of the promoted piece, 0 - none;
+     */
+    public static int promotion(int move) {
+        return (move >>> PROMOTION_SHIFT) & PROMOTION_MASK;
+    }
+
+    /**
+     * @return the piece a pawn is promoted to or null;
+     */
+    public static Cell promotionCell(int move) {
+        int promotion = promotion(move);
+        return promotion != 0 ? Position.cellOf(promotion) : null;
+    }
+
+    public static boolean isCapture(int move) {
+        return (move & FLAG_CAPTURE) != 0;
+    }
+
+    public static boolean isEnPassant(int move) {
+        return (move & FLAG_EN_PASSANT) != 0;
+    }
+
+    public static boolean isCastling(int move) {
+        return (move & FLAG_CASTLING) != 0;
+    }
+
+    public static boolean isDoublePush(int move) {
+        return (move & FLAG_DOUBLE_PUSH) != 0;
+    }
+
+    /**
+     * @return the move without flags in 16 bits;
+     */
+    public static short toShort(int move) {
+        return (short) move;
+    }
+
+    public static int fromShort(short move) {
+        return move & MOVE_MASK;
+    }
+
+    /**
+     * Make the move in the position by chess rules, see {@link Position#applyMove(int, int, Cell)};
+     */
+    public static void apply(Position position, int move) {
+        position.applyMove(from(move), to(move), promotionCell(move));
+    }
+
+    /**
+     * @return shared instance for the from and to squares, promotions are lost;
+     */
+    public static Move toMove(int move) {
+        final int key = move & (SQUARE_MASK | SQUARE_MASK << TO_SHIFT);
+        Move cached = MOVES[key];
+        if (cached == null) {
+            int from = from(move);
+            int to = to(move);
+            cached = new Move(Position.xOf(from), Position.yOf(from), Position.xOf(to), Position.yOf(to));
+            MOVES[key] = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * @return the move in UCI notation, e.g. "e2e4", "e7e8q";
+     */
+    public static String toString(int move) {
+        StringBuilder builder = new StringBuilder(5);
+        builder.append(Squares.name(from(move))).append(Squares.name(to(move)));
+        int promotion = promotion(move);
+        if (promotion != 0) {
+            builder.append(Character.toLowerCase(Position.cellOf(promotion).getPiece()));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,282 @@
+package com.cosic.chessview.board;
+
+import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.models.Side;
+
+/**
+ * Mutable packed chess position: 64 {@link Cell} ordinals plus the FEN header
+ * (side to move, castling rights, en passant square and move clocks).
+ * <p>
+ * Squares are indexed as {@code y * 8 + x}, where {@code x} is the file (0 - A)
+ * and {@code y} is the row counted from the top of the board (0 - rank 8),
+ * the same coordinates {@link com.cosic.chessview.models.Move} uses.
+ */
+public final class Position implements Board {
+
+    public static final int COUNT_OF_CELLS = 8;
+    public static final int COUNT_OF_SQUARES = COUNT_OF_CELLS * COUNT_OF_CELLS;
+
+    public static final int NO_SQUARE = -1;
+
+    public static final int CASTLING_NONE = 0;
+    public static final int CASTLING_WHITE_KINGSIDE = 1;
+    public static final int CASTLING_WHITE_QUEENSIDE = 1 << 1;
+    public static final int CASTLING_BLACK_KINGSIDE = 1 << 2;
+    public static final int CASTLING_BLACK_QUEENSIDE = 1 << 3;
+    public static final int CASTLING_ALL = 0xF;
+
+    static final Cell[] CELLS = Cell.values();
+
+    private static final int PAWN_WHITE = Cell.PAWN_WHITE.ordinal();
+    private static final int PAWN_BLACK = Cell.PAWN_BLACK.ordinal();
+    private static final int KING_WHITE = Cell.KING_WHITE.ordinal();
+    private static final int KING_BLACK = Cell.KING_BLACK.ordinal();
+
+    /**
+     * Castling rights lost when a piece moves from or to the square;
+     */
+    private static final int[] CASTLING_LOST_BY_SQUARE = new int[COUNT_OF_SQUARES];
+
+    static {
+        CASTLING_LOST_BY_SQUARE[square(0, 0)] = CASTLING_BLACK_QUEENSIDE;
+        CASTLING_LOST_BY_SQUARE[square(4, 0)] = CASTLING_BLACK_KINGSIDE | CASTLING_BLACK_QUEENSIDE;
+        CASTLING_LOST_BY_SQUARE[square(7, 0)] = CASTLING_BLACK_KINGSIDE;
+        CASTLING_LOST_BY_SQUARE[square(0, 7)] = CASTLING_WHITE_QUEENSIDE;
+        CASTLING_LOST_BY_SQUARE[square(4, 7)] = CASTLING_WHITE_KINGSIDE | CASTLING_WHITE_QUEENSIDE;
+        CASTLING_LOST_BY_SQUARE[square(7, 7)] = CASTLING_WHITE_KINGSIDE;
+    }
+
+    /**
+     * Cell ordinals of all squares;
+     */
+    final byte[] mSquares = new byte[COUNT_OF_SQUARES];
+
+    private boolean mWhiteToMove = true;
+    private int mCastlingRights = CASTLING_NONE;
+    private int mEnPassantSquare = NO_SQUARE;
+    private int mHalfmoveClock = 0;
+    private int mFullmoveNumber = 1;
+
+    /**
+     * Text this position was parsed from, dropped on any change;
+     */
+    String mSourceFen = null;
+
+    /**
+     * Zobrist hash, updated incrementally by every change;
+     */
+    long mHash = 0L;
+
+    public Position() {
+    }
+
+    public Position(Position other) {
+        set(other);
+    }
+
+    public static int square(int x, int y) {
+        return (y << 3) | x;
+    }
+
+    public static int xOf(int square) {
+        return square & 7;
+    }
+
+    public static int yOf(int square) {
+        return square >>> 3;
+    }
+
+    public static Cell cellOf(int ordinal) {
+        return CELLS[ordinal];
+    }
+
+    /**
+     * Copy all squares and the header from other position;
+     */
+    public void set(Position other) {
+        System.arraycopy(other.mSquares, 0, mSquares, 0, COUNT_OF_SQUARES);
+        mWhiteToMove = other.mWhiteToMove;
+        mCastlingRights = other.mCastlingRights;
+        mEnPassantSquare = other.mEnPassantSquare;
+        mHalfmoveClock = other.mHalfmoveClock;
+        mFullmoveNumber = other.mFullmoveNumber;
+        mSourceFen = other.mSourceFen;
+        mHash = other.mHash;
+    }
+
+    /**
+     * Empty board, white to move, no castling rights;
+     */
+    public void clear() {
+        for (int i = 0; i < COUNT_OF_SQUARES; i++) {
+            mSquares[i] = 0;
+        }
+        mWhiteToMove = true;
+        mCastlingRights = CASTLING_NONE;
+        mEnPassantSquare = NO_SQUARE;
+        mHalfmoveClock = 0;
+        mFullmoveNumber = 1;
+        mSourceFen = null;
+        mHash = 0L;
+    }
+
+    public Cell getCell(int x, int y) {
+        return CELLS[mSquares[square(x, y)]];
+    }
+
+    public Cell getCell(int square) {
+        return CELLS[mSquares[square]];
+    }
+
+    /**
+     * @return {@link Cell#ordinal()} of the piece on the square;
+     */
+    @Override
+    public int getCellOrdinal(int square) {
+        return mSquares[square];
+    }
+
+    public void setCell(int x, int y, Cell cell) {
+        setCell(square(x, y), cell);
+    }
+
+    public void setCell(int square, Cell cell) {
+        put(square, cell.ordinal());
+    }
+
+    private void put(int square, int ordinal) {
+        mHash ^= Zobrist.piece(mSquares[square], square) ^ Zobrist.piece(ordinal, square);
+        mSquares[square] = (byte) ordinal;
+        mSourceFen = null;
+    }
+
+    public Side getSideToMove() {
+        return mWhiteToMove ? Side.WHITE : Side.BLACK;
+    }
+
+    @Override
+    public boolean isWhiteToMove() {
+        return mWhiteToMove;
+    }
+
+    public void setSideToMove(Side side) {
+        setWhiteToMove(side == Side.WHITE);
+    }
+
+    public void setWhiteToMove(boolean whiteToMove) {
+        mHash ^= Zobrist.sideToMove(mWhiteToMove) ^ Zobrist.sideToMove(whiteToMove);
+        mWhiteToMove = whiteToMove;
+        mSourceFen = null;
+    }
+
+    /**
+     * @return bit set of CASTLING_* flags;
+     */
+    @Override
+    public int getCastlingRights() {
+        return mCastlingRights;
+    }
+
+    public void setCastlingRights(int castlingRights) {
+        castlingRights &= CASTLING_ALL;
+        mHash ^= Zobrist.castling(mCastlingRights) ^ Zobrist.castling(castlingRights);
+        mCastlingRights = castlingRights;
+        mSourceFen = null;
+    }
+
+    /**
+     * @return square behind the pawn which has just made a two-step move or {@link #NO_SQUARE};
+     */
+    @Override
+    public int getEnPassantSquare() {
+        return mEnPassantSquare;
+    }
+
+    public void setEnPassantSquare(int square) {
+        mHash ^= Zobrist.enPassant(mEnPassantSquare) ^ Zobrist.enPassant(square);
+        mEnPassantSquare = square;
+        mSourceFen = null;
+    }
+
+    @Override
+    public int getHalfmoveClock() {
+        return mHalfmoveClock;
+    }
+
+    public void setHalfmoveClock(int halfmoveClock) {
+        mHalfmoveClock = halfmoveClock;
+        mSourceFen = null;
+    }
+
+    @Override
+    public int getFullmoveNumber() {
+        return mFullmoveNumber;
+    }
+
+    public void setFullmoveNumber(int fullmoveNumber) {
+        mFullmoveNumber = fullmoveNumber;
+        mSourceFen = null;
+    }
+
+    @Override
+    public String getSourceFen() {
+        return mSourceFen;
+    }
+
+    /**
+     * @return Zobrist hash of pieces, side to move, castling rights and en passant square;
+     */
+    @Override
+    public long getZobristHash() {
+        return mHash;
+    }
+
+    /**
+     * Set hash after the cells have been written directly, header fields are taken as is;
+     */
+    void resetHash(long piecesHash) {
+        mHash = piecesHash ^ Zobrist.header(mWhiteToMove, mCastlingRights, mEnPassantSquare);
+    }
+
+    /**
+     * Make the move by chess rules: castling moves the rook too, en passant removes the captured pawn,
+     * castling rights, en passant square, move clocks and side to move are updated.
+     * The move is not checked for legality;
+     *
+     * @param promotion - the piece a pawn is promoted to or null;
+     */
+    public void applyMove(int from, int to, Cell promotion) {
+        final int piece = mSquares[from];
+        int captured = mSquares[to];
+        final boolean isPawn = piece == PAWN_WHITE || piece == PAWN_BLACK;
+
+        if (isPawn && to == mEnPassantSquare && captured == 0 && xOf(from) != xOf(to)) {
+            int capturedSquare = square(xOf(to), yOf(from));
+            captured = mSquares[capturedSquare];
+            put(capturedSquare, 0);
+        }
+
+        if ((piece == KING_WHITE || piece == KING_BLACK) && Math.abs(xOf(to) - xOf(from)) == 2) {
+            int y = yOf(from);
+            int rookFrom = to > from ? square(7, y) : square(0, y);
+            int rookTo = to > from ? square(5, y) : square(3, y);
+            put(rookTo, mSquares[rookFrom]);
+            put(rookFrom, 0);
+        }
+
+        put(to, promotion != null && promotion != Cell.EMPTY ? promotion.ordinal() : piece);
+        put(from, 0);
+
+        setCastlingRights(mCastlingRights & ~(CASTLING_LOST_BY_SQUARE[from] | CASTLING_LOST_BY_SQUARE[to]));
+        if (isPawn && Math.abs(yOf(to) - yOf(from)) == 2) {
+            setEnPassantSquare(square(xOf(from), (yOf(from) + yOf(to)) / 2));
+        } else {
+            setEnPassantSquare(NO_SQUARE);
+        }
+        setHalfmoveClock(isPawn || captured != 0 ? 0 : mHalfmoveClock + 1);
+        if (!mWhiteToMove) {
+            setFullmoveNumber(mFullmoveNumber + 1);
+        }
+        setWhiteToMove(!mWhiteToMove);
+    }
+}
@@ -0,0 +1,79 @@
+package com.cosic.chessview.board;
+
+import android.util.LruCache;
+
+/**
+ * Size-bounded LRU cache of parsed positions keyed by FEN text.
+ * <p>
+ * Navigating back and forth through a game re-applies the same FENs again and again,
+ * with the cache each of them is parsed once. {@link #getDefault()} is shared by all
+ * {@link com.cosic.chessview.ChessView}s of the process.
+ */
+public final class PositionCache {
+
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    private static final PositionCache DEFAULT = new PositionCache(DEFAULT_MAX_SIZE);
+
+    private final LruCache<String, BoardSnapshot> mCache;
+
+    public PositionCache(int maxSize) {
+        mCache = new LruCache<String, BoardSnapshot>(maxSize) {
+            @Override
+            protected BoardSnapshot create(String fen) {
+                return BoardSnapshot.of(FenParser.parse(fen));
+            }
+        };
+    }
+
+    /**
+     * @return process-wide cache used by {@link com.cosic.chessview.ChessView};
+     */
+    public static PositionCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return cached snapshot without selection, the fen is parsed on a miss;
+     * @throws FenFormatException if the fen is malformed, malformed fens are not cached;
+     */
+    public BoardSnapshot get(String fen) {
+        if (fen == null) {
+            throw new FenFormatException("FEN is null", 0);
+        }
+        return mCache.get(fen);
+    }
+
+    public void resize(int maxSize) {
+        mCache.resize(maxSize);
+    }
+
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    public int size() {
+        return mCache.size();
+    }
+
+    public int maxSize() {
+        return mCache.maxSize();
+    }
+
+    public int hitCount() {
+        return mCache.hitCount();
+    }
+
+    public int missCount() {
+        return mCache.missCount();
+    }
+
+    public int evictionCount() {
+        return mCache.evictionCount();
+    }
+
+    @Override
+    public String toString() {
+        return mCache.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package com.cosic.chessview.board;
+
+import java.util.Arrays;
+
+/**
+ * Square names "a8" .. "h1" and square indexes of {@link Position#square(int, int)},
+ * both ways by table lookup, case of the file letter is ignored.
+ */
+public final class Squares {
+
+    private static final String[] NAMES = new String[Position.COUNT_OF_SQUARES];
+
+    /**
+     * x of the file letter and y of the rank digit by char code, -1 - not a coordinate;
+     */
+    private static final byte[] X_BY_CHAR = new byte[128];
+    private static final byte[] Y_BY_CHAR = new byte[128];
+
+    static {
+        Arrays.fill(X_BY_CHAR, (byte) -1);
+        Arrays.fill(Y_BY_CHAR, (byte) -1);
+        for (int i = 0; i < Position.COUNT_OF_CELLS; i++) {
+            X_BY_CHAR['a' + i] = (byte) i;
+            X_BY_CHAR['A' + i] = (byte) i;
+            Y_BY_CHAR['8' - i] = (byte) i;
+        }
+        for (int square = 0; square < Position.COUNT_OF_SQUARES; square++) {
+            NAMES[square] = new String(new char[]{fileChar(square), rankChar(square)});
+        }
+    }
+
+    private Squares() {
+    }
+
+    /**
+     * @return "a8" for 0 .. "h1" for 63;
+     */
+    public static String name(int square) {
+        return NAMES[square];
+    }
+
+    public static char fileChar(int square) {
+        return (char) ('a' + Position.xOf(square));
+    }
+
+    public static char rankChar(int square) {
+        return (char) ('8' - Position.yOf(square));
+    }
+
+    /**
+     * @return x of the file letter or -1;
+     */
+    public static int xOf(char file) {
+        return file < X_BY_CHAR.length ? X_BY_CHAR[file] : -1;
+    }
+
+    /**
+     * @return y of the rank digit or -1;
+     */
+    public static int yOf(char rank) {
+        return rank < Y_BY_CHAR.length ? Y_BY_CHAR[rank] : -1;
+    }
+
+    /**
+     * @return square or {@link Position#NO_SQUARE} if the chars are not a square name;
+     */
+    public static int parse(char file, char rank) {
+        int x = xOf(file);
+        int y = yOf(rank);
+        return x >= 0 && y >= 0 ? Position.square(x, y) : Position.NO_SQUARE;
+    }
+
+    /**
+     * @return square of two chars of the text from the index or {@link Position#NO_SQUARE};
+     */
+    public static int parse(CharSequence text, int index) {
+        if (index < 0 || index + 1 >= text.length()) {
+            return Position.NO_SQUARE;
+        }
+        return parse(text.charAt(index), text.charAt(index + 1));
+    }
+}
@@ -0,0 +1,99 @@
+package com.cosic.chessview.board;
+
+/**
+ * 64-bit Zobrist keys of pieces, side to move, castling rights and en passant file.
+ * <p>
+ * Keys are generated from a fixed seed, so hashes are stable between runs and can be stored.
+ * Move clocks are not part of the hash.
+ */
+public final class Zobrist {
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private static final int CELL_COUNT = 13;
+
+    /**
+     * Keys by cell ordinal and square, keys of the empty cell are zeros;
+     */
+    private static final long[] PIECES = new long[CELL_COUNT * Position.COUNT_OF_SQUARES];
+    private static final long[] CASTLING = new long[Position.CASTLING_ALL + 1];
+    private static final long[] EN_PASSANT_FILE = new long[Position.COUNT_OF_CELLS];
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        long state = SEED;
+        for (int i = Position.COUNT_OF_SQUARES; i < PIECES.length; i++) {
+            state += SEED;
+            PIECES[i] = mix(state);
+        }
+        long[] castlingKeys = new long[4];
+        for (int i = 0; i < castlingKeys.length; i++) {
+            state += SEED;
+            castlingKeys[i] = mix(state);
+        }
+        for (int rights = 0; rights < CASTLING.length; rights++) {
+            long key = 0L;
+            for (int i = 0; i < castlingKeys.length; i++) {
+                if ((rights & (1 << i)) != 0) {
+                    key ^= castlingKeys[i];
+                }
+            }
+            CASTLING[rights] = key;
+        }
+        for (int i = 0; i < EN_PASSANT_FILE.length; i++) {
+            state += SEED;
+            EN_PASSANT_FILE[i] = mix(state);
+        }
+        state += SEED;
+        BLACK_TO_MOVE = mix(state);
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * SplitMix64 finalizer;
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static long piece(int cellOrdinal, int square) {
+        return PIECES[cellOrdinal * Position.COUNT_OF_SQUARES + square];
+    }
+
+    public static long castling(int castlingRights) {
+        return CASTLING[castlingRights];
+    }
+
+    /**
+     * @param square - en passant target square or {@link Position#NO_SQUARE};
+     */
+    public static long enPassant(int square) {
+        return square == Position.NO_SQUARE ? 0L : EN_PASSANT_FILE[Position.xOf(square)];
+    }
+
+    public static long sideToMove(boolean whiteToMove) {
+        return whiteToMove ? 0L : BLACK_TO_MOVE;
+    }
+
+    /**
+     * @return hash of the header fields;
+     */
+    public static long header(boolean whiteToMove, int castlingRights, int enPassantSquare) {
+        return sideToMove(whiteToMove) ^ castling(castlingRights) ^ enPassant(enPassantSquare);
+    }
+
+    /**
+     * Compute hash of the board from scratch;
+     */
+    public static long hash(Board board) {
+        long hash = header(board.isWhiteToMove(), board.getCastlingRights(), board.getEnPassantSquare());
+        for (int square = 0; square < Position.COUNT_OF_SQUARES; square++) {
+            hash ^= piece(board.getCellOrdinal(square), square);
+        }
+        return hash;
+    }
+}
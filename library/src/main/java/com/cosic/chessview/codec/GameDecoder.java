@@ -0,0 +1,111 @@
+package com.cosic.chessview.codec;
+
+import com.cosic.chessview.board.Board;
+import com.cosic.chessview.board.MoveList;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.engine.BitboardPosition;
+import com.cosic.chessview.engine.MoveGenerator;
+import com.cosic.chessview.models.Move;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the moves written by {@link GameEncoder} one by one, replaying them on the start position
+ * of the game. The moves are legal by construction and come with all {@link PackedMove} flags,
+ * so they may be passed to {@link com.cosic.chessview.ChessView#applyMoving(MoveList, boolean)}
+ * as they are read:
+ * <pre>
+ * GameDecoder decoder = new GameDecoder(in, startPosition);
+ * for (int move = decoder.next(); move != PackedMove.NONE; move = decoder.next()) {
+ *     moves.add(move);
+ * }
+ * </pre>
+ * The instance is not thread-safe.
+ */
+public final class GameDecoder {
+
+    private final BitboardPosition mPosition;
+    private final RangeDecoder mDecoder;
+    private final MoveRanker mRanker = new MoveRanker();
+    private final int[] mMoves = new int[MoveGenerator.MAX_MOVES];
+
+    private int mLastTo = Position.NO_SQUARE;
+    private int mMoveCount = 0;
+    private boolean mFinished = false;
+
+    public GameDecoder(InputStream in, Board startPosition) throws IOException {
+        this.mPosition = new BitboardPosition(startPosition);
+        this.mDecoder = new RangeDecoder(in);
+    }
+
+    /**
+     * Append all moves of the game written by {@link GameEncoder#encode(Board, MoveList)} to the list;
+     *
+     * @return count of the appended moves;
+     * @throws IOException if the data is corrupted;
+     */
+    public static int decode(byte[] data, Board startPosition, MoveList moves) throws IOException {
+        return new GameDecoder(new ByteArrayInputStream(data), startPosition).read(moves);
+    }
+
+    /**
+     * @return the next move or {@link PackedMove#NONE} at the end of the game;
+     * @throws IOException if the data is corrupted;
+     */
+    public int next() throws IOException {
+        if (mFinished) {
+            return PackedMove.NONE;
+        }
+        final int count = MoveGenerator.generate(mPosition, mMoves);
+        final int rank = MoveModel.rankOf(mDecoder.getFrequency(MoveModel.total(count)), count);
+        mDecoder.decode(MoveModel.start(rank), MoveModel.size(rank, count));
+        if (rank == count) {
+            mFinished = true;
+            return PackedMove.NONE;
+        }
+        mRanker.sort(mPosition, mMoves, count, mLastTo);
+        final int move = mMoves[rank];
+        mPosition.makeMove(move);
+        mLastTo = PackedMove.to(move);
+        mMoveCount++;
+        return move;
+    }
+
+    /**
+     * @return the next move or null at the end of the game, promotions are lost;
+     */
+    public Move nextMove() throws IOException {
+        int move = next();
+        return move != PackedMove.NONE ? PackedMove.toMove(move) : null;
+    }
+
+    /**
+     * Append all remaining moves of the game to the list;
+     *
+     * @return count of the appended moves;
+     */
+    public int read(MoveList moves) throws IOException {
+        int count = 0;
+        for (int move = next(); move != PackedMove.NONE; move = next()) {
+            moves.add(move);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return count of moves read so far;
+     */
+    public int getMoveCount() {
+        return mMoveCount;
+    }
+
+    /**
+     * @return position after the moves read so far, changed by the next read;
+     */
+    public Board getPosition() {
+        return mPosition;
+    }
+}
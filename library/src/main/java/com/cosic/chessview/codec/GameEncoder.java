@@ -0,0 +1,107 @@
+package com.cosic.chessview.codec;
+
+import com.cosic.chessview.board.Board;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.engine.BitboardPosition;
+import com.cosic.chessview.engine.MoveGenerator;
+import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.models.Move;
+import com.cosic.chessview.board.MoveList;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the moves of one game at a few bits per ply: every move is stored as its rank among
+ * the legal moves of the position, ordered from the most to the least likely, and the ranks are
+ * range coded with a static model where low ranks are cheap. The start position is not written,
+ * {@link GameDecoder} must be given the same one.
+ * <p>
+ * {@link #finish()} ends the game, the data has no length: when several games share a stream,
+ * the caller keeps the size of every game. The instance is not thread-safe.
+ */
+public final class GameEncoder {
+
+    private final BitboardPosition mPosition;
+    private final RangeEncoder mEncoder;
+    private final MoveRanker mRanker = new MoveRanker();
+    private final int[] mMoves = new int[MoveGenerator.MAX_MOVES];
+
+    private int mLastTo = Position.NO_SQUARE;
+    private int mMoveCount = 0;
+    private boolean mFinished = false;
+
+    public GameEncoder(OutputStream out, Board startPosition) {
+        this.mPosition = new BitboardPosition(startPosition);
+        this.mEncoder = new RangeEncoder(out);
+    }
+
+    /**
+     * @return code of all moves of a game, see {@link GameDecoder#decode(byte[], Board, MoveList)};
+     * @throws IllegalArgumentException if a move is not legal;
+     */
+    public static byte[] encode(Board startPosition, MoveList moves) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(moves.size() / 2 + 8);
+        GameEncoder encoder = new GameEncoder(out, startPosition);
+        try {
+            for (int i = 0; i < moves.size(); i++) {
+                encoder.write(moves.get(i));
+            }
+            encoder.finish();
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw;
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param move - see {@link PackedMove}, flags are not needed;
+     * @throws IllegalArgumentException if the move is not legal in the current position;
+     */
+    public void write(int move) throws IOException {
+        if (mFinished) {
+            throw new IllegalStateException("The game is finished");
+        }
+        final int count = MoveGenerator.generate(mPosition, mMoves);
+        mRanker.sort(mPosition, mMoves, count, mLastTo);
+        final short key = PackedMove.toShort(move);
+        int rank = 0;
+        while (rank < count && PackedMove.toShort(mMoves[rank]) != key) {
+            rank++;
+        }
+        if (rank == count) {
+            throw new IllegalArgumentException("Illegal move " + PackedMove.toString(move) + " at ply " + mMoveCount);
+        }
+        mEncoder.encode(MoveModel.start(rank), MoveModel.size(rank, count), MoveModel.total(count));
+        mPosition.makeMove(mMoves[rank]);
+        mLastTo = PackedMove.to(move);
+        mMoveCount++;
+    }
+
+    /**
+     * @param promotion - the piece a pawn is promoted to or null;
+     */
+    public void write(Move move, Cell promotion) throws IOException {
+        int packed = PackedMove.of(move);
+        write(PackedMove.of(PackedMove.from(packed), PackedMove.to(packed), promotion));
+    }
+
+    /**
+     * Write the end of the game and the rest of the code, the stream is not closed;
+     */
+    public void finish() throws IOException {
+        if (mFinished) {
+            return;
+        }
+        final int count = MoveGenerator.generate(mPosition, mMoves);
+        mEncoder.encode(MoveModel.start(count), MoveModel.size(count, count), MoveModel.total(count));
+        mEncoder.finish();
+        mFinished = true;
+    }
+
+    public int getMoveCount() {
+        return mMoveCount;
+    }
+}
@@ -0,0 +1,85 @@
+package com.cosic.chessview.codec;
+
+import com.cosic.chessview.engine.MoveGenerator;
+
+/**
+ * Static frequencies of move ranks of {@link MoveRanker}, shared by the encoder and the decoder.
+ * A position with n legal moves codes ranks 0..n-1 and the end of the game as rank n.
+ * <p>
+ * The frequencies fall as 1 / (rank + 1.5)^1.2: the first ranks cost 2-3 bits, a move the
+ * ranker misjudged still costs only a few bits more than a flat code. The table is part of
+ * the data format.
+ */
+final class MoveModel {
+
+    private static final int[] HEAD_FREQUENCIES = {
+            2518, 1364, 911, 674, 530, 433, 365, 314, 275, 244, 219, 198, 180, 165, 153, 142,
+            132, 124, 116, 109, 103, 98, 93, 88, 84, 80, 77, 74, 71, 68, 65, 63,
+            61, 58, 57, 55, 53, 51, 50, 48, 47, 46, 44, 43, 42, 41, 40, 39,
+            38, 37, 36, 35, 35, 34, 33, 32, 32, 31, 30, 30, 29, 29, 28, 28,
+    };
+
+    /**
+     * Frequency of the ranks after the head, only positions with many pieces reach them;
+     */
+    private static final int TAIL_FREQUENCY = 2;
+
+    /**
+     * A game ends once, the end costs about 12 bits and every move almost nothing;
+     */
+    private static final int END_FREQUENCY = 1;
+
+    /**
+     * Sums of the frequencies of the ranks before each rank;
+     */
+    private static final int[] CUMULATIVE = new int[MoveGenerator.MAX_MOVES + 1];
+
+    static {
+        for (int rank = 0; rank < MoveGenerator.MAX_MOVES; rank++) {
+            CUMULATIVE[rank + 1] = CUMULATIVE[rank] + frequency(rank);
+        }
+    }
+
+    private MoveModel() {
+    }
+
+    static int start(int rank) {
+        return CUMULATIVE[rank];
+    }
+
+    static int size(int rank, int count) {
+        return rank == count ? END_FREQUENCY : frequency(rank);
+    }
+
+    /**
+     * @param count - count of legal moves of the position;
+     */
+    static int total(int count) {
+        return CUMULATIVE[count] + END_FREQUENCY;
+    }
+
+    /**
+     * @param value - see {@link RangeDecoder#getFrequency(int)};
+     * @return rank whose frequencies cover the value, count for the end of the game;
+     */
+    static int rankOf(int value, int count) {
+        if (value >= CUMULATIVE[count]) {
+            return count;
+        }
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (CUMULATIVE[middle] <= value) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private static int frequency(int rank) {
+        return rank < HEAD_FREQUENCIES.length ? HEAD_FREQUENCIES[rank] : TAIL_FREQUENCY;
+    }
+}
@@ -0,0 +1,136 @@
+package com.cosic.chessview.codec;
+
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.engine.BitboardPosition;
+import com.cosic.chessview.engine.Bitboards;
+import com.cosic.chessview.engine.MoveGenerator;
+import com.cosic.chessview.models.Cell;
+
+/**
+ * Orders legal moves so the moves players usually make come first: good captures, recaptures and
+ * promotions, then developing and centralising moves, moves into pawn attacks last.
+ * <p>
+ * The order is part of {@link GameEncoder} data: only integer arithmetic, ties are kept in the
+ * order of {@link MoveGenerator}, and any change of the scores or of the generator makes
+ * old data unreadable.
+ */
+final class MoveRanker {
+
+    /**
+     * Piece values by type, (ordinal + 1) / 2 of {@link Cell}: pawn, rook, knight, bishop, queen, king;
+     */
+    private static final int[] VALUES = {0, 100, 500, 320, 330, 900, 0};
+
+    private static final int PAWN = 1;
+    private static final int KNIGHT = 3;
+    private static final int BISHOP = 4;
+    private static final int QUEEN = 5;
+    private static final int KING = 6;
+
+    /**
+     * 0 on the edge, 3 in the centre;
+     */
+    private static final int[] CENTRALITY = new int[Position.COUNT_OF_SQUARES];
+
+    static {
+        for (int square = 0; square < Position.COUNT_OF_SQUARES; square++) {
+            int x = Position.xOf(square);
+            int y = Position.yOf(square);
+            CENTRALITY[square] = Math.min(Math.min(x, 7 - x), Math.min(y, 7 - y));
+        }
+    }
+
+    private final int[] mScores = new int[MoveGenerator.MAX_MOVES];
+
+    /**
+     * Sort the moves of the position from the most to the least likely;
+     *
+     * @param lastTo - target square of the previous move or {@link Position#NO_SQUARE};
+     */
+    void sort(BitboardPosition position, int[] moves, int count, int lastTo) {
+        final boolean white = position.isWhiteToMove();
+        final long enemyPawns = position.getPieces(white ? Cell.PAWN_BLACK : Cell.PAWN_WHITE);
+        long pawnAttacks = 0L;
+        for (long pawns = enemyPawns; pawns != 0; pawns &= pawns - 1) {
+            pawnAttacks |= Bitboards.pawnAttacks(white ? BitboardPosition.BLACK : BitboardPosition.WHITE,
+                    Long.numberOfTrailingZeros(pawns));
+        }
+        final int homeRank = white ? 7 : 0;
+
+        // Insertion sort keeps equal scores in the generator order, lists are short;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int score = score(position, move, lastTo, pawnAttacks, homeRank);
+            int j = i;
+            while (j > 0 && mScores[j - 1] < score) {
+                mScores[j] = mScores[j - 1];
+                moves[j] = moves[j - 1];
+                j--;
+            }
+            mScores[j] = score;
+            moves[j] = move;
+        }
+    }
+
+    private static int score(BitboardPosition position, int move, int lastTo, long pawnAttacks, int homeRank) {
+        final int from = PackedMove.from(move);
+        final int to = PackedMove.to(move);
+        final int type = (position.getCellOrdinal(from) + 1) >> 1;
+        final int value = VALUES[type];
+        int score = 0;
+
+        if (PackedMove.isCapture(move)) {
+            int victim = PackedMove.isEnPassant(move) ? PAWN : (position.getCellOrdinal(to) + 1) >> 1;
+            score += 4 * VALUES[victim] - value / 4;
+            if (to == lastTo) {
+                score += 300;
+            }
+        }
+        int promotion = PackedMove.promotion(move);
+        if (promotion != 0) {
+            score += (promotion + 1) >> 1 == QUEEN ? 800 : -300;
+        }
+        if (PackedMove.isCastling(move)) {
+            score += 200;
+        }
+
+        if (type != PAWN) {
+            if ((pawnAttacks & (1L << to)) != 0) {
+                score -= value / 2;
+            }
+            if ((pawnAttacks & (1L << from)) != 0) {
+                score += value / 3;
+            }
+        }
+        final int centrality = CENTRALITY[to] - CENTRALITY[from];
+        switch (type) {
+            case PAWN:
+                int x = Position.xOf(from);
+                score += x == 3 || x == 4 ? 20 : 5;
+                if (PackedMove.isDoublePush(move)) {
+                    score += 10;
+                }
+                break;
+            case KNIGHT:
+            case BISHOP:
+                score += 15 * centrality;
+                if (Position.yOf(from) == homeRank) {
+                    score += 40;
+                }
+                break;
+            case QUEEN:
+                score += 5 * centrality;
+                break;
+            case KING:
+                if (!PackedMove.isCastling(move)) {
+                    score -= 30;
+                }
+                break;
+            default:
+                score += 5 * centrality;
+                break;
+        }
+        return score;
+    }
+}
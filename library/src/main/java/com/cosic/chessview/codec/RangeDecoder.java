@@ -0,0 +1,55 @@
+package com.cosic.chessview.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the code written by {@link RangeEncoder}, the end of the stream reads as zero bytes.
+ */
+final class RangeDecoder {
+
+    private final InputStream mIn;
+
+    private long mRange = RangeEncoder.MASK;
+    private long mCode = 0L;
+    private long mStep;
+
+    RangeDecoder(InputStream in) throws IOException {
+        this.mIn = in;
+        for (int i = 0; i < 4; i++) {
+            mCode = (mCode << 8) | read();
+        }
+    }
+
+    /**
+     * The first step of decoding a symbol;
+     *
+     * @return value in [0, total), the symbol whose frequencies cover it is the decoded one;
+     * @throws IOException if the code is outside of the range, the data is corrupted;
+     */
+    int getFrequency(int total) throws IOException {
+        mStep = mRange / total;
+        long value = mCode / mStep;
+        if (value >= total) {
+            throw new IOException("Corrupted move data");
+        }
+        return (int) value;
+    }
+
+    /**
+     * The second step, with the frequencies of the symbol found by {@link #getFrequency(int)};
+     */
+    void decode(int start, int size) throws IOException {
+        mCode -= mStep * start;
+        mRange = mStep * size;
+        while (mRange < RangeEncoder.TOP) {
+            mCode = ((mCode << 8) | read()) & RangeEncoder.MASK;
+            mRange <<= 8;
+        }
+    }
+
+    private int read() throws IOException {
+        int value = mIn.read();
+        return value < 0 ? 0 : value;
+    }
+}
@@ -0,0 +1,97 @@
+package com.cosic.chessview.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Range coder with carry propagation, 32-bit range, symbols given by cumulative frequencies.
+ * <p>
+ * The leading byte of the code, always zero, is not written, and neither are trailing zero bytes:
+ * {@link RangeDecoder} reads zeros past the end of the data, so a short game costs only the bytes
+ * its moves need.
+ */
+final class RangeEncoder {
+
+    static final long TOP = 1L << 24;
+    static final long MASK = 0xFFFFFFFFL;
+
+    private final OutputStream mOut;
+
+    private long mLow = 0L;
+    private long mRange = MASK;
+    private int mCache = 0;
+    private long mCacheSize = 1;
+    private boolean mFirstByte = true;
+
+    /**
+     * Zero bytes not written yet, dropped if nothing else follows;
+     */
+    private long mPendingZeros = 0;
+
+    RangeEncoder(OutputStream out) {
+        this.mOut = out;
+    }
+
+    /**
+     * @param start - sum of frequencies of the symbols before this one;
+     * @param size  - frequency of the symbol, not 0;
+     * @param total - sum of frequencies of all symbols, not more than {@link #TOP} >> 8;
+     */
+    void encode(int start, int size, int total) throws IOException {
+        long r = mRange / total;
+        mLow += r * start;
+        mRange = r * size;
+        while (mRange < TOP) {
+            mRange <<= 8;
+            shiftLow();
+        }
+    }
+
+    /**
+     * Write the shortest code which still lies inside the final range;
+     */
+    void finish() throws IOException {
+        final long high = mLow + mRange - 1;
+        for (int bits = 40; bits >= 0; bits--) {
+            long mask = (1L << bits) - 1;
+            long value = (mLow + mask) & ~mask;
+            if (value >= mLow && value <= high) {
+                mLow = value;
+                break;
+            }
+        }
+        for (int i = 0; i < 5; i++) {
+            shiftLow();
+        }
+        mPendingZeros = 0;
+    }
+
+    private void shiftLow() throws IOException {
+        if (mLow < 0xFF000000L || mLow > MASK) {
+            int carry = (int) (mLow >>> 32);
+            int value = mCache;
+            do {
+                write((value + carry) & 0xFF);
+                value = 0xFF;
+            } while (--mCacheSize != 0);
+            mCache = (int) (mLow >>> 24) & 0xFF;
+        }
+        mCacheSize++;
+        mLow = (mLow & 0x00FFFFFFL) << 8;
+    }
+
+    private void write(int value) throws IOException {
+        if (mFirstByte) {
+            mFirstByte = false;
+            return;
+        }
+        if (value == 0) {
+            mPendingZeros++;
+            return;
+        }
+        for (; mPendingZeros > 0; mPendingZeros--) {
+            mOut.write(0);
+        }
+        mOut.write(value);
+    }
+}
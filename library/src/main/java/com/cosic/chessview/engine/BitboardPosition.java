@@ -0,0 +1,402 @@
+package com.cosic.chessview.engine;
+
+import com.cosic.chessview.board.Board;
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.FenSerializer;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.board.Zobrist;
+import com.cosic.chessview.models.Cell;
+import java.util.Arrays;
+
+/**
+ * Chess position as 12 piece bitboards plus the FEN header, for move generation and search.
+ * <p>
+ * Bitboards are indexed by {@link Cell#ordinal()}, squares are the same as in {@link Position}.
+ * A mailbox is kept along for constant-time piece lookup, the Zobrist hash is the same as
+ * {@link Position#getZobristHash()} of the same position. {@link #makeMove(int)} pushes the state
+ * on the internal stack and {@link #unmakeMove()} restores it.
+ * <p>
+ * The instance is not thread-safe, use {@link #BitboardPosition(BitboardPosition)} to share work.
+ */
+public final class BitboardPosition implements Board {
+
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    static final int PAWN = 1;
+    static final int ROOK = 2;
+    static final int KNIGHT = 3;
+    static final int BISHOP = 4;
+    static final int QUEEN = 5;
+    static final int KING = 6;
+
+    private static final int CELL_COUNT = 13;
+    private static final int INITIAL_HISTORY = 64;
+
+    /**
+     * Castling rights lost when a piece moves from or to the square;
+     */
+    private static final int[] CASTLING_LOST_BY_SQUARE = new int[Position.COUNT_OF_SQUARES];
+
+    static {
+        CASTLING_LOST_BY_SQUARE[Position.square(0, 0)] = Position.CASTLING_BLACK_QUEENSIDE;
+        CASTLING_LOST_BY_SQUARE[Position.square(4, 0)] = Position.CASTLING_BLACK_KINGSIDE | Position.CASTLING_BLACK_QUEENSIDE;
+        CASTLING_LOST_BY_SQUARE[Position.square(7, 0)] = Position.CASTLING_BLACK_KINGSIDE;
+        CASTLING_LOST_BY_SQUARE[Position.square(0, 7)] = Position.CASTLING_WHITE_QUEENSIDE;
+        CASTLING_LOST_BY_SQUARE[Position.square(4, 7)] = Position.CASTLING_WHITE_KINGSIDE | Position.CASTLING_WHITE_QUEENSIDE;
+        CASTLING_LOST_BY_SQUARE[Position.square(7, 7)] = Position.CASTLING_WHITE_KINGSIDE;
+    }
+
+    final long[] mPieces = new long[CELL_COUNT];
+    final long[] mSides = new long[2];
+    long mOccupied;
+    final byte[] mBoard = new byte[Position.COUNT_OF_SQUARES];
+
+    int mSide = WHITE;
+    int mCastlingRights = Position.CASTLING_NONE;
+    int mEnPassantSquare = Position.NO_SQUARE;
+    int mHalfmoveClock = 0;
+    int mFullmoveNumber = 1;
+    long mHash = 0L;
+
+    /**
+     * Made moves and the state before each of them: captured piece, castling rights,
+     * en passant square + 1 and halfmove clock;
+     */
+    private int[] mHistoryMoves = new int[INITIAL_HISTORY];
+    private int[] mHistoryStates = new int[INITIAL_HISTORY];
+    private long[] mHistoryHashes = new long[INITIAL_HISTORY];
+    private int mHistorySize = 0;
+
+    public BitboardPosition() {
+    }
+
+    public BitboardPosition(Board board) {
+        set(board);
+    }
+
+    /**
+     * Copy of the position without the move history;
+     */
+    public BitboardPosition(BitboardPosition other) {
+        System.arraycopy(other.mPieces, 0, mPieces, 0, CELL_COUNT);
+        System.arraycopy(other.mBoard, 0, mBoard, 0, Position.COUNT_OF_SQUARES);
+        mSides[WHITE] = other.mSides[WHITE];
+        mSides[BLACK] = other.mSides[BLACK];
+        mOccupied = other.mOccupied;
+        mSide = other.mSide;
+        mCastlingRights = other.mCastlingRights;
+        mEnPassantSquare = other.mEnPassantSquare;
+        mHalfmoveClock = other.mHalfmoveClock;
+        mFullmoveNumber = other.mFullmoveNumber;
+        mHash = other.mHash;
+    }
+
+    /**
+     * @throws com.cosic.chessview.board.FenFormatException if the fen is malformed;
+     */
+    public static BitboardPosition fromFen(String fen) {
+        return new BitboardPosition(FenParser.parse(fen));
+    }
+
+    public static BitboardPosition startPosition() {
+        return fromFen(FenParser.START_FEN);
+    }
+
+    /**
+     * Copy pieces and the header from any board, the move history is cleared;
+     */
+    public void set(Board board) {
+        Arrays.fill(mPieces, 0L);
+        mSides[WHITE] = 0L;
+        mSides[BLACK] = 0L;
+        for (int square = 0; square < Position.COUNT_OF_SQUARES; square++) {
+            int cell = board.getCellOrdinal(square);
+            mBoard[square] = (byte) cell;
+            if (cell != 0) {
+                mPieces[cell] |= 1L << square;
+                mSides[sideOf(cell)] |= 1L << square;
+            }
+        }
+        mOccupied = mSides[WHITE] | mSides[BLACK];
+        mSide = board.isWhiteToMove() ? WHITE : BLACK;
+        mCastlingRights = board.getCastlingRights();
+        mEnPassantSquare = board.getEnPassantSquare();
+        mHalfmoveClock = board.getHalfmoveClock();
+        mFullmoveNumber = board.getFullmoveNumber();
+        mHash = Zobrist.hash(this);
+        mHistorySize = 0;
+    }
+
+    /**
+     * Write the position into the mailbox position;
+     *
+     * @return the same position;
+     */
+    public Position toPosition(Position position) {
+        position.clear();
+        for (int square = 0; square < Position.COUNT_OF_SQUARES; square++) {
+            if (mBoard[square] != 0) {
+                position.setCell(square, Position.cellOf(mBoard[square]));
+            }
+        }
+        position.setWhiteToMove(mSide == WHITE);
+        position.setCastlingRights(mCastlingRights);
+        position.setEnPassantSquare(mEnPassantSquare);
+        position.setHalfmoveClock(mHalfmoveClock);
+        position.setFullmoveNumber(mFullmoveNumber);
+        return position;
+    }
+
+    public String toFen() {
+        return FenSerializer.toFen(this);
+    }
+
+    /**
+     * @param cell - piece of a side;
+     * @return squares of the pieces;
+     */
+    public long getPieces(Cell cell) {
+        return mPieces[cell.ordinal()];
+    }
+
+    /**
+     * @return squares of all pieces of the side, {@link #WHITE} or {@link #BLACK};
+     */
+    public long getSidePieces(int side) {
+        return mSides[side];
+    }
+
+    public long getOccupied() {
+        return mOccupied;
+    }
+
+    /**
+     * @return {@link #WHITE} or {@link #BLACK};
+     */
+    public int getSide() {
+        return mSide;
+    }
+
+    @Override
+    public int getCellOrdinal(int square) {
+        return mBoard[square];
+    }
+
+    public Cell getCell(int square) {
+        return Position.cellOf(mBoard[square]);
+    }
+
+    @Override
+    public boolean isWhiteToMove() {
+        return mSide == WHITE;
+    }
+
+    @Override
+    public int getCastlingRights() {
+        return mCastlingRights;
+    }
+
+    @Override
+    public int getEnPassantSquare() {
+        return mEnPassantSquare;
+    }
+
+    @Override
+    public int getHalfmoveClock() {
+        return mHalfmoveClock;
+    }
+
+    @Override
+    public int getFullmoveNumber() {
+        return mFullmoveNumber;
+    }
+
+    @Override
+    public String getSourceFen() {
+        return null;
+    }
+
+    @Override
+    public long getZobristHash() {
+        return mHash;
+    }
+
+    /**
+     * @return count of moves which may be taken back by {@link #unmakeMove()};
+     */
+    public int getHistorySize() {
+        return mHistorySize;
+    }
+
+    public boolean isInCheck() {
+        int king = Long.numberOfTrailingZeros(mPieces[ordinal(KING, mSide)]);
+        return king < 64 && isAttacked(king, mSide ^ 1, mOccupied);
+    }
+
+    /**
+     * Make a move produced by {@link MoveGenerator} for this position;
+     */
+    public void makeMove(int move) {
+        if (mHistorySize == mHistoryMoves.length) {
+            int capacity = mHistorySize * 2;
+            mHistoryMoves = Arrays.copyOf(mHistoryMoves, capacity);
+            mHistoryStates = Arrays.copyOf(mHistoryStates, capacity);
+            mHistoryHashes = Arrays.copyOf(mHistoryHashes, capacity);
+        }
+
+        final int from = PackedMove.from(move);
+        final int to = PackedMove.to(move);
+        final int us = mSide;
+        final int piece = mBoard[from];
+        long hash = mHash ^ Zobrist.castling(mCastlingRights) ^ Zobrist.enPassant(mEnPassantSquare);
+
+        int captured;
+        if (PackedMove.isEnPassant(move)) {
+            int capturedSquare = us == WHITE ? to + 8 : to - 8;
+            captured = mBoard[capturedSquare];
+            remove(captured, capturedSquare);
+            hash ^= Zobrist.piece(captured, capturedSquare);
+        } else {
+            captured = mBoard[to];
+            if (captured != 0) {
+                remove(captured, to);
+                hash ^= Zobrist.piece(captured, to);
+            }
+        }
+
+        mHistoryMoves[mHistorySize] = move;
+        mHistoryStates[mHistorySize] = captured
+                | mCastlingRights << 4
+                | (mEnPassantSquare + 1) << 8
+                | mHalfmoveClock << 15;
+        mHistoryHashes[mHistorySize] = mHash;
+        mHistorySize++;
+
+        remove(piece, from);
+        int placed = PackedMove.promotion(move) != 0 ? PackedMove.promotion(move) : piece;
+        add(placed, to);
+        hash ^= Zobrist.piece(piece, from) ^ Zobrist.piece(placed, to);
+
+        if (PackedMove.isCastling(move)) {
+            int rookFrom = to > from ? to + 1 : to - 2;
+            int rookTo = to > from ? to - 1 : to + 1;
+            int rook = mBoard[rookFrom];
+            remove(rook, rookFrom);
+            add(rook, rookTo);
+            hash ^= Zobrist.piece(rook, rookFrom) ^ Zobrist.piece(rook, rookTo);
+        }
+
+        mCastlingRights &= ~(CASTLING_LOST_BY_SQUARE[from] | CASTLING_LOST_BY_SQUARE[to]);
+        mEnPassantSquare = PackedMove.isDoublePush(move) ? (from + to) >>> 1 : Position.NO_SQUARE;
+        mHalfmoveClock = typeOf(piece) == PAWN || captured != 0 ? 0 : mHalfmoveClock + 1;
+        if (us == BLACK) {
+            mFullmoveNumber++;
+        }
+        mSide = us ^ 1;
+
+        mHash = hash ^ Zobrist.castling(mCastlingRights) ^ Zobrist.enPassant(mEnPassantSquare)
+                ^ Zobrist.sideToMove(true) ^ Zobrist.sideToMove(false);
+    }
+
+    /**
+     * Take back the last move made by {@link #makeMove(int)};
+     */
+    public void unmakeMove() {
+        if (mHistorySize == 0) {
+            throw new IllegalStateException("No move to take back");
+        }
+        mHistorySize--;
+        final int move = mHistoryMoves[mHistorySize];
+        final int state = mHistoryStates[mHistorySize];
+        final int from = PackedMove.from(move);
+        final int to = PackedMove.to(move);
+
+        mSide ^= 1;
+        final int us = mSide;
+        if (us == BLACK) {
+            mFullmoveNumber--;
+        }
+
+        int placed = mBoard[to];
+        int piece = PackedMove.promotion(move) != 0 ? ordinal(PAWN, us) : placed;
+        remove(placed, to);
+        add(piece, from);
+
+        if (PackedMove.isCastling(move)) {
+            int rookFrom = to > from ? to + 1 : to - 2;
+            int rookTo = to > from ? to - 1 : to + 1;
+            int rook = mBoard[rookTo];
+            remove(rook, rookTo);
+            add(rook, rookFrom);
+        }
+
+        int captured = state & 0xF;
+        if (captured != 0) {
+            add(captured, PackedMove.isEnPassant(move) ? (us == WHITE ? to + 8 : to - 8) : to);
+        }
+
+        mCastlingRights = (state >>> 4) & 0xF;
+        mEnPassantSquare = ((state >>> 8) & 0x7F) - 1;
+        mHalfmoveClock = state >>> 15;
+        mHash = mHistoryHashes[mHistorySize];
+    }
+
+    /**
+     * @return true if the square is attacked by the side with the given occupancy;
+     */
+    boolean isAttacked(int square, int by, long occupied) {
+        return (Bitboards.PAWN_ATTACKS[by ^ 1][square] & mPieces[ordinal(PAWN, by)]) != 0
+                || (Bitboards.KNIGHT_ATTACKS[square] & mPieces[ordinal(KNIGHT, by)]) != 0
+                || (Bitboards.KING_ATTACKS[square] & mPieces[ordinal(KING, by)]) != 0
+                || (Bitboards.bishopAttacks(square, occupied)
+                & (mPieces[ordinal(BISHOP, by)] | mPieces[ordinal(QUEEN, by)])) != 0
+                || (Bitboards.rookAttacks(square, occupied)
+                & (mPieces[ordinal(ROOK, by)] | mPieces[ordinal(QUEEN, by)])) != 0;
+    }
+
+    /**
+     * @return pieces of the side which attack the square;
+     */
+    long attackers(int square, int by, long occupied) {
+        return (Bitboards.PAWN_ATTACKS[by ^ 1][square] & mPieces[ordinal(PAWN, by)])
+                | (Bitboards.KNIGHT_ATTACKS[square] & mPieces[ordinal(KNIGHT, by)])
+                | (Bitboards.KING_ATTACKS[square] & mPieces[ordinal(KING, by)])
+                | (Bitboards.bishopAttacks(square, occupied)
+                & (mPieces[ordinal(BISHOP, by)] | mPieces[ordinal(QUEEN, by)]))
+                | (Bitboards.rookAttacks(square, occupied)
+                & (mPieces[ordinal(ROOK, by)] | mPieces[ordinal(QUEEN, by)]));
+    }
+
+    private void add(int cell, int square) {
+        long bit = 1L << square;
+        mPieces[cell] |= bit;
+        mSides[sideOf(cell)] |= bit;
+        mOccupied |= bit;
+        mBoard[square] = (byte) cell;
+    }
+
+    private void remove(int cell, int square) {
+        long bit = ~(1L << square);
+        mPieces[cell] &= bit;
+        mSides[sideOf(cell)] &= bit;
+        mOccupied &= bit;
+        mBoard[square] = 0;
+    }
+
+    /**
+     * White pieces have odd ordinals, black ones even;
+     */
+    static int ordinal(int type, int side) {
+        return 2 * type - 1 + side;
+    }
+
+    static int typeOf(int cell) {
+        return (cell + 1) >> 1;
+    }
+
+    static int sideOf(int cell) {
+        return (cell & 1) == 0 ? BLACK : WHITE;
+    }
+}
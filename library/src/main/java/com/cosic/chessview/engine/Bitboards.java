@@ -0,0 +1,146 @@
+package com.cosic.chessview.engine;
+
+/**
+ * Attack tables of the bitboard engine. Bit i of a bitboard is the square i of
+ * {@link com.cosic.chessview.board.Position}: a8 is bit 0, h8 is bit 7, a1 is bit 56, h1 is bit 63.
+ * <p>
+ * Sliding attacks use classical ray tables: the ray of a direction is cut after the first blocker,
+ * which is the lowest set bit for directions towards greater squares and the highest one otherwise.
+ */
+public final class Bitboards {
+
+    public static final long FILE_A = 0x0101010101010101L;
+    public static final long FILE_H = FILE_A << 7;
+    public static final long RANK_8 = 0xFFL;
+    public static final long RANK_1 = RANK_8 << 56;
+
+    private static final int NORTH = 0;
+    private static final int NORTH_EAST = 1;
+    private static final int EAST = 2;
+    private static final int SOUTH_EAST = 3;
+    private static final int SOUTH = 4;
+    private static final int SOUTH_WEST = 5;
+    private static final int WEST = 6;
+    private static final int NORTH_WEST = 7;
+
+    private static final int[] DIRECTION_DX = {0, 1, 1, 1, 0, -1, -1, -1};
+    private static final int[] DIRECTION_DY = {-1, -1, 0, 1, 1, 1, 0, -1};
+
+    private static final long[][] RAYS = new long[8][64];
+
+    static final long[] KNIGHT_ATTACKS = new long[64];
+    static final long[] KING_ATTACKS = new long[64];
+
+    /**
+     * Squares attacked by a pawn of the side standing on the square;
+     */
+    static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    /**
+     * Squares strictly between two squares on one line, 0 if they are not on one line;
+     */
+    static final long[][] BETWEEN = new long[64][64];
+
+    /**
+     * The whole line through two squares, 0 if they are not on one line;
+     */
+    static final long[][] LINE = new long[64][64];
+
+    static {
+        int[] knightDx = {1, 2, 2, 1, -1, -2, -2, -1};
+        int[] knightDy = {-2, -1, 1, 2, 2, 1, -1, -2};
+        for (int square = 0; square < 64; square++) {
+            int x = square & 7;
+            int y = square >>> 3;
+            for (int i = 0; i < 8; i++) {
+                KNIGHT_ATTACKS[square] |= bit(x + knightDx[i], y + knightDy[i]);
+                KING_ATTACKS[square] |= bit(x + DIRECTION_DX[i], y + DIRECTION_DY[i]);
+
+                long ray = 0L;
+                for (int step = 1; step < 8; step++) {
+                    ray |= bit(x + step * DIRECTION_DX[i], y + step * DIRECTION_DY[i]);
+                }
+                RAYS[i][square] = ray;
+            }
+            PAWN_ATTACKS[BitboardPosition.WHITE][square] = bit(x - 1, y - 1) | bit(x + 1, y - 1);
+            PAWN_ATTACKS[BitboardPosition.BLACK][square] = bit(x - 1, y + 1) | bit(x + 1, y + 1);
+        }
+
+        for (int from = 0; from < 64; from++) {
+            int x = from & 7;
+            int y = from >>> 3;
+            for (int direction = 0; direction < 8; direction++) {
+                long line = RAYS[direction][from] | RAYS[(direction + 4) & 7][from] | (1L << from);
+                long between = 0L;
+                for (int step = 1; step < 8; step++) {
+                    long to = bit(x + step * DIRECTION_DX[direction], y + step * DIRECTION_DY[direction]);
+                    if (to == 0) break;
+                    int square = Long.numberOfTrailingZeros(to);
+                    BETWEEN[from][square] = between;
+                    LINE[from][square] = line;
+                    between |= to;
+                }
+            }
+        }
+    }
+
+    private Bitboards() {
+    }
+
+    private static long bit(int x, int y) {
+        return x >= 0 && x < 8 && y >= 0 && y < 8 ? 1L << (y * 8 + x) : 0L;
+    }
+
+    public static long knightAttacks(int square) {
+        return KNIGHT_ATTACKS[square];
+    }
+
+    public static long kingAttacks(int square) {
+        return KING_ATTACKS[square];
+    }
+
+    /**
+     * @param side - {@link BitboardPosition#WHITE} or {@link BitboardPosition#BLACK};
+     */
+    public static long pawnAttacks(int side, int square) {
+        return PAWN_ATTACKS[side][square];
+    }
+
+    public static long rookAttacks(int square, long occupied) {
+        return positiveRay(EAST, square, occupied) | positiveRay(SOUTH, square, occupied)
+                | negativeRay(NORTH, square, occupied) | negativeRay(WEST, square, occupied);
+    }
+
+    public static long bishopAttacks(int square, long occupied) {
+        return positiveRay(SOUTH_EAST, square, occupied) | positiveRay(SOUTH_WEST, square, occupied)
+                | negativeRay(NORTH_EAST, square, occupied) | negativeRay(NORTH_WEST, square, occupied);
+    }
+
+    public static long queenAttacks(int square, long occupied) {
+        return rookAttacks(square, occupied) | bishopAttacks(square, occupied);
+    }
+
+    /**
+     * Ray towards greater squares, cut after the nearest blocker;
+     */
+    private static long positiveRay(int direction, int square, long occupied) {
+        long attacks = RAYS[direction][square];
+        long blockers = attacks & occupied;
+        if (blockers != 0) {
+            attacks ^= RAYS[direction][Long.numberOfTrailingZeros(blockers)];
+        }
+        return attacks;
+    }
+
+    /**
+     * Ray towards lower squares, cut after the nearest blocker;
+     */
+    private static long negativeRay(int direction, int square, long occupied) {
+        long attacks = RAYS[direction][square];
+        long blockers = attacks & occupied;
+        if (blockers != 0) {
+            attacks ^= RAYS[direction][63 - Long.numberOfLeadingZeros(blockers)];
+        }
+        return attacks;
+    }
+}
@@ -0,0 +1,248 @@
+package com.cosic.chessview.engine;
+
+import static com.cosic.chessview.engine.BitboardPosition.BISHOP;
+import static com.cosic.chessview.engine.BitboardPosition.KING;
+import static com.cosic.chessview.engine.BitboardPosition.KNIGHT;
+import static com.cosic.chessview.engine.BitboardPosition.PAWN;
+import static com.cosic.chessview.engine.BitboardPosition.QUEEN;
+import static com.cosic.chessview.engine.BitboardPosition.ROOK;
+import static com.cosic.chessview.engine.BitboardPosition.WHITE;
+import static com.cosic.chessview.engine.BitboardPosition.ordinal;
+
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+
+/**
+ * Generator of legal moves. Checks and pins are found once per position, so every generated
+ * move is legal without making it: pinned pieces move only along the pin line, in check only
+ * captures of the checker and blocks are generated, king moves are tested against the occupancy
+ * without the king. En passant captures are tested separately because two pawns leave the rank.
+ */
+public final class MoveGenerator {
+
+    /**
+     * More than the largest count of legal moves in a chess position (218);
+     */
+    public static final int MAX_MOVES = 256;
+
+    private static final long ALL = -1L;
+
+    private static final int WHITE_KING = Position.square(4, 7);
+    private static final int BLACK_KING = Position.square(4, 0);
+
+    private MoveGenerator() {
+    }
+
+    /**
+     * Write all legal moves of the side to move;
+     *
+     * @param moves - at least {@link #MAX_MOVES} long;
+     * @return count of moves;
+     */
+    public static int generate(BitboardPosition position, int[] moves) {
+        final long[] pieces = position.mPieces;
+        final int us = position.mSide;
+        final int them = us ^ 1;
+        final long own = position.mSides[us];
+        final long enemy = position.mSides[them];
+        final long occupied = position.mOccupied;
+
+        final long kingBit = pieces[ordinal(KING, us)];
+        if (kingBit == 0) {
+            return 0;
+        }
+        final int king = Long.numberOfTrailingZeros(kingBit);
+        int count = 0;
+
+        // King moves are checked against the board without the king, it can't hide behind itself;
+        final long withoutKing = occupied ^ kingBit;
+        for (long targets = Bitboards.KING_ATTACKS[king] & ~own; targets != 0; targets &= targets - 1) {
+            int to = Long.numberOfTrailingZeros(targets);
+            if (!position.isAttacked(to, them, withoutKing)) {
+                moves[count++] = PackedMove.of(king, to, 0, captureFlag(enemy, to));
+            }
+        }
+
+        final long checkers = position.attackers(king, them, occupied);
+        if (Long.bitCount(checkers) > 1) {
+            return count;
+        }
+        final long checkMask = checkers == 0
+                ? ALL
+                : checkers | Bitboards.BETWEEN[king][Long.numberOfTrailingZeros(checkers)];
+
+        // Own pieces which are the only blockers between the king and an enemy slider;
+        long pinned = 0L;
+        final long enemyRooks = pieces[ordinal(ROOK, them)] | pieces[ordinal(QUEEN, them)];
+        final long enemyBishops = pieces[ordinal(BISHOP, them)] | pieces[ordinal(QUEEN, them)];
+        long snipers = (Bitboards.rookAttacks(king, enemy) & enemyRooks)
+                | (Bitboards.bishopAttacks(king, enemy) & enemyBishops);
+        for (; snipers != 0; snipers &= snipers - 1) {
+            long blockers = Bitboards.BETWEEN[king][Long.numberOfTrailingZeros(snipers)] & occupied;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0 && (blockers & own) != 0) {
+                pinned |= blockers;
+            }
+        }
+
+        final long targetsMask = ~own & checkMask;
+
+        // Knights, pinned ones can't move at all;
+        for (long from = pieces[ordinal(KNIGHT, us)] & ~pinned; from != 0; from &= from - 1) {
+            int square = Long.numberOfTrailingZeros(from);
+            count = addAll(moves, count, square, Bitboards.KNIGHT_ATTACKS[square] & targetsMask, enemy);
+        }
+
+        for (long from = pieces[ordinal(BISHOP, us)] | pieces[ordinal(QUEEN, us)]; from != 0; from &= from - 1) {
+            int square = Long.numberOfTrailingZeros(from);
+            long targets = Bitboards.bishopAttacks(square, occupied) & targetsMask;
+            if ((pinned & (1L << square)) != 0) {
+                targets &= Bitboards.LINE[king][square];
+            }
+            count = addAll(moves, count, square, targets, enemy);
+        }
+
+        for (long from = pieces[ordinal(ROOK, us)] | pieces[ordinal(QUEEN, us)]; from != 0; from &= from - 1) {
+            int square = Long.numberOfTrailingZeros(from);
+            long targets = Bitboards.rookAttacks(square, occupied) & targetsMask;
+            if ((pinned & (1L << square)) != 0) {
+                targets &= Bitboards.LINE[king][square];
+            }
+            count = addAll(moves, count, square, targets, enemy);
+        }
+
+        count = generatePawnMoves(position, moves, count, king, checkers, checkMask, pinned);
+
+        if (checkers == 0) {
+            count = generateCastling(position, moves, count);
+        }
+        return count;
+    }
+
+    private static int generatePawnMoves(BitboardPosition position, int[] moves, int count,
+                                         int king, long checkers, long checkMask, long pinned) {
+        final int us = position.mSide;
+        final int them = us ^ 1;
+        final long enemy = position.mSides[them];
+        final long empty = ~position.mOccupied;
+        final int forward = us == WHITE ? -8 : 8;
+        final long startRank = us == WHITE ? Bitboards.RANK_1 >>> 8 : Bitboards.RANK_8 << 8;
+        final long lastRank = us == WHITE ? Bitboards.RANK_8 : Bitboards.RANK_1;
+        final int enPassant = position.mEnPassantSquare;
+
+        for (long pawns = position.mPieces[ordinal(PAWN, us)]; pawns != 0; pawns &= pawns - 1) {
+            final int from = Long.numberOfTrailingZeros(pawns);
+            final long fromBit = 1L << from;
+            long allowed = checkMask;
+            if ((pinned & fromBit) != 0) {
+                allowed &= Bitboards.LINE[king][from];
+            }
+
+            int to = from + forward;
+            long toBit = 1L << to;
+            if ((toBit & empty) != 0) {
+                if ((toBit & allowed) != 0) {
+                    count = addPawnMove(moves, count, from, to, 0, (toBit & lastRank) != 0, us);
+                }
+                int doubleTo = to + forward;
+                long doubleBit = 1L << doubleTo;
+                if ((fromBit & startRank) != 0 && (doubleBit & empty & allowed) != 0) {
+                    moves[count++] = PackedMove.of(from, doubleTo, 0, PackedMove.FLAG_DOUBLE_PUSH);
+                }
+            }
+
+            final long attacks = Bitboards.PAWN_ATTACKS[us][from];
+            for (long captures = attacks & enemy & allowed; captures != 0; captures &= captures - 1) {
+                int target = Long.numberOfTrailingZeros(captures);
+                count = addPawnMove(moves, count, from, target, PackedMove.FLAG_CAPTURE,
+                        ((1L << target) & lastRank) != 0, us);
+            }
+
+            if (enPassant != Position.NO_SQUARE && (attacks & (1L << enPassant)) != 0
+                    && isEnPassantLegal(position, from, enPassant, king, checkers)) {
+                moves[count++] = PackedMove.of(from, enPassant, 0, PackedMove.FLAG_CAPTURE | PackedMove.FLAG_EN_PASSANT);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The captured pawn must be the checker or the capture must block the check, and the king
+     * must not be open to a slider when both pawns are gone;
+     */
+    private static boolean isEnPassantLegal(BitboardPosition position, int from, int to, int king, long checkers) {
+        final int us = position.mSide;
+        final int them = us ^ 1;
+        final int captured = us == WHITE ? to + 8 : to - 8;
+        if (checkers != 0 && (checkers & (1L << captured)) == 0
+                && (Bitboards.BETWEEN[king][Long.numberOfTrailingZeros(checkers)] & (1L << to)) == 0) {
+            return false;
+        }
+        long occupied = (position.mOccupied ^ (1L << from) ^ (1L << captured)) | (1L << to);
+        final long[] pieces = position.mPieces;
+        long rooks = pieces[ordinal(ROOK, them)] | pieces[ordinal(QUEEN, them)];
+        long bishops = pieces[ordinal(BISHOP, them)] | pieces[ordinal(QUEEN, them)];
+        return (Bitboards.rookAttacks(king, occupied) & rooks) == 0
+                && (Bitboards.bishopAttacks(king, occupied) & bishops) == 0;
+    }
+
+    private static int generateCastling(BitboardPosition position, int[] moves, int count) {
+        final int us = position.mSide;
+        final int rights = position.mCastlingRights;
+        final int king = us == WHITE ? WHITE_KING : BLACK_KING;
+        if (position.mBoard[king] != ordinal(KING, us)) {
+            return count;
+        }
+        int kingside = us == WHITE ? Position.CASTLING_WHITE_KINGSIDE : Position.CASTLING_BLACK_KINGSIDE;
+        int queenside = us == WHITE ? Position.CASTLING_WHITE_QUEENSIDE : Position.CASTLING_BLACK_QUEENSIDE;
+        if ((rights & kingside) != 0) {
+            count = addCastling(position, moves, count, king, king + 2, king + 3, us);
+        }
+        if ((rights & queenside) != 0) {
+            count = addCastling(position, moves, count, king, king - 2, king - 4, us);
+        }
+        return count;
+    }
+
+    private static int addCastling(BitboardPosition position, int[] moves, int count,
+                                   int king, int to, int rook, int us) {
+        if (position.mBoard[rook] != ordinal(ROOK, us)) {
+            return count;
+        }
+        long between = Bitboards.BETWEEN[king][rook];
+        if ((position.mOccupied & between) != 0) {
+            return count;
+        }
+        int step = to > king ? 1 : -1;
+        int them = us ^ 1;
+        if (position.isAttacked(king + step, them, position.mOccupied)
+                || position.isAttacked(to, them, position.mOccupied)) {
+            return count;
+        }
+        moves[count++] = PackedMove.of(king, to, 0, PackedMove.FLAG_CASTLING);
+        return count;
+    }
+
+    private static int addPawnMove(int[] moves, int count, int from, int to, int flags, boolean promotion, int us) {
+        if (!promotion) {
+            moves[count++] = PackedMove.of(from, to, 0, flags);
+            return count;
+        }
+        moves[count++] = PackedMove.of(from, to, ordinal(QUEEN, us), flags);
+        moves[count++] = PackedMove.of(from, to, ordinal(ROOK, us), flags);
+        moves[count++] = PackedMove.of(from, to, ordinal(BISHOP, us), flags);
+        moves[count++] = PackedMove.of(from, to, ordinal(KNIGHT, us), flags);
+        return count;
+    }
+
+    private static int addAll(int[] moves, int count, int from, long targets, long enemy) {
+        for (; targets != 0; targets &= targets - 1) {
+            int to = Long.numberOfTrailingZeros(targets);
+            moves[count++] = PackedMove.of(from, to, 0, captureFlag(enemy, to));
+        }
+        return count;
+    }
+
+    private static int captureFlag(long enemy, int to) {
+        return (enemy & (1L << to)) != 0 ? PackedMove.FLAG_CAPTURE : 0;
+    }
+}
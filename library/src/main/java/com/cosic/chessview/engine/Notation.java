@@ -0,0 +1,228 @@
+package com.cosic.chessview.engine;
+
+import static com.cosic.chessview.engine.BitboardPosition.KING;
+import static com.cosic.chessview.engine.BitboardPosition.PAWN;
+
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.board.Squares;
+
+/**
+ * SAN and UCI notation of moves of {@link BitboardPosition}.
+ * Parsing matches the text against the legal moves, so a parsed move is always legal
+ * and may be passed to {@link BitboardPosition#makeMove(int)} as is.
+ */
+public final class Notation {
+
+    /**
+     * Piece letters by {@link BitboardPosition} piece type;
+     */
+    private static final char[] PIECE_LETTERS = {0, 'P', 'R', 'N', 'B', 'Q', 'K'};
+
+    private Notation() {
+    }
+
+    /**
+     * @return "e2e4", "e7e8q";
+     */
+    public static String toUci(int move) {
+        return PackedMove.toString(move);
+    }
+
+    /**
+     * @return legal move or {@link PackedMove#NONE};
+     */
+    public static int parseUci(BitboardPosition position, CharSequence uci) {
+        int from = Squares.parse(uci, 0);
+        int to = Squares.parse(uci, 2);
+        if (from == Position.NO_SQUARE || to == Position.NO_SQUARE) {
+            return PackedMove.NONE;
+        }
+        int promotionType = uci.length() > 4 ? pieceType(Character.toUpperCase(uci.charAt(4))) : 0;
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generate(position, moves);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (PackedMove.from(move) == from && PackedMove.to(move) == to
+                    && BitboardPosition.typeOf(PackedMove.promotion(move)) == promotionType) {
+                return move;
+            }
+        }
+        return PackedMove.NONE;
+    }
+
+    /**
+     * @param move - legal move of the position;
+     * @return SAN of the move with the check or mate suffix;
+     */
+    public static String toSan(BitboardPosition position, int move) {
+        StringBuilder builder = new StringBuilder(8);
+        appendSan(position, move, builder);
+        return builder.toString();
+    }
+
+    public static void appendSan(BitboardPosition position, int move, StringBuilder out) {
+        final int from = PackedMove.from(move);
+        final int to = PackedMove.to(move);
+        final int type = BitboardPosition.typeOf(position.mBoard[from]);
+
+        if (PackedMove.isCastling(move)) {
+            out.append(to > from ? "O-O" : "O-O-O");
+        } else if (type == PAWN) {
+            if (PackedMove.isCapture(move)) {
+                out.append(Squares.fileChar(from)).append('x');
+            }
+            out.append(Squares.fileChar(to)).append(Squares.rankChar(to));
+            if (PackedMove.promotion(move) != 0) {
+                out.append('=').append(PIECE_LETTERS[BitboardPosition.typeOf(PackedMove.promotion(move))]);
+            }
+        } else {
+            out.append(PIECE_LETTERS[type]);
+            if (type != KING) {
+                appendDisambiguation(position, move, type, out);
+            }
+            if (PackedMove.isCapture(move)) {
+                out.append('x');
+            }
+            out.append(Squares.fileChar(to)).append(Squares.rankChar(to));
+        }
+
+        position.makeMove(move);
+        if (position.isInCheck()) {
+            out.append(MoveGenerator.generate(position, new int[MoveGenerator.MAX_MOVES]) == 0 ? '#' : '+');
+        }
+        position.unmakeMove();
+    }
+
+    /**
+     * Parse SAN, the check and annotation suffixes are ignored;
+     *
+     * @return legal move or {@link PackedMove#NONE} if the text is malformed, illegal or ambiguous;
+     */
+    public static int parseSan(BitboardPosition position, CharSequence san) {
+        return parseSan(position, san, new int[MoveGenerator.MAX_MOVES]);
+    }
+
+    /**
+     * Same as {@link #parseSan(BitboardPosition, CharSequence)} without allocations;
+     *
+     * @param moves - buffer for the legal moves, at least {@link MoveGenerator#MAX_MOVES} long;
+     */
+    public static int parseSan(BitboardPosition position, CharSequence san, int[] moves) {
+        int end = san.length();
+        while (end > 0 && isSuffix(san.charAt(end - 1))) {
+            end--;
+        }
+        if (end < 2) {
+            return PackedMove.NONE;
+        }
+        int count = MoveGenerator.generate(position, moves);
+
+        if (san.charAt(0) == 'O' || san.charAt(0) == '0') {
+            boolean kingside = end == 3;
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                if (PackedMove.isCastling(move) && (PackedMove.to(move) > PackedMove.from(move)) == kingside) {
+                    return move;
+                }
+            }
+            return PackedMove.NONE;
+        }
+
+        int type = pieceType(san.charAt(0));
+        int index = type != 0 ? 1 : 0;
+        if (type == 0) {
+            type = PAWN;
+        }
+
+        int promotionType = 0;
+        if (type == PAWN) {
+            int equals = end - 2;
+            if (equals > 0 && san.charAt(equals) == '=') {
+                promotionType = pieceType(san.charAt(end - 1));
+                end = equals;
+            } else if (pieceType(san.charAt(end - 1)) != 0) {
+                promotionType = pieceType(san.charAt(end - 1));
+                end--;
+            }
+        }
+
+        int to = Squares.parse(san, end - 2);
+        if (to == Position.NO_SQUARE) {
+            return PackedMove.NONE;
+        }
+        int fromFile = -1;
+        int fromRank = -1;
+        for (int i = index; i < end - 2; i++) {
+            char c = san.charAt(i);
+            if (c >= 'a' && c <= 'h') {
+                fromFile = Squares.xOf(c);
+            } else if (c >= '1' && c <= '8') {
+                fromRank = Squares.yOf(c);
+            } else if (c != 'x' && c != '-') {
+                return PackedMove.NONE;
+            }
+        }
+
+        int found = PackedMove.NONE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int from = PackedMove.from(move);
+            if (PackedMove.to(move) != to || PackedMove.isCastling(move)
+                    || BitboardPosition.typeOf(position.mBoard[from]) != type
+                    || BitboardPosition.typeOf(PackedMove.promotion(move)) != promotionType
+                    || (fromFile >= 0 && Position.xOf(from) != fromFile)
+                    || (fromRank >= 0 && Position.yOf(from) != fromRank)) {
+                continue;
+            }
+            if (found != PackedMove.NONE) {
+                return PackedMove.NONE;
+            }
+            found = move;
+        }
+        return found;
+    }
+
+    private static void appendDisambiguation(BitboardPosition position, int move, int type, StringBuilder out) {
+        final int from = PackedMove.from(move);
+        final int to = PackedMove.to(move);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generate(position, moves);
+        boolean ambiguous = false;
+        boolean sameFile = false;
+        boolean sameRank = false;
+        for (int i = 0; i < count; i++) {
+            int other = PackedMove.from(moves[i]);
+            if (other == from || PackedMove.to(moves[i]) != to
+                    || BitboardPosition.typeOf(position.mBoard[other]) != type) {
+                continue;
+            }
+            ambiguous = true;
+            sameFile |= Position.xOf(other) == Position.xOf(from);
+            sameRank |= Position.yOf(other) == Position.yOf(from);
+        }
+        if (!ambiguous) {
+            return;
+        }
+        if (!sameFile) {
+            out.append(Squares.fileChar(from));
+        } else if (!sameRank) {
+            out.append(Squares.rankChar(from));
+        } else {
+            out.append(Squares.fileChar(from)).append(Squares.rankChar(from));
+        }
+    }
+
+    private static int pieceType(char c) {
+        for (int type = BitboardPosition.ROOK; type < PIECE_LETTERS.length; type++) {
+            if (PIECE_LETTERS[type] == c) {
+                return type;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isSuffix(char c) {
+        return c == '+' || c == '#' || c == '!' || c == '?';
+    }
+}
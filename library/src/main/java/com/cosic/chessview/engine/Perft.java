@@ -0,0 +1,96 @@
+package com.cosic.chessview.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts leaf nodes of the legal move tree, the standard correctness test of a move generator.
+ * {@link #divide} splits the work by root moves over a {@link ForkJoinPool}, every task walks
+ * its own copy of the position.
+ */
+public final class Perft {
+
+    private Perft() {
+    }
+
+    /**
+     * @return count of leaf nodes at the depth, the position is restored;
+     */
+    public static long perft(BitboardPosition position, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        return perft(position, depth, new int[depth][MoveGenerator.MAX_MOVES]);
+    }
+
+    /**
+     * Count nodes below every root move in parallel;
+     */
+    public static PerftResult divide(BitboardPosition position, int depth, ForkJoinPool pool) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth must be positive: " + depth);
+        }
+        final long start = System.nanoTime();
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generate(position, moves);
+
+        List<MoveTask> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(new MoveTask(new BitboardPosition(position), moves[i], depth - 1));
+        }
+        Map<String, Long> divide = new LinkedHashMap<>();
+        long nodes = 0;
+        for (MoveTask task : tasks) {
+            pool.execute(task);
+        }
+        for (MoveTask task : tasks) {
+            long moveNodes = task.join();
+            divide.put(Notation.toUci(task.mMove), moveNodes);
+            nodes += moveNodes;
+        }
+        return new PerftResult(depth, divide, nodes, System.nanoTime() - start);
+    }
+
+    /**
+     * Moves of every ply go to their own row, nothing is allocated during the walk;
+     */
+    private static long perft(BitboardPosition position, int depth, int[][] moves) {
+        int[] plyMoves = moves[depth - 1];
+        int count = MoveGenerator.generate(position, plyMoves);
+        if (depth == 1) {
+            return count;
+        }
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            position.makeMove(plyMoves[i]);
+            nodes += perft(position, depth - 1, moves);
+            position.unmakeMove();
+        }
+        return nodes;
+    }
+
+    private static final class MoveTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final BitboardPosition mPosition;
+        private final int mMove;
+        private final int mDepth;
+
+        MoveTask(BitboardPosition position, int move, int depth) {
+            this.mPosition = position;
+            this.mMove = move;
+            this.mDepth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            mPosition.makeMove(mMove);
+            return perft(mPosition, mDepth);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.cosic.chessview.engine;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of {@link Perft#divide}: count of leaf nodes below every root move.
+ */
+public final class PerftResult {
+
+    private final int mDepth;
+    private final Map<String, Long> mDivide;
+    private final long mNodes;
+    private final long mNanos;
+
+    PerftResult(int depth, Map<String, Long> divide, long nodes, long nanos) {
+        this.mDepth = depth;
+        this.mDivide = Collections.unmodifiableMap(divide);
+        this.mNodes = nodes;
+        this.mNanos = nanos;
+    }
+
+    public int getDepth() {
+        return mDepth;
+    }
+
+    /**
+     * @return nodes by the UCI of the root move, in the order of generation;
+     */
+    public Map<String, Long> getDivide() {
+        return mDivide;
+    }
+
+    public long getNodes() {
+        return mNodes;
+    }
+
+    public long getNanos() {
+        return mNanos;
+    }
+
+    public long getNodesPerSecond() {
+        return mNanos > 0 ? mNodes * TimeUnit.SECONDS.toNanos(1) / mNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "perft(" + mDepth + ") = " + mNodes + " in " + TimeUnit.NANOSECONDS.toMillis(mNanos)
+                + " ms, " + getNodesPerSecond() + " nodes/s";
+    }
+}
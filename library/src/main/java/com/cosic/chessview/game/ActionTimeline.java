@@ -0,0 +1,136 @@
+package com.cosic.chessview.game;
+
+import com.cosic.chessview.board.BoardDiff;
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.models.Action;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Animation steps between all consecutive positions of a game, computed once and in parallel.
+ * <p>
+ * {@link #get(int)} returns the same {@link Action}s as
+ * {@link com.cosic.chessview.ChessView#getMoves(String, String)} for fens[index] and fens[index + 1],
+ * ready to be passed to {@link com.cosic.chessview.ChessView#applyMoving(Action[][], boolean)}.
+ * The timeline is immutable: {@link #get(int)} copies the arrays, {@link #getAction(int, int, int)}
+ * reads them without allocations.
+ */
+public final class ActionTimeline {
+
+    /**
+     * Chunks per worker thread, more chunks balance the load better;
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final Action[][][] mSteps;
+
+    private ActionTimeline(Action[][][] steps) {
+        this.mSteps = steps;
+    }
+
+    /**
+     * Diff all consecutive fens on {@link ForkJoinPool#commonPool()} and wait for the result;
+     * Don't call it on the main thread for long games, use {@link #computeAsync(List, Executor)};
+     *
+     * @throws com.cosic.chessview.board.FenFormatException if any fen is malformed;
+     */
+    public static ActionTimeline compute(List<String> fens) {
+        try {
+            return computeAsync(fens, ForkJoinPool.commonPool()).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Diff all consecutive fens on the executor;
+     * The future fails with {@link com.cosic.chessview.board.FenFormatException} if any fen is malformed;
+     *
+     * @param fens - positions of the game, the list must not be changed until the future is done;
+     */
+    public static CompletableFuture<ActionTimeline> computeAsync(List<String> fens, Executor executor) {
+        final int stepCount = Math.max(0, fens.size() - 1);
+        final Action[][][] steps = new Action[stepCount][][];
+        if (stepCount == 0) {
+            return CompletableFuture.completedFuture(new ActionTimeline(steps));
+        }
+
+        int threads = executor instanceof ForkJoinPool
+                ? ((ForkJoinPool) executor).getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        int chunkSize = Math.max(1, stepCount / (threads * CHUNKS_PER_THREAD));
+        int chunkCount = (stepCount + chunkSize - 1) / chunkSize;
+
+        CompletableFuture<?>[] chunks = new CompletableFuture<?>[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            final int start = i * chunkSize;
+            final int end = Math.min(stepCount, start + chunkSize);
+            chunks[i] = CompletableFuture.runAsync(() -> diffRange(fens, steps, start, end), executor);
+        }
+        return CompletableFuture.allOf(chunks).thenApply(ignored -> new ActionTimeline(steps));
+    }
+
+    /**
+     * Diff steps [start, end), each chunk has own parser buffers and diff engine;
+     */
+    private static void diffRange(List<String> fens, Action[][][] steps, int start, int end) {
+        BoardDiff diff = new BoardDiff();
+        Position from = new Position();
+        Position to = new Position();
+        FenParser.parse(fens.get(start), from);
+        for (int i = start; i < end; i++) {
+            FenParser.parse(fens.get(i + 1), to);
+            steps[i] = diff.diff(from, to);
+            Position swap = from;
+            from = to;
+            to = swap;
+        }
+    }
+
+    /**
+     * @return count of steps, one less than count of positions;
+     */
+    public int size() {
+        return mSteps.length;
+    }
+
+    /**
+     * First array index - index of iteration;
+     * Second array index - piece index;
+     *
+     * @return new copy of the animation steps from position index to position index + 1;
+     */
+    public Action[][] get(int index) {
+        Action[][] step = mSteps[index];
+        Action[][] copy = new Action[step.length][];
+        for (int i = 0; i < step.length; i++) {
+            copy[i] = step[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * @return count of iterations from position index to position index + 1;
+     */
+    public int getIterationCount(int index) {
+        return mSteps[index].length;
+    }
+
+    /**
+     * @return count of pieces animated in the iteration;
+     */
+    public int getActionCount(int index, int iteration) {
+        return mSteps[index][iteration].length;
+    }
+
+    public Action getAction(int index, int iteration, int action) {
+        return mSteps[index][iteration][action];
+    }
+}
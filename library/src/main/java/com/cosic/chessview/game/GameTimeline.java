@@ -0,0 +1,313 @@
+package com.cosic.chessview.game;
+
+import com.cosic.chessview.board.Board;
+import com.cosic.chessview.board.BoardDiff;
+import com.cosic.chessview.board.BoardSnapshot;
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.models.Action;
+import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.models.FadeIn;
+import com.cosic.chessview.models.Move;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Game as a start position and a list of reversible moves.
+ * <p>
+ * Each ply is one long delta (see {@link MoveDelta}) which keeps the captured piece and the previous
+ * castling rights, en passant square and halfmove clock, so {@link #stepForward()} and {@link #stepBack()}
+ * touch only 2 - 4 squares of the current position. A {@link BoardSnapshot} is kept every
+ * {@link #getCheckpointInterval()} plies and {@link #seek(int)} replays from the nearest one:
+ * a game costs about 8 bytes per ply plus a snapshot per interval instead of a FEN per ply.
+ * <p>
+ * The instance is not thread-safe.
+ */
+public final class GameTimeline {
+
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 16;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int mCheckpointInterval;
+
+    private long[] mDeltas = new long[INITIAL_CAPACITY];
+    private int mSize = 0;
+
+    /**
+     * Position after checkpoint index * interval plies, the first one is the start position;
+     */
+    private BoardSnapshot[] mCheckpoints = new BoardSnapshot[INITIAL_CAPACITY / DEFAULT_CHECKPOINT_INTERVAL + 1];
+
+    /**
+     * Position after the current ply;
+     */
+    private final Position mPosition = new Position();
+    private int mPly = 0;
+
+    /**
+     * Position after the last ply, new moves are made on it;
+     */
+    private final Position mLast = new Position();
+
+    public GameTimeline(Board start) {
+        this(start, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * @param start              - position before the first ply;
+     * @param checkpointInterval - count of plies between full snapshots;
+     */
+    public GameTimeline(Board start, int checkpointInterval) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive: " + checkpointInterval);
+        }
+        this.mCheckpointInterval = checkpointInterval;
+        BoardSnapshot snapshot = start instanceof BoardSnapshot
+                ? (BoardSnapshot) start
+                : BoardSnapshot.of(toPosition(start, new Position()));
+        mCheckpoints[0] = snapshot;
+        snapshot.toPosition(mPosition);
+        snapshot.toPosition(mLast);
+    }
+
+    /**
+     * Restore moves from consecutive positions of a game, one ply between each two;
+     * Placement-only fens are checked by their pieces, full ones by the whole position;
+     *
+     * @throws com.cosic.chessview.board.FenFormatException if any fen is malformed;
+     * @throws IllegalArgumentException                     if two positions are not one move apart;
+     */
+    public static GameTimeline fromFens(List<String> fens) {
+        if (fens.isEmpty()) {
+            throw new IllegalArgumentException("No positions");
+        }
+        Position from = FenParser.parse(fens.get(0));
+        GameTimeline timeline = new GameTimeline(from);
+
+        // The header of the last position is made from the one of the first;
+        final boolean startHasHeader = hasHeader(fens.get(0));
+        Position to = new Position();
+        BoardDiff diff = new BoardDiff();
+        for (int i = 1; i < fens.size(); i++) {
+            FenParser.parse(fens.get(i), to);
+            Action[][] steps = diff.diff(from, to);
+            if (steps.length == 0 || !(steps[0][0] instanceof Move)) {
+                throw new IllegalArgumentException("No move between positions " + (i - 1) + " and " + i);
+            }
+            Move move = (Move) steps[0][0];
+            Cell promotion = null;
+            if ((diff.getKind() & BoardDiff.KIND_PROMOTION) != 0) {
+                for (Action action : steps[1]) {
+                    if (action instanceof FadeIn) {
+                        promotion = ((FadeIn) action).getCell();
+                        break;
+                    }
+                }
+            }
+            timeline.addMove(Position.square(move.getFromX(), move.getFromY()),
+                    Position.square(move.getToX(), move.getToY()), promotion);
+
+            final Position last = timeline.mLast;
+            if (last.getEnPassantSquare() != to.getEnPassantSquare()) {
+                // Writers differ on whether a double push without a capturing pawn sets the square;
+                to.setEnPassantSquare(last.getEnPassantSquare());
+            }
+            // A placement-only fen has the default header, which can't follow from anything;
+            boolean follows = startHasHeader && hasHeader(fens.get(i))
+                    ? last.getZobristHash() == to.getZobristHash()
+                    : hasSamePlacement(last, to);
+            if (!follows) {
+                throw new IllegalArgumentException("Position " + i + " doesn't follow from position " + (i - 1));
+            }
+
+            Position swap = from;
+            from = to;
+            to = swap;
+        }
+        return timeline;
+    }
+
+    /**
+     * @return whether the fen has any field after the piece placement;
+     */
+    private static boolean hasHeader(String fen) {
+        return fen.trim().indexOf(' ') >= 0;
+    }
+
+    private static boolean hasSamePlacement(Board first, Board second) {
+        for (int square = 0; square < Position.COUNT_OF_SQUARES; square++) {
+            if (first.getCellOrdinal(square) != second.getCellOrdinal(square)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static Position toPosition(Board board, Position position) {
+        position.clear();
+        for (int square = 0; square < Position.COUNT_OF_SQUARES; square++) {
+            position.setCell(square, Position.cellOf(board.getCellOrdinal(square)));
+        }
+        position.setWhiteToMove(board.isWhiteToMove());
+        position.setCastlingRights(board.getCastlingRights());
+        position.setEnPassantSquare(board.getEnPassantSquare());
+        position.setHalfmoveClock(board.getHalfmoveClock());
+        position.setFullmoveNumber(board.getFullmoveNumber());
+        return position;
+    }
+
+    /**
+     * Append the move after the last ply, the current ply is not changed;
+     * The move is not checked for legality;
+     *
+     * @param promotion - the piece a pawn is promoted to or null;
+     */
+    public void addMove(int from, int to, Cell promotion) {
+        if (mSize == mDeltas.length) {
+            mDeltas = Arrays.copyOf(mDeltas, mSize * 2);
+        }
+        mDeltas[mSize++] = MoveDelta.apply(mLast, from, to, promotion);
+
+        if (mSize % mCheckpointInterval == 0) {
+            int index = mSize / mCheckpointInterval;
+            if (index == mCheckpoints.length) {
+                mCheckpoints = Arrays.copyOf(mCheckpoints, index * 2);
+            }
+            mCheckpoints[index] = BoardSnapshot.of(mLast);
+        }
+    }
+
+    public void addMove(Move move, Cell promotion) {
+        addMove(Position.square(move.getFromX(), move.getFromY()),
+                Position.square(move.getToX(), move.getToY()), promotion);
+    }
+
+    /**
+     * @return count of plies;
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return count of plies made in the current position, 0 - start position;
+     */
+    public int getPly() {
+        return mPly;
+    }
+
+    public int getCheckpointInterval() {
+        return mCheckpointInterval;
+    }
+
+    public boolean hasNext() {
+        return mPly < mSize;
+    }
+
+    public boolean hasPrevious() {
+        return mPly > 0;
+    }
+
+    /**
+     * @return current position, changed by steps and seeks;
+     */
+    public Board getBoard() {
+        return mPosition;
+    }
+
+    /**
+     * @return current position with the last move selected;
+     */
+    public BoardSnapshot getSnapshot() {
+        long selectionMask = 0L;
+        if (mPly > 0) {
+            long delta = mDeltas[mPly - 1];
+            selectionMask = 1L << MoveDelta.from(delta) | 1L << MoveDelta.to(delta);
+        }
+        return BoardSnapshot.of(mPosition, selectionMask);
+    }
+
+    /**
+     * @return the move which has led to the current position or null for the start position;
+     */
+    public Move getLastMove() {
+        if (mPly == 0) {
+            return null;
+        }
+        long delta = mDeltas[mPly - 1];
+        int from = MoveDelta.from(delta);
+        int to = MoveDelta.to(delta);
+        return new Move(Position.xOf(from), Position.yOf(from), Position.xOf(to), Position.yOf(to));
+    }
+
+    /**
+     * @return animation steps of the next ply or empty array at the end of the game;
+     */
+    public Action[][] getForwardActions() {
+        return hasNext() ? MoveDelta.forwardActions(mDeltas[mPly]) : new Action[0][];
+    }
+
+    /**
+     * @return animation steps which take back the current ply or empty array at the start position;
+     */
+    public Action[][] getBackwardActions() {
+        return hasPrevious() ? MoveDelta.backwardActions(mDeltas[mPly - 1]) : new Action[0][];
+    }
+
+    /**
+     * Make the next ply;
+     *
+     * @return false at the end of the game;
+     */
+    public boolean stepForward() {
+        if (!hasNext()) {
+            return false;
+        }
+        long delta = mDeltas[mPly++];
+        mPosition.applyMove(MoveDelta.from(delta), MoveDelta.to(delta), promotionOf(delta));
+        return true;
+    }
+
+    /**
+     * Take back the current ply;
+     *
+     * @return false at the start position;
+     */
+    public boolean stepBack() {
+        if (!hasPrevious()) {
+            return false;
+        }
+        MoveDelta.undo(mPosition, mDeltas[--mPly]);
+        return true;
+    }
+
+    /**
+     * Go to the position after the ply, from the current position or the nearest checkpoint,
+     * whichever needs less steps;
+     *
+     * @param ply - from 0 (start position) to {@link #size()};
+     */
+    public void seek(int ply) {
+        if (ply < 0 || ply > mSize) {
+            throw new IndexOutOfBoundsException("Ply " + ply + " of " + mSize);
+        }
+        int checkpoint = ply / mCheckpointInterval;
+        int fromCheckpoint = ply - checkpoint * mCheckpointInterval;
+        if (Math.abs(ply - mPly) > fromCheckpoint) {
+            mCheckpoints[checkpoint].toPosition(mPosition);
+            mPly = checkpoint * mCheckpointInterval;
+        }
+        while (mPly < ply) {
+            stepForward();
+        }
+        while (mPly > ply) {
+            stepBack();
+        }
+    }
+
+    private static Cell promotionOf(long delta) {
+        int promoted = MoveDelta.promoted(delta);
+        return promoted != 0 ? Position.cellOf(promoted) : null;
+    }
+}
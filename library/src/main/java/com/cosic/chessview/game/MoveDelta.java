@@ -0,0 +1,199 @@
+package com.cosic.chessview.game;
+
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.models.Action;
+import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.models.FadeIn;
+import com.cosic.chessview.models.FadeOut;
+import com.cosic.chessview.models.Move;
+
+/**
+ * Reversible move packed into a long: the move itself plus everything needed to take it back.
+ * <pre>
+ * bits  0..5   from square
+ * bits  6..11  to square
+ * bits 12..15  moved cell ordinal
+ * bits 16..19  captured cell ordinal, 0 - no capture
+ * bits 20..25  square of the captured piece, differs from "to" for en passant
+ * bits 26..29  promotion cell ordinal, 0 - no promotion
+ * bits 30..33  castling rights before the move
+ * bits 34..40  en passant square before the move + 1
+ * bits 41..56  halfmove clock before the move
+ * </pre>
+ */
+final class MoveDelta {
+
+    private static final Cell[] CELLS = Cell.values();
+    private static final int KING_WHITE = Cell.KING_WHITE.ordinal();
+    private static final int KING_BLACK = Cell.KING_BLACK.ordinal();
+    private static final int PAWN_WHITE = Cell.PAWN_WHITE.ordinal();
+    private static final int PAWN_BLACK = Cell.PAWN_BLACK.ordinal();
+
+    private static final float FADE = 0f;
+
+    private MoveDelta() {
+    }
+
+    /**
+     * Make the move on the position, see {@link Position#applyMove};
+     *
+     * @return delta to take the move back;
+     */
+    static long apply(Position position, int from, int to, Cell promotion) {
+        final int moved = position.getCellOrdinal(from);
+        int captured = position.getCellOrdinal(to);
+        int capturedSquare = to;
+        if ((moved == PAWN_WHITE || moved == PAWN_BLACK) && captured == 0
+                && to == position.getEnPassantSquare() && Position.xOf(from) != Position.xOf(to)) {
+            capturedSquare = Position.square(Position.xOf(to), Position.yOf(from));
+            captured = position.getCellOrdinal(capturedSquare);
+        }
+        int promoted = promotion != null ? promotion.ordinal() : 0;
+
+        long delta = from
+                | (long) to << 6
+                | (long) moved << 12
+                | (long) captured << 16
+                | (long) capturedSquare << 20
+                | (long) promoted << 26
+                | (long) position.getCastlingRights() << 30
+                | (long) (position.getEnPassantSquare() + 1) << 34
+                | (long) (position.getHalfmoveClock() & 0xFFFF) << 41;
+
+        position.applyMove(from, to, promotion);
+        return delta;
+    }
+
+    /**
+     * Take back the move made by {@link #apply}, only 2 - 4 squares are touched;
+     */
+    static void undo(Position position, long delta) {
+        final int from = from(delta);
+        final int to = to(delta);
+        final int moved = moved(delta);
+        final int captured = captured(delta);
+
+        position.setCell(to, CELLS[0]);
+        position.setCell(from, CELLS[moved]);
+        if (captured != 0) {
+            position.setCell(capturedSquare(delta), CELLS[captured]);
+        }
+        if (isCastling(delta)) {
+            position.setCell(rookFrom(delta), position.getCell(rookTo(delta)));
+            position.setCell(rookTo(delta), CELLS[0]);
+        }
+
+        position.setCastlingRights((int) (delta >>> 30) & 0xF);
+        position.setEnPassantSquare((int) ((delta >>> 34) & 0x7F) - 1);
+        position.setHalfmoveClock((int) (delta >>> 41) & 0xFFFF);
+        if (position.isWhiteToMove()) {
+            position.setFullmoveNumber(position.getFullmoveNumber() - 1);
+        }
+        position.setWhiteToMove(!position.isWhiteToMove());
+    }
+
+    static int from(long delta) {
+        return (int) delta & 0x3F;
+    }
+
+    static int to(long delta) {
+        return (int) (delta >>> 6) & 0x3F;
+    }
+
+    static int moved(long delta) {
+        return (int) (delta >>> 12) & 0xF;
+    }
+
+    static int captured(long delta) {
+        return (int) (delta >>> 16) & 0xF;
+    }
+
+    static int capturedSquare(long delta) {
+        return (int) (delta >>> 20) & 0x3F;
+    }
+
+    static int promoted(long delta) {
+        return (int) (delta >>> 26) & 0xF;
+    }
+
+    static boolean isCastling(long delta) {
+        int moved = moved(delta);
+        return (moved == KING_WHITE || moved == KING_BLACK)
+                && Math.abs(Position.xOf(to(delta)) - Position.xOf(from(delta))) == 2;
+    }
+
+    private static int rookFrom(long delta) {
+        int y = Position.yOf(from(delta));
+        return to(delta) > from(delta) ? Position.square(7, y) : Position.square(0, y);
+    }
+
+    private static int rookTo(long delta) {
+        int y = Position.yOf(from(delta));
+        return to(delta) > from(delta) ? Position.square(5, y) : Position.square(3, y);
+    }
+
+    /**
+     * @return animation steps of the move, see {@link com.cosic.chessview.board.BoardDiff};
+     */
+    static Action[][] forwardActions(long delta) {
+        final int from = from(delta);
+        final int to = to(delta);
+        final boolean castling = isCastling(delta);
+        final boolean capture = captured(delta) != 0;
+
+        Action[] first = new Action[1 + (castling ? 1 : 0) + (capture ? 1 : 0)];
+        int index = 0;
+        first[index++] = move(from, to);
+        if (castling) {
+            first[index++] = move(rookFrom(delta), rookTo(delta));
+        }
+        if (capture) {
+            int square = capturedSquare(delta);
+            first[index] = new FadeOut(Position.xOf(square), Position.yOf(square), FADE);
+        }
+
+        int promoted = promoted(delta);
+        if (promoted == 0) {
+            return new Action[][]{first};
+        }
+        Action[] second = new Action[]{
+                new FadeOut(Position.xOf(to), Position.yOf(to), FADE),
+                new FadeIn(Position.xOf(to), Position.yOf(to), FADE, CELLS[promoted])
+        };
+        return new Action[][]{first, second};
+    }
+
+    /**
+     * @return animation steps which take the move back;
+     */
+    static Action[][] backwardActions(long delta) {
+        final int from = from(delta);
+        final int to = to(delta);
+        final boolean castling = isCastling(delta);
+        final int captured = captured(delta);
+
+        Action[] last = new Action[1 + (castling ? 1 : 0) + (captured != 0 ? 1 : 0)];
+        int index = 0;
+        last[index++] = move(to, from);
+        if (castling) {
+            last[index++] = move(rookTo(delta), rookFrom(delta));
+        }
+        if (captured != 0) {
+            int square = capturedSquare(delta);
+            last[index] = new FadeIn(Position.xOf(square), Position.yOf(square), FADE, CELLS[captured]);
+        }
+
+        if (promoted(delta) == 0) {
+            return new Action[][]{last};
+        }
+        Action[] first = new Action[]{
+                new FadeOut(Position.xOf(to), Position.yOf(to), FADE),
+                new FadeIn(Position.xOf(to), Position.yOf(to), FADE, CELLS[moved(delta)])
+        };
+        return new Action[][]{first, last};
+    }
+
+    private static Move move(int from, int to) {
+        return new Move(Position.xOf(from), Position.yOf(from), Position.xOf(to), Position.yOf(to));
+    }
+}
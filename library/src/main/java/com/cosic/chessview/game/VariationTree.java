@@ -0,0 +1,615 @@
+package com.cosic.chessview.game;
+
+import com.cosic.chessview.board.Board;
+import com.cosic.chessview.board.BoardSnapshot;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.models.Action;
+import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.models.Move;
+import java.util.Arrays;
+
+/**
+ * Game with side lines: a tree of moves with a cursor on one of its nodes.
+ * <p>
+ * Nodes live in an arena of parallel arrays indexed by int: parent, first child, next sibling,
+ * ply, the move as a {@link MoveDelta} and a comment range in a shared character buffer,
+ * about 32 bytes per node and no object per move. {@link #ROOT} is the start position, every
+ * other node is the position after its move. The first child of a node continues the line,
+ * the next ones are variations. Deleted nodes are reused by the next added ones, the comment
+ * buffer is compacted once unused text takes more than a half of it.
+ * <p>
+ * The cursor keeps the position of its node: {@link #stepForward()}, {@link #stepBack()}
+ * and {@link #seek(int)} make and take back only the moves between the nodes, through their
+ * common ancestor, and allocate nothing. {@link #getActions(int)} returns the animation steps
+ * of the same path for {@link com.cosic.chessview.ChessView#applyMoving(Action[][], boolean)}.
+ * <p>
+ * The instance is not thread-safe.
+ */
+public final class VariationTree {
+
+    public static final int ROOT = 0;
+    public static final int NO_NODE = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Smaller comment buffers are not compacted;
+     */
+    private static final int MIN_COMPACTED_LENGTH = 256;
+
+    private int[] mParents = new int[INITIAL_CAPACITY];
+    private int[] mFirstChildren = new int[INITIAL_CAPACITY];
+    private int[] mNextSiblings = new int[INITIAL_CAPACITY];
+    private int[] mPlies = new int[INITIAL_CAPACITY];
+    private long[] mDeltas = new long[INITIAL_CAPACITY];
+    private int[] mCommentStarts = new int[INITIAL_CAPACITY];
+    private int[] mCommentLengths = new int[INITIAL_CAPACITY];
+
+    /**
+     * Nodes ever allocated, live and free;
+     */
+    private int mEnd = 1;
+    private int mSize = 1;
+
+    /**
+     * Deleted nodes chained by next sibling;
+     */
+    private int mFreeHead = NO_NODE;
+
+    /**
+     * Text of all comments, a changed comment takes the place of the old one if it fits,
+     * otherwise it is appended and the old text is left unused;
+     */
+    private StringBuilder mComments = new StringBuilder();
+
+    /**
+     * Count of unused chars in {@link #mComments};
+     */
+    private int mUnusedCommentLength = 0;
+
+    private final BoardSnapshot mStart;
+    private final Position mPosition = new Position();
+    private int mNode = ROOT;
+
+    /**
+     * Nodes from a seek target up to the common ancestor, reused by all seeks;
+     */
+    private int[] mPath = new int[INITIAL_CAPACITY];
+
+    public VariationTree(Board start) {
+        mStart = start instanceof BoardSnapshot
+                ? (BoardSnapshot) start
+                : BoardSnapshot.of(GameTimeline.toPosition(start, new Position()));
+        mStart.toPosition(mPosition);
+        mParents[ROOT] = NO_NODE;
+        mFirstChildren[ROOT] = NO_NODE;
+        mNextSiblings[ROOT] = NO_NODE;
+    }
+
+    /**
+     * @return count of nodes including {@link #ROOT};
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return node of the cursor;
+     */
+    public int getNode() {
+        return mNode;
+    }
+
+    /**
+     * @return position of the cursor, changed by steps and seeks;
+     */
+    public Board getBoard() {
+        return mPosition;
+    }
+
+    /**
+     * @return position of the cursor with the last move selected;
+     */
+    public BoardSnapshot getSnapshot() {
+        long selectionMask = 0L;
+        if (mNode != ROOT) {
+            long delta = mDeltas[mNode];
+            selectionMask = 1L << MoveDelta.from(delta) | 1L << MoveDelta.to(delta);
+        }
+        return BoardSnapshot.of(mPosition, selectionMask);
+    }
+
+    /**
+     * Copy the position of the cursor;
+     */
+    public Position toPosition(Position position) {
+        position.set(mPosition);
+        return position;
+    }
+
+    public Board getStart() {
+        return mStart;
+    }
+
+    public int getParent(int node) {
+        checkNode(node);
+        return mParents[node];
+    }
+
+    /**
+     * @return the node which continues the line or {@link #NO_NODE};
+     */
+    public int getFirstChild(int node) {
+        checkNode(node);
+        return mFirstChildren[node];
+    }
+
+    /**
+     * @return the next variation of the same move or {@link #NO_NODE};
+     */
+    public int getNextSibling(int node) {
+        checkNode(node);
+        return mNextSiblings[node];
+    }
+
+    public int getChildCount(int node) {
+        checkNode(node);
+        int count = 0;
+        for (int child = mFirstChildren[node]; child != NO_NODE; child = mNextSiblings[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param index - 0 for the main continuation, variations follow;
+     * @return child or {@link #NO_NODE};
+     */
+    public int getChild(int node, int index) {
+        checkNode(node);
+        int child = mFirstChildren[node];
+        for (int i = 0; i < index && child != NO_NODE; i++) {
+            child = mNextSiblings[child];
+        }
+        return child;
+    }
+
+    /**
+     * @return count of moves from the start position, 0 for {@link #ROOT};
+     */
+    public int getPly(int node) {
+        checkNode(node);
+        return mPlies[node];
+    }
+
+    /**
+     * @return true if the node and all its ancestors are first children;
+     */
+    public boolean isMainLine(int node) {
+        checkNode(node);
+        for (int child = node; child != ROOT; child = mParents[child]) {
+            if (mFirstChildren[mParents[child]] != child) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getFrom(int node) {
+        checkMoveNode(node);
+        return MoveDelta.from(mDeltas[node]);
+    }
+
+    public int getTo(int node) {
+        checkMoveNode(node);
+        return MoveDelta.to(mDeltas[node]);
+    }
+
+    /**
+     * @return the piece a pawn is promoted to or null;
+     */
+    public Cell getPromotion(int node) {
+        checkMoveNode(node);
+        int promoted = MoveDelta.promoted(mDeltas[node]);
+        return promoted != 0 ? Position.cellOf(promoted) : null;
+    }
+
+    /**
+     * @return the move which has led to the node or null for {@link #ROOT};
+     */
+    public Move getMove(int node) {
+        checkNode(node);
+        if (node == ROOT) {
+            return null;
+        }
+        long delta = mDeltas[node];
+        int from = MoveDelta.from(delta);
+        int to = MoveDelta.to(delta);
+        return new Move(Position.xOf(from), Position.yOf(from), Position.xOf(to), Position.yOf(to));
+    }
+
+    /**
+     * @return comment after the move of the node or null;
+     */
+    public String getComment(int node) {
+        checkNode(node);
+        int length = mCommentLengths[node];
+        return length > 0 ? mComments.substring(mCommentStarts[node], mCommentStarts[node] + length) : null;
+    }
+
+    /**
+     * @param comment - null or empty removes the comment;
+     */
+    public void setComment(int node, CharSequence comment) {
+        checkNode(node);
+        final int length = comment != null ? comment.length() : 0;
+        final int oldLength = mCommentLengths[node];
+        if (length > 0 && length <= oldLength) {
+            final int start = mCommentStarts[node];
+            for (int i = 0; i < length; i++) {
+                mComments.setCharAt(start + i, comment.charAt(i));
+            }
+            mCommentLengths[node] = length;
+            mUnusedCommentLength += oldLength - length;
+            return;
+        }
+        removeComment(node);
+        if (length > 0) {
+            mCommentStarts[node] = mComments.length();
+            mCommentLengths[node] = length;
+            mComments.append(comment);
+        }
+        compactComments();
+    }
+
+    /**
+     * @return count of chars kept for comments, including the unused ones;
+     */
+    int getCommentCapacity() {
+        return mComments.length();
+    }
+
+    /**
+     * Make the move from the cursor: go to the child with the move if there is one,
+     * otherwise add it as the last variation; The move is not checked for legality;
+     *
+     * @param promotion - the piece a pawn is promoted to or null;
+     * @return node of the move, the new node of the cursor;
+     */
+    public int addMove(int from, int to, Cell promotion) {
+        final int promoted = promotion != null ? promotion.ordinal() : 0;
+        int last = NO_NODE;
+        for (int child = mFirstChildren[mNode]; child != NO_NODE; child = mNextSiblings[child]) {
+            long delta = mDeltas[child];
+            if (MoveDelta.from(delta) == from && MoveDelta.to(delta) == to && MoveDelta.promoted(delta) == promoted) {
+                stepTo(child);
+                return child;
+            }
+            last = child;
+        }
+
+        final int node = allocate();
+        mParents[node] = mNode;
+        mFirstChildren[node] = NO_NODE;
+        mNextSiblings[node] = NO_NODE;
+        mPlies[node] = mPlies[mNode] + 1;
+        mCommentLengths[node] = 0;
+        mDeltas[node] = MoveDelta.apply(mPosition, from, to, promotion);
+        if (last == NO_NODE) {
+            mFirstChildren[mNode] = node;
+        } else {
+            mNextSiblings[last] = node;
+        }
+        mNode = node;
+        return node;
+    }
+
+    public int addMove(Move move, Cell promotion) {
+        return addMove(Position.square(move.getFromX(), move.getFromY()),
+                Position.square(move.getToX(), move.getToY()), promotion);
+    }
+
+    /**
+     * Go to the first child;
+     *
+     * @return false at the end of the line;
+     */
+    public boolean stepForward() {
+        return stepForward(0);
+    }
+
+    /**
+     * Go to a child;
+     *
+     * @param variation - 0 for the main continuation, variations follow;
+     * @return false if there is no such child;
+     */
+    public boolean stepForward(int variation) {
+        int child = getChild(mNode, variation);
+        if (child == NO_NODE) {
+            return false;
+        }
+        stepTo(child);
+        return true;
+    }
+
+    /**
+     * Go to the parent;
+     *
+     * @return false at {@link #ROOT};
+     */
+    public boolean stepBack() {
+        if (mNode == ROOT) {
+            return false;
+        }
+        MoveDelta.undo(mPosition, mDeltas[mNode]);
+        mNode = mParents[mNode];
+        return true;
+    }
+
+    /**
+     * Go to any node through the common ancestor of the cursor and the node;
+     */
+    public void seek(int node) {
+        checkNode(node);
+        final int pathSize = findPath(node);
+        final int ancestor = pathSize > 0 ? mParents[mPath[pathSize - 1]] : node;
+        while (mNode != ancestor) {
+            stepBack();
+        }
+        for (int i = pathSize - 1; i >= 0; i--) {
+            stepTo(mPath[i]);
+        }
+    }
+
+    /**
+     * @return animation steps from the cursor to the node, the cursor is not moved;
+     */
+    public Action[][] getActions(int node) {
+        checkNode(node);
+        final int pathSize = findPath(node);
+        final int ancestor = pathSize > 0 ? mParents[mPath[pathSize - 1]] : node;
+
+        int stepCount = 0;
+        for (int back = mNode; back != ancestor; back = mParents[back]) {
+            stepCount += MoveDelta.promoted(mDeltas[back]) != 0 ? 2 : 1;
+        }
+        for (int i = 0; i < pathSize; i++) {
+            stepCount += MoveDelta.promoted(mDeltas[mPath[i]]) != 0 ? 2 : 1;
+        }
+
+        Action[][] steps = new Action[stepCount][];
+        int index = 0;
+        for (int back = mNode; back != ancestor; back = mParents[back]) {
+            index = append(MoveDelta.backwardActions(mDeltas[back]), steps, index);
+        }
+        for (int i = pathSize - 1; i >= 0; i--) {
+            index = append(MoveDelta.forwardActions(mDeltas[mPath[i]]), steps, index);
+        }
+        return steps;
+    }
+
+    /**
+     * Move the variation of the node one place up among its siblings, at the nearest branch
+     * where it is not the first one;
+     *
+     * @return false if the node is in the main line;
+     */
+    public boolean promote(int node) {
+        checkNode(node);
+        int line = node;
+        while (line != ROOT && mFirstChildren[mParents[line]] == line) {
+            line = mParents[line];
+        }
+        if (line == ROOT) {
+            return false;
+        }
+        final int parent = mParents[line];
+        int before = NO_NODE;
+        int previous = mFirstChildren[parent];
+        while (mNextSiblings[previous] != line) {
+            before = previous;
+            previous = mNextSiblings[previous];
+        }
+        mNextSiblings[previous] = mNextSiblings[line];
+        mNextSiblings[line] = previous;
+        if (before == NO_NODE) {
+            mFirstChildren[parent] = line;
+        } else {
+            mNextSiblings[before] = line;
+        }
+        return true;
+    }
+
+    /**
+     * Make the node and all its ancestors first children;
+     *
+     * @return false if the node is already in the main line;
+     */
+    public boolean promoteToMainLine(int node) {
+        checkNode(node);
+        boolean changed = false;
+        for (int line = node; line != ROOT; line = mParents[line]) {
+            final int parent = mParents[line];
+            if (mFirstChildren[parent] == line) continue;
+            unlink(line);
+            mNextSiblings[line] = mFirstChildren[parent];
+            mFirstChildren[parent] = line;
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Move the line of the node one place down among its siblings, at the nearest branch
+     * where it is not the last one;
+     *
+     * @return false if the line is the last one at every branch;
+     */
+    public boolean demote(int node) {
+        checkNode(node);
+        int line = node;
+        while (line != ROOT && mNextSiblings[line] == NO_NODE) {
+            line = mParents[line];
+        }
+        if (line == ROOT) {
+            return false;
+        }
+        final int next = mNextSiblings[line];
+        unlink(line);
+        mNextSiblings[line] = mNextSiblings[next];
+        mNextSiblings[next] = line;
+        return true;
+    }
+
+    /**
+     * Delete the node with all moves after it, a cursor inside goes to the parent of the node;
+     */
+    public void delete(int node) {
+        checkMoveNode(node);
+        for (int inside = mNode; inside != ROOT; inside = mParents[inside]) {
+            if (inside == node) {
+                seek(mParents[node]);
+                break;
+            }
+        }
+        unlink(node);
+
+        // Detach children one by one and free every node once it has none left, no stack is needed;
+        int current = node;
+        while (true) {
+            int child = mFirstChildren[current];
+            if (child != NO_NODE) {
+                mFirstChildren[current] = mNextSiblings[child];
+                current = child;
+                continue;
+            }
+            int parent = mParents[current];
+            removeComment(current);
+            mParents[current] = NO_NODE;
+            mNextSiblings[current] = mFreeHead;
+            mFreeHead = current;
+            mSize--;
+            if (current == node) {
+                break;
+            }
+            current = parent;
+        }
+        compactComments();
+    }
+
+    private void stepTo(int child) {
+        long delta = mDeltas[child];
+        int promoted = MoveDelta.promoted(delta);
+        mPosition.applyMove(MoveDelta.from(delta), MoveDelta.to(delta),
+                promoted != 0 ? Position.cellOf(promoted) : null);
+        mNode = child;
+    }
+
+    /**
+     * Fill {@link #mPath} with the node and its ancestors which are not ancestors of the cursor;
+     *
+     * @return count of the nodes in the path, 0 if the node is the cursor or its ancestor;
+     */
+    private int findPath(int node) {
+        int size = 0;
+        int cursorSide = mNode;
+        int nodeSide = node;
+        while (mPlies[cursorSide] > mPlies[nodeSide]) {
+            cursorSide = mParents[cursorSide];
+        }
+        while (nodeSide != cursorSide) {
+            if (mPlies[nodeSide] == mPlies[cursorSide]) {
+                cursorSide = mParents[cursorSide];
+            }
+            if (size == mPath.length) {
+                mPath = Arrays.copyOf(mPath, size * 2);
+            }
+            mPath[size++] = nodeSide;
+            nodeSide = mParents[nodeSide];
+        }
+        return size;
+    }
+
+    /**
+     * Remove the node from the children of its parent;
+     */
+    private void unlink(int node) {
+        final int parent = mParents[node];
+        if (mFirstChildren[parent] == node) {
+            mFirstChildren[parent] = mNextSiblings[node];
+            return;
+        }
+        int previous = mFirstChildren[parent];
+        while (mNextSiblings[previous] != node) {
+            previous = mNextSiblings[previous];
+        }
+        mNextSiblings[previous] = mNextSiblings[node];
+    }
+
+    private void removeComment(int node) {
+        mUnusedCommentLength += mCommentLengths[node];
+        mCommentLengths[node] = 0;
+    }
+
+    /**
+     * Copy the used text to a new buffer if the unused one takes more than a half;
+     */
+    private void compactComments() {
+        final int length = mComments.length();
+        if (length < MIN_COMPACTED_LENGTH || mUnusedCommentLength * 2 <= length) {
+            return;
+        }
+        StringBuilder comments = new StringBuilder(length - mUnusedCommentLength);
+        for (int node = 0; node < mEnd; node++) {
+            int commentLength = mCommentLengths[node];
+            if (commentLength > 0) {
+                int start = mCommentStarts[node];
+                mCommentStarts[node] = comments.length();
+                comments.append(mComments, start, start + commentLength);
+            }
+        }
+        mComments = comments;
+        mUnusedCommentLength = 0;
+    }
+
+    private int allocate() {
+        mSize++;
+        if (mFreeHead != NO_NODE) {
+            int node = mFreeHead;
+            mFreeHead = mNextSiblings[node];
+            return node;
+        }
+        if (mEnd == mParents.length) {
+            int capacity = mEnd * 2;
+            mParents = Arrays.copyOf(mParents, capacity);
+            mFirstChildren = Arrays.copyOf(mFirstChildren, capacity);
+            mNextSiblings = Arrays.copyOf(mNextSiblings, capacity);
+            mPlies = Arrays.copyOf(mPlies, capacity);
+            mDeltas = Arrays.copyOf(mDeltas, capacity);
+            mCommentStarts = Arrays.copyOf(mCommentStarts, capacity);
+            mCommentLengths = Arrays.copyOf(mCommentLengths, capacity);
+        }
+        return mEnd++;
+    }
+
+    private static int append(Action[][] actions, Action[][] steps, int index) {
+        for (Action[] step : actions) {
+            steps[index++] = step;
+        }
+        return index;
+    }
+
+    private void checkNode(int node) {
+        if (node < 0 || node >= mEnd || (node != ROOT && mParents[node] == NO_NODE)) {
+            throw new IllegalArgumentException("No node " + node);
+        }
+    }
+
+    private void checkMoveNode(int node) {
+        checkNode(node);
+        if (node == ROOT) {
+            throw new IllegalArgumentException("The root has no move");
+        }
+    }
+}
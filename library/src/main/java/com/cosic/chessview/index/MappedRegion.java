@@ -0,0 +1,72 @@
+package com.cosic.chessview.index;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Region of a file mapped by segments, so it may be larger than one buffer can address.
+ * <p>
+ * Values are addressed by long offsets from the start of the region. A value never crosses
+ * segments as long as its offset is a multiple of its size, which holds for the slots and the
+ * postings of the index files, so unlike {@link com.cosic.chessview.archive.GameArchive}
+ * the segments don't overlap.
+ */
+final class MappedRegion {
+
+    /**
+     * 1 GB, a multiple of every record size;
+     */
+    static final int DEFAULT_SEGMENT_SHIFT = 30;
+
+    private final MappedByteBuffer[] mSegments;
+    private final int mShift;
+    private final long mMask;
+
+    private MappedRegion(MappedByteBuffer[] segments, int shift) {
+        this.mSegments = segments;
+        this.mShift = shift;
+        this.mMask = (1L << shift) - 1;
+    }
+
+    static MappedRegion map(FileChannel channel, FileChannel.MapMode mode, long offset, long size) throws IOException {
+        return map(channel, mode, offset, size, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /**
+     * @param segmentShift - log2 of the segment size;
+     */
+    static MappedRegion map(FileChannel channel, FileChannel.MapMode mode, long offset, long size,
+                            int segmentShift) throws IOException {
+        final long segmentSize = 1L << segmentShift;
+        int segmentCount = (int) ((size + segmentSize - 1) >>> segmentShift);
+        MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            long start = (long) i << segmentShift;
+            segments[i] = channel.map(mode, offset + start, Math.min(size - start, segmentSize));
+        }
+        return new MappedRegion(segments, segmentShift);
+    }
+
+    int getInt(long offset) {
+        return mSegments[(int) (offset >>> mShift)].getInt((int) (offset & mMask));
+    }
+
+    long getLong(long offset) {
+        return mSegments[(int) (offset >>> mShift)].getLong((int) (offset & mMask));
+    }
+
+    void putInt(long offset, int value) {
+        mSegments[(int) (offset >>> mShift)].putInt((int) (offset & mMask), value);
+    }
+
+    void putLong(long offset, long value) {
+        mSegments[(int) (offset >>> mShift)].putLong((int) (offset & mMask), value);
+    }
+
+    void force() {
+        for (MappedByteBuffer segment : mSegments) {
+            segment.force();
+        }
+    }
+}
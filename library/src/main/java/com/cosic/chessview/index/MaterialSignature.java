@@ -0,0 +1,142 @@
+package com.cosic.chessview.index;
+
+import com.cosic.chessview.board.Board;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.models.Cell;
+
+/**
+ * Count of every piece of a position packed into a long, 4 bits per {@link Cell},
+ * so positions with the same material have the same signature and material filters
+ * are a mask and a compare. Counts above 15 are kept as 15.
+ */
+public final class MaterialSignature {
+
+    private static final int BITS_PER_CELL = 4;
+    private static final int MAX_COUNT = (1 << BITS_PER_CELL) - 1;
+
+    /**
+     * Piece letters in the order of {@link #toString(long)}: kings first, pawns last;
+     */
+    private static final String ORDER = "KQRBNP";
+
+    private MaterialSignature() {
+    }
+
+    public static long of(Board board) {
+        long signature = 0L;
+        for (int square = 0; square < Position.COUNT_OF_SQUARES; square++) {
+            int cell = board.getCellOrdinal(square);
+            if (cell != 0) {
+                signature = increment(signature, cell);
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * @return count of the pieces, 0 for {@link Cell#EMPTY};
+     */
+    public static int count(long signature, Cell cell) {
+        if (cell == Cell.EMPTY) {
+            return 0;
+        }
+        return count(signature, cell.ordinal());
+    }
+
+    static int count(long signature, int cellOrdinal) {
+        return (int) (signature >>> shift(cellOrdinal)) & MAX_COUNT;
+    }
+
+    /**
+     * @return bits of the count of the cell in a signature;
+     */
+    public static long mask(Cell cell) {
+        return (long) MAX_COUNT << shift(cell.ordinal());
+    }
+
+    public static long with(long signature, Cell cell, int count) {
+        int value = Math.min(Math.max(count, 0), MAX_COUNT);
+        return (signature & ~mask(cell)) | (long) value << shift(cell.ordinal());
+    }
+
+    /**
+     * @param material - pieces of white, "v" and pieces of black, e.g. "KRPPvKRP";
+     * @throws IllegalArgumentException if a letter is not a piece or there is no "v";
+     */
+    public static long parse(String material) {
+        int separator = material.indexOf('v');
+        if (separator < 0) {
+            throw new IllegalArgumentException("No 'v' between sides: " + material);
+        }
+        long signature = 0L;
+        for (int i = 0; i < material.length(); i++) {
+            if (i == separator) continue;
+            int type = ORDER.indexOf(Character.toUpperCase(material.charAt(i)));
+            if (type < 0) {
+                throw new IllegalArgumentException("Unknown piece '" + material.charAt(i) + "' in " + material);
+            }
+            signature = increment(signature, ordinalOf(type, i < separator));
+        }
+        return signature;
+    }
+
+    /**
+     * @return e.g. "KRPPvKRP";
+     */
+    public static String toString(long signature) {
+        StringBuilder builder = new StringBuilder();
+        appendSide(signature, true, builder);
+        builder.append('v');
+        appendSide(signature, false, builder);
+        return builder.toString();
+    }
+
+    private static void appendSide(long signature, boolean white, StringBuilder out) {
+        for (int type = 0; type < ORDER.length(); type++) {
+            int count = count(signature, ordinalOf(type, white));
+            for (int i = 0; i < count; i++) {
+                out.append(ORDER.charAt(type));
+            }
+        }
+    }
+
+    static long increment(long signature, int cellOrdinal) {
+        int shift = shift(cellOrdinal);
+        if (((signature >>> shift) & MAX_COUNT) == MAX_COUNT) {
+            return signature;
+        }
+        return signature + (1L << shift);
+    }
+
+    /**
+     * @param type - index in {@link #ORDER};
+     */
+    private static int ordinalOf(int type, boolean white) {
+        Cell cell;
+        switch (ORDER.charAt(type)) {
+            case 'K':
+                cell = white ? Cell.KING_WHITE : Cell.KING_BLACK;
+                break;
+            case 'Q':
+                cell = white ? Cell.QUEEN_WHITE : Cell.QUEEN_BLACK;
+                break;
+            case 'R':
+                cell = white ? Cell.ROOK_WHITE : Cell.ROOK_BLACK;
+                break;
+            case 'B':
+                cell = white ? Cell.BISHOP_WHITE : Cell.BISHOP_BLACK;
+                break;
+            case 'N':
+                cell = white ? Cell.KNIGHT_WHITE : Cell.KNIGHT_BLACK;
+                break;
+            default:
+                cell = white ? Cell.PAWN_WHITE : Cell.PAWN_BLACK;
+                break;
+        }
+        return cell.ordinal();
+    }
+
+    static int shift(int cellOrdinal) {
+        return (cellOrdinal - 1) * BITS_PER_CELL;
+    }
+}
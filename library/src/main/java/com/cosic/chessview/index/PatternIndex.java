@@ -0,0 +1,202 @@
+package com.cosic.chessview.index;
+
+import com.cosic.chessview.archive.ArchivedGame;
+import com.cosic.chessview.archive.GameArchive;
+import com.cosic.chessview.board.Board;
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Search of positions by structure: material and squares of pieces, see {@link PatternQuery}.
+ * <p>
+ * Every position is kept as a {@link MaterialSignature} and a square bit set per piece type in
+ * columnar segments of {@link PatternSegment#CAPACITY} rows, about 72 bytes per position.
+ * The last segment of each build task is trimmed to its rows, so a build doesn't keep a partly
+ * empty segment per task.
+ * A query is a scan: the signature column is compared first and the square columns are read
+ * only for rows with the right material, with bitwise AND and compare, nothing is replayed.
+ * Segments are scanned in parallel, one task per segment, and the results come back in the order
+ * the positions were added.
+ * <p>
+ * The index lives in the heap, building and adding must not overlap with searches.
+ */
+public final class PatternIndex {
+
+    /**
+     * Games replayed by one build task;
+     */
+    private static final int GAMES_PER_TASK = 4096;
+
+    private final List<PatternSegment> mSegments = new ArrayList<>();
+    private long mSize = 0;
+
+    public PatternIndex() {
+    }
+
+    /**
+     * Index every position of every game of the archive, the games are replayed in parallel;
+     */
+    public static PatternIndex build(GameArchive archive, ForkJoinPool pool) {
+        List<BuildTask> tasks = new ArrayList<>();
+        for (int first = 0; first < archive.size(); first += GAMES_PER_TASK) {
+            tasks.add(new BuildTask(archive, first, Math.min(first + GAMES_PER_TASK, archive.size())));
+        }
+        for (BuildTask task : tasks) {
+            pool.execute(task);
+        }
+        PatternIndex index = new PatternIndex();
+        for (BuildTask task : tasks) {
+            for (PatternSegment segment : task.join()) {
+                index.mSegments.add(segment);
+                index.mSize += segment.mSize;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param game - index of the game the position belongs to;
+     * @param ply  - ply at which the game reached the position;
+     */
+    public void add(Board board, int game, int ply) {
+        PatternSegment segment = mSegments.isEmpty() ? null : mSegments.get(mSegments.size() - 1);
+        if (segment == null || segment.isFull()) {
+            segment = new PatternSegment();
+            mSegments.add(segment);
+        }
+        segment.add(board, game, ply);
+        mSize++;
+    }
+
+    /**
+     * @return count of indexed positions;
+     */
+    public long size() {
+        return mSize;
+    }
+
+    /**
+     * @return count of positions matching the query;
+     */
+    public long count(PatternQuery query, ForkJoinPool pool) {
+        return search(query, 0, pool).getTotalCount();
+    }
+
+    /**
+     * Find positions matching the query;
+     *
+     * @param limit - count of the first matches to keep, all matches are counted anyway;
+     */
+    public PatternMatches search(PatternQuery query, int limit, ForkJoinPool pool) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Negative limit: " + limit);
+        }
+        List<ScanTask> tasks = new ArrayList<>(mSegments.size());
+        for (PatternSegment segment : mSegments) {
+            tasks.add(new ScanTask(segment, query, limit));
+        }
+        for (ScanTask task : tasks) {
+            pool.execute(task);
+        }
+        int[] games = new int[(int) Math.min(limit, mSize)];
+        int[] plies = new int[games.length];
+        int size = 0;
+        long totalCount = 0;
+        for (ScanTask task : tasks) {
+            int[] rows = task.join();
+            totalCount += task.mCount;
+            int copied = (int) Math.min(games.length - size, Math.min(task.mCount, rows.length));
+            for (int i = 0; i < copied; i++) {
+                games[size] = task.mSegment.mGames[rows[i]];
+                plies[size] = task.mSegment.mPlies[rows[i]];
+                size++;
+            }
+        }
+        return new PatternMatches(games, plies, size, totalCount);
+    }
+
+    private static final class BuildTask extends RecursiveTask<List<PatternSegment>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final GameArchive mArchive;
+        private final int mFirst;
+        private final int mEnd;
+
+        BuildTask(GameArchive archive, int first, int end) {
+            this.mArchive = archive;
+            this.mFirst = first;
+            this.mEnd = end;
+        }
+
+        @Override
+        protected List<PatternSegment> compute() {
+            PatternIndex index = new PatternIndex();
+            Position position = new Position();
+            Position startPosition = FenParser.parse(FenParser.START_FEN);
+            for (int gameIndex = mFirst; gameIndex < mEnd; gameIndex++) {
+                ArchivedGame game = mArchive.get(gameIndex);
+                String fen = game.getStartFen();
+                if (FenParser.START_FEN.equals(fen)) {
+                    position.set(startPosition);
+                } else {
+                    FenParser.parse(fen, position);
+                }
+                final int moveCount = game.getMoveCount();
+                for (int ply = 0; ; ply++) {
+                    index.add(position, gameIndex, ply);
+                    if (ply == moveCount) {
+                        break;
+                    }
+                    PackedMove.apply(position, game.getPackedMove(ply));
+                }
+            }
+            List<PatternSegment> segments = index.mSegments;
+            if (!segments.isEmpty()) {
+                int last = segments.size() - 1;
+                segments.set(last, segments.get(last).trim());
+            }
+            return segments;
+        }
+    }
+
+    /**
+     * Rows of the first matches of one segment, {@link #mCount} is the count of all of them;
+     */
+    private static final class ScanTask extends RecursiveTask<int[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final PatternSegment mSegment;
+        private final PatternQuery mQuery;
+        private final int mLimit;
+        private long mCount;
+
+        ScanTask(PatternSegment segment, PatternQuery query, int limit) {
+            this.mSegment = segment;
+            this.mQuery = query;
+            this.mLimit = limit;
+        }
+
+        @Override
+        protected int[] compute() {
+            int[] rows = new int[Math.min(mLimit, mSegment.mSize)];
+            int count = 0;
+            for (int row = 0; row < mSegment.mSize; row++) {
+                if (mQuery.matches(mSegment, row)) {
+                    if (count < rows.length) {
+                        rows[count] = row;
+                    }
+                    count++;
+                }
+            }
+            mCount = count;
+            return rows;
+        }
+    }
+}
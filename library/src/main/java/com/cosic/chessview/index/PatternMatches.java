@@ -0,0 +1,60 @@
+package com.cosic.chessview.index;
+
+/**
+ * Positions found by {@link PatternIndex#search}, in the order of the index.
+ */
+public final class PatternMatches {
+
+    private final int[] mGames;
+    private final int[] mPlies;
+    private final int mSize;
+    private final long mTotalCount;
+
+    PatternMatches(int[] games, int[] plies, int size, long totalCount) {
+        this.mGames = games;
+        this.mPlies = plies;
+        this.mSize = size;
+        this.mTotalCount = totalCount;
+    }
+
+    /**
+     * @return count of the kept matches, not more than the limit of the search;
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return index of the game in the archive the index was built from;
+     */
+    public int getGame(int index) {
+        checkIndex(index);
+        return mGames[index];
+    }
+
+    /**
+     * @return ply at which the game reached the position;
+     */
+    public int getPly(int index) {
+        checkIndex(index);
+        return mPlies[index];
+    }
+
+    /**
+     * @return count of all matching positions, may be larger than {@link #size()};
+     */
+    public long getTotalCount() {
+        return mTotalCount;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + mSize);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PatternMatches{size=" + mSize + ", totalCount=" + mTotalCount + '}';
+    }
+}
@@ -0,0 +1,224 @@
+package com.cosic.chessview.index;
+
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.board.Squares;
+import com.cosic.chessview.models.Cell;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Structure to search for in a {@link PatternIndex}: counts of pieces and squares where pieces
+ * must or must not stand. All conditions of a query must hold, alternatives added by
+ * {@link #or(PatternQuery)} match on their own.
+ * <p>
+ * A white knight on e5 with a black pawn on d6:
+ * <pre>
+ * PatternQuery query = new PatternQuery();
+ * query.require(Cell.KNIGHT_WHITE, PatternQuery.squares("e5"));
+ * query.require(Cell.PAWN_BLACK, PatternQuery.squares("d6"));
+ * </pre>
+ * Rook endgames with all pawns on one wing:
+ * <pre>
+ * PatternQuery queenside = new PatternQuery();
+ * queenside.setMaterial("KRPPvKRP");
+ * queenside.forbid(Cell.PAWN_WHITE, PatternQuery.files('e', 'h'));
+ * queenside.forbid(Cell.PAWN_BLACK, PatternQuery.files('e', 'h'));
+ * PatternQuery kingside = new PatternQuery();
+ * kingside.setMaterial("KRPPvKRP");
+ * kingside.forbid(Cell.PAWN_WHITE, PatternQuery.files('a', 'd'));
+ * kingside.forbid(Cell.PAWN_BLACK, PatternQuery.files('a', 'd'));
+ * queenside.or(kingside);
+ * </pre>
+ * The query must not be changed while a search runs.
+ */
+public final class PatternQuery {
+
+    private static final int CELL_COUNT = Cell.values().length;
+    private static final long FILE_A = 0x0101010101010101L;
+
+    /**
+     * Counts given exactly: a signature matches if its masked bits equal the value;
+     */
+    private long mSignatureMask = 0L;
+    private long mSignatureValue = 0L;
+
+    private final int[] mMinCounts = new int[CELL_COUNT];
+    private final int[] mMaxCounts = new int[CELL_COUNT];
+    private final long[] mRequired = new long[CELL_COUNT];
+    private final long[] mForbidden = new long[CELL_COUNT];
+
+    /**
+     * Ordinals of cells with a count range or squares, the only ones a scan looks at;
+     */
+    private int[] mRangeCells = new int[0];
+    private int[] mSquareCells = new int[0];
+
+    private final List<PatternQuery> mAlternatives = new ArrayList<>();
+
+    public PatternQuery() {
+        for (int i = 0; i < CELL_COUNT; i++) {
+            mMaxCounts[i] = Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @return bit set of the squares, e.g. squares("e5", "d6");
+     * @throws IllegalArgumentException if a name is not a square;
+     */
+    public static long squares(String... names) {
+        long squares = 0L;
+        for (String name : names) {
+            int square = name.length() == 2 ? Squares.parse(name, 0) : Position.NO_SQUARE;
+            if (square == Position.NO_SQUARE) {
+                throw new IllegalArgumentException("Not a square: " + name);
+            }
+            squares |= 1L << square;
+        }
+        return squares;
+    }
+
+    /**
+     * @return bit set of all squares of the files, e.g. files('e', 'h') for the kingside;
+     * @throws IllegalArgumentException if a char is not a file;
+     */
+    public static long files(char from, char to) {
+        int fromX = Squares.xOf(from);
+        int toX = Squares.xOf(to);
+        if (fromX < 0 || toX < 0) {
+            throw new IllegalArgumentException("Not a file: " + from + ", " + to);
+        }
+        long squares = 0L;
+        for (int x = Math.min(fromX, toX); x <= Math.max(fromX, toX); x++) {
+            squares |= FILE_A << x;
+        }
+        return squares;
+    }
+
+    /**
+     * Exact count of all pieces, e.g. "KRPPvKRP", replaces counts set before;
+     *
+     * @see MaterialSignature#parse(String)
+     */
+    public void setMaterial(String material) {
+        long signature = MaterialSignature.parse(material);
+        for (Cell cell : Cell.values()) {
+            if (cell != Cell.EMPTY) {
+                setCount(cell, MaterialSignature.count(signature, cell));
+            }
+        }
+    }
+
+    public void setCount(Cell cell, int count) {
+        setCount(cell, count, count);
+    }
+
+    /**
+     * @param min - minimal count of the pieces, inclusive;
+     * @param max - maximal count of the pieces, inclusive;
+     */
+    public void setCount(Cell cell, int min, int max) {
+        if (cell == Cell.EMPTY) {
+            throw new IllegalArgumentException("Count of empty squares is not indexed");
+        }
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Bad count range: " + min + ".." + max);
+        }
+        final int ordinal = cell.ordinal();
+        mMinCounts[ordinal] = min;
+        mMaxCounts[ordinal] = max;
+        long mask = MaterialSignature.mask(cell);
+        if (min == max) {
+            mSignatureMask |= mask;
+            mSignatureValue = MaterialSignature.with(mSignatureValue, cell, min);
+        } else {
+            mSignatureMask &= ~mask;
+            mSignatureValue &= ~mask;
+        }
+        updateCells();
+    }
+
+    /**
+     * The piece must stand on every one of the squares;
+     */
+    public void require(Cell cell, long squares) {
+        checkPiece(cell);
+        mRequired[cell.ordinal()] |= squares;
+        updateCells();
+    }
+
+    /**
+     * The piece must not stand on any of the squares;
+     */
+    public void forbid(Cell cell, long squares) {
+        checkPiece(cell);
+        mForbidden[cell.ordinal()] |= squares;
+        updateCells();
+    }
+
+    /**
+     * A position matches this query if it matches the alternative instead;
+     */
+    public void or(PatternQuery alternative) {
+        if (alternative == this) {
+            throw new IllegalArgumentException("A query can't be its own alternative");
+        }
+        mAlternatives.add(alternative);
+    }
+
+    boolean matches(PatternSegment segment, int row) {
+        if (matchesOwn(segment, row)) {
+            return true;
+        }
+        for (int i = 0; i < mAlternatives.size(); i++) {
+            if (mAlternatives.get(i).matches(segment, row)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesOwn(PatternSegment segment, int row) {
+        final long signature = segment.mSignatures[row];
+        if ((signature & mSignatureMask) != mSignatureValue) {
+            return false;
+        }
+        for (int ordinal : mRangeCells) {
+            int count = MaterialSignature.count(signature, ordinal);
+            if (count < mMinCounts[ordinal] || count > mMaxCounts[ordinal]) {
+                return false;
+            }
+        }
+        for (int ordinal : mSquareCells) {
+            long squares = segment.squares(row, ordinal);
+            if ((squares & mRequired[ordinal]) != mRequired[ordinal] || (squares & mForbidden[ordinal]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void updateCells() {
+        int rangeCount = 0;
+        int squareCount = 0;
+        int[] rangeCells = new int[CELL_COUNT];
+        int[] squareCells = new int[CELL_COUNT];
+        for (int ordinal = 1; ordinal < CELL_COUNT; ordinal++) {
+            if (mMinCounts[ordinal] != mMaxCounts[ordinal]
+                    && (mMinCounts[ordinal] > 0 || mMaxCounts[ordinal] != Integer.MAX_VALUE)) {
+                rangeCells[rangeCount++] = ordinal;
+            }
+            if (mRequired[ordinal] != 0 || mForbidden[ordinal] != 0) {
+                squareCells[squareCount++] = ordinal;
+            }
+        }
+        mRangeCells = Arrays.copyOf(rangeCells, rangeCount);
+        mSquareCells = Arrays.copyOf(squareCells, squareCount);
+    }
+
+    private static void checkPiece(Cell cell) {
+        if (cell == Cell.EMPTY) {
+            throw new IllegalArgumentException("Squares of empty cells are not indexed");
+        }
+    }
+}
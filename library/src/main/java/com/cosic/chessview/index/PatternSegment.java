@@ -0,0 +1,100 @@
+package com.cosic.chessview.index;
+
+import com.cosic.chessview.board.Board;
+import com.cosic.chessview.board.Position;
+import java.util.Arrays;
+
+/**
+ * Block of up to {@link #CAPACITY} positions of {@link PatternIndex}, stored by columns: one array per field,
+ * so a scan reads only the columns its query needs, sequentially.
+ */
+final class PatternSegment {
+
+    static final int CAPACITY = 1 << 16;
+
+    /**
+     * Piece types by (ordinal + 1) / 2 of {@link com.cosic.chessview.models.Cell};
+     */
+    static final int TYPE_COUNT = 7;
+
+    final long[] mSignatures;
+
+    /**
+     * Squares of white pieces;
+     */
+    final long[] mWhite;
+
+    /**
+     * Squares of pieces of each type of both sides, index 0 is unused;
+     */
+    final long[][] mTypes = new long[TYPE_COUNT][];
+
+    final int[] mGames;
+    final int[] mPlies;
+
+    int mSize = 0;
+
+    PatternSegment() {
+        mSignatures = new long[CAPACITY];
+        mWhite = new long[CAPACITY];
+        for (int type = 1; type < TYPE_COUNT; type++) {
+            mTypes[type] = new long[CAPACITY];
+        }
+        mGames = new int[CAPACITY];
+        mPlies = new int[CAPACITY];
+    }
+
+    /**
+     * Copy of the filled rows of the segment;
+     */
+    private PatternSegment(PatternSegment other) {
+        final int size = other.mSize;
+        mSignatures = Arrays.copyOf(other.mSignatures, size);
+        mWhite = Arrays.copyOf(other.mWhite, size);
+        for (int type = 1; type < TYPE_COUNT; type++) {
+            mTypes[type] = Arrays.copyOf(other.mTypes[type], size);
+        }
+        mGames = Arrays.copyOf(other.mGames, size);
+        mPlies = Arrays.copyOf(other.mPlies, size);
+        mSize = size;
+    }
+
+    boolean isFull() {
+        return mSize == mSignatures.length;
+    }
+
+    /**
+     * @return the segment without its free rows, it is full then;
+     */
+    PatternSegment trim() {
+        return isFull() ? this : new PatternSegment(this);
+    }
+
+    void add(Board board, int game, int ply) {
+        final int row = mSize++;
+        long white = 0L;
+        long signature = 0L;
+        for (int square = 0; square < Position.COUNT_OF_SQUARES; square++) {
+            int cell = board.getCellOrdinal(square);
+            if (cell == 0) continue;
+            long bit = 1L << square;
+            mTypes[(cell + 1) >> 1][row] |= bit;
+            if ((cell & 1) != 0) {
+                white |= bit;
+            }
+            signature = MaterialSignature.increment(signature, cell);
+        }
+        mWhite[row] = white;
+        mSignatures[row] = signature;
+        mGames[row] = game;
+        mPlies[row] = ply;
+    }
+
+    /**
+     * @return squares of the cell in the row, see {@link com.cosic.chessview.models.Cell#ordinal()};
+     */
+    long squares(int row, int cellOrdinal) {
+        long pieces = mTypes[(cellOrdinal + 1) >> 1][row];
+        return (cellOrdinal & 1) != 0 ? pieces & mWhite[row] : pieces & ~mWhite[row];
+    }
+}
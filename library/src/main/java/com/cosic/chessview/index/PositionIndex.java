@@ -0,0 +1,167 @@
+package com.cosic.chessview.index;
+
+import com.cosic.chessview.board.Board;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * "Games reaching this position": memory-mapped index built by {@link PositionIndexWriter}.
+ * <p>
+ * A query hashes nothing and allocates nothing, it probes the key table by the Zobrist hash of
+ * the board and copies the postings, so the explorer of the position on the screen is one call:
+ * {@code index.getGames(chessView.getSnapshot(), games, plies)}. Game indexes are the ones
+ * of the {@link com.cosic.chessview.archive.GameArchive} the index was built from.
+ * The key table and the postings are mapped by segments, neither is limited to 2 GB.
+ * <p>
+ * The instance is thread-safe, the mapping is released by the garbage collector after {@link #close()}.
+ */
+public final class PositionIndex implements Closeable {
+
+    private final FileChannel mChannel;
+    private final MappedRegion mTable;
+    private final MappedRegion mPostings;
+    private final int mMask;
+    private final int mKeyCount;
+    private final long mPostingCount;
+    private final int mGameCount;
+
+    private PositionIndex(FileChannel channel, MappedRegion table, MappedRegion postings, int capacity,
+                          int keyCount, long postingCount, int gameCount) {
+        this.mChannel = channel;
+        this.mTable = table;
+        this.mPostings = postings;
+        this.mMask = capacity - 1;
+        this.mKeyCount = keyCount;
+        this.mPostingCount = postingCount;
+        this.mGameCount = gameCount;
+    }
+
+    public static PositionIndex open(File file) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            final long size = channel.size();
+            if (size < PositionIndexFormat.HEADER_SIZE) {
+                throw new IOException("Not a position index: " + file);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, PositionIndexFormat.HEADER_SIZE);
+            if (header.getInt(0) != PositionIndexFormat.MAGIC) {
+                throw new IOException("Not a position index: " + file);
+            }
+            if (header.getShort(4) > PositionIndexFormat.VERSION) {
+                throw new IOException("Unsupported position index version " + header.getShort(4));
+            }
+            int capacity = header.getInt(PositionIndexFormat.HEADER_CAPACITY);
+            int keyCount = header.getInt(PositionIndexFormat.HEADER_KEY_COUNT);
+            long postingCount = header.getLong(PositionIndexFormat.HEADER_POSTING_COUNT);
+            long gameCount = header.getLong(PositionIndexFormat.HEADER_GAME_COUNT);
+
+            long tableSize = (long) capacity * PositionIndexFormat.SLOT_SIZE;
+            long postingsSize = postingCount * PositionIndexFormat.POSTING_SIZE;
+            if (capacity <= 0 || Integer.bitCount(capacity) != 1
+                    || postingCount < 0 || postingCount > PositionIndexFormat.MAX_POSTING_COUNT
+                    || gameCount < 0 || gameCount > Integer.MAX_VALUE
+                    || PositionIndexFormat.HEADER_SIZE + tableSize + postingsSize > size) {
+                throw new IOException("Corrupted position index: " + file);
+            }
+            MappedRegion table = MappedRegion.map(channel, FileChannel.MapMode.READ_ONLY,
+                    PositionIndexFormat.HEADER_SIZE, tableSize);
+            MappedRegion postings = MappedRegion.map(channel, FileChannel.MapMode.READ_ONLY,
+                    PositionIndexFormat.HEADER_SIZE + tableSize, postingsSize);
+            return new PositionIndex(channel, table, postings, capacity, keyCount, postingCount, (int) gameCount);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return count of distinct positions;
+     */
+    public int size() {
+        return mKeyCount;
+    }
+
+    public long getPostingCount() {
+        return mPostingCount;
+    }
+
+    /**
+     * @return count of games the index was built from;
+     */
+    public int getGameCount() {
+        return mGameCount;
+    }
+
+    /**
+     * @return count of games which reached the position;
+     */
+    public int getCount(Board board) {
+        return getCount(board.getZobristHash());
+    }
+
+    /**
+     * @param key - {@link Board#getZobristHash()} of the position;
+     */
+    public int getCount(long key) {
+        long slot = findSlot(key);
+        return slot >= 0 ? mTable.getInt(slot + PositionIndexFormat.SLOT_COUNT) : 0;
+    }
+
+    /**
+     * @see #getGames(long, int[], int[])
+     */
+    public int getGames(Board board, int[] games, int[] plies) {
+        return getGames(board.getZobristHash(), games, plies);
+    }
+
+    /**
+     * Copy games which reached the position in the order of the archive, as many as fit into the array;
+     *
+     * @param games - indexes of the games;
+     * @param plies - ply at which each game reached the position, null or not shorter than games;
+     * @return count of all games which reached the position, may be larger than the array;
+     */
+    public int getGames(long key, int[] games, int[] plies) {
+        long slot = findSlot(key);
+        if (slot < 0) {
+            return 0;
+        }
+        final long first = Integer.toUnsignedLong(mTable.getInt(slot + PositionIndexFormat.SLOT_OFFSET));
+        final int count = mTable.getInt(slot + PositionIndexFormat.SLOT_COUNT);
+        final int copied = Math.min(count, games.length);
+        for (int i = 0; i < copied; i++) {
+            long offset = (first + i) * PositionIndexFormat.POSTING_SIZE;
+            games[i] = mPostings.getInt(offset);
+            if (plies != null) {
+                plies[i] = mPostings.getInt(offset + 4);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return byte offset of the slot of the key or -1;
+     */
+    private long findSlot(long key) {
+        int slot = PositionIndexFormat.slotOf(key, mMask);
+        while (true) {
+            long offset = (long) slot * PositionIndexFormat.SLOT_SIZE;
+            if (mTable.getInt(offset + PositionIndexFormat.SLOT_COUNT) == 0) {
+                return -1;
+            }
+            if (mTable.getLong(offset) == key) {
+                return offset;
+            }
+            slot = (slot + 1) & mMask;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+}
@@ -0,0 +1,92 @@
+package com.cosic.chessview.index;
+
+/**
+ * Layout of the position index file, all numbers are big-endian:
+ * <pre>
+ * header, {@link #HEADER_SIZE} bytes:
+ *     int   magic "CVPI"
+ *     short version
+ *     short reserved
+ *     int   capacity of the key table, a power of two
+ *     int   count of distinct positions
+ *     long  count of postings
+ *     long  count of indexed games
+ *     long  reserved
+ * key table, open addressing with linear probing, {@link #SLOT_SIZE} bytes per slot:
+ *     long  Zobrist hash of the position
+ *     int   index of the first posting, unsigned
+ *     int   count of postings, 0 - empty slot
+ * postings, grouped by position, {@link #POSTING_SIZE} bytes each:
+ *     int   index of the game in the archive
+ *     int   ply at which the game reached the position
+ * </pre>
+ * The header is written last, a file without the magic is an unfinished build.
+ * Version 2 reads the index of the first posting as unsigned, version 1 files are read as is.
+ */
+final class PositionIndexFormat {
+
+    static final int MAGIC = 0x43565049;
+    static final short VERSION = 2;
+
+    static final int HEADER_SIZE = 40;
+    static final int HEADER_CAPACITY = 8;
+    static final int HEADER_KEY_COUNT = 12;
+    static final int HEADER_POSTING_COUNT = 16;
+    static final int HEADER_GAME_COUNT = 24;
+
+    static final int SLOT_SIZE = 16;
+    static final int SLOT_OFFSET = 8;
+    static final int SLOT_COUNT = 12;
+
+    static final int POSTING_SIZE = 8;
+
+    /**
+     * The key table has at least a quarter of free slots, so probes stay short;
+     */
+    static final float MAX_LOAD_FACTOR = 0.75f;
+
+    /**
+     * Slots are addressed by an int;
+     */
+    static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * Postings are addressed by an unsigned int of the slot;
+     */
+    static final long MAX_POSTING_COUNT = 0xFFFFFFFFL;
+
+    /**
+     * Part of the plies expected to be distinct positions, the table is grown if there are more;
+     * Openings repeat, the rest of the games mostly does not;
+     */
+    static final float DISTINCT_PLY_FRACTION = 0.5f;
+
+    private PositionIndexFormat() {
+    }
+
+    /**
+     * @return the first slot to probe for the key;
+     */
+    static int slotOf(long key, int mask) {
+        // Zobrist keys are uniform, folding only lets the high half take part as well;
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    /**
+     * @return power of two capacity for the count of keys;
+     */
+    static int capacityFor(long keyCount) {
+        long capacity = Long.highestOneBit(Math.max(1L, (long) Math.ceil(keyCount / MAX_LOAD_FACTOR)) * 2 - 1);
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Too many positions: " + keyCount);
+        }
+        return (int) capacity;
+    }
+
+    /**
+     * @return count of keys the table of the capacity holds, see {@link #MAX_LOAD_FACTOR};
+     */
+    static long maxKeyCount(int capacity) {
+        return (long) (capacity * (double) MAX_LOAD_FACTOR);
+    }
+}
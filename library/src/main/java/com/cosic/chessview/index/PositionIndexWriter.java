@@ -0,0 +1,243 @@
+package com.cosic.chessview.index;
+
+import com.cosic.chessview.archive.ArchivedGame;
+import com.cosic.chessview.archive.GameArchive;
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Builds the index read by {@link PositionIndex} from all games of a {@link GameArchive},
+ * see {@link PositionIndexFormat}.
+ * <p>
+ * The games are replayed twice: the first pass counts postings of every position in the
+ * memory-mapped key table, the second one writes the postings into their places. Both the table
+ * and the postings live in the mapped file only, the Java heap holds one game at a time.
+ * The table is sized for an estimate of distinct positions, if the first pass fills it the table
+ * is doubled for the rest of the games and the count starts over.
+ * A game which repeats a position is posted once, at the first ply.
+ */
+public final class PositionIndexWriter {
+
+    private final GameArchive mArchive;
+    private final Position mPosition = new Position();
+    private final Position mStartPosition = FenParser.parse(FenParser.START_FEN);
+    private final GameKeys mGameKeys = new GameKeys();
+
+    private MappedRegion mTable;
+    private int mMask;
+    private int mKeyCount;
+    private long mMaxKeyCount;
+
+    private PositionIndexWriter(GameArchive archive) {
+        this.mArchive = archive;
+    }
+
+    /**
+     * Index all games of the archive, existing file is overwritten;
+     */
+    public static void build(GameArchive archive, File file) throws IOException {
+        new PositionIndexWriter(archive).write(file);
+    }
+
+    private void write(File file) throws IOException {
+        long plyCount = 0;
+        for (int i = 0; i < mArchive.size(); i++) {
+            plyCount += mArchive.get(i).getMoveCount() + 1;
+        }
+        int capacity = PositionIndexFormat.capacityFor(
+                (long) (plyCount * (double) PositionIndexFormat.DISTINCT_PLY_FRACTION));
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            mapTable(randomAccessFile, capacity);
+
+            // Count postings of every position;
+            long countedPlies = 0;
+            for (int i = 0; i < mArchive.size(); i++) {
+                if (replay(i, null)) {
+                    countedPlies += mArchive.get(i).getMoveCount() + 1;
+                    continue;
+                }
+                // Full, extrapolate the positions seen so far to all games;
+                if (capacity == PositionIndexFormat.MAX_CAPACITY) {
+                    throw new IllegalArgumentException("Too many positions: " + mKeyCount);
+                }
+                capacity *= 2;
+                if (countedPlies > 0) {
+                    long expected = (long) ((double) mKeyCount * plyCount / countedPlies);
+                    capacity = Math.max(capacity, PositionIndexFormat.capacityFor(expected));
+                }
+                mapTable(randomAccessFile, capacity);
+                countedPlies = 0;
+                i = -1;
+            }
+            final long tableSize = (long) capacity * PositionIndexFormat.SLOT_SIZE;
+
+            // Every slot gets the end of its postings, the second pass fills them backwards;
+            long postingCount = 0;
+            for (int slot = 0; slot < capacity; slot++) {
+                long offset = (long) slot * PositionIndexFormat.SLOT_SIZE;
+                int count = mTable.getInt(offset + PositionIndexFormat.SLOT_COUNT);
+                if (count == 0) continue;
+                postingCount += count;
+                mTable.putInt(offset + PositionIndexFormat.SLOT_OFFSET, (int) postingCount);
+            }
+            if (postingCount > PositionIndexFormat.MAX_POSTING_COUNT) {
+                throw new IOException("Too many postings: " + postingCount);
+            }
+
+            final long postingsOffset = PositionIndexFormat.HEADER_SIZE + tableSize;
+            final long postingsSize = postingCount * PositionIndexFormat.POSTING_SIZE;
+            randomAccessFile.setLength(postingsOffset + postingsSize);
+            MappedRegion postings = MappedRegion.map(channel, FileChannel.MapMode.READ_WRITE,
+                    postingsOffset, postingsSize);
+            // Backwards, so the postings of a position are in the order of games;
+            for (int i = mArchive.size() - 1; i >= 0; i--) {
+                replay(i, postings);
+            }
+            mTable.force();
+            postings.force();
+
+            ByteBuffer header = ByteBuffer.allocate(PositionIndexFormat.HEADER_SIZE);
+            header.putInt(PositionIndexFormat.MAGIC);
+            header.putShort(PositionIndexFormat.VERSION);
+            header.putShort((short) 0);
+            header.putInt(capacity);
+            header.putInt(mKeyCount);
+            header.putLong(postingCount);
+            header.putLong(mArchive.size());
+            header.putLong(0L);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+        } finally {
+            mTable = null;
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Truncate the file to an empty table of the capacity;
+     */
+    private void mapTable(RandomAccessFile randomAccessFile, int capacity) throws IOException {
+        final long tableSize = (long) capacity * PositionIndexFormat.SLOT_SIZE;
+        randomAccessFile.setLength(0);
+        randomAccessFile.setLength(PositionIndexFormat.HEADER_SIZE + tableSize);
+        mTable = MappedRegion.map(randomAccessFile.getChannel(), FileChannel.MapMode.READ_WRITE,
+                PositionIndexFormat.HEADER_SIZE, tableSize);
+        mMask = capacity - 1;
+        mKeyCount = 0;
+        mMaxKeyCount = PositionIndexFormat.maxKeyCount(capacity);
+    }
+
+    /**
+     * Replay the game and count its positions or, if the postings are given, write them;
+     *
+     * @return false if the key table is full, the count of the game is unfinished then;
+     */
+    private boolean replay(int gameIndex, MappedRegion postings) {
+        ArchivedGame game = mArchive.get(gameIndex);
+        String fen = game.getStartFen();
+        if (FenParser.START_FEN.equals(fen)) {
+            mPosition.set(mStartPosition);
+        } else {
+            FenParser.parse(fen, mPosition);
+        }
+
+        final int moveCount = game.getMoveCount();
+        mGameKeys.clear(moveCount + 1);
+        for (int ply = 0; ; ply++) {
+            long key = mPosition.getZobristHash();
+            if (mGameKeys.add(key)) {
+                long slot = findOrAddSlot(key) * (long) PositionIndexFormat.SLOT_SIZE;
+                if (postings == null) {
+                    if (mKeyCount > mMaxKeyCount) {
+                        return false;
+                    }
+                    long countOffset = slot + PositionIndexFormat.SLOT_COUNT;
+                    mTable.putInt(countOffset, mTable.getInt(countOffset) + 1);
+                } else {
+                    long offsetOffset = slot + PositionIndexFormat.SLOT_OFFSET;
+                    long posting = Integer.toUnsignedLong(mTable.getInt(offsetOffset)) - 1;
+                    mTable.putInt(offsetOffset, (int) posting);
+                    postings.putInt(posting * PositionIndexFormat.POSTING_SIZE, gameIndex);
+                    postings.putInt(posting * PositionIndexFormat.POSTING_SIZE + 4, ply);
+                }
+            }
+            if (ply == moveCount) {
+                return true;
+            }
+            PackedMove.apply(mPosition, game.getPackedMove(ply));
+        }
+    }
+
+    /**
+     * @return slot of the key, a free slot is taken if the key is new;
+     */
+    private int findOrAddSlot(long key) {
+        int slot = PositionIndexFormat.slotOf(key, mMask);
+        while (true) {
+            long offset = (long) slot * PositionIndexFormat.SLOT_SIZE;
+            if (mTable.getInt(offset + PositionIndexFormat.SLOT_COUNT) == 0) {
+                mTable.putLong(offset, key);
+                mKeyCount++;
+                return slot;
+            }
+            if (mTable.getLong(offset) == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mMask;
+        }
+    }
+
+    /**
+     * Positions seen in the current game, cleared by a new stamp instead of filling the arrays;
+     */
+    private static final class GameKeys {
+
+        private long[] mKeys = new long[256];
+        private int[] mStamps = new int[256];
+        private int mStamp = 0;
+
+        void clear(int maxCount) {
+            if (mKeys.length < maxCount * 2) {
+                int capacity = Integer.highestOneBit(maxCount * 4 - 1);
+                mKeys = new long[capacity];
+                mStamps = new int[capacity];
+                mStamp = 0;
+            }
+            mStamp++;
+            if (mStamp == 0) {
+                Arrays.fill(mStamps, 0);
+                mStamp = 1;
+            }
+        }
+
+        /**
+         * @return false if the key is already in the set;
+         */
+        boolean add(long key) {
+            final int mask = mKeys.length - 1;
+            int slot = PositionIndexFormat.slotOf(key, mask);
+            while (mStamps[slot] == mStamp) {
+                if (mKeys[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            mStamps[slot] = mStamp;
+            mKeys[slot] = key;
+            return true;
+        }
+    }
+}
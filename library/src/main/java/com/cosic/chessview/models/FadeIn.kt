@@ -1,7 +1,11 @@
 package com.cosic.chessview.models
 
-class FadeIn(
+class FadeIn @JvmOverloads constructor(
     val toX: Int,
     val toY: Int,
-    val fade: Float
-) : Action
\ No newline at end of file
+    val fade: Float,
+    /**
+     * The piece which appears on the cell, [Cell.EMPTY] if it's unknown;
+     */
+    val cell: Cell = Cell.EMPTY
+) : Action
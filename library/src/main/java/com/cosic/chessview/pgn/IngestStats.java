@@ -0,0 +1,80 @@
+package com.cosic.chessview.pgn;
+
+import java.util.Locale;
+
+/**
+ * Result of one {@link PgnIngest} run.
+ */
+public final class IngestStats {
+
+    private final long mGameCount;
+    private final long mInvalidGameCount;
+    private final long mByteCount;
+    private final long mElapsedNanos;
+    private final int mThreadCount;
+    private final boolean mCancelled;
+
+    IngestStats(long gameCount, long invalidGameCount, long byteCount, long elapsedNanos,
+                int threadCount, boolean cancelled) {
+        this.mGameCount = gameCount;
+        this.mInvalidGameCount = invalidGameCount;
+        this.mByteCount = byteCount;
+        this.mElapsedNanos = elapsedNanos;
+        this.mThreadCount = threadCount;
+        this.mCancelled = cancelled;
+    }
+
+    /**
+     * @return count of valid games passed to the sink;
+     */
+    public long getGameCount() {
+        return mGameCount;
+    }
+
+    /**
+     * @return count of games dropped because of malformed text or illegal moves;
+     */
+    public long getInvalidGameCount() {
+        return mInvalidGameCount;
+    }
+
+    public long getByteCount() {
+        return mByteCount;
+    }
+
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /**
+     * @return count of parsing threads;
+     */
+    public int getThreadCount() {
+        return mThreadCount;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public double getGamesPerSecond() {
+        return mElapsedNanos == 0 ? 0 : (mGameCount + mInvalidGameCount) * 1e9 / mElapsedNanos;
+    }
+
+    public double getGamesPerSecondPerCore() {
+        return getGamesPerSecond() / mThreadCount;
+    }
+
+    public double getMegabytesPerSecond() {
+        return mElapsedNanos == 0 ? 0 : mByteCount * 1e9 / mElapsedNanos / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%d games (%d invalid), %.1f MB in %.2f s on %d threads: %.0f games/s, %.0f games/s/core, %.1f MB/s%s",
+                mGameCount, mInvalidGameCount, mByteCount / (1024.0 * 1024), mElapsedNanos / 1e9, mThreadCount,
+                getGamesPerSecond(), getGamesPerSecondPerCore(), getMegabytesPerSecond(),
+                mCancelled ? ", cancelled" : "");
+    }
+}
@@ -0,0 +1,25 @@
+package com.cosic.chessview.pgn;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link PgnReader} when the input is not a valid Portable Game Notation.
+ */
+public class PgnFormatException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int mLineNumber;
+
+    public PgnFormatException(String message, int lineNumber) {
+        super(message + " at line " + lineNumber);
+        this.mLineNumber = lineNumber;
+    }
+
+    /**
+     * @return number of the offending line, starting from 1;
+     */
+    public int getLineNumber() {
+        return mLineNumber;
+    }
+}
@@ -0,0 +1,113 @@
+package com.cosic.chessview.pgn;
+
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.MoveList;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.game.GameTimeline;
+import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.models.Move;
+
+/**
+ * Immutable game read from PGN: tags, the start position and validated moves of the main line.
+ * Moves are kept as {@link PackedMove}s, variations and comments are dropped.
+ */
+public final class PgnGame {
+
+    private final String[] mTagNames;
+    private final String[] mTagValues;
+
+    /**
+     * Value of the "FEN" tag or null for the standard start position;
+     */
+    private final String mStartFen;
+    private final int[] mMoves;
+    private final String mResult;
+
+    PgnGame(String[] tagNames, String[] tagValues, String startFen, int[] moves, String result) {
+        this.mTagNames = tagNames;
+        this.mTagValues = tagValues;
+        this.mStartFen = startFen;
+        this.mMoves = moves;
+        this.mResult = result;
+    }
+
+    public int getTagCount() {
+        return mTagNames.length;
+    }
+
+    public String getTagName(int index) {
+        return mTagNames[index];
+    }
+
+    public String getTagValue(int index) {
+        return mTagValues[index];
+    }
+
+    /**
+     * @return value of the tag or null;
+     */
+    public String getTag(String name) {
+        for (int i = 0; i < mTagNames.length; i++) {
+            if (mTagNames[i].equals(name)) {
+                return mTagValues[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return "1-0", "0-1", "1/2-1/2" or "*";
+     */
+    public String getResult() {
+        return mResult;
+    }
+
+    public String getStartFen() {
+        return mStartFen != null ? mStartFen : FenParser.START_FEN;
+    }
+
+    public Position getStartPosition() {
+        return FenParser.parse(getStartFen());
+    }
+
+    /**
+     * @return count of plies in the main line;
+     */
+    public int getMoveCount() {
+        return mMoves.length;
+    }
+
+    public Move getMove(int ply) {
+        return PackedMove.toMove(mMoves[ply]);
+    }
+
+    /**
+     * @return the piece a pawn is promoted to by the move or null;
+     */
+    public Cell getPromotion(int ply) {
+        return PackedMove.promotionCell(mMoves[ply]);
+    }
+
+    /**
+     * @return see {@link PackedMove};
+     */
+    public int getPackedMove(int ply) {
+        return mMoves[ply];
+    }
+
+    /**
+     * Append all moves of the main line to the list;
+     */
+    public void getPackedMoves(MoveList moves) {
+        moves.addAll(mMoves, 0, mMoves.length);
+    }
+
+    public GameTimeline toTimeline() {
+        GameTimeline timeline = new GameTimeline(getStartPosition());
+        for (int move : mMoves) {
+            timeline.addMove(PackedMove.from(move), PackedMove.to(move), PackedMove.promotionCell(move));
+        }
+        return timeline;
+    }
+}
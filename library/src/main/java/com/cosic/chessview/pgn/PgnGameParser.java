@@ -0,0 +1,117 @@
+package com.cosic.chessview.pgn;
+
+import com.cosic.chessview.board.FenFormatException;
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.engine.BitboardPosition;
+import com.cosic.chessview.engine.MoveGenerator;
+import com.cosic.chessview.engine.Notation;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads games of one chunk and replays their main lines, invalid games are counted and dropped.
+ * Each worker of {@link PgnIngest} has its own instance, all buffers are reused between chunks.
+ */
+final class PgnGameParser {
+
+    private static final int INITIAL_MOVE_COUNT = 256;
+
+    private final PgnReader mReader = new PgnReader(null);
+    private final Position mStart = FenParser.parse(FenParser.START_FEN);
+    private final Position mFenPosition = new Position();
+    private final BitboardPosition mPosition = new BitboardPosition();
+    private final int[] mLegalMoves = new int[MoveGenerator.MAX_MOVES];
+
+    private int[] mMoves = new int[INITIAL_MOVE_COUNT];
+    private int mMoveCount;
+
+    private int mInvalidCount;
+
+    /**
+     * Read all games of the input into the list;
+     *
+     * @return count of invalid games;
+     */
+    int parse(Reader input, List<PgnGame> games) throws IOException {
+        mReader.reset(input);
+        mInvalidCount = 0;
+        while (true) {
+            try {
+                if (!parseGame(games)) {
+                    break;
+                }
+            } catch (PgnFormatException e) {
+                mInvalidCount++;
+                mReader.skipGame();
+            }
+        }
+        return mInvalidCount;
+    }
+
+    /**
+     * @return false at the end of the input;
+     */
+    private boolean parseGame(List<PgnGame> games) throws IOException {
+        final PgnReader reader = mReader;
+        if (reader.next() != PgnReader.START_GAME) {
+            return false;
+        }
+
+        int event;
+        while ((event = reader.next()) == PgnReader.TAG) {
+            // Tags are kept by the reader;
+        }
+
+        String startFen = null;
+        CharSequence fen = reader.getTag("FEN");
+        try {
+            if (fen != null) {
+                startFen = fen.toString();
+                FenParser.parse(startFen, mFenPosition);
+                mPosition.set(mFenPosition);
+            } else {
+                mPosition.set(mStart);
+            }
+        } catch (FenFormatException e) {
+            mInvalidCount++;
+            reader.skipGame();
+            return true;
+        }
+
+        mMoveCount = 0;
+        String result = "*";
+        while ((event = reader.next()) != PgnReader.END_GAME) {
+            if (reader.getDepth() != 0) continue;
+            if (event == PgnReader.MOVE) {
+                int move = Notation.parseSan(mPosition, reader.getText(), mLegalMoves);
+                if (move == PackedMove.NONE) {
+                    mInvalidCount++;
+                    reader.skipGame();
+                    return true;
+                }
+                mPosition.makeMove(move);
+                if (mMoveCount == mMoves.length) {
+                    mMoves = Arrays.copyOf(mMoves, mMoveCount * 2);
+                }
+                // Games keep moves without flags;
+                mMoves[mMoveCount++] = PackedMove.fromShort(PackedMove.toShort(move));
+            } else if (event == PgnReader.RESULT) {
+                result = reader.getText().toString();
+            }
+        }
+
+        int tagCount = reader.getTagCount();
+        String[] names = new String[tagCount];
+        String[] values = new String[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            names[i] = reader.getTagName(i).toString();
+            values[i] = reader.getTagValue(i).toString();
+        }
+        games.add(new PgnGame(names, values, startFen, Arrays.copyOf(mMoves, mMoveCount), result));
+        return true;
+    }
+}
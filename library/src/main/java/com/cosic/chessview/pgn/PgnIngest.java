@@ -0,0 +1,317 @@
+package com.cosic.chessview.pgn;
+
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports a PGN database on several cores:
+ * <ol>
+ * <li>one thread splits the input into chunks of whole games, files are memory-mapped;</li>
+ * <li>worker threads decode the chunks, read games with {@link PgnReader} and replay SAN moves
+ * with {@link com.cosic.chessview.engine.Notation}, games with malformed text or illegal moves are dropped;</li>
+ * <li>the calling thread numbers the games and passes them to the {@link GameSink} in the input order.</li>
+ * </ol>
+ * Queues between the stages are bounded, so the memory does not depend on the size of the input.
+ * {@link #cancel()} may be called from any thread, including the sink and the progress listener.
+ * <p>
+ * The instance runs one import at a time.
+ */
+public final class PgnIngest {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Queued chunks per worker thread, when the queue capacity is not set;
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    /**
+     * How often the sink stage checks for cancellation while waiting;
+     */
+    private static final long POLL_INTERVAL_MS = 100;
+
+    public interface GameSink {
+        /**
+         * Called on the thread of the import in the order of the input;
+         *
+         * @param index - number of the valid game, starting from 0;
+         */
+        void onGame(long index, PgnGame game) throws IOException;
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called on the thread of the import after each chunk;
+         */
+        void onProgress(long gameCount, long invalidGameCount, long byteCount);
+    }
+
+    private interface Source {
+        void split(PgnSplitter splitter, PgnSplitter.ChunkConsumer consumer) throws IOException, InterruptedException;
+    }
+
+    private final int mThreadCount;
+    private int mChunkSize = DEFAULT_CHUNK_SIZE;
+    private int mQueueCapacity = 0;
+    private Charset mCharset = StandardCharsets.UTF_8;
+    private ProgressListener mProgressListener;
+
+    private volatile boolean mCancelled = false;
+
+    public PgnIngest() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threadCount - count of parsing threads;
+     */
+    public PgnIngest(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        this.mThreadCount = threadCount;
+    }
+
+    /**
+     * @param chunkSize - approximate count of bytes given to a worker at once;
+     */
+    public void setChunkSize(int chunkSize) {
+        this.mChunkSize = chunkSize;
+    }
+
+    /**
+     * @param queueCapacity - count of chunks waiting for workers, 0 - two per worker;
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.mQueueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param charset - encoding of the input, UTF-8 by default;
+     */
+    public void setCharset(Charset charset) {
+        this.mCharset = charset;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.mProgressListener = progressListener;
+    }
+
+    /**
+     * Stop the running import, {@link #ingest} returns the games passed to the sink so far;
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public IngestStats ingest(File file, GameSink sink) throws IOException {
+        try (FileInputStream input = new FileInputStream(file);
+             FileChannel channel = input.getChannel()) {
+            return run((splitter, consumer) -> splitter.split(channel, consumer), sink);
+        }
+    }
+
+    public IngestStats ingest(InputStream input, GameSink sink) throws IOException {
+        return run((splitter, consumer) -> splitter.split(input, consumer), sink);
+    }
+
+    private IngestStats run(final Source source, GameSink sink) throws IOException {
+        mCancelled = false;
+        final long startNanos = System.nanoTime();
+        final int capacity = mQueueCapacity > 0 ? mQueueCapacity : mThreadCount * CHUNKS_PER_THREAD;
+        final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(capacity);
+        final BlockingQueue<Chunk> parsed = new LinkedBlockingQueue<>();
+        // Chunks between the splitter and the sink, bounds the parsed queue and reordering too;
+        final Semaphore inFlight = new Semaphore(capacity + mThreadCount);
+
+        ExecutorService executor = Executors.newFixedThreadPool(mThreadCount + 1, new IngestThreadFactory());
+        executor.execute(() -> split(source, chunks, parsed, inFlight));
+        for (int i = 0; i < mThreadCount; i++) {
+            executor.execute(() -> parse(chunks, parsed));
+        }
+
+        long gameCount = 0;
+        long invalidGameCount = 0;
+        long byteCount = 0;
+        try {
+            final Map<Integer, Chunk> pending = new HashMap<>();
+            int next = 0;
+            int total = -1;
+            while (!mCancelled && (total < 0 || next < total)) {
+                Chunk chunk = parsed.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (chunk == null) continue;
+                if (chunk.mError != null) {
+                    throw asIOException(chunk.mError);
+                }
+                if (chunk.mGames == null) {
+                    total = chunk.mIndex;
+                    continue;
+                }
+                pending.put(chunk.mIndex, chunk);
+
+                Chunk ready;
+                while (!mCancelled && (ready = pending.remove(next)) != null) {
+                    for (PgnGame game : ready.mGames) {
+                        sink.onGame(gameCount++, game);
+                    }
+                    invalidGameCount += ready.mInvalidCount;
+                    byteCount += ready.mByteCount;
+                    next++;
+                    inFlight.release();
+                    if (mProgressListener != null) {
+                        mProgressListener.onProgress(gameCount, invalidGameCount, byteCount);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mCancelled = true;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new IngestStats(gameCount, invalidGameCount, byteCount, System.nanoTime() - startNanos,
+                mThreadCount, mCancelled);
+    }
+
+    /**
+     * Splitter stage, after the last chunk it sends the count of chunks to the sink and stops the workers;
+     */
+    private void split(Source source, BlockingQueue<Chunk> chunks, BlockingQueue<Chunk> parsed, Semaphore inFlight) {
+        final int[] count = new int[1];
+        try {
+            source.split(new PgnSplitter(mChunkSize), bytes -> {
+                if (mCancelled) {
+                    return false;
+                }
+                inFlight.acquire();
+                chunks.put(new Chunk(count[0]++, bytes));
+                return true;
+            });
+            parsed.put(Chunk.end(count[0]));
+            for (int i = 0; i < mThreadCount; i++) {
+                chunks.put(Chunk.end(count[0]));
+            }
+        } catch (InterruptedException e) {
+            // Cancelled;
+        } catch (Exception e) {
+            parsed.offer(Chunk.failed(e));
+        }
+    }
+
+    /**
+     * Worker stage;
+     */
+    private void parse(BlockingQueue<Chunk> chunks, BlockingQueue<Chunk> parsed) {
+        final PgnGameParser parser = new PgnGameParser();
+        final CharsetDecoder decoder = mCharset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(0);
+        try {
+            while (true) {
+                Chunk chunk = chunks.take();
+                if (chunk.mBytes == null) {
+                    return;
+                }
+                ByteBuffer bytes = chunk.mBytes.duplicate();
+                int required = (int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte());
+                if (chars.capacity() < required) {
+                    chars = CharBuffer.allocate(required);
+                }
+                chars.clear();
+                decoder.reset();
+                decoder.decode(bytes, chars, true);
+                decoder.flush(chars);
+                chars.flip();
+
+                List<PgnGame> games = new ArrayList<>();
+                chunk.mInvalidCount = parser.parse(new CharArrayReader(chars.array(), 0, chars.limit()), games);
+                chunk.mGames = games;
+                chunk.mBytes = null;
+                parsed.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            // Cancelled;
+        } catch (Exception e) {
+            parsed.offer(Chunk.failed(e));
+        }
+    }
+
+    private static IOException asIOException(Exception e) {
+        if (e instanceof IOException) {
+            return (IOException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        return new IOException(e);
+    }
+
+    /**
+     * Bytes of whole games on the way to a worker, then games on the way to the sink;
+     */
+    private static final class Chunk {
+
+        final int mIndex;
+        ByteBuffer mBytes;
+        final int mByteCount;
+        List<PgnGame> mGames;
+        int mInvalidCount;
+        Exception mError;
+
+        Chunk(int index, ByteBuffer bytes) {
+            this.mIndex = index;
+            this.mBytes = bytes;
+            this.mByteCount = bytes != null ? bytes.remaining() : 0;
+        }
+
+        /**
+         * @return marker of the end of the input with the count of chunks;
+         */
+        static Chunk end(int count) {
+            return new Chunk(count, null);
+        }
+
+        static Chunk failed(Exception error) {
+            Chunk chunk = new Chunk(-1, null);
+            chunk.mError = error;
+            return chunk;
+        }
+    }
+
+    private static final class IngestThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "PgnIngest-" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,583 @@
+package com.cosic.chessview.pgn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Pull parser of the Portable Game Notation which streams games one by one with bounded memory.
+ * <p>
+ * Every game produces the events:
+ * {@link #START_GAME}, {@link #TAG}*, {@link #MOVETEXT}, then any of {@link #MOVE}, {@link #COMMENT},
+ * {@link #NAG}, {@link #START_VARIATION}, {@link #END_VARIATION}, then {@link #RESULT} (if present)
+ * and {@link #END_GAME}. The last event is {@link #END_DOCUMENT}.
+ * <pre>
+ * int event;
+ * while ((event = reader.next()) != PgnReader.END_DOCUMENT) {
+ *     if (event == PgnReader.MOVETEXT) {
+ *         CharSequence white = reader.getTag("White");
+ *         if (white == null || !"Carlsen, Magnus".contentEquals(white)) {
+ *             reader.skipGame();
+ *         }
+ *     }
+ * }
+ * </pre>
+ * The text of the current event is kept in buffers reused for all games, so the returned
+ * {@link CharSequence}s are valid only until the next call. Move text of filtered out games
+ * is skipped by {@link #skipGame()} without tokenizing.
+ * <p>
+ * The instance is not thread-safe.
+ * More information: @see <a href="Wiki">https://en.wikipedia.org/wiki/Portable_Game_Notation</a>
+ */
+public final class PgnReader implements Closeable {
+
+    public static final int START_GAME = 1;
+    public static final int TAG = 2;
+    /**
+     * All tags of the game have been read, {@link #getTag(String)} may be used to filter it;
+     */
+    public static final int MOVETEXT = 3;
+    public static final int MOVE = 4;
+    public static final int COMMENT = 5;
+    public static final int NAG = 6;
+    public static final int START_VARIATION = 7;
+    public static final int END_VARIATION = 8;
+    public static final int RESULT = 9;
+    public static final int END_GAME = 10;
+    public static final int END_DOCUMENT = 11;
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final int EOF = -1;
+
+    private static final int STATE_BETWEEN = 0;
+    private static final int STATE_TAGS = 1;
+    private static final int STATE_MOVES = 2;
+    private static final int STATE_RESULT = 3;
+    private static final int STATE_DONE = 4;
+
+    private static final int INITIAL_TAG_COUNT = 16;
+    private static final int INITIAL_DEPTH = 8;
+
+    private Reader mReader;
+    private final char[] mBuffer;
+    private int mPosition = 0;
+    private int mLimit = 0;
+
+    private int mLineNumber = 1;
+
+    /**
+     * Character before the current one, '\n' at the start of a line;
+     */
+    private char mPrevious = '\n';
+
+    private int mState = STATE_BETWEEN;
+    private int mEvent = 0;
+
+    /**
+     * Move, comment or result of the current event;
+     */
+    private final StringBuilder mText = new StringBuilder();
+    private int mNag = 0;
+
+    private StringBuilder[] mTagNames = new StringBuilder[INITIAL_TAG_COUNT];
+    private StringBuilder[] mTagValues = new StringBuilder[INITIAL_TAG_COUNT];
+    private int mTagCount = 0;
+
+    /**
+     * Ply of the last move in the current line, saved for each open variation;
+     */
+    private int mPly = 0;
+    private int[] mPlyStack = new int[INITIAL_DEPTH];
+    private int mDepth = 0;
+
+    public PgnReader(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    public PgnReader(Reader reader, int bufferSize) {
+        this.mReader = reader;
+        this.mBuffer = new char[bufferSize];
+    }
+
+    /**
+     * Start reading other input with the same buffers;
+     */
+    public void reset(Reader reader) {
+        mReader = reader;
+        mPosition = 0;
+        mLimit = 0;
+        mLineNumber = 1;
+        mPrevious = '\n';
+        mState = STATE_BETWEEN;
+        mEvent = 0;
+        mTagCount = 0;
+        mPly = 0;
+        mDepth = 0;
+    }
+
+    /**
+     * Read the next event;
+     *
+     * @return one of event constants, {@link #END_DOCUMENT} is returned at the end forever;
+     * @throws PgnFormatException if the input is malformed, {@link #skipGame()} may be called then
+     *                            to continue with the next game;
+     */
+    public int next() throws IOException {
+        try {
+            return nextEvent();
+        } catch (PgnFormatException e) {
+            mState = STATE_MOVES;
+            throw e;
+        }
+    }
+
+    private int nextEvent() throws IOException {
+        switch (mState) {
+            case STATE_BETWEEN:
+                return mEvent = nextGame();
+            case STATE_TAGS:
+                return mEvent = nextTag();
+            case STATE_MOVES:
+                return mEvent = nextMoveText();
+            case STATE_RESULT:
+                mState = STATE_BETWEEN;
+                return mEvent = END_GAME;
+            default:
+                return mEvent = END_DOCUMENT;
+        }
+    }
+
+    /**
+     * Skip the rest of the current game, the next event is {@link #START_GAME} of the next one
+     * or {@link #END_DOCUMENT}; Remaining tags are still read, the move text is only scanned
+     * for the start of the next tag section;
+     */
+    public void skipGame() throws IOException {
+        while (mState == STATE_TAGS) {
+            next();
+        }
+        if (mState == STATE_RESULT) {
+            mState = STATE_BETWEEN;
+            return;
+        }
+        if (mState != STATE_MOVES) {
+            return;
+        }
+
+        boolean inComment = false;
+        boolean inLineComment = false;
+        char previous = mPrevious;
+        while (mPosition < mLimit || fill()) {
+            final char[] buffer = mBuffer;
+            final int limit = mLimit;
+            int position = mPosition;
+            for (; position < limit; position++) {
+                char c = buffer[position];
+                if (c == '\n') {
+                    mLineNumber++;
+                    inLineComment = false;
+                } else if (inComment) {
+                    if (c == '}') {
+                        inComment = false;
+                    }
+                } else if (!inLineComment) {
+                    if (c == '{') {
+                        inComment = true;
+                    } else if (c == ';') {
+                        inLineComment = true;
+                    } else if (c == '[' && previous == '\n') {
+                        mPosition = position;
+                        mPrevious = previous;
+                        mState = STATE_BETWEEN;
+                        return;
+                    }
+                }
+                previous = c;
+            }
+            mPosition = position;
+        }
+        mPrevious = previous;
+        mState = STATE_BETWEEN;
+    }
+
+    /**
+     * @return the last event returned by {@link #next()};
+     */
+    public int getEvent() {
+        return mEvent;
+    }
+
+    /**
+     * @return SAN of {@link #MOVE}, text of {@link #COMMENT} or "1-0", "0-1", "1/2-1/2", "*" of {@link #RESULT};
+     */
+    public CharSequence getText() {
+        return mText;
+    }
+
+    /**
+     * @return numeric annotation glyph of {@link #NAG}, "!" and "?" suffixes are converted to 1 - 6;
+     */
+    public int getNag() {
+        return mNag;
+    }
+
+    /**
+     * @return ply of the current {@link #MOVE} counted from the start position, 1 - the first white move;
+     */
+    public int getPly() {
+        return mPly;
+    }
+
+    /**
+     * @return count of open variations, 0 - the main line;
+     */
+    public int getDepth() {
+        return mDepth;
+    }
+
+    /**
+     * @return name of the current {@link #TAG};
+     */
+    public CharSequence getTagName() {
+        return mTagNames[mTagCount - 1];
+    }
+
+    /**
+     * @return value of the current {@link #TAG};
+     */
+    public CharSequence getTagValue() {
+        return mTagValues[mTagCount - 1];
+    }
+
+    /**
+     * @return count of tags of the current game read so far;
+     */
+    public int getTagCount() {
+        return mTagCount;
+    }
+
+    public CharSequence getTagName(int index) {
+        return mTagNames[index];
+    }
+
+    public CharSequence getTagValue(int index) {
+        return mTagValues[index];
+    }
+
+    /**
+     * @return value of the tag of the current game or null;
+     */
+    public CharSequence getTag(String name) {
+        for (int i = 0; i < mTagCount; i++) {
+            if (name.contentEquals(mTagNames[i])) {
+                return mTagValues[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of the current line, starting from 1;
+     */
+    public int getLineNumber() {
+        return mLineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    private int nextGame() throws IOException {
+        skipSeparators();
+        if (peek() == EOF) {
+            mState = STATE_DONE;
+            return END_DOCUMENT;
+        }
+        mTagCount = 0;
+        mPly = 0;
+        mDepth = 0;
+        mState = STATE_TAGS;
+        return START_GAME;
+    }
+
+    private int nextTag() throws IOException {
+        skipSeparators();
+        if (peek() != '[') {
+            mState = STATE_MOVES;
+            return MOVETEXT;
+        }
+        read();
+
+        if (mTagCount == mTagNames.length) {
+            mTagNames = Arrays.copyOf(mTagNames, mTagCount * 2);
+            mTagValues = Arrays.copyOf(mTagValues, mTagCount * 2);
+        }
+        if (mTagNames[mTagCount] == null) {
+            mTagNames[mTagCount] = new StringBuilder();
+            mTagValues[mTagCount] = new StringBuilder();
+        }
+        StringBuilder name = mTagNames[mTagCount];
+        StringBuilder value = mTagValues[mTagCount];
+        name.setLength(0);
+        value.setLength(0);
+
+        skipSpaces();
+        int c;
+        while ((c = peek()) != EOF && isSymbolChar((char) c)) {
+            name.append((char) read());
+        }
+        if (name.length() == 0) {
+            throw new PgnFormatException("Expected tag name", mLineNumber);
+        }
+        skipSpaces();
+        if (read() != '"') {
+            throw new PgnFormatException("Expected '\"' after tag name", mLineNumber);
+        }
+        while (true) {
+            c = peek();
+            if (c == EOF || c == '\n') {
+                // Not read, so the line of the tag is reported;
+                throw new PgnFormatException("Unterminated tag value", mLineNumber);
+            }
+            read();
+            if (c == '"') {
+                break;
+            }
+            if (c == '\\') {
+                c = read();
+                if (c == EOF) {
+                    throw new PgnFormatException("Unterminated tag value", mLineNumber);
+                }
+            }
+            value.append((char) c);
+        }
+        skipSpaces();
+        if (read() != ']') {
+            throw new PgnFormatException("Expected ']' after tag value", mLineNumber);
+        }
+        mTagCount++;
+        return TAG;
+    }
+
+    private int nextMoveText() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c == EOF) {
+                mState = STATE_BETWEEN;
+                return END_GAME;
+            }
+            if (c == '[' && mPrevious == '\n') {
+                // The next game starts without the result of this one;
+                mState = STATE_BETWEEN;
+                return END_GAME;
+            }
+            if (c == '%' && mPrevious == '\n') {
+                skipLine();
+                continue;
+            }
+            if (isSpace((char) c)) {
+                read();
+                continue;
+            }
+
+            read();
+            switch (c) {
+                case '{':
+                    mText.setLength(0);
+                    while ((c = read()) != '}') {
+                        if (c == EOF) {
+                            throw new PgnFormatException("Unterminated comment", mLineNumber);
+                        }
+                        mText.append((char) c);
+                    }
+                    return COMMENT;
+                case ';':
+                    mText.setLength(0);
+                    while ((c = peek()) != EOF && c != '\n') {
+                        mText.append((char) read());
+                    }
+                    return COMMENT;
+                case '(':
+                    if (mDepth == mPlyStack.length) {
+                        mPlyStack = Arrays.copyOf(mPlyStack, mDepth * 2);
+                    }
+                    mPlyStack[mDepth++] = mPly;
+                    // The variation replaces the last move;
+                    mPly--;
+                    return START_VARIATION;
+                case ')':
+                    if (mDepth == 0) {
+                        throw new PgnFormatException("Unexpected ')'", mLineNumber);
+                    }
+                    mPly = mPlyStack[--mDepth];
+                    return END_VARIATION;
+                case '$':
+                    mNag = 0;
+                    while ((c = peek()) >= '0' && c <= '9') {
+                        mNag = mNag * 10 + (read() - '0');
+                    }
+                    return NAG;
+                case '!':
+                case '?':
+                    mNag = readSuffixNag((char) c);
+                    return NAG;
+                case '*':
+                    mText.setLength(0);
+                    mText.append('*');
+                    return result();
+                default:
+                    break;
+            }
+
+            if (c >= '0' && c <= '9') {
+                mText.setLength(0);
+                mText.append((char) c);
+                while ((c = peek()) != EOF && (c >= '0' && c <= '9' || c == '-' || c == '/')) {
+                    mText.append((char) read());
+                }
+                if (isResult(mText)) {
+                    return result();
+                }
+                if (isZeroCastling(mText)) {
+                    // Castling written with zeros, "0-0+" or "0-0-0#";
+                    while ((c = peek()) != EOF && isSanChar((char) c)) {
+                        mText.append((char) read());
+                    }
+                    mPly++;
+                    return MOVE;
+                }
+                // Move number like "12." or "12...";
+                while (peek() == '.') {
+                    read();
+                }
+                continue;
+            }
+
+            if (isSanChar((char) c)) {
+                mText.setLength(0);
+                mText.append((char) c);
+                while ((c = peek()) != EOF && isSanChar((char) c)) {
+                    mText.append((char) read());
+                }
+                mPly++;
+                return MOVE;
+            }
+
+            throw new PgnFormatException("Unexpected '" + (char) c + "' in move text", mLineNumber);
+        }
+    }
+
+    private int result() {
+        if (mDepth == 0) {
+            mState = STATE_RESULT;
+        }
+        return RESULT;
+    }
+
+    private int readSuffixNag(char first) throws IOException {
+        int second = peek();
+        if (second != '!' && second != '?') {
+            return first == '!' ? 1 : 2;
+        }
+        read();
+        if (first == second) {
+            return first == '!' ? 3 : 4;
+        }
+        return first == '!' ? 5 : 6;
+    }
+
+    private static boolean isResult(CharSequence text) {
+        int length = text.length();
+        if (length == 3) {
+            return text.charAt(1) == '-'
+                    && (text.charAt(0) == '1' && text.charAt(2) == '0' || text.charAt(0) == '0' && text.charAt(2) == '1');
+        }
+        return length == 7 && "1/2-1/2".contentEquals(text);
+    }
+
+    private static boolean isZeroCastling(CharSequence text) {
+        return "0-0".contentEquals(text) || "0-0-0".contentEquals(text);
+    }
+
+    /**
+     * Skip white space, comments and escaped lines outside of move text;
+     */
+    private void skipSeparators() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c == EOF) {
+                return;
+            }
+            if (isSpace((char) c) || c == '\uFEFF') {
+                read();
+            } else if (c == ';' || c == '%' && mPrevious == '\n') {
+                skipLine();
+            } else if (c == '{' && mState == STATE_BETWEEN) {
+                while ((c = read()) != EOF && c != '}') {
+                    // Comment between games;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void skipSpaces() throws IOException {
+        int c;
+        while ((c = peek()) == ' ' || c == '\t') {
+            read();
+        }
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = peek()) != EOF && c != '\n') {
+            read();
+        }
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+    }
+
+    private static boolean isSymbolChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+    }
+
+    private static boolean isSanChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                || c == '+' || c == '#' || c == '=' || c == '-' || c == ':';
+    }
+
+    private int peek() throws IOException {
+        if (mPosition == mLimit && !fill()) {
+            return EOF;
+        }
+        return mBuffer[mPosition];
+    }
+
+    private int read() throws IOException {
+        if (mPosition == mLimit && !fill()) {
+            return EOF;
+        }
+        char c = mBuffer[mPosition++];
+        if (c == '\n') {
+            mLineNumber++;
+        }
+        mPrevious = c;
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        int count = mReader.read(mBuffer, 0, mBuffer.length);
+        if (count <= 0) {
+            return false;
+        }
+        mPosition = 0;
+        mLimit = count;
+        return true;
+    }
+}
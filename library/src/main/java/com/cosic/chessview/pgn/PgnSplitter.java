@@ -0,0 +1,119 @@
+package com.cosic.chessview.pgn;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Cuts PGN bytes into chunks of whole games. A game starts with '[' at the beginning of a line
+ * after an empty line, as PGN export format requires, so the bytes are not decoded here.
+ * Files are memory-mapped by windows, so chunks are slices of the mapping and nothing is copied.
+ */
+final class PgnSplitter {
+
+    /**
+     * Size of one mapping, large files are mapped window by window;
+     */
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private static final int NOT_FOUND = -1;
+
+    interface ChunkConsumer {
+        /**
+         * @return false to stop splitting;
+         */
+        boolean onChunk(ByteBuffer chunk) throws IOException, InterruptedException;
+    }
+
+    private final int mChunkSize;
+
+    PgnSplitter(int chunkSize) {
+        this.mChunkSize = chunkSize;
+    }
+
+    void split(FileChannel channel, ChunkConsumer consumer) throws IOException, InterruptedException {
+        final long size = channel.size();
+        long offset = 0;
+        while (offset < size) {
+            long windowSize = Math.min(WINDOW_SIZE, size - offset);
+            boolean last = offset + windowSize == size;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, windowSize);
+
+            int start = 0;
+            int limit = (int) windowSize;
+            while (start < limit) {
+                int end = limit - start > mChunkSize ? findGameStart(window, start + mChunkSize, limit) : NOT_FOUND;
+                if (end == NOT_FOUND) {
+                    if (!last && start > 0) {
+                        // The rest is mapped again with the next window;
+                        break;
+                    }
+                    if (!last) {
+                        throw new IOException("Game at offset " + (offset + start) + " is larger than " + WINDOW_SIZE + " bytes");
+                    }
+                    end = limit;
+                }
+                if (!consumer.onChunk(slice(window, start, end))) {
+                    return;
+                }
+                start = end;
+            }
+            offset += start;
+        }
+    }
+
+    void split(InputStream input, ChunkConsumer consumer) throws IOException, InterruptedException {
+        byte[] buffer = new byte[2 * mChunkSize];
+        int length = 0;
+        boolean eof = false;
+        while (!eof || length > 0) {
+            while (!eof && length < buffer.length) {
+                int count = input.read(buffer, length, buffer.length - length);
+                if (count < 0) {
+                    eof = true;
+                } else {
+                    length += count;
+                }
+            }
+
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, length);
+            int end = length > mChunkSize ? findGameStart(bytes, mChunkSize, length) : NOT_FOUND;
+            if (end == NOT_FOUND) {
+                if (!eof) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+                end = length;
+            }
+            if (!consumer.onChunk(ByteBuffer.wrap(Arrays.copyOf(buffer, end)))) {
+                return;
+            }
+            System.arraycopy(buffer, end, buffer, 0, length - end);
+            length -= end;
+        }
+    }
+
+    /**
+     * @return index of '[' which starts a game, searching from the index, or {@link #NOT_FOUND};
+     */
+    static int findGameStart(ByteBuffer bytes, int from, int limit) {
+        for (int i = Math.max(from, 2); i < limit; i++) {
+            if (bytes.get(i) != '[' || bytes.get(i - 1) != '\n') continue;
+            byte before = bytes.get(i - 2);
+            if (before == '\n' || before == '\r' && i >= 3 && bytes.get(i - 3) == '\n') {
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int start, int end) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(end);
+        duplicate.position(start);
+        return duplicate.slice();
+    }
+}
@@ -0,0 +1,79 @@
+package com.cosic.chessview.pgn;
+
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.engine.BitboardPosition;
+import com.cosic.chessview.engine.MoveGenerator;
+import com.cosic.chessview.engine.Notation;
+import com.cosic.chessview.game.VariationTree;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads a game with all its variations and comments into a {@link VariationTree}.
+ * <pre>
+ * while (reader.next() != PgnReader.END_DOCUMENT) {
+ *     if (reader.getEvent() == PgnReader.MOVETEXT) {
+ *         VariationTree tree = PgnVariationParser.parse(reader);
+ *     }
+ * }
+ * </pre>
+ */
+public final class PgnVariationParser {
+
+    private PgnVariationParser() {
+    }
+
+    /**
+     * Read the move text of the current game up to {@link PgnReader#END_GAME},
+     * call after {@link PgnReader#MOVETEXT}; The cursor of the tree is left at the root;
+     *
+     * @throws PgnFormatException                           if a move is not legal;
+     * @throws com.cosic.chessview.board.FenFormatException if the FEN tag is malformed;
+     */
+    public static VariationTree parse(PgnReader reader) throws IOException {
+        CharSequence fen = reader.getTag("FEN");
+        VariationTree tree = new VariationTree(FenParser.parse(fen != null ? fen.toString() : FenParser.START_FEN));
+        BitboardPosition position = new BitboardPosition();
+        int[] legalMoves = new int[MoveGenerator.MAX_MOVES];
+
+        // Nodes to come back to at the end of each open variation;
+        int[] branches = new int[8];
+        int depth = 0;
+        int event;
+        while ((event = reader.next()) != PgnReader.END_GAME && event != PgnReader.END_DOCUMENT) {
+            switch (event) {
+                case PgnReader.MOVE:
+                    position.set(tree.getBoard());
+                    int move = Notation.parseSan(position, reader.getText(), legalMoves);
+                    if (move == PackedMove.NONE) {
+                        throw new PgnFormatException("Illegal move " + reader.getText(), reader.getLineNumber());
+                    }
+                    tree.addMove(PackedMove.from(move), PackedMove.to(move), PackedMove.promotionCell(move));
+                    break;
+                case PgnReader.COMMENT:
+                    tree.setComment(tree.getNode(), reader.getText());
+                    break;
+                case PgnReader.START_VARIATION:
+                    if (depth == branches.length) {
+                        branches = Arrays.copyOf(branches, depth * 2);
+                    }
+                    branches[depth++] = tree.getNode();
+                    // A variation replaces the last move;
+                    if (!tree.stepBack()) {
+                        throw new PgnFormatException("Variation before the first move", reader.getLineNumber());
+                    }
+                    break;
+                case PgnReader.END_VARIATION:
+                    if (depth > 0) {
+                        tree.seek(branches[--depth]);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        tree.seek(VariationTree.ROOT);
+        return tree;
+    }
+}
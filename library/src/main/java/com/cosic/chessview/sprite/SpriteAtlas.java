@@ -0,0 +1,185 @@
+package com.cosic.chessview.sprite;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import com.cosic.chessview.models.Cell;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * All twelve piece images in one bitmap, decoded at the size they are drawn.
+ * <p>
+ * Sprites lie in two rows of square slots of {@link #getSpriteSize()}, white pieces above black ones,
+ * in the order of {@link Cell}. Each sprite keeps the aspect of its image and starts at the top left
+ * corner of its slot, {@link #getSource(int)} gives its exact rect.
+ * <p>
+ * Decoding reads the image bounds first, samples the image down by a power of two and lets the
+ * decoder scale the rest with filtering, so the full size asset is never held in memory and nothing
+ * is scaled at draw time. Don't decode on the main thread, use {@link #decodeAsync(Resources, int, Executor)}.
+ * The instance is immutable and may be drawn from any thread.
+ */
+public final class SpriteAtlas {
+
+    private static final int COLUMNS = (Cell.values().length - 1) / 2;
+
+    private final Bitmap mBitmap;
+    private final int mSpriteSize;
+    private final Rect[] mSources;
+
+    SpriteAtlas(Bitmap bitmap, int spriteSize, Rect[] sources) {
+        this.mBitmap = bitmap;
+        this.mSpriteSize = spriteSize;
+        this.mSources = sources;
+    }
+
+    /**
+     * Decode the pieces of {@link Cell#getDrawable()} fitted into a square of the size;
+     *
+     * @param spriteSize - size of the square in pixels, positive;
+     */
+    public static SpriteAtlas decode(Resources resources, int spriteSize) {
+        return decode(resources, spriteSize, drawablesOf(Cell.values()));
+    }
+
+    /**
+     * Decode the pieces, drawables[ordinal] is the image of {@link Cell#values()}[ordinal],
+     * zero for {@link Cell#EMPTY};
+     *
+     * @param spriteSize - size of the square in pixels, positive;
+     */
+    public static SpriteAtlas decode(Resources resources, int spriteSize, int[] drawables) {
+        if (spriteSize <= 0) {
+            throw new IllegalArgumentException("Sprite size " + spriteSize);
+        }
+        Bitmap atlas = Bitmap.createBitmap(COLUMNS * spriteSize, 2 * spriteSize, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(atlas);
+        Rect[] sources = new Rect[drawables.length];
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        for (int ordinal = 0; ordinal < drawables.length; ordinal++) {
+            int left = slotColumn(ordinal) * spriteSize;
+            int top = slotRow(ordinal) * spriteSize;
+            sources[ordinal] = new Rect(left, top, left, top);
+            if (drawables[ordinal] == 0) continue;
+
+            Bitmap sprite = decodeSprite(resources, drawables[ordinal], spriteSize, options);
+            if (sprite == null) continue;
+            canvas.drawBitmap(sprite, left, top, null);
+            sources[ordinal].right = left + sprite.getWidth();
+            sources[ordinal].bottom = top + sprite.getHeight();
+            sprite.recycle();
+        }
+        return new SpriteAtlas(atlas, spriteSize, sources);
+    }
+
+    /**
+     * {@link #decode(Resources, int)} on the executor;
+     */
+    public static CompletableFuture<SpriteAtlas> decodeAsync(Resources resources, int spriteSize, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> decode(resources, spriteSize), executor);
+    }
+
+    /**
+     * Decode the image scaled to fit into the square, keeping its aspect;
+     *
+     * @return null if the resource is not an image;
+     */
+    private static Bitmap decodeSprite(Resources resources, int drawable, int size, BitmapFactory.Options options) {
+        options.inJustDecodeBounds = true;
+        options.inScaled = false;
+        options.inSampleSize = 1;
+        options.inDensity = 0;
+        options.inTargetDensity = 0;
+        BitmapFactory.decodeResource(resources, drawable, options);
+        final int width = options.outWidth;
+        final int height = options.outHeight;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        // The longer side becomes the size, the shorter one follows the aspect;
+        final int source = Math.max(width, height);
+        int sampleSize = 1;
+        while (source / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+
+        // The decoder scales the sampled image by inTargetDensity / inDensity with filtering;
+        options.inJustDecodeBounds = false;
+        options.inScaled = true;
+        options.inSampleSize = sampleSize;
+        options.inDensity = source;
+        options.inTargetDensity = size * sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        return BitmapFactory.decodeResource(resources, drawable, options);
+    }
+
+    static int[] drawablesOf(Cell[] cells) {
+        int[] drawables = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            drawables[i] = cells[i].getDrawable();
+        }
+        return drawables;
+    }
+
+    private static int slotColumn(int ordinal) {
+        return ordinal == 0 ? 0 : (ordinal - 1) >> 1;
+    }
+
+    private static int slotRow(int ordinal) {
+        return ordinal == 0 ? 0 : (ordinal - 1) & 1;
+    }
+
+    /**
+     * @return bitmap with all sprites, must not be changed or recycled;
+     */
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    /**
+     * @return size of the square every sprite fits in;
+     */
+    public int getSpriteSize() {
+        return mSpriteSize;
+    }
+
+    /**
+     * @return rect of the sprite of {@link Cell#ordinal()} in {@link #getBitmap()}, empty for
+     * {@link Cell#EMPTY} and images failed to decode, must not be changed;
+     */
+    public Rect getSource(int cellOrdinal) {
+        return mSources[cellOrdinal];
+    }
+
+    /**
+     * Draw the sprite centred on the point and scaled to the size, with no scaling when the size
+     * is {@link #getSpriteSize()};
+     *
+     * @param destination - buffer for the drawn rect, every drawing thread has own one;
+     */
+    public void draw(Canvas canvas, int cellOrdinal, int centerX, int centerY, int size, Paint paint, Rect destination) {
+        final Rect source = mSources[cellOrdinal];
+        if (source.isEmpty()) return;
+        int width = source.width();
+        int height = source.height();
+        if (size != mSpriteSize) {
+            width = width * size / mSpriteSize;
+            height = height * size / mSpriteSize;
+        }
+        int left = centerX - width / 2;
+        int top = centerY - height / 2;
+        destination.set(left, top, left + width, top + height);
+        canvas.drawBitmap(mBitmap, source, destination, paint);
+    }
+
+    /**
+     * @return bytes held by the bitmap;
+     */
+    public int getByteCount() {
+        return mBitmap.getByteCount();
+    }
+}
@@ -0,0 +1,47 @@
+package com.cosic.chessview.sprite;
+
+/**
+ * Layout of an atlas file of {@link SpriteDiskCache}, the header is big-endian:
+ * <pre>
+ * header, {@link #HEADER_SIZE} bytes:
+ *     int   magic "CVSA"
+ *     short version
+ *     short reserved
+ *     long  fingerprint of the application build, the density and the piece set
+ *     int   sprite size
+ *     int   width of the bitmap
+ *     int   height of the bitmap
+ *     int   count of sprites
+ * sources, {@link #SOURCE_SIZE} bytes per sprite:
+ *     int   left, top, right, bottom
+ * pixels, {@link #BYTES_PER_PIXEL} bytes per pixel:
+ *     ARGB_8888 rows as {@link android.graphics.Bitmap#copyPixelsToBuffer(java.nio.Buffer)} writes them
+ * </pre>
+ * The pixels are in the native order of the device, the file is never moved between devices.
+ */
+final class SpriteAtlasFormat {
+
+    static final int MAGIC = 0x43565341;
+    static final short VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+    static final int HEADER_FINGERPRINT = 8;
+    static final int HEADER_SPRITE_SIZE = 16;
+    static final int HEADER_WIDTH = 20;
+    static final int HEADER_HEIGHT = 24;
+    static final int HEADER_SPRITE_COUNT = 28;
+
+    static final int SOURCE_SIZE = 16;
+
+    static final int BYTES_PER_PIXEL = 4;
+
+    private SpriteAtlasFormat() {
+    }
+
+    /**
+     * @return size of the file with the atlas;
+     */
+    static long fileSize(int width, int height, int spriteCount) {
+        return HEADER_SIZE + (long) spriteCount * SOURCE_SIZE + (long) width * height * BYTES_PER_PIXEL;
+    }
+}
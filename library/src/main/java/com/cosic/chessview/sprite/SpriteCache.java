@@ -0,0 +1,293 @@
+package com.cosic.chessview.sprite;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import com.cosic.chessview.models.Cell;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Process-wide cache of {@link SpriteAtlas}es keyed by the piece set and the sprite size, so all
+ * boards with the same cell size draw from one bitmap.
+ * <p>
+ * Every {@link #acquire(Resources, int)} must be paired with {@link #release(SpriteAtlas)} once the
+ * atlas is not drawn any more. Released atlases stay cached in LRU order while the total bytes fit
+ * {@link #getMaxSize()}; atlases in use are never evicted, they count toward the size though.
+ * The cache sheds released atlases on {@link #onTrimMemory(int)}. The instance is thread-safe.
+ */
+public final class SpriteCache implements ComponentCallbacks2 {
+
+    /**
+     * Part of the heap the cache may hold by default;
+     */
+    private static final int HEAP_FRACTION = 16;
+
+    private static final int[] DEFAULT_PIECE_SET = SpriteAtlas.drawablesOf(Cell.values());
+
+    private static SpriteCache sInstance;
+
+    /**
+     * Entries in access order, the eldest is evicted first;
+     */
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Executor mExecutor;
+
+    /**
+     * Where atlases are looked up before decoding and stored after it, may be null;
+     */
+    private final SpriteDiskCache mDiskCache;
+
+    private long mMaxSize;
+    private long mSize = 0;
+    private int mHitCount = 0;
+    private int mMissCount = 0;
+    private int mEvictionCount = 0;
+    private int mDiskHitCount = 0;
+
+    /**
+     * @param maxSize  - total bytes above which released atlases are evicted;
+     * @param executor - executor to decode atlases on;
+     */
+    public SpriteCache(long maxSize, Executor executor) {
+        this(maxSize, executor, null);
+    }
+
+    /**
+     * @param maxSize   - total bytes above which released atlases are evicted;
+     * @param executor  - executor to load and decode atlases on;
+     * @param diskCache - cache of decoded atlases between launches, may be null;
+     */
+    public SpriteCache(long maxSize, Executor executor, SpriteDiskCache diskCache) {
+        this.mMaxSize = maxSize;
+        this.mExecutor = executor;
+        this.mDiskCache = diskCache;
+    }
+
+    /**
+     * @return cache shared by all views of the process, trimmed with the application memory;
+     */
+    public static synchronized SpriteCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SpriteCache(Runtime.getRuntime().maxMemory() / HEAP_FRACTION, ForkJoinPool.commonPool(),
+                    SpriteDiskCache.create(context));
+            context.getApplicationContext().registerComponentCallbacks(sInstance);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Take the atlas of {@link Cell} pieces, see {@link #acquire(Resources, int[], int)};
+     */
+    public CompletableFuture<SpriteAtlas> acquire(Resources resources, int spriteSize) {
+        return acquire(resources, DEFAULT_PIECE_SET, spriteSize);
+    }
+
+    /**
+     * Take the atlas of the piece set at the size, loading it from disk or decoding it in background
+     * if it isn't cached;
+     * The atlas is referenced from the call, even if the future is not done yet,
+     * cancelling the future doesn't drop the reference;
+     *
+     * @param drawables - piece set, see {@link SpriteAtlas#decode(Resources, int, int[])}, must not be changed;
+     */
+    public synchronized CompletableFuture<SpriteAtlas> acquire(Resources resources, int[] drawables, int spriteSize) {
+        final Key key = new Key(drawables, spriteSize);
+        Entry entry = mEntries.get(key);
+        if (entry != null) {
+            mHitCount++;
+            entry.mReferences++;
+            return entry.mFuture.thenApply(atlas -> atlas);
+        }
+        mMissCount++;
+        final Entry created = new Entry(key);
+        // In the map before the decoding starts, an executor may run it right away;
+        mEntries.put(key, created);
+        // Callers' stages follow the entry update, so they can release the atlas they get;
+        created.mFuture = CompletableFuture.supplyAsync(() -> loadOrDecode(resources, drawables, spriteSize), mExecutor)
+                .whenComplete((atlas, error) -> onDecoded(created, atlas));
+        // Callers get own stage, so one of them can't cancel the decoding for the others;
+        return created.mFuture.thenApply(atlas -> atlas);
+    }
+
+    /**
+     * Drop the reference taken by {@link #acquire(Resources, int[], int)}, null is ignored;
+     */
+    public synchronized void release(SpriteAtlas atlas) {
+        if (atlas == null) return;
+        for (Entry entry : mEntries.values()) {
+            if (entry.mAtlas == atlas) {
+                if (entry.mReferences > 0 && --entry.mReferences == 0) {
+                    trimToSize(mMaxSize);
+                }
+                return;
+            }
+        }
+    }
+
+    private SpriteAtlas loadOrDecode(Resources resources, int[] drawables, int spriteSize) {
+        if (mDiskCache == null) {
+            return SpriteAtlas.decode(resources, spriteSize, drawables);
+        }
+        SpriteAtlas atlas = mDiskCache.load(resources, drawables, spriteSize);
+        if (atlas != null) {
+            synchronized (this) {
+                mDiskHitCount++;
+            }
+            return atlas;
+        }
+        atlas = SpriteAtlas.decode(resources, spriteSize, drawables);
+        mDiskCache.store(resources, drawables, atlas);
+        return atlas;
+    }
+
+    private synchronized void onDecoded(Entry entry, SpriteAtlas atlas) {
+        if (mEntries.get(entry.mKey) != entry) return;
+        if (atlas == null) {
+            // Failed, the next acquire decodes again;
+            mEntries.remove(entry.mKey);
+            return;
+        }
+        entry.mAtlas = atlas;
+        entry.mBytes = atlas.getByteCount();
+        mSize += entry.mBytes;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Evict released atlases, the least recently used first, until the size fits;
+     */
+    public synchronized void trimToSize(long maxSize) {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.mReferences > 0 || entry.mAtlas == null) continue;
+            iterator.remove();
+            mSize -= entry.mBytes;
+            mEvictionCount++;
+        }
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        this.mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * @return bytes of the decoded atlases, in use and released;
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    public synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return count of the cached atlases, including the ones being decoded;
+     */
+    public synchronized int getCount() {
+        return mEntries.size();
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * @return count of the misses served by the disk cache without decoding;
+     */
+    public synchronized int getDiskHitCount() {
+        return mDiskHitCount;
+    }
+
+    /**
+     * @return part of the acquires served without decoding, 0 before the first one;
+     */
+    public synchronized float getHitRate() {
+        int total = mHitCount + mMissCount;
+        return total == 0 ? 0f : (float) mHitCount / total;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            // The views are not visible, keep only what they still hold;
+            trimToSize(0);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(getMaxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        trimToSize(0);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "SpriteCache[size=%d, maxSize=%d, count=%d, hits=%d, misses=%d, diskHits=%d, evictions=%d, hitRate=%.0f%%]",
+                mSize, mMaxSize, mEntries.size(), mHitCount, mMissCount, mDiskHitCount, mEvictionCount, 100 * getHitRate());
+    }
+
+    private static final class Key {
+
+        private final int[] mDrawables;
+        private final int mSpriteSize;
+
+        Key(int[] drawables, int spriteSize) {
+            this.mDrawables = drawables;
+            this.mSpriteSize = spriteSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return mSpriteSize == key.mSpriteSize && Arrays.equals(mDrawables, key.mDrawables);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(mDrawables) + mSpriteSize;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Key mKey;
+        private CompletableFuture<SpriteAtlas> mFuture;
+
+        /**
+         * Null until decoded;
+         */
+        private SpriteAtlas mAtlas;
+        private int mBytes;
+        private int mReferences = 1;
+
+        Entry(Key key) {
+            this.mKey = key;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.cosic.chessview.sprite;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Scaled piece sets kept on disk between launches, so a cold start maps the pixels of an atlas
+ * instead of decoding and scaling twelve images.
+ * <p>
+ * Files are named by the piece set, the density and the sprite size, see {@link SpriteAtlasFormat}.
+ * A file carries the fingerprint of the application build it was written by: the library and its
+ * resources are packaged into the application, so any update of either changes the install time
+ * and makes old files miss; they are overwritten by the next store. The instance is thread-safe,
+ * the files are replaced atomically.
+ */
+public final class SpriteDiskCache {
+
+    private static final String TAG = "SpriteDiskCache";
+
+    private static final String DIRECTORY = "chessview-sprites";
+
+    private final File mDirectory;
+
+    /**
+     * Identifies the build of the application and with it the library and the resources;
+     */
+    private final long mBuildFingerprint;
+
+    public SpriteDiskCache(File directory, long buildFingerprint) {
+        this.mDirectory = directory;
+        this.mBuildFingerprint = buildFingerprint;
+    }
+
+    /**
+     * @return cache in the cache directory of the application, keyed by its last update;
+     */
+    public static SpriteDiskCache create(Context context) {
+        long fingerprint = SpriteAtlasFormat.VERSION;
+        try {
+            fingerprint = 31 * fingerprint + context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "Can't read the package info, files are kept until the cache is cleared", e);
+        }
+        return new SpriteDiskCache(new File(context.getCacheDir(), DIRECTORY), fingerprint);
+    }
+
+    /**
+     * Map the stored atlas;
+     *
+     * @return null if there is no valid file for the key;
+     */
+    public SpriteAtlas load(Resources resources, int[] drawables, int spriteSize) {
+        final File file = fileOf(resources, drawables, spriteSize);
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            final long size = channel.size();
+            if (size < SpriteAtlasFormat.HEADER_SIZE) {
+                throw new IOException("Not a sprite atlas: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != SpriteAtlasFormat.MAGIC || buffer.getShort(4) != SpriteAtlasFormat.VERSION) {
+                throw new IOException("Not a sprite atlas: " + file);
+            }
+            if (buffer.getLong(SpriteAtlasFormat.HEADER_FINGERPRINT) != fingerprintOf(resources, drawables)
+                    || buffer.getInt(SpriteAtlasFormat.HEADER_SPRITE_SIZE) != spriteSize) {
+                // Written by another build;
+                return null;
+            }
+            final int width = buffer.getInt(SpriteAtlasFormat.HEADER_WIDTH);
+            final int height = buffer.getInt(SpriteAtlasFormat.HEADER_HEIGHT);
+            final int count = buffer.getInt(SpriteAtlasFormat.HEADER_SPRITE_COUNT);
+            if (width <= 0 || height <= 0 || count != drawables.length
+                    || SpriteAtlasFormat.fileSize(width, height, count) != size) {
+                throw new IOException("Corrupted sprite atlas: " + file);
+            }
+
+            Rect[] sources = new Rect[count];
+            buffer.position(SpriteAtlasFormat.HEADER_SIZE);
+            for (int i = 0; i < count; i++) {
+                sources[i] = new Rect(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+                if (sources[i].left < 0 || sources[i].top < 0 || sources[i].right > width || sources[i].bottom > height) {
+                    throw new IOException("Corrupted sprite atlas: " + file);
+                }
+            }
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            bitmap.copyPixelsFromBuffer(buffer.slice());
+            return new SpriteAtlas(bitmap, spriteSize, sources);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Dropping " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Write the atlas, a failure is logged and ignored;
+     */
+    public void store(Resources resources, int[] drawables, SpriteAtlas atlas) {
+        final Bitmap bitmap = atlas.getBitmap();
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            return;
+        }
+        final File file = fileOf(resources, drawables, atlas.getSpriteSize());
+        File temporary = null;
+        try {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Can't create " + mDirectory);
+            }
+            temporary = File.createTempFile(file.getName(), null, mDirectory);
+            final int width = bitmap.getWidth();
+            final int height = bitmap.getHeight();
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(temporary, "rw")) {
+                FileChannel channel = randomAccessFile.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        SpriteAtlasFormat.fileSize(width, height, drawables.length));
+                buffer.putInt(SpriteAtlasFormat.MAGIC);
+                buffer.putShort(SpriteAtlasFormat.VERSION);
+                buffer.putShort((short) 0);
+                buffer.putLong(fingerprintOf(resources, drawables));
+                buffer.putInt(atlas.getSpriteSize());
+                buffer.putInt(width);
+                buffer.putInt(height);
+                buffer.putInt(drawables.length);
+                for (int i = 0; i < drawables.length; i++) {
+                    Rect source = atlas.getSource(i);
+                    buffer.putInt(source.left).putInt(source.top).putInt(source.right).putInt(source.bottom);
+                }
+                bitmap.copyPixelsToBuffer(buffer.slice());
+                buffer.force();
+            }
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Can't rename " + temporary + " to " + file);
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Can't store " + file, e);
+            if (temporary != null) {
+                temporary.delete();
+            }
+        }
+    }
+
+    /**
+     * Remove all stored atlases;
+     */
+    public void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private File fileOf(Resources resources, int[] drawables, int spriteSize) {
+        return new File(mDirectory, "atlas-" + Integer.toHexString(Arrays.hashCode(drawables))
+                + "-" + resources.getDisplayMetrics().densityDpi + "-" + spriteSize);
+    }
+
+    /**
+     * Drawable ids are assigned by the build as well, the density picks the source images;
+     */
+    private long fingerprintOf(Resources resources, int[] drawables) {
+        long fingerprint = mBuildFingerprint;
+        fingerprint = 31 * fingerprint + resources.getDisplayMetrics().densityDpi;
+        fingerprint = 31 * fingerprint + Arrays.hashCode(drawables);
+        return fingerprint;
+    }
+}
@@ -0,0 +1,178 @@
+package com.cosic.chessview.archive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.FenSerializer;
+import com.cosic.chessview.board.MoveList;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.game.GameTimeline;
+import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.pgn.PgnGame;
+import com.cosic.chessview.pgn.PgnIngest;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GameArchiveTest {
+
+    private static final String GAMES = ""
+            + "[Event \"Opera\"]\n"
+            + "[White \"Morphy, Paul\"]\n"
+            + "[Black \"Duke Karl / Count Isouard\"]\n"
+            + "\n"
+            + "1. e4 e5 2. Nf3 d6 3. d4 Bg4 4. dxe5 Bxf3 5. Qxf3 dxe5 6. Bc4 Nf6 7. Qb3 Qe7\n"
+            + "8. Nc3 c6 9. Bg5 b5 10. Nxb5 cxb5 11. Bxb5+ Nbd7 12. O-O-O Rd8 13. Rxd7 Rxd7\n"
+            + "14. Rd1 Qe6 15. Bxd7+ Nxd7 16. Qb8+ Nxb8 17. Rd8# 1-0\n"
+            + "\n"
+            + "[Event \"Promotion\"]\n"
+            + "[SetUp \"1\"]\n"
+            + "[FEN \"1r5k/P7/8/8/8/8/8/K7 w - - 0 1\"]\n"
+            + "\n"
+            + "1. axb8=N Kg7 *\n"
+            + "\n"
+            + "[Event \"\u00dcn\u00efc\u00f6d\u00e9\"]\n"
+            + "\n"
+            + "1. d4 1/2-1/2\n";
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void gamesAreReadAsWritten() throws IOException {
+        File file = mFolder.newFile("games.cvga");
+        List<PgnGame> games = write(file, false, GAMES);
+
+        try (GameArchive archive = GameArchive.open(file)) {
+            assertEquals(games.size(), archive.size());
+            for (int i = 0; i < games.size(); i++) {
+                assertGame(games.get(i), archive.get(i));
+                assertEquals(i, archive.get(i).getIndex());
+            }
+        }
+    }
+
+    @Test
+    public void gameRecordsDecodeMoves() throws IOException {
+        File file = mFolder.newFile("games.cvga");
+        write(file, false, GAMES);
+
+        try (GameArchive archive = GameArchive.open(file)) {
+            ArchivedGame opera = archive.get(0);
+            assertEquals("Morphy, Paul", opera.getTag("White"));
+            assertNull(opera.getTag("Site"));
+            assertEquals(FenParser.START_FEN, opera.getStartFen());
+            assertEquals("1-0", opera.getResult());
+            assertEquals("1n2kb1r/p4ppp/4q3/4p1B1/4P3/8/PPP2PPP/2KR4 w k - 0 17", opera.getFen(32));
+            assertEquals("1n1Rkb1r/p4ppp/4q3/4p1B1/4P3/8/PPP2PPP/2K5 b k - 1 17", opera.getFen(33));
+
+            ArchivedGame promotion = archive.get(1);
+            assertEquals("1r5k/P7/8/8/8/8/8/K7 w - - 0 1", promotion.getStartFen());
+            assertEquals(Cell.KNIGHT_WHITE, promotion.getPromotion(0));
+            assertNull(promotion.getPromotion(1));
+            assertEquals("1N6/6k1/8/8/8/8/8/K7 w - - 1 2", promotion.getFen(2));
+
+            GameTimeline timeline = promotion.toTimeline();
+            timeline.seek(timeline.size());
+            assertEquals(promotion.getFen(2), FenSerializer.toFen(timeline.getBoard()));
+
+            assertEquals("\u00dcn\u00efc\u00f6d\u00e9", archive.get(2).getTag("Event"));
+        }
+    }
+
+    @Test
+    public void appendKeepsExistingGames() throws IOException {
+        File file = new File(mFolder.getRoot(), "appended.cvga");
+        List<PgnGame> games = write(file, true, GAMES);
+        games.addAll(write(file, true, GAMES));
+        games.addAll(write(file, true, "[Event \"Last\"]\n\n1. c4 *\n"));
+
+        try (GameArchive archive = GameArchive.open(file)) {
+            assertEquals(7, archive.size());
+            for (int i = 0; i < games.size(); i++) {
+                assertGame(games.get(i), archive.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void createOverwritesArchive() throws IOException {
+        File file = mFolder.newFile("games.cvga");
+        write(file, false, GAMES);
+        write(file, false, "[Event \"Only\"]\n\n1. e4 *\n");
+
+        try (GameArchive archive = GameArchive.open(file)) {
+            assertEquals(1, archive.size());
+            assertEquals("Only", archive.get(0).getTag("Event"));
+        }
+    }
+
+    @Test
+    public void emptyArchiveHasNoGames() throws IOException {
+        File file = mFolder.newFile("empty.cvga");
+        GameArchiveWriter.create(file).close();
+
+        try (GameArchive archive = GameArchive.open(file)) {
+            assertEquals(0, archive.size());
+            assertThrows(IndexOutOfBoundsException.class, () -> archive.get(0));
+        }
+    }
+
+    @Test
+    public void otherFileIsNotOpened() throws IOException {
+        File file = mFolder.newFile("games.pgn");
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(GAMES.getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThrows(IOException.class, () -> GameArchive.open(file));
+        assertThrows(IOException.class, () -> GameArchiveWriter.append(file));
+    }
+
+    /**
+     * @return games passed to the writer;
+     */
+    private static List<PgnGame> write(File file, boolean append, String pgn) throws IOException {
+        List<PgnGame> games = new ArrayList<>();
+        try (GameArchiveWriter writer = append ? GameArchiveWriter.append(file) : GameArchiveWriter.create(file)) {
+            int size = writer.size();
+            new PgnIngest(1).ingest(new ByteArrayInputStream(pgn.getBytes(StandardCharsets.UTF_8)), (index, game) -> {
+                games.add(game);
+                writer.onGame(index, game);
+            });
+            assertEquals(size + games.size(), writer.size());
+        }
+        return games;
+    }
+
+    private static void assertGame(PgnGame expected, ArchivedGame actual) {
+        assertEquals(expected.getStartFen(), actual.getStartFen());
+        assertEquals(expected.getResult(), actual.getResult());
+        assertEquals(expected.getTagCount(), actual.getTagCount());
+        for (int i = 0; i < expected.getTagCount(); i++) {
+            assertEquals(expected.getTagName(i), actual.getTagName(i));
+            assertEquals(expected.getTagValue(i), actual.getTagValue(i));
+        }
+        assertEquals(expected.getMoveCount(), actual.getMoveCount());
+        MoveList moves = new MoveList();
+        actual.getPackedMoves(moves);
+        for (int ply = 0; ply < expected.getMoveCount(); ply++) {
+            int move = expected.getPackedMove(ply);
+            assertEquals(PackedMove.from(move), actual.getFrom(ply));
+            assertEquals(PackedMove.to(move), actual.getTo(ply));
+            assertEquals(expected.getPromotion(ply), actual.getPromotion(ply));
+            assertEquals(expected.getMove(ply), actual.getMove(ply));
+            assertEquals(actual.getPackedMove(ply), moves.get(ply));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.cosic.chessview.board;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.cosic.chessview.models.Action;
+import com.cosic.chessview.models.Cell;
+import com.cosic.chessview.models.FadeIn;
+import com.cosic.chessview.models.FadeOut;
+import com.cosic.chessview.models.Move;
+import org.junit.Test;
+
+public class BoardDiffTest {
+
+    /**
+     * Ruy Lopez with both castlings, an en passant capture and a promotion, as from-to pairs;
+     */
+    private static final String[] GAME = {
+            "e2e4", "e7e5", "g1f3", "b8c6", "f1b5", "a7a6", "e1g1", "g8f6", "d2d4", "e5d4",
+            "e4e5", "d7d5", "e5d6", "f8d6", "b5c6", "b7c6", "f3d4", "e8g8", "d4c6", "d8e8",
+            "c6a7", "a8a7", "b2b4", "a7b7", "b4b5", "a6b5", "a2a4", "b5b4", "a4a5", "b7b6",
+            "a5a6", "b6b5", "a6a7", "b5a5", "a7a8"
+    };
+
+    private final BoardDiff mDiff = new BoardDiff();
+
+    @Test
+    public void samePositionsHaveNoSteps() {
+        Position position = FenParser.parse(FenParser.START_FEN);
+        Position other = FenParser.parse(FenParser.START_FEN);
+        other.setWhiteToMove(false);
+
+        assertEquals(0, mDiff.diff(position, other).length);
+        assertEquals(BoardDiff.KIND_NONE, mDiff.getKind());
+    }
+
+    @Test
+    public void quietMoveIsOneMove() {
+        Position from = FenParser.parse(FenParser.START_FEN);
+        Position to = play(from, "g1f3");
+
+        Action[][] steps = mDiff.diff(from, to);
+        assertEquals(1, steps.length);
+        assertEquals(1, steps[0].length);
+        assertEquals(move("g1", "f3"), steps[0][0]);
+        assertEquals(BoardDiff.KIND_MOVE, mDiff.getKind());
+    }
+
+    @Test
+    public void captureFadesOutTheCapturedPiece() {
+        Position from = FenParser.parse("rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2");
+        Position to = play(from, "e4d5");
+
+        Action[][] steps = mDiff.diff(from, to);
+        assertEquals(1, steps.length);
+        assertEquals(2, steps[0].length);
+        assertEquals(move("e4", "d5"), steps[0][0]);
+        assertFadeOut("d5", steps[0][1]);
+        assertEquals(BoardDiff.KIND_MOVE | BoardDiff.KIND_CAPTURE, mDiff.getKind());
+    }
+
+    @Test
+    public void castlingMovesKingFirst() {
+        Position from = FenParser.parse("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+
+        Action[][] steps = mDiff.diff(from, play(from, "e1g1"));
+        assertEquals(1, steps.length);
+        assertEquals(2, steps[0].length);
+        assertEquals(move("e1", "g1"), steps[0][0]);
+        assertEquals(move("h1", "f1"), steps[0][1]);
+        assertEquals(BoardDiff.KIND_MOVE | BoardDiff.KIND_CASTLING, mDiff.getKind());
+
+        from.setWhiteToMove(false);
+        steps = mDiff.diff(from, play(from, "e8c8"));
+        assertEquals(move("e8", "c8"), steps[0][0]);
+        assertEquals(move("a8", "d8"), steps[0][1]);
+        assertEquals(BoardDiff.KIND_MOVE | BoardDiff.KIND_CASTLING, mDiff.getKind());
+    }
+
+    @Test
+    public void enPassantFadesOutThePawnBehind() {
+        Position from = FenParser.parse("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3");
+
+        Action[][] steps = mDiff.diff(from, play(from, "e5f6"));
+        assertEquals(1, steps.length);
+        assertEquals(2, steps[0].length);
+        assertEquals(move("e5", "f6"), steps[0][0]);
+        assertFadeOut("f5", steps[0][1]);
+        assertEquals(BoardDiff.KIND_MOVE | BoardDiff.KIND_CAPTURE | BoardDiff.KIND_EN_PASSANT, mDiff.getKind());
+    }
+
+    @Test
+    public void promotionSwapsThePawnInSecondStep() {
+        Position from = FenParser.parse("1r5k/P7/8/8/8/8/8/K7 w - - 0 1");
+
+        Action[][] steps = mDiff.diff(from, play(from, "a7b8", Cell.KNIGHT_WHITE));
+        assertEquals(2, steps.length);
+        assertEquals(2, steps[0].length);
+        assertEquals(move("a7", "b8"), steps[0][0]);
+        assertFadeOut("b8", steps[0][1]);
+        assertEquals(2, steps[1].length);
+        assertFadeOut("b8", steps[1][0]);
+        assertFadeIn("b8", Cell.KNIGHT_WHITE, steps[1][1]);
+        assertEquals(BoardDiff.KIND_MOVE | BoardDiff.KIND_CAPTURE | BoardDiff.KIND_PROMOTION, mDiff.getKind());
+    }
+
+    @Test
+    public void pieceFromNowhereFadesIn() {
+        Position from = FenParser.parse("8/8/8/8/8/8/8/K6k w - - 0 1");
+        Position to = new Position(from);
+        to.setCell(Squares.parse("d4", 0), Cell.QUEEN_BLACK);
+
+        Action[][] steps = mDiff.diff(from, to);
+        assertEquals(1, steps.length);
+        assertEquals(1, steps[0].length);
+        assertFadeIn("d4", Cell.QUEEN_BLACK, steps[0][0]);
+        assertEquals(BoardDiff.KIND_NONE, mDiff.getKind());
+    }
+
+    @Test
+    public void stepsTurnEveryPositionIntoEveryLaterOne() {
+        Position[] positions = new Position[GAME.length + 1];
+        positions[0] = FenParser.parse(FenParser.START_FEN);
+        for (int ply = 0; ply < GAME.length; ply++) {
+            positions[ply + 1] = play(positions[ply], GAME[ply], ply == GAME.length - 1 ? Cell.QUEEN_WHITE : null);
+        }
+
+        for (int i = 0; i < positions.length; i++) {
+            for (int j = i; j < positions.length; j++) {
+                Position position = new Position(positions[i]);
+                for (Action[] step : mDiff.diff(positions[i], positions[j])) {
+                    apply(position, step);
+                }
+                for (int square = 0; square < Position.COUNT_OF_SQUARES; square++) {
+                    assertEquals("Plies " + i + ".." + j + ", " + Squares.name(square),
+                            positions[j].getCell(square), position.getCell(square));
+                }
+            }
+        }
+    }
+
+    private static Position play(Position position, String move) {
+        return play(position, move, null);
+    }
+
+    private static Position play(Position position, String move, Cell promotion) {
+        Position next = new Position(position);
+        next.applyMove(Squares.parse(move, 0), Squares.parse(move, 2), promotion);
+        return next;
+    }
+
+    private static Move move(String from, String to) {
+        int fromSquare = Squares.parse(from, 0);
+        int toSquare = Squares.parse(to, 0);
+        return new Move(Position.xOf(fromSquare), Position.yOf(fromSquare),
+                Position.xOf(toSquare), Position.yOf(toSquare));
+    }
+
+    private static void assertFadeOut(String square, Action action) {
+        assertTrue(action instanceof FadeOut);
+        FadeOut fadeOut = (FadeOut) action;
+        assertEquals(square, Squares.name(Position.square(fadeOut.getFromX(), fadeOut.getFromY())));
+    }
+
+    private static void assertFadeIn(String square, Cell cell, Action action) {
+        assertTrue(action instanceof FadeIn);
+        FadeIn fadeIn = (FadeIn) action;
+        assertEquals(square, Squares.name(Position.square(fadeIn.getToX(), fadeIn.getToY())));
+        assertEquals(cell, fadeIn.getCell());
+    }
+
+    /**
+     * Same order as the view plays a step: fades out, simultaneous moves, fades in;
+     */
+    private static void apply(Position position, Action[] step) {
+        Position source = new Position();
+        for (Action action : step) {
+            if (action instanceof FadeOut) {
+                FadeOut fadeOut = (FadeOut) action;
+                position.setCell(fadeOut.getFromX(), fadeOut.getFromY(), Cell.EMPTY);
+            }
+        }
+        source.set(position);
+        for (Action action : step) {
+            if (action instanceof Move) {
+                Move move = (Move) action;
+                position.setCell(move.getFromX(), move.getFromY(), Cell.EMPTY);
+            }
+        }
+        for (Action action : step) {
+            if (action instanceof Move) {
+                Move move = (Move) action;
+                position.setCell(move.getToX(), move.getToY(), source.getCell(move.getFromX(), move.getFromY()));
+            }
+        }
+        for (Action action : step) {
+            if (action instanceof FadeIn) {
+                FadeIn fadeIn = (FadeIn) action;
+                position.setCell(fadeIn.getToX(), fadeIn.getToY(), fadeIn.getCell());
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.cosic.chessview.board;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.cosic.chessview.models.Cell;
+import org.junit.Test;
+
+public class FenParserTest {
+
+    @Test
+    public void parsesStartPosition() {
+        Position position = FenParser.parse(FenParser.START_FEN);
+
+        assertEquals(Cell.ROOK_BLACK, position.getCell(0, 0));
+        assertEquals(Cell.KING_BLACK, position.getCell(4, 0));
+        assertEquals(Cell.PAWN_BLACK, position.getCell(3, 1));
+        assertEquals(Cell.EMPTY, position.getCell(4, 4));
+        assertEquals(Cell.PAWN_WHITE, position.getCell(3, 6));
+        assertEquals(Cell.QUEEN_WHITE, position.getCell(3, 7));
+        assertTrue(position.isWhiteToMove());
+        assertEquals(Position.CASTLING_ALL, position.getCastlingRights());
+        assertEquals(Position.NO_SQUARE, position.getEnPassantSquare());
+        assertEquals(0, position.getHalfmoveClock());
+        assertEquals(1, position.getFullmoveNumber());
+    }
+
+    @Test
+    public void parsesAllFields() {
+        Position position = FenParser.parse("rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR w Kq d6 3 12");
+
+        assertTrue(position.isWhiteToMove());
+        assertEquals(Position.CASTLING_WHITE_KINGSIDE | Position.CASTLING_BLACK_QUEENSIDE,
+                position.getCastlingRights());
+        assertEquals(Position.square(3, 2), position.getEnPassantSquare());
+        assertEquals(3, position.getHalfmoveClock());
+        assertEquals(12, position.getFullmoveNumber());
+    }
+
+    @Test
+    public void omittedFieldsGetDefaults() {
+        Position position = FenParser.parse("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR");
+        assertTrue(position.isWhiteToMove());
+        assertEquals(Position.CASTLING_NONE, position.getCastlingRights());
+        assertEquals(Position.NO_SQUARE, position.getEnPassantSquare());
+        assertEquals(0, position.getHalfmoveClock());
+        assertEquals(1, position.getFullmoveNumber());
+
+        position = FenParser.parse("8/8/8/8/8/8/8/K6k b KQ");
+        assertFalse(position.isWhiteToMove());
+        assertEquals(Position.CASTLING_WHITE_KINGSIDE | Position.CASTLING_WHITE_QUEENSIDE,
+                position.getCastlingRights());
+        assertEquals(1, position.getFullmoveNumber());
+    }
+
+    @Test
+    public void parsesIntoExistingPosition() {
+        Position position = FenParser.parse(FenParser.START_FEN);
+        FenParser.parse("8/8/8/8/8/8/8/K6k b - - 0 1", position);
+
+        assertEquals(Cell.EMPTY, position.getCell(0, 0));
+        assertEquals(Cell.KING_WHITE, position.getCell(0, 7));
+        assertEquals(Position.CASTLING_NONE, position.getCastlingRights());
+        assertFalse(position.isWhiteToMove());
+    }
+
+    @Test
+    public void parsesCharSequence() {
+        Position position = FenParser.parse(new StringBuilder(FenParser.START_FEN));
+
+        assertEquals(FenParser.parse(FenParser.START_FEN).getZobristHash(), position.getZobristHash());
+        // Only a String is kept as the source text;
+        assertEquals(null, position.getSourceFen());
+    }
+
+    @Test
+    public void hashMatchesFullHash() {
+        String[] fens = {
+                FenParser.START_FEN,
+                "rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR w Kq d6 3 12",
+                "8/8/8/8/8/8/8/K6k b - - 0 1"
+        };
+        for (String fen : fens) {
+            Position position = FenParser.parse(fen);
+            assertEquals(fen, Zobrist.hash(position), position.getZobristHash());
+        }
+    }
+
+    @Test
+    public void rejectsMalformedFens() {
+        assertMalformed(null, 0);
+        assertMalformed("", 0);
+        assertMalformed("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP", 34);
+        assertMalformed("rnbqkbnr/pppppppp/9/8/8/8/PPPPPPPP/RNBQKBNR", 18);
+        assertMalformed("rnbqkbnr/ppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR", 16);
+        assertMalformed("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNX", 42);
+        assertMalformed("8/8/8/8/8/8/8/K6k x", 18);
+        assertMalformed("8/8/8/8/8/8/8/K6k w KK", 21);
+        assertMalformed("8/8/8/8/8/8/8/K6k w - e4", 23);
+        assertMalformed("8/8/8/8/8/8/8/K6k w - - x", 24);
+        assertMalformed("8/8/8/8/8/8/8/K6k w - - 0 0", 26);
+        assertMalformed("8/8/8/8/8/8/8/K6k w - - 0 1 x", 28);
+        assertMalformed("8/8/8/8/8/8/8/K6k w - - 99999999999 1", 33);
+    }
+
+    private static void assertMalformed(String fen, int offset) {
+        FenFormatException e = assertThrows(FenFormatException.class, () -> FenParser.parse(fen));
+        assertEquals(fen, offset, e.getErrorOffset());
+    }
+}
@@ -0,0 +1,68 @@
+package com.cosic.chessview.board;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class FenSerializerTest {
+
+    private static final String[] CANONICAL_FENS = {
+            FenParser.START_FEN,
+            "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/8/8/8/8/8/8/R3K2R w Kq - 12 40",
+            "8/8/8/8/8/8/8/K6k b - - 100 120"
+    };
+
+    @Test
+    public void canonicalFenIsKept() {
+        for (String fen : CANONICAL_FENS) {
+            Position position = FenParser.parse(fen);
+            assertSame(fen, position.getSourceFen());
+            assertSame(fen, FenSerializer.toFen(position));
+        }
+    }
+
+    @Test
+    public void writtenFenEqualsCanonicalInput() {
+        for (String fen : CANONICAL_FENS) {
+            Position position = FenParser.parse(fen);
+            // Any change drops the source text, so the fields are written;
+            position.setHalfmoveClock(position.getHalfmoveClock());
+            position.setCell(0, position.getCell(0));
+            assertNull(position.getSourceFen());
+            assertEquals(fen, FenSerializer.toFen(position));
+        }
+    }
+
+    @Test
+    public void nonCanonicalFenIsRewritten() {
+        assertRewritten("8/8/8/8/8/8/8/K6k w  QK  - 0 1  ", "8/8/8/8/8/8/8/K6k w KQ - 0 1");
+        assertRewritten("8/8/8/8/8/8/8/K6k w - - 0 1 ", "8/8/8/8/8/8/8/K6k w - - 0 1");
+        assertRewritten("8/8/8/8/8/8/8/K6k w qkQK - 0 1", "8/8/8/8/8/8/8/K6k w KQkq - 0 1");
+        assertRewritten("8/8/8/8/8/8/8/K6k w - - 00 01", "8/8/8/8/8/8/8/K6k w - - 0 1");
+        assertRewritten("44/8/8/8/8/8/8/K51k w - - 0 1", "8/8/8/8/8/8/8/K6k w - - 0 1");
+    }
+
+    @Test
+    public void omittedFieldsAreWritten() {
+        assertRewritten("8/8/8/8/8/8/8/K6k", "8/8/8/8/8/8/8/K6k w - - 0 1");
+        assertRewritten("8/8/8/8/8/8/8/K6k b", "8/8/8/8/8/8/8/K6k b - - 0 1");
+    }
+
+    @Test
+    public void writeAppends() {
+        StringBuilder builder = new StringBuilder("fen: ");
+        FenSerializer.write(FenParser.parse("8/8/8/8/8/8/8/K6k  w - - 0 1"), builder);
+        assertEquals("fen: 8/8/8/8/8/8/8/K6k w - - 0 1", builder.toString());
+    }
+
+    private static void assertRewritten(String fen, String expected) {
+        Position position = FenParser.parse(fen);
+        assertNull(fen, position.getSourceFen());
+        assertEquals(expected, FenSerializer.toFen(position));
+    }
+}
@@ -0,0 +1,173 @@
+package com.cosic.chessview.board;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.cosic.chessview.models.Action;
+import com.cosic.chessview.models.Move;
+import java.util.Random;
+import org.junit.Test;
+
+public class MovePlannerTest {
+
+    private final MovePlanner mPlanner = new MovePlanner();
+
+    @Test
+    public void crossedPairsAreUncrossed() {
+        int[] from = squares("a1", "h1");
+        int[] to = squares("h2", "a2");
+        int[] assignment = new int[2];
+
+        mPlanner.assign(from, 0, 2, to, 0, 2, assignment);
+        assertArrayEquals(new int[]{1, 0}, assignment);
+    }
+
+    @Test
+    public void offsetsAreRespected() {
+        int[] from = squares("d4", "a1", "h8");
+        int[] to = squares("e5", "e5", "g8", "b1");
+        int[] assignment = new int[2];
+
+        mPlanner.assign(from, 1, 2, to, 2, 2, assignment);
+        assertArrayEquals(new int[]{1, 0}, assignment);
+    }
+
+    @Test
+    public void farthestPieceIsLeftWithoutPair() {
+        int[] from = squares("a1", "c3", "h8");
+        int[] to = squares("b2", "d4");
+        int[] assignment = new int[3];
+
+        mPlanner.assign(from, 0, 3, to, 0, 2, assignment);
+        assertArrayEquals(new int[]{0, 1, -1}, assignment);
+    }
+
+    @Test
+    public void farthestTargetIsLeftWithoutPair() {
+        int[] from = squares("e4");
+        int[] to = squares("a8", "e5", "h1");
+        int[] assignment = new int[1];
+
+        mPlanner.assign(from, 0, 1, to, 0, 3, assignment);
+        assertArrayEquals(new int[]{1}, assignment);
+    }
+
+    @Test
+    public void totalDistanceIsMinimal() {
+        Random random = new Random(42);
+        int[] from = new int[6];
+        int[] to = new int[6];
+        int[] assignment = new int[6];
+        for (int test = 0; test < 500; test++) {
+            int fromCount = 1 + random.nextInt(from.length);
+            int toCount = 1 + random.nextInt(to.length);
+            randomSquares(random, from, fromCount);
+            randomSquares(random, to, toCount);
+
+            mPlanner.assign(from, 0, fromCount, to, 0, toCount, assignment);
+
+            boolean[] used = new boolean[toCount];
+            int pairCount = 0;
+            double total = 0;
+            for (int i = 0; i < fromCount; i++) {
+                if (assignment[i] < 0) continue;
+                assertTrue(!used[assignment[i]]);
+                used[assignment[i]] = true;
+                pairCount++;
+                total += distance(from[i], to[assignment[i]]);
+            }
+            assertEquals(Math.min(fromCount, toCount), pairCount);
+            double best = best(from, fromCount, to, toCount, 0, new boolean[toCount]);
+            // Distances are rounded to 1/1024 of a cell;
+            assertEquals("Test " + test, best, total, 0.01);
+        }
+    }
+
+    @Test
+    public void diffPairsPiecesWithMinimalTravel() {
+        BoardDiff diff = new BoardDiff();
+        Position from = FenParser.parse("4k3/8/8/8/8/8/8/R3K2R w - - 0 1");
+        Position to = FenParser.parse("1R2k1R1/8/8/8/8/8/8/4K3 w - - 0 1");
+
+        Action[][] steps = diff.diff(from, to);
+        assertEquals(1, steps.length);
+        assertEquals(2, steps[0].length);
+        assertTrue(contains(steps[0], "a1", "b8"));
+        assertTrue(contains(steps[0], "h1", "g8"));
+    }
+
+    @Test
+    public void diffFadesOutOnlyPiecesWhichAreGone() {
+        BoardDiff diff = new BoardDiff();
+        Position from = FenParser.parse("4k3/8/8/8/8/8/8/1N2K1N1 w - - 0 1");
+        Position to = FenParser.parse("4k3/8/8/8/8/7N/8/4K3 w - - 0 1");
+
+        Action[][] steps = diff.diff(from, to);
+        assertEquals(1, steps.length);
+        assertEquals(2, steps[0].length);
+        assertTrue(contains(steps[0], "g1", "h3"));
+        assertEquals(BoardDiff.KIND_MOVE, diff.getKind());
+    }
+
+    private static int[] squares(String... names) {
+        int[] squares = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            squares[i] = Squares.parse(names[i], 0);
+        }
+        return squares;
+    }
+
+    private static void randomSquares(Random random, int[] squares, int count) {
+        for (int i = 0; i < count; i++) {
+            squares[i] = random.nextInt(Position.COUNT_OF_SQUARES);
+        }
+    }
+
+    private static double distance(int from, int to) {
+        int dx = Position.xOf(from) - Position.xOf(to);
+        int dy = Position.yOf(from) - Position.yOf(to);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Minimal total distance of pairs by brute force over the pieces from index;
+     */
+    private static double best(int[] from, int fromCount, int[] to, int toCount, int index, boolean[] used) {
+        if (index == fromCount) {
+            return 0;
+        }
+        double best = Double.MAX_VALUE;
+        int free = toCount;
+        for (boolean u : used) {
+            if (u) free--;
+        }
+        // The piece may stay without a pair while there are more pieces left than free targets;
+        if (fromCount - index > free) {
+            best = best(from, fromCount, to, toCount, index + 1, used);
+        }
+        for (int j = 0; j < toCount; j++) {
+            if (used[j]) continue;
+            used[j] = true;
+            best = Math.min(best, distance(from[index], to[j]) + best(from, fromCount, to, toCount, index + 1, used));
+            used[j] = false;
+        }
+        return best;
+    }
+
+    private static boolean contains(Action[] step, String from, String to) {
+        int fromSquare = Squares.parse(from, 0);
+        int toSquare = Squares.parse(to, 0);
+        return contains(step, new Move(Position.xOf(fromSquare), Position.yOf(fromSquare),
+                Position.xOf(toSquare), Position.yOf(toSquare)));
+    }
+
+    private static boolean contains(Action[] step, Move move) {
+        for (Action action : step) {
+            if (move.equals(action)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
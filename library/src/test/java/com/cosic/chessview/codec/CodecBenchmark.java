@@ -0,0 +1,119 @@
+package com.cosic.chessview.codec;
+
+import com.cosic.chessview.board.FenSerializer;
+import com.cosic.chessview.board.MoveList;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.engine.BitboardPosition;
+import com.cosic.chessview.engine.Notation;
+import com.cosic.chessview.pgn.PgnGame;
+import com.cosic.chessview.pgn.PgnIngest;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Size of games coded by {@link GameEncoder} against a step per ply with a FEN, squares and SAN
+ * and against the two bytes per ply of {@link com.cosic.chessview.archive.GameArchive},
+ * and the decoding speed in plies per second.
+ * <p>
+ * Kept with the unit tests, so it is not shipped with the library. Run on a desktop JVM
+ * with the library and test classes on the class path:
+ * {@code java com.cosic.chessview.codec.CodecBenchmark games.pgn}.
+ */
+public final class CodecBenchmark {
+
+    private static final int WARM_UP_RUNS = 2;
+    private static final int DECODE_RUNS = 5;
+
+    private CodecBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: CodecBenchmark <file.pgn>");
+            return;
+        }
+        run(new File(args[0]), System.out);
+    }
+
+    public static void run(File file, PrintStream out) throws IOException {
+        final List<PgnGame> games = new ArrayList<>();
+        new PgnIngest(1).ingest(file, (index, game) -> games.add(game));
+
+        List<Position> starts = new ArrayList<>(games.size());
+        List<byte[]> codes = new ArrayList<>(games.size());
+        long plies = 0;
+        long stepBytes = 0;
+        long codeBytes = 0;
+        MoveList moves = new MoveList();
+        for (PgnGame game : games) {
+            Position start = game.getStartPosition();
+            moves.clear();
+            game.getPackedMoves(moves);
+            byte[] code = GameEncoder.encode(start, moves);
+            starts.add(start);
+            codes.add(code);
+            plies += moves.size();
+            codeBytes += code.length;
+            stepBytes += stepBytes(start, moves);
+        }
+        out.println(String.format(Locale.US, "%d games, %d plies", games.size(), plies));
+        out.println(String.format(Locale.US, "steps:   %,d bytes, %.1f per ply", stepBytes, (double) stepBytes / plies));
+        out.println(String.format(Locale.US, "archive: %,d bytes, 2.0 per ply", 2 * plies));
+        out.println(String.format(Locale.US, "codec:   %,d bytes, %.2f per ply, %.2f bits per ply, %.0fx smaller than steps",
+                codeBytes, (double) codeBytes / plies, 8.0 * codeBytes / plies, (double) stepBytes / codeBytes));
+
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            decodeAll(starts, codes, games);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < DECODE_RUNS; i++) {
+            long start = System.nanoTime();
+            decodeAll(starts, codes, games);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        out.println(String.format(Locale.US, "decode:  %.0f plies/s, %.0f games/s",
+                plies * 1e9 / best, games.size() * 1e9 / best));
+    }
+
+    /**
+     * Decode every game and check the moves against the source;
+     */
+    private static void decodeAll(List<Position> starts, List<byte[]> codes, List<PgnGame> games) throws IOException {
+        MoveList moves = new MoveList();
+        for (int i = 0; i < codes.size(); i++) {
+            moves.clear();
+            GameDecoder.decode(codes.get(i), starts.get(i), moves);
+            PgnGame game = games.get(i);
+            if (moves.size() != game.getMoveCount()) {
+                throw new IllegalStateException("Game " + i + ": " + moves.size() + " moves decoded of " + game.getMoveCount());
+            }
+            for (int ply = 0; ply < moves.size(); ply++) {
+                if (PackedMove.toShort(moves.get(ply)) != PackedMove.toShort(game.getPackedMove(ply))) {
+                    throw new IllegalStateException("Game " + i + ": wrong move at ply " + ply);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return bytes of a step per ply with the FEN after the move, from, to and SAN, UTF-8;
+     */
+    private static long stepBytes(Position start, MoveList moves) {
+        BitboardPosition position = new BitboardPosition(start);
+        StringBuilder san = new StringBuilder();
+        long bytes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = Notation.parseUci(position, PackedMove.toString(moves.get(i)));
+            san.setLength(0);
+            Notation.appendSan(position, move, san);
+            position.makeMove(move);
+            bytes += FenSerializer.toFen(position).length() + 2 + 2 + san.length();
+        }
+        return bytes;
+    }
+}
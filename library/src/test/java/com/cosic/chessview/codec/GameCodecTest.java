@@ -0,0 +1,185 @@
+package com.cosic.chessview.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.cosic.chessview.board.Board;
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.MoveList;
+import com.cosic.chessview.board.PackedMove;
+import com.cosic.chessview.engine.BitboardPosition;
+import com.cosic.chessview.engine.MoveGenerator;
+import com.cosic.chessview.engine.Notation;
+import com.cosic.chessview.models.Cell;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class GameCodecTest {
+
+    /**
+     * Morphy - Duke of Brunswick and Count Isouard, Paris 1858;
+     */
+    private static final String[] OPERA_GAME = {
+            "e4", "e5", "Nf3", "d6", "d4", "Bg4", "dxe5", "Bxf3", "Qxf3", "dxe5",
+            "Bc4", "Nf6", "Qb3", "Qe7", "Nc3", "c6", "Bg5", "b5", "Nxb5", "cxb5",
+            "Bxb5+", "Nbd7", "O-O-O", "Rd8", "Rxd7", "Rxd7", "Rd1", "Qe6", "Bxd7+", "Nxd7",
+            "Qb8+", "Nxb8", "Rd8#"
+    };
+
+    private static final String PROMOTIONS = "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1";
+
+    @Test
+    public void gameRoundTrips() throws IOException {
+        BitboardPosition start = BitboardPosition.startPosition();
+        MoveList moves = play(start, OPERA_GAME);
+
+        byte[] code = GameEncoder.encode(start, moves);
+        MoveList decoded = new MoveList();
+        assertEquals(moves.size(), GameDecoder.decode(code, start, decoded));
+        assertMoves(moves, decoded);
+        // A few bits per ply;
+        assertTrue("Code of " + moves.size() + " plies is " + code.length + " bytes", code.length * 8 < moves.size() * 5);
+    }
+
+    @Test
+    public void randomGamesRoundTrip() throws IOException {
+        Random random = new Random(3);
+        for (String fen : new String[]{FenParser.START_FEN, PROMOTIONS}) {
+            BitboardPosition start = BitboardPosition.fromFen(fen);
+            for (int game = 0; game < 200; game++) {
+                MoveList moves = randomGame(random, start, random.nextInt(120));
+                MoveList decoded = new MoveList();
+                GameDecoder.decode(GameEncoder.encode(start, withoutFlags(moves)), start, decoded);
+                assertMoves(moves, decoded);
+            }
+        }
+    }
+
+    @Test
+    public void emptyGameRoundTrips() throws IOException {
+        BitboardPosition start = BitboardPosition.startPosition();
+        byte[] code = GameEncoder.encode(start, new MoveList());
+
+        GameDecoder decoder = new GameDecoder(new ByteArrayInputStream(code), start);
+        assertEquals(PackedMove.NONE, decoder.next());
+        assertEquals(PackedMove.NONE, decoder.next());
+        assertEquals(0, decoder.getMoveCount());
+    }
+
+    @Test
+    public void decoderReplaysPosition() throws IOException {
+        BitboardPosition start = BitboardPosition.fromFen(PROMOTIONS);
+        MoveList moves = play(start, "b4c5", "bxa1=N", "Qxa1");
+        GameDecoder decoder = new GameDecoder(new ByteArrayInputStream(GameEncoder.encode(start, moves)), start);
+
+        assertEquals(moves.get(0), decoder.next());
+        assertEquals(moves.get(1), decoder.next());
+        assertEquals(Cell.KNIGHT_BLACK.ordinal(), decoder.getPosition().getCellOrdinal(PackedMove.to(moves.get(1))));
+        assertEquals(PackedMove.toMove(moves.get(2)), decoder.nextMove());
+        assertNull(decoder.nextMove());
+        assertEquals(3, decoder.getMoveCount());
+    }
+
+    @Test
+    public void gamesShareStream() throws IOException {
+        BitboardPosition start = BitboardPosition.startPosition();
+        MoveList first = play(start, OPERA_GAME);
+        MoveList second = play(start, "d4", "d5", "c4", "e6", "Nc3", "Nf6");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GameEncoder encoder = new GameEncoder(out, start);
+        for (int i = 0; i < first.size(); i++) {
+            encoder.write(PackedMove.toMove(first.get(i)), null);
+        }
+        encoder.finish();
+        int firstSize = out.size();
+        encoder = new GameEncoder(out, start);
+        for (int i = 0; i < second.size(); i++) {
+            encoder.write(second.get(i));
+        }
+        encoder.finish();
+        assertEquals(second.size(), encoder.getMoveCount());
+
+        byte[] data = out.toByteArray();
+        MoveList decoded = new MoveList();
+        GameDecoder.decode(Arrays.copyOf(data, firstSize), start, decoded);
+        assertMoves(first, decoded);
+        decoded.clear();
+        GameDecoder.decode(Arrays.copyOfRange(data, firstSize, data.length), start, decoded);
+        assertMoves(second, decoded);
+    }
+
+    @Test
+    public void illegalMoveIsRejected() {
+        BitboardPosition start = BitboardPosition.startPosition();
+        MoveList moves = new MoveList();
+        // The pawn has left e2;
+        moves.add(Notation.parseUci(start, "e2e4"));
+        moves.add(Notation.parseUci(start, "e2e4"));
+
+        assertThrows(IllegalArgumentException.class, () -> GameEncoder.encode(start, moves));
+    }
+
+    @Test
+    public void finishedGameIsNotWritten() throws IOException {
+        BitboardPosition start = BitboardPosition.startPosition();
+        GameEncoder encoder = new GameEncoder(new ByteArrayOutputStream(), start);
+        encoder.finish();
+        encoder.finish();
+
+        assertThrows(IllegalStateException.class, () -> encoder.write(Notation.parseUci(start, "e2e4")));
+    }
+
+    private static MoveList play(Board start, String... game) {
+        BitboardPosition position = new BitboardPosition(start);
+        MoveList moves = new MoveList(game.length);
+        for (String text : game) {
+            int move = Notation.parseSan(position, text);
+            if (move == PackedMove.NONE) {
+                move = Notation.parseUci(position, text);
+            }
+            assertTrue(text, move != PackedMove.NONE);
+            position.makeMove(move);
+            moves.add(move);
+        }
+        return moves;
+    }
+
+    private static MoveList randomGame(Random random, Board start, int maxPlyCount) {
+        BitboardPosition position = new BitboardPosition(start);
+        MoveList moves = new MoveList(maxPlyCount);
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        for (int ply = 0; ply < maxPlyCount; ply++) {
+            int count = MoveGenerator.generate(position, legal);
+            if (count == 0) break;
+            int move = legal[random.nextInt(count)];
+            position.makeMove(move);
+            moves.add(move);
+        }
+        return moves;
+    }
+
+    /**
+     * Moves as they come from an archive, with from, to and promotion only;
+     */
+    private static MoveList withoutFlags(MoveList moves) {
+        MoveList stripped = new MoveList(moves.size());
+        for (int i = 0; i < moves.size(); i++) {
+            stripped.add(PackedMove.fromShort(PackedMove.toShort(moves.get(i))));
+        }
+        return stripped;
+    }
+
+    private static void assertMoves(MoveList expected, MoveList actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("Ply " + i, expected.get(i), actual.get(i));
+        }
+    }
+}
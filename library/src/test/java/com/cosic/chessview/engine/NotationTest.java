@@ -0,0 +1,159 @@
+package com.cosic.chessview.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.cosic.chessview.board.PackedMove;
+import org.junit.Test;
+
+public class NotationTest {
+
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    private static final String PROMOTIONS = "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1";
+    private static final String CHECKS = "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8";
+
+    /**
+     * Rooks on a1 and a5, knights on b1 and f1, queens on e1, h1 and h4;
+     */
+    private static final String AMBIGUOUS = "2k5/8/8/R7/7Q/2K5/8/RN2QN1Q w - - 0 1";
+
+    @Test
+    public void pieceAndPawnMovesAreParsed() {
+        BitboardPosition position = BitboardPosition.startPosition();
+        assertSan(position, "e4", "e2e4");
+        assertSan(position, "Nf3", "g1f3");
+        assertSan(position, "Nf3+!?", "g1f3");
+        assertSan(position, "Ng1-f3", "g1f3");
+    }
+
+    @Test
+    public void illegalOrMalformedSanIsNone() {
+        BitboardPosition position = BitboardPosition.startPosition();
+        assertNone(position, "e5");
+        assertNone(position, "Ke2");
+        assertNone(position, "Nd2");
+        assertNone(position, "O-O");
+        assertNone(position, "z9");
+        assertNone(position, "N");
+        assertNone(position, "");
+        assertNone(position, "Nf3z");
+    }
+
+    @Test
+    public void disambiguationIsRequired() {
+        BitboardPosition position = BitboardPosition.fromFen(AMBIGUOUS);
+        assertNone(position, "Ra3");
+        assertSan(position, "R1a3", "a1a3");
+        assertSan(position, "R5a3", "a5a3");
+        assertNone(position, "Nd2");
+        assertSan(position, "Nbd2", "b1d2");
+        assertSan(position, "Nfd2", "f1d2");
+        assertNone(position, "Qe4");
+        assertNone(position, "Qhe4");
+        assertSan(position, "Qh1e4", "h1e4");
+        assertSan(position, "Q4e4", "h4e4");
+        assertSan(position, "Qee4", "e1e4");
+    }
+
+    @Test
+    public void disambiguationIsWritten() {
+        BitboardPosition position = BitboardPosition.fromFen(AMBIGUOUS);
+        assertToSan(position, "a1a3", "R1a3");
+        assertToSan(position, "b1d2", "Nbd2");
+        assertToSan(position, "h1e4", "Qh1e4");
+        assertToSan(position, "h4e4", "Q4e4");
+        assertToSan(position, "e1e4", "Qee4");
+        assertToSan(position, "e1e2", "Qe2");
+    }
+
+    @Test
+    public void castlingIsParsedAndWritten() {
+        BitboardPosition position = BitboardPosition.fromFen(KIWIPETE);
+        assertSan(position, "O-O", "e1g1");
+        assertSan(position, "0-0-0", "e1c1");
+        assertSan(position, "O-O-O+", "e1c1");
+        assertToSan(position, "e1g1", "O-O");
+        assertToSan(position, "e1c1", "O-O-O");
+    }
+
+    @Test
+    public void promotionsAreParsedAndWritten() {
+        BitboardPosition position = BitboardPosition.fromFen(PROMOTIONS);
+        position.makeMove(Notation.parseUci(position, "b4c5"));
+        assertSan(position, "bxa1=Q", "b2a1q");
+        assertSan(position, "bxa1N", "b2a1n");
+        assertSan(position, "b1=R", "b2b1r");
+        assertNone(position, "b1");
+        assertNone(position, "b1=K");
+        assertToSan(position, "b2a1q", "bxa1=Q");
+        assertToSan(position, "b2b1n", "b1=N");
+    }
+
+    @Test
+    public void checkAndMateAreWritten() {
+        BitboardPosition position = BitboardPosition.startPosition();
+        play(position, "e4", "d5");
+        assertToSan(position, "f1b5", "Bb5+");
+        assertToSan(position, "e4d5", "exd5");
+
+        position = BitboardPosition.startPosition();
+        play(position, "f3", "e5", "g4");
+        assertToSan(position, "d8h4", "Qh4#");
+
+        position = BitboardPosition.fromFen("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1");
+        assertToSan(position, "a1a8", "Ra8#");
+        assertToSan(position, "a1a7", "Ra7");
+    }
+
+    @Test
+    public void everyLegalMoveRoundTrips() {
+        for (String fen : new String[]{KIWIPETE, PROMOTIONS, CHECKS, AMBIGUOUS}) {
+            BitboardPosition position = BitboardPosition.fromFen(fen);
+            int[] moves = new int[MoveGenerator.MAX_MOVES];
+            int[] buffer = new int[MoveGenerator.MAX_MOVES];
+            int count = MoveGenerator.generate(position, moves);
+            for (int i = 0; i < count; i++) {
+                String san = Notation.toSan(position, moves[i]);
+                assertEquals(fen + " " + san, moves[i], Notation.parseSan(position, san, buffer));
+                assertEquals(fen + " " + san, moves[i], Notation.parseUci(position, Notation.toUci(moves[i])));
+            }
+            assertEquals(fen, position.toFen());
+        }
+    }
+
+    @Test
+    public void uciIsParsed() {
+        BitboardPosition position = BitboardPosition.startPosition();
+        assertEquals("e2e4", Notation.toUci(Notation.parseUci(position, "e2e4")));
+        assertEquals(PackedMove.NONE, Notation.parseUci(position, "e2e5"));
+        assertEquals(PackedMove.NONE, Notation.parseUci(position, "e2"));
+        assertEquals(PackedMove.NONE, Notation.parseUci(position, "i2i4"));
+
+        position = BitboardPosition.fromFen(PROMOTIONS);
+        position.makeMove(Notation.parseUci(position, "b4c5"));
+        assertEquals("b2a1r", Notation.toUci(Notation.parseUci(position, "b2a1r")));
+        assertEquals(PackedMove.NONE, Notation.parseUci(position, "b2a1"));
+    }
+
+    private static void play(BitboardPosition position, String... game) {
+        for (String san : game) {
+            position.makeMove(Notation.parseSan(position, san));
+        }
+    }
+
+    private static void assertSan(BitboardPosition position, String san, String uci) {
+        int move = Notation.parseSan(position, san);
+        assertNotEquals(san, PackedMove.NONE, move);
+        assertEquals(san, uci, Notation.toUci(move));
+    }
+
+    private static void assertNone(BitboardPosition position, String san) {
+        assertEquals(san, PackedMove.NONE, Notation.parseSan(position, san));
+    }
+
+    private static void assertToSan(BitboardPosition position, String uci, String san) {
+        int move = Notation.parseUci(position, uci);
+        assertNotEquals(uci, PackedMove.NONE, move);
+        assertEquals(uci, san, Notation.toSan(position, move));
+    }
+}
@@ -0,0 +1,84 @@
+package com.cosic.chessview.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ * Reference positions with known counts, from https://www.chessprogramming.org/Perft_Results
+ */
+public class PerftTest {
+
+    private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    private static final String ENDGAME = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+    private static final String PROMOTIONS = "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1";
+    private static final String CHECKS = "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8";
+    private static final String MIDDLEGAME = "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10";
+
+    @Test
+    public void startPosition() {
+        assertPerft(START, 20L, 400L, 8902L, 197281L, 4865609L);
+    }
+
+    @Test
+    public void kiwipete() {
+        assertPerft(KIWIPETE, 48L, 2039L, 97862L, 4085603L);
+    }
+
+    @Test
+    public void endgame() {
+        assertPerft(ENDGAME, 14L, 191L, 2812L, 43238L, 674624L);
+    }
+
+    @Test
+    public void promotions() {
+        assertPerft(PROMOTIONS, 6L, 264L, 9467L, 422333L);
+    }
+
+    @Test
+    public void checks() {
+        assertPerft(CHECKS, 44L, 1486L, 62379L, 2103487L);
+    }
+
+    @Test
+    public void middlegame() {
+        assertPerft(MIDDLEGAME, 46L, 2079L, 89890L, 3894594L);
+    }
+
+    @Test
+    public void divideSumsRootMoves() {
+        PerftResult result = Perft.divide(BitboardPosition.fromFen(KIWIPETE), 3, ForkJoinPool.commonPool());
+
+        assertEquals(48, result.getDivide().size());
+        long nodes = 0;
+        for (long moveNodes : result.getDivide().values()) {
+            nodes += moveNodes;
+        }
+        assertEquals(97862L, nodes);
+        assertEquals(97862L, result.getNodes());
+        assertTrue("Castling is a root move", result.getDivide().containsKey("e1g1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void divideNeedsPositiveDepth() {
+        Perft.divide(BitboardPosition.startPosition(), 0, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Every depth but the last one is counted in a single thread, the last one by {@link Perft#divide};
+     */
+    private static void assertPerft(String fen, long... nodes) {
+        BitboardPosition position = BitboardPosition.fromFen(fen);
+        for (int depth = 1; depth < nodes.length; depth++) {
+            assertEquals(fen + " at depth " + depth, nodes[depth - 1], Perft.perft(position, depth));
+        }
+        assertEquals(fen, position.getZobristHash(), BitboardPosition.fromFen(fen).getZobristHash());
+
+        int depth = nodes.length;
+        PerftResult result = Perft.divide(position, depth, ForkJoinPool.commonPool());
+        assertEquals(fen + " at depth " + depth, nodes[depth - 1], result.getNodes());
+    }
+}
@@ -0,0 +1,55 @@
+package com.cosic.chessview.game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.cosic.chessview.models.Action;
+import com.cosic.chessview.models.Move;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class ActionTimelineTest {
+
+    private static final String[] FENS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+            "rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2",
+            "rnbqkbnr/ppp1pppp/8/3P4/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 2"
+    };
+
+    @Test
+    public void accessorsMatchSteps() {
+        ActionTimeline timeline = ActionTimeline.compute(Arrays.asList(FENS));
+
+        assertEquals(3, timeline.size());
+        for (int index = 0; index < timeline.size(); index++) {
+            Action[][] step = timeline.get(index);
+            assertEquals(step.length, timeline.getIterationCount(index));
+            for (int iteration = 0; iteration < step.length; iteration++) {
+                assertEquals(step[iteration].length, timeline.getActionCount(index, iteration));
+                for (int action = 0; action < step[iteration].length; action++) {
+                    assertSame(step[iteration][action], timeline.getAction(index, iteration, action));
+                }
+            }
+        }
+        assertEquals(new Move(4, 6, 4, 4), timeline.getAction(0, 0, 0));
+        // exd5 moves the pawn and fades out the captured one;
+        assertEquals(2, timeline.getActionCount(2, 0));
+    }
+
+    @Test
+    public void getReturnsCopy() {
+        ActionTimeline timeline = ActionTimeline.compute(Arrays.asList(FENS));
+
+        Action[][] step = timeline.get(0);
+        assertNotSame(step, timeline.get(0));
+        step[0][0] = null;
+        assertEquals(new Move(4, 6, 4, 4), timeline.get(0)[0][0]);
+    }
+
+    @Test
+    public void singlePositionHasNoSteps() {
+        assertEquals(0, ActionTimeline.compute(Arrays.asList(FENS[0])).size());
+    }
+}
@@ -0,0 +1,66 @@
+package com.cosic.chessview.game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import com.cosic.chessview.board.FenSerializer;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class GameTimelineTest {
+
+    private static final String[] FULL_FENS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+            "rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq e6 0 2",
+            "rnbqkbnr/pppp1ppp/8/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R b KQkq - 1 2"
+    };
+
+    private static final String[] PLACEMENT_FENS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR",
+            "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR",
+            "rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR",
+            "rnbqkbnr/pppp1ppp/8/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R"
+    };
+
+    @Test
+    public void fromFullFens() {
+        GameTimeline timeline = GameTimeline.fromFens(Arrays.asList(FULL_FENS));
+
+        assertEquals(3, timeline.size());
+        timeline.seek(3);
+        assertEquals(FULL_FENS[3], FenSerializer.toFen(timeline.getBoard()));
+    }
+
+    @Test
+    public void fromPlacementOnlyFens() {
+        GameTimeline timeline = GameTimeline.fromFens(Arrays.asList(PLACEMENT_FENS));
+
+        assertEquals(3, timeline.size());
+        timeline.seek(3);
+        // No castling rights without the header;
+        assertEquals("rnbqkbnr/pppp1ppp/8/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R b - - 1 2",
+                FenSerializer.toFen(timeline.getBoard()));
+    }
+
+    @Test
+    public void fromMixedFens() {
+        GameTimeline timeline = GameTimeline.fromFens(Arrays.asList(
+                FULL_FENS[0], PLACEMENT_FENS[1], FULL_FENS[2], PLACEMENT_FENS[3]));
+
+        assertEquals(3, timeline.size());
+    }
+
+    @Test
+    public void fullFensMustAgreeOnHeader() {
+        // Black to move after 1. e4, the second fen says white;
+        assertThrows(IllegalArgumentException.class, () -> GameTimeline.fromFens(Arrays.asList(
+                FULL_FENS[0], "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 1")));
+    }
+
+    @Test
+    public void placementOnlyFensMustBeOneMoveApart() {
+        assertThrows(IllegalArgumentException.class, () -> GameTimeline.fromFens(Arrays.asList(
+                PLACEMENT_FENS[0], PLACEMENT_FENS[2])));
+    }
+}
@@ -0,0 +1,200 @@
+package com.cosic.chessview.game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.FenSerializer;
+import com.cosic.chessview.board.Squares;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VariationTreeTest {
+
+    private VariationTree mTree;
+
+    /**
+     * 1. e4 e5 (1... c5 2. Nf3) (1... e6) 2. Nf3;
+     */
+    private int mE4;
+    private int mE5;
+    private int mNf3;
+    private int mC5;
+    private int mSicilianNf3;
+    private int mE6;
+
+    @Before
+    public void setUp() {
+        mTree = new VariationTree(FenParser.parse(FenParser.START_FEN));
+        mE4 = move("e2", "e4");
+        mE5 = move("e7", "e5");
+        mNf3 = move("g1", "f3");
+        mTree.seek(mE4);
+        mC5 = move("c7", "c5");
+        mSicilianNf3 = move("g1", "f3");
+        mTree.seek(mE4);
+        mE6 = move("e7", "e6");
+        mTree.seek(VariationTree.ROOT);
+    }
+
+    @Test
+    public void buildsLines() {
+        assertEquals(7, mTree.size());
+        assertEquals(3, mTree.getChildCount(mE4));
+        assertEquals(mE5, mTree.getChild(mE4, 0));
+        assertEquals(mC5, mTree.getChild(mE4, 1));
+        assertEquals(mE6, mTree.getChild(mE4, 2));
+        assertTrue(mTree.isMainLine(mNf3));
+        assertFalse(mTree.isMainLine(mSicilianNf3));
+        assertEquals(3, mTree.getPly(mSicilianNf3));
+    }
+
+    @Test
+    public void addingExistingMoveStepsToIt() {
+        mTree.seek(mE4);
+        assertEquals(mC5, move("c7", "c5"));
+        assertEquals(7, mTree.size());
+    }
+
+    @Test
+    public void seekKeepsPosition() {
+        mTree.seek(mSicilianNf3);
+        assertEquals("rnbqkbnr/pp1ppppp/8/2p5/4P3/5N2/PPPP1PPP/RNBQKB1R b KQkq - 1 2",
+                FenSerializer.toFen(mTree.getBoard()));
+        mTree.seek(mE6);
+        assertEquals("rnbqkbnr/pppp1ppp/4p3/8/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2",
+                FenSerializer.toFen(mTree.getBoard()));
+        mTree.seek(VariationTree.ROOT);
+        assertEquals(FenParser.START_FEN, FenSerializer.toFen(mTree.getBoard()));
+    }
+
+    @Test
+    public void promoteMovesVariationUp() {
+        assertTrue(mTree.promote(mE6));
+        assertEquals(mE6, mTree.getChild(mE4, 1));
+        assertEquals(mC5, mTree.getChild(mE4, 2));
+
+        // A node inside a variation promotes the variation;
+        assertTrue(mTree.promote(mSicilianNf3));
+        assertTrue(mTree.promote(mSicilianNf3));
+        assertEquals(mC5, mTree.getChild(mE4, 0));
+        assertTrue(mTree.isMainLine(mSicilianNf3));
+        assertFalse(mTree.promote(mSicilianNf3));
+    }
+
+    @Test
+    public void promoteToMainLine() {
+        assertTrue(mTree.promoteToMainLine(mE6));
+        assertEquals(mE6, mTree.getFirstChild(mE4));
+        assertEquals(mE5, mTree.getNextSibling(mE6));
+        assertEquals(mC5, mTree.getNextSibling(mE5));
+        assertFalse(mTree.promoteToMainLine(mE6));
+    }
+
+    @Test
+    public void demoteMovesLineDown() {
+        assertTrue(mTree.demote(mNf3));
+        assertEquals(mC5, mTree.getChild(mE4, 0));
+        assertEquals(mE5, mTree.getChild(mE4, 1));
+        assertTrue(mTree.demote(mE5));
+        assertEquals(mE5, mTree.getChild(mE4, 2));
+        // The last line at every branch;
+        assertFalse(mTree.demote(mE5));
+    }
+
+    @Test
+    public void deleteRemovesSubtree() {
+        mTree.seek(mSicilianNf3);
+        mTree.delete(mC5);
+
+        assertEquals(5, mTree.size());
+        assertEquals(mE4, mTree.getNode());
+        assertEquals(2, mTree.getChildCount(mE4));
+        assertEquals(mE6, mTree.getNextSibling(mE5));
+        assertThrows(IllegalArgumentException.class, () -> mTree.getPly(mSicilianNf3));
+        assertThrows(IllegalArgumentException.class, () -> mTree.delete(VariationTree.ROOT));
+
+        // Deleted nodes are reused;
+        int d5 = move("d7", "d5");
+        assertTrue(d5 == mC5 || d5 == mSicilianNf3);
+        assertEquals(6, mTree.size());
+    }
+
+    @Test
+    public void comments() {
+        mTree.setComment(mE4, "Best by test");
+        mTree.setComment(mC5, "Sicilian");
+        assertEquals("Best by test", mTree.getComment(mE4));
+        assertEquals("Sicilian", mTree.getComment(mC5));
+        assertNull(mTree.getComment(mE5));
+
+        mTree.setComment(mC5, null);
+        assertNull(mTree.getComment(mC5));
+        mTree.setComment(mE4, "");
+        assertNull(mTree.getComment(mE4));
+    }
+
+    @Test
+    public void changedCommentReusesItsSpace() {
+        mTree.setComment(mE4, "The most popular first move");
+        int capacity = mTree.getCommentCapacity();
+
+        mTree.setComment(mE4, "Best by test");
+        assertEquals("Best by test", mTree.getComment(mE4));
+        mTree.setComment(mE4, "Popular");
+        assertEquals("Popular", mTree.getComment(mE4));
+        assertEquals(capacity, mTree.getCommentCapacity());
+    }
+
+    @Test
+    public void commentBufferIsBounded() {
+        StringBuilder comment = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            comment.setLength(0);
+            comment.append("Comment ").append(i);
+            mTree.setComment(i % 2 == 0 ? mE4 : mE5, comment);
+            mTree.setComment(mE6, comment);
+        }
+        assertEquals("Comment 9998", mTree.getComment(mE4));
+        assertEquals("Comment 9999", mTree.getComment(mE5));
+        assertEquals("Comment 9999", mTree.getComment(mE6));
+        assertTrue(mTree.getCommentCapacity() < 1024);
+    }
+
+    @Test
+    public void deletedCommentsAreCompacted() {
+        StringBuilder comment = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            comment.append("Long comment ");
+        }
+        for (int i = 0; i < 100; i++) {
+            mTree.seek(mE4);
+            int node = move("a7", "a6");
+            mTree.setComment(node, comment);
+            mTree.setComment(mE5, "Open game " + i);
+            mTree.delete(node);
+        }
+        assertEquals("Open game 99", mTree.getComment(mE5));
+        assertTrue(mTree.getCommentCapacity() < 2 * comment.length());
+    }
+
+    @Test
+    public void actionsLeadToNode() {
+        mTree.seek(mNf3);
+        // Back through Nf3 and e5, forward through c5 and Nf3;
+        assertEquals(4, mTree.getActions(mSicilianNf3).length);
+        assertEquals(0, mTree.getActions(mNf3).length);
+        assertEquals(mNf3, mTree.getNode());
+    }
+
+    private int move(String from, String to) {
+        return mTree.addMove(square(from), square(to), null);
+    }
+
+    private static int square(String name) {
+        return Squares.parse(name, 0);
+    }
+}
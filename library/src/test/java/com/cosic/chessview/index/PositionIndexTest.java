@@ -0,0 +1,196 @@
+package com.cosic.chessview.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import com.cosic.chessview.archive.ArchivedGame;
+import com.cosic.chessview.archive.GameArchive;
+import com.cosic.chessview.archive.GameArchiveWriter;
+import com.cosic.chessview.board.FenParser;
+import com.cosic.chessview.board.Position;
+import com.cosic.chessview.engine.BitboardPosition;
+import com.cosic.chessview.engine.MoveGenerator;
+import com.cosic.chessview.engine.Notation;
+import com.cosic.chessview.pgn.PgnIngest;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PositionIndexTest {
+
+    /**
+     * The first two games transpose into one position at ply 4, the third one returns
+     * to the start position;
+     */
+    private static final String GAMES = ""
+            + "[Event \"1\"]\n\n1. e4 e5 2. Nf3 Nc6 3. Bb5 *\n\n"
+            + "[Event \"2\"]\n\n1. Nf3 e5 2. e4 Nc6 3. Bc4 *\n\n"
+            + "[Event \"3\"]\n\n1. Nf3 Nf6 2. Ng1 Ng8 3. e4 *\n\n"
+            + "[Event \"4\"]\n[SetUp \"1\"]\n[FEN \"4k3/8/8/8/8/8/4P3/4K3 w - - 0 1\"]\n\n1. e4 Kd7 *\n";
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void gamesReachingPositionAreFound() throws IOException {
+        try (PositionIndex index = build(GAMES)) {
+            assertEquals(4, index.getGameCount());
+
+            int[] games = new int[8];
+            int[] plies = new int[8];
+            Position start = FenParser.parse(FenParser.START_FEN);
+            assertEquals(3, index.getGames(start, games, plies));
+            assertArrayEquals(new int[]{0, 1, 2}, slice(games, 3));
+            // The third game is posted at the first ply only;
+            assertArrayEquals(new int[]{0, 0, 0}, slice(plies, 3));
+
+            Position transposed = position("1. e4 e5 2. Nf3 Nc6");
+            assertEquals(2, index.getCount(transposed));
+            assertEquals(2, index.getGames(transposed, games, plies));
+            assertArrayEquals(new int[]{0, 1}, slice(games, 2));
+            assertArrayEquals(new int[]{4, 4}, slice(plies, 2));
+
+            Position setup = FenParser.parse("4k3/8/8/8/4P3/8/8/4K3 b - e3 0 1");
+            assertEquals(1, index.getGames(setup, games, null));
+            assertEquals(3, games[0]);
+        }
+    }
+
+    @Test
+    public void missingPositionHasNoGames() throws IOException {
+        try (PositionIndex index = build(GAMES)) {
+            Position position = position("1. d4 d5");
+            assertEquals(0, index.getCount(position));
+            assertEquals(0, index.getGames(position, new int[4], new int[4]));
+            assertEquals(0, index.getCount(0L));
+        }
+    }
+
+    @Test
+    public void countIsReturnedWhenArrayIsShorter() throws IOException {
+        try (PositionIndex index = build(GAMES)) {
+            int[] games = new int[2];
+            assertEquals(3, index.getGames(FenParser.parse(FenParser.START_FEN), games, null));
+            assertArrayEquals(new int[]{0, 1}, games);
+            assertEquals(3, index.getGames(FenParser.parse(FenParser.START_FEN), new int[0], null));
+        }
+    }
+
+    @Test
+    public void everyPlyOfEveryGameIsIndexed() throws IOException {
+        String pgn = randomGames(300, 60);
+        File archiveFile = mFolder.newFile("random.cvga");
+        try (GameArchiveWriter writer = GameArchiveWriter.create(archiveFile)) {
+            new PgnIngest(2).ingest(new ByteArrayInputStream(pgn.getBytes(StandardCharsets.UTF_8)), writer);
+        }
+        File indexFile = mFolder.newFile("random.cvpi");
+        try (GameArchive archive = GameArchive.open(archiveFile)) {
+            PositionIndexWriter.build(archive, indexFile);
+
+            // Games and first plies of every position;
+            Map<Long, List<int[]>> expected = new HashMap<>();
+            long postingCount = 0;
+            Position position = new Position();
+            for (int game = 0; game < archive.size(); game++) {
+                ArchivedGame archived = archive.get(game);
+                for (int ply = 0; ply <= archived.getMoveCount(); ply++) {
+                    archived.getPosition(ply, position);
+                    List<int[]> postings = expected.computeIfAbsent(position.getZobristHash(), key -> new ArrayList<>());
+                    if (postings.isEmpty() || postings.get(postings.size() - 1)[0] != game) {
+                        postings.add(new int[]{game, ply});
+                        postingCount++;
+                    }
+                }
+            }
+
+            try (PositionIndex index = PositionIndex.open(indexFile)) {
+                assertEquals(300, index.getGameCount());
+                assertEquals(expected.size(), index.size());
+                assertEquals(postingCount, index.getPostingCount());
+                int[] games = new int[300];
+                int[] plies = new int[300];
+                for (Map.Entry<Long, List<int[]>> entry : expected.entrySet()) {
+                    List<int[]> postings = entry.getValue();
+                    assertEquals(postings.size(), index.getGames(entry.getKey(), games, plies));
+                    for (int i = 0; i < postings.size(); i++) {
+                        assertEquals(postings.get(i)[0], games[i]);
+                        assertEquals(postings.get(i)[1], plies[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void otherFileIsNotOpened() throws IOException {
+        File file = mFolder.newFile("games.cvga");
+        GameArchiveWriter.create(file).close();
+
+        assertThrows(IOException.class, () -> PositionIndex.open(file));
+    }
+
+    private PositionIndex build(String pgn) throws IOException {
+        File archiveFile = mFolder.newFile();
+        try (GameArchiveWriter writer = GameArchiveWriter.create(archiveFile)) {
+            new PgnIngest(1).ingest(new ByteArrayInputStream(pgn.getBytes(StandardCharsets.UTF_8)), writer);
+        }
+        File indexFile = mFolder.newFile();
+        try (GameArchive archive = GameArchive.open(archiveFile)) {
+            PositionIndexWriter.build(archive, indexFile);
+        }
+        return PositionIndex.open(indexFile);
+    }
+
+    private static Position position(String moveText) {
+        BitboardPosition position = BitboardPosition.startPosition();
+        for (String san : moveText.split(" ")) {
+            if (!san.endsWith(".")) {
+                position.makeMove(Notation.parseSan(position, san));
+            }
+        }
+        return position.toPosition(new Position());
+    }
+
+    /**
+     * Games of random legal moves, short ones repeat the positions of the opening;
+     */
+    private static String randomGames(int gameCount, int maxPlyCount) {
+        Random random = new Random(7);
+        StringBuilder builder = new StringBuilder();
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (int game = 0; game < gameCount; game++) {
+            builder.append("[Event \"").append(game).append("\"]\n\n");
+            BitboardPosition position = BitboardPosition.startPosition();
+            int plyCount = random.nextInt(maxPlyCount);
+            for (int ply = 0; ply < plyCount; ply++) {
+                int count = MoveGenerator.generate(position, moves);
+                if (count == 0) break;
+                int move = moves[random.nextInt(count)];
+                if (ply % 2 == 0) {
+                    builder.append(ply / 2 + 1).append(". ");
+                }
+                Notation.appendSan(position, move, builder);
+                builder.append(' ');
+                position.makeMove(move);
+            }
+            builder.append("*\n\n");
+        }
+        return builder.toString();
+    }
+
+    private static int[] slice(int[] values, int count) {
+        int[] slice = new int[count];
+        System.arraycopy(values, 0, slice, 0, count);
+        return slice;
+    }
+}
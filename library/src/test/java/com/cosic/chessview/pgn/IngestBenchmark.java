@@ -0,0 +1,62 @@
+package com.cosic.chessview.pgn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Throughput of {@link PgnIngest} in games per second per core for growing thread counts.
+ * <p>
+ * Kept with the unit tests, so it is not shipped with the library. Run on a desktop JVM
+ * with the library and test classes on the class path:
+ * {@code java com.cosic.chessview.pgn.IngestBenchmark games.pgn [max threads]}.
+ */
+public final class IngestBenchmark {
+
+    /**
+     * Runs before measuring, to load the file into the page cache and compile hot code;
+     */
+    private static final int WARM_UP_RUNS = 1;
+
+    private IngestBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: IngestBenchmark <file.pgn> [max threads]");
+            return;
+        }
+        int maxThreads = args.length > 1
+                ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        run(new File(args[0]), maxThreads, System.out);
+    }
+
+    /**
+     * Import the file with 1, 2, 4 ... maxThreads parsing threads and print the stats of each run;
+     */
+    public static void run(File file, int maxThreads, PrintStream out) throws IOException {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            measure(file, maxThreads);
+        }
+        for (int threads = 1; threads <= maxThreads; threads = nextThreadCount(threads, maxThreads)) {
+            out.println(measure(file, threads));
+        }
+    }
+
+    /**
+     * Import the file into a sink which only counts the games;
+     */
+    public static IngestStats measure(File file, int threads) throws IOException {
+        final long[] moves = new long[1];
+        IngestStats stats = new PgnIngest(threads).ingest(file, (index, game) -> moves[0] += game.getMoveCount());
+        if (stats.getGameCount() > 0 && moves[0] == 0) {
+            throw new IllegalStateException("No moves were read");
+        }
+        return stats;
+    }
+
+    private static int nextThreadCount(int threads, int maxThreads) {
+        return threads < maxThreads && threads * 2 > maxThreads ? maxThreads : threads * 2;
+    }
+}
@@ -0,0 +1,191 @@
+package com.cosic.chessview.pgn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.cosic.chessview.board.FenSerializer;
+import com.cosic.chessview.game.GameTimeline;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PgnIngestTest {
+
+    private static final int GAME_COUNT = 300;
+
+    /**
+     * Every third game has an illegal move, every seventh is malformed, the rest are valid;
+     */
+    private static final String[] VALID_GAMES = {
+            "1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 1/2-1/2",
+            "1. d4 d5 2. c4 dxc4 3. e4 b5 4. a4 c6 5. axb5 cxb5 6. Qf3 *",
+            "1. f3 e5 2. g4 Qh4# 0-1"
+    };
+    private static final int[] VALID_MOVE_COUNTS = {6, 11, 4};
+    private static final String ILLEGAL_GAME = "1. e4 e5 2. Ke3 *";
+    private static final String MALFORMED_GAME = "1. e4 ) e5 *";
+
+    private static final String SETUP_GAME = "[Event \"Setup\"]\n"
+            + "[SetUp \"1\"]\n"
+            + "[FEN \"7k/P7/8/8/8/8/8/K7 w - - 0 1\"]\n"
+            + "\n"
+            + "1. a8=Q+ Kh7 1-0\n";
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void gamesFromStreamAreInInputOrder() throws IOException {
+        byte[] pgn = database();
+        PgnIngest ingest = new PgnIngest(4);
+        ingest.setChunkSize(256);
+        List<PgnGame> games = new ArrayList<>();
+        IngestStats stats = ingest.ingest(new ByteArrayInputStream(pgn), (index, game) -> {
+            assertEquals(games.size(), index);
+            games.add(game);
+        });
+
+        assertDatabase(pgn, games, stats);
+        assertEquals(4, stats.getThreadCount());
+    }
+
+    @Test
+    public void gamesFromFileAreInInputOrder() throws IOException {
+        byte[] pgn = database();
+        File file = mFolder.newFile("games.pgn");
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(pgn);
+        }
+        PgnIngest ingest = new PgnIngest(3);
+        ingest.setChunkSize(512);
+        ingest.setQueueCapacity(1);
+        List<PgnGame> games = new ArrayList<>();
+        IngestStats stats = ingest.ingest(file, (index, game) -> games.add(game));
+
+        assertDatabase(pgn, games, stats);
+    }
+
+    @Test
+    public void setupGameStartsFromFen() throws IOException {
+        List<PgnGame> games = new ArrayList<>();
+        IngestStats stats = new PgnIngest(1).ingest(
+                new ByteArrayInputStream(SETUP_GAME.getBytes(StandardCharsets.UTF_8)), (index, game) -> games.add(game));
+
+        assertEquals(1, stats.getGameCount());
+        PgnGame game = games.get(0);
+        assertEquals("7k/P7/8/8/8/8/8/K7 w - - 0 1", game.getStartFen());
+        assertEquals(2, game.getMoveCount());
+        assertEquals("1-0", game.getResult());
+
+        GameTimeline timeline = game.toTimeline();
+        timeline.seek(timeline.size());
+        assertEquals("Q7/7k/8/8/8/8/8/K7 w - - 1 2", FenSerializer.toFen(timeline.getBoard()));
+    }
+
+    @Test
+    public void progressIsReportedPerChunk() throws IOException {
+        byte[] pgn = database();
+        PgnIngest ingest = new PgnIngest(2);
+        ingest.setChunkSize(1024);
+        long[] last = new long[3];
+        int[] calls = new int[1];
+        ingest.setProgressListener((gameCount, invalidGameCount, byteCount) -> {
+            assertTrue(gameCount >= last[0] && invalidGameCount >= last[1] && byteCount > last[2]);
+            last[0] = gameCount;
+            last[1] = invalidGameCount;
+            last[2] = byteCount;
+            calls[0]++;
+        });
+        IngestStats stats = ingest.ingest(new ByteArrayInputStream(pgn), (index, game) -> { });
+
+        assertTrue(calls[0] > 1);
+        assertEquals(stats.getGameCount(), last[0]);
+        assertEquals(stats.getInvalidGameCount(), last[1]);
+        assertEquals(pgn.length, last[2]);
+    }
+
+    @Test
+    public void cancelFromSinkStopsImport() throws IOException {
+        PgnIngest ingest = new PgnIngest(2);
+        ingest.setChunkSize(256);
+        IngestStats stats = ingest.ingest(new ByteArrayInputStream(database()), (index, game) -> {
+            if (index == 9) {
+                ingest.cancel();
+            }
+        });
+
+        assertTrue(stats.isCancelled());
+        assertTrue(stats.getGameCount() >= 10 && stats.getGameCount() < expectedValidCount());
+    }
+
+    @Test
+    public void emptyInputHasNoGames() throws IOException {
+        IngestStats stats = new PgnIngest(2).ingest(new ByteArrayInputStream(new byte[0]), (index, game) -> {
+            throw new AssertionError("No games expected");
+        });
+
+        assertEquals(0, stats.getGameCount());
+        assertEquals(0, stats.getInvalidGameCount());
+        assertFalse(stats.isCancelled());
+    }
+
+    private static byte[] database() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < GAME_COUNT; i++) {
+            builder.append("[Event \"").append(i).append("\"]\n")
+                    .append("[Site \"Test\"]\n\n")
+                    .append(moveText(i)).append("\n\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String moveText(int game) {
+        if (game % 7 == 6) {
+            return MALFORMED_GAME;
+        }
+        if (game % 3 == 2) {
+            return ILLEGAL_GAME;
+        }
+        return VALID_GAMES[game % VALID_GAMES.length];
+    }
+
+    private static boolean isValid(int game) {
+        return game % 7 != 6 && game % 3 != 2;
+    }
+
+    private static int expectedValidCount() {
+        int count = 0;
+        for (int i = 0; i < GAME_COUNT; i++) {
+            if (isValid(i)) count++;
+        }
+        return count;
+    }
+
+    private static void assertDatabase(byte[] pgn, List<PgnGame> games, IngestStats stats) {
+        assertEquals(expectedValidCount(), stats.getGameCount());
+        assertEquals(GAME_COUNT - expectedValidCount(), stats.getInvalidGameCount());
+        assertEquals(pgn.length, stats.getByteCount());
+        assertFalse(stats.isCancelled());
+        assertEquals(stats.getGameCount(), games.size());
+
+        int index = 0;
+        for (int i = 0; i < GAME_COUNT; i++) {
+            if (!isValid(i)) continue;
+            PgnGame game = games.get(index++);
+            assertEquals(String.valueOf(i), game.getTag("Event"));
+            assertEquals("Test", game.getTag("Site"));
+            String moveText = VALID_GAMES[i % VALID_GAMES.length];
+            assertEquals(moveText.substring(moveText.lastIndexOf(' ') + 1), game.getResult());
+            assertEquals(VALID_MOVE_COUNTS[i % VALID_GAMES.length], game.getMoveCount());
+        }
+    }
+}
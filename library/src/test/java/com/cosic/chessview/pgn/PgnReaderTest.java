@@ -0,0 +1,216 @@
+package com.cosic.chessview.pgn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+
+public class PgnReaderTest {
+
+    private static final String TWO_GAMES = ""
+            + "[Event \"First\"]\n"
+            + "[White \"Morphy, Paul\"]\n"
+            + "[Black \"Duke \\\"Karl\\\"\"]\n"
+            + "\n"
+            + "1. e4 e5 2. Nf3 {main} d6 1-0\n"
+            + "\n"
+            + "[Event \"Second\"]\n"
+            + "[White \"Anderssen, Adolf\"]\n"
+            + "\n"
+            + "1. d4 d5 0-1\n";
+
+    @Test
+    public void gameEventsAreInOrder() throws IOException {
+        assertEquals("START_GAME TAG(Event=First) TAG(White=Morphy, Paul) TAG(Black=Duke \"Karl\") MOVETEXT"
+                        + " MOVE(1:e4) MOVE(2:e5) MOVE(3:Nf3) COMMENT(main) MOVE(4:d6) RESULT(1-0) END_GAME"
+                        + " START_GAME TAG(Event=Second) TAG(White=Anderssen, Adolf) MOVETEXT"
+                        + " MOVE(1:d4) MOVE(2:d5) RESULT(0-1) END_GAME END_DOCUMENT",
+                events(TWO_GAMES));
+    }
+
+    @Test
+    public void endDocumentIsReturnedForever() throws IOException {
+        PgnReader reader = new PgnReader(new StringReader(""));
+        assertEquals(PgnReader.END_DOCUMENT, reader.next());
+        assertEquals(PgnReader.END_DOCUMENT, reader.next());
+    }
+
+    @Test
+    public void tagsAreAvailableFromMoveText() throws IOException {
+        PgnReader reader = new PgnReader(new StringReader(TWO_GAMES));
+        while (reader.next() != PgnReader.MOVETEXT) {
+            // Tags;
+        }
+        assertEquals(3, reader.getTagCount());
+        assertEquals("Morphy, Paul", reader.getTag("White").toString());
+        assertEquals("Black", reader.getTagName(2).toString());
+        assertNull(reader.getTag("Site"));
+    }
+
+    @Test
+    public void skipGameContinuesWithNextGame() throws IOException {
+        PgnReader reader = new PgnReader(new StringReader(TWO_GAMES));
+        int event;
+        int moveCount = 0;
+        while ((event = reader.next()) != PgnReader.END_DOCUMENT) {
+            if (event == PgnReader.MOVETEXT && "First".contentEquals(reader.getTag("Event"))) {
+                reader.skipGame();
+            } else if (event == PgnReader.MOVE) {
+                moveCount++;
+                assertEquals("Second", reader.getTag("Event").toString());
+            }
+        }
+        assertEquals(2, moveCount);
+    }
+
+    @Test
+    public void zeroCastlingIsMove() throws IOException {
+        assertEquals("START_GAME MOVETEXT MOVE(1:e4) MOVE(2:e5) MOVE(3:0-0+) MOVE(4:0-0-0#) RESULT(1/2-1/2)"
+                        + " END_GAME END_DOCUMENT",
+                events("1. e4 e5 2. 0-0+ 0-0-0# 1/2-1/2"));
+    }
+
+    @Test
+    public void variationsReplaceLastMove() throws IOException {
+        assertEquals("START_GAME MOVETEXT MOVE(1:e4) MOVE(2:e5) START_VARIATION[1] MOVE(2:c5)"
+                        + " START_VARIATION[2] MOVE(2:e6) END_VARIATION[1] MOVE(3:Nf3) END_VARIATION[0]"
+                        + " MOVE(3:Nf3) RESULT(*) END_GAME END_DOCUMENT",
+                events("1. e4 e5 (1... c5 (1... e6) 2. Nf3) 2. Nf3 *"));
+    }
+
+    @Test
+    public void nagsAndSuffixesAreRead() throws IOException {
+        assertEquals("START_GAME MOVETEXT MOVE(1:e4) NAG(1) MOVE(2:e5) NAG(4) NAG(5) MOVE(3:Nf3) NAG(14)"
+                        + " END_GAME END_DOCUMENT",
+                events("1. e4! e5?? !? 2. Nf3 $14"));
+    }
+
+    @Test
+    public void commentsAndEscapesAreRead() throws IOException {
+        assertEquals("START_GAME TAG(Event=E) MOVETEXT COMMENT(multi\nline) MOVE(1:e4) COMMENT( rest of line)"
+                        + " MOVE(2:e5) RESULT(*) END_GAME END_DOCUMENT",
+                events("% escaped line\n[Event \"E\"]\n{multi\nline} 1. e4 ; rest of line\n% escaped\n1... e5 *"));
+    }
+
+    @Test
+    public void gameWithoutResultEndsAtNextTags() throws IOException {
+        assertEquals("START_GAME TAG(Event=A) MOVETEXT MOVE(1:e4) END_GAME"
+                        + " START_GAME TAG(Event=B) MOVETEXT MOVE(1:d4) END_GAME END_DOCUMENT",
+                events("[Event \"A\"]\n1. e4\n[Event \"B\"]\n1. d4"));
+    }
+
+    @Test
+    public void malformedInputReportsLine() throws IOException {
+        assertMalformed("[Event \"Unterminated]\n1. e4 *", 1);
+        assertMalformed("[Event \"E\"]\n\n1. e4 {open", 3);
+        assertMalformed("1. e4 e5\n2. Nf3 ) *", 2);
+        assertMalformed("1. e4 @ *", 1);
+    }
+
+    @Test
+    public void skipGameRecoversFromMalformedGame() throws IOException {
+        PgnReader reader = new PgnReader(new StringReader("[Event \"A\"]\n1. e4 ) e5 *\n\n[Event \"B\"]\n1. d4 *"));
+        int moveCount = 0;
+        int gameCount = 0;
+        while (true) {
+            int event;
+            try {
+                event = reader.next();
+            } catch (PgnFormatException e) {
+                reader.skipGame();
+                continue;
+            }
+            if (event == PgnReader.END_DOCUMENT) {
+                break;
+            }
+            if (event == PgnReader.START_GAME) {
+                gameCount++;
+            } else if (event == PgnReader.MOVE) {
+                moveCount++;
+            }
+        }
+        assertEquals(2, gameCount);
+        assertEquals(2, moveCount);
+    }
+
+    @Test
+    public void resetReadsOtherInput() throws IOException {
+        PgnReader reader = new PgnReader(new StringReader(TWO_GAMES), 16);
+        assertEquals(PgnReader.START_GAME, reader.next());
+        reader.reset(new StringReader("1. c4 *"));
+        assertEquals(PgnReader.START_GAME, reader.next());
+        assertEquals(PgnReader.MOVETEXT, reader.next());
+        assertEquals(0, reader.getTagCount());
+        assertEquals(PgnReader.MOVE, reader.next());
+        assertEquals("c4", reader.getText().toString());
+        assertEquals(1, reader.getLineNumber());
+    }
+
+    private static void assertMalformed(String pgn, int line) throws IOException {
+        PgnReader reader = new PgnReader(new StringReader(pgn));
+        try {
+            while (reader.next() != PgnReader.END_DOCUMENT) {
+                // Events;
+            }
+            fail("Malformed input is read: " + pgn);
+        } catch (PgnFormatException e) {
+            assertEquals(pgn, line, e.getLineNumber());
+        }
+    }
+
+    /**
+     * @return events of the whole input separated by spaces, with the text of each;
+     */
+    private static String events(String pgn) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        PgnReader reader = new PgnReader(new StringReader(pgn));
+        int event;
+        do {
+            event = reader.next();
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            switch (event) {
+                case PgnReader.START_GAME:
+                    builder.append("START_GAME");
+                    break;
+                case PgnReader.TAG:
+                    builder.append("TAG(").append(reader.getTagName()).append('=').append(reader.getTagValue()).append(')');
+                    break;
+                case PgnReader.MOVETEXT:
+                    builder.append("MOVETEXT");
+                    break;
+                case PgnReader.MOVE:
+                    builder.append("MOVE(").append(reader.getPly()).append(':').append(reader.getText()).append(')');
+                    break;
+                case PgnReader.COMMENT:
+                    builder.append("COMMENT(").append(reader.getText()).append(')');
+                    break;
+                case PgnReader.NAG:
+                    builder.append("NAG(").append(reader.getNag()).append(')');
+                    break;
+                case PgnReader.START_VARIATION:
+                    builder.append("START_VARIATION[").append(reader.getDepth()).append(']');
+                    break;
+                case PgnReader.END_VARIATION:
+                    builder.append("END_VARIATION[").append(reader.getDepth()).append(']');
+                    break;
+                case PgnReader.RESULT:
+                    builder.append("RESULT(").append(reader.getText()).append(')');
+                    break;
+                case PgnReader.END_GAME:
+                    builder.append("END_GAME");
+                    break;
+                case PgnReader.END_DOCUMENT:
+                    builder.append("END_DOCUMENT");
+                    break;
+                default:
+                    fail("Unknown event " + event);
+            }
+        } while (event != PgnReader.END_DOCUMENT);
+        return builder.toString();
+    }
+}